@@ -0,0 +1,99 @@
+package net.martinprobson.hadoop.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reading the lines of a DFKKOP extract through {@link TextLineReader}, uncompressed and
+ * compressed with each of the pure Java codecs, with different read buffer sizes.
+ * <p>Scores are nanoseconds per line (each line is {@value #LINE_BYTES} bytes uncompressed).
+ *
+ * @author martinr
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CodecBenchmark {
+
+	static final int LINES = 20000;
+	static final int LINE_BYTES = 723;
+
+	/** Codec alias, as accepted by <code>CompressionCodecFactory.getCodecByName</code>, or none. */
+	@Param({ "none", "deflate", "gzip", "bzip2" })
+	public String codec;
+
+	@Param({ "4096", "65536" })
+	public int bufferSize;
+
+	private Configuration conf;
+	private File dir;
+	private Path file;
+
+	@Setup
+	public void setUp() throws IOException {
+		conf = new Configuration();
+		conf.setInt(CodecStreams.BUFFER_SIZE_KEY,bufferSize);
+		// Compare codecs against a plain stream rather than a mapped file.
+		conf.setBoolean(TextLineReader.MAP_LOCAL_FILES_KEY,false);
+		FileSystem fs = FileSystem.getLocal(conf);
+		CompressionCodec compression = codec.equals("none") ? null : new CompressionCodecFactory(conf).getCodecByName(codec);
+		dir = Files.createTempDirectory("codec").toFile();
+		file = new Path(dir.toURI().toString(),"dfkkop" + (compression == null ? ".txt" : compression.getDefaultExtension()));
+		byte[] line = (FileUtils.readFileToString(new File(CodecBenchmark.class.getResource("/TestDfkkopParser_test_case.txt").getFile()),
+												  StandardCharsets.UTF_8).trim() + "\n").getBytes(StandardCharsets.UTF_8);
+		OutputStream out = fs.create(file);
+		if (compression != null)
+			out = compression.createOutputStream(out);
+		try {
+			for (int i = 0; i < LINES; i++)
+				out.write(line);
+		} finally {
+			out.close();
+		}
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		FileUtils.deleteDirectory(dir);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(LINES)
+	public long readLines() throws IOException {
+		long bytes = 0;
+		try (TextLineReader reader = new TextLineReader(conf,file)) {
+			while (reader.next())
+				bytes += reader.getLine().getLength();
+		}
+		return bytes;
+	}
+
+}
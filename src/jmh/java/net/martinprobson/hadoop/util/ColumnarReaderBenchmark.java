@@ -0,0 +1,137 @@
+package net.martinprobson.hadoop.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Summing two typed fields of a DFKKOP extract, parsing the text every time (a row at a time, or a
+ * batch at a time with {@link ColumnBatchParser}) against reading the columns from a file written
+ * once by {@link ColumnarConverter}.
+ * <p>Scores are nanoseconds per row.
+ *
+ * @author martinr
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ColumnarReaderBenchmark {
+
+	static final int ROWS = 100000;
+
+	private Configuration conf;
+	private File dir;
+	private DelimLineParser parser;
+	private Path text;
+	private Path columnar;
+	private int vkont;
+	private int betrh;
+	private ColumnBatchParser batchParser;
+
+	@Setup
+	public void setUp() throws IOException {
+		conf = new Configuration();
+		FileSystem fs = FileSystem.getLocal(conf);
+		Properties fields = new Properties();
+		try (InputStream in = ColumnarReaderBenchmark.class.getResourceAsStream("/dfkkop.properties")) {
+			fields.load(in);
+		}
+		fields.put("vkont","18,long");
+		fields.put("betrh","43,decimal(2)");
+		parser = new DelimLineParser(fields);
+		vkont = parser.getSchema().getPosition("vkont");
+		betrh = parser.getSchema().getPosition("betrh");
+		batchParser = new ColumnBatchParser(parser,"vkont","betrh");
+		dir = Files.createTempDirectory("columnar").toFile();
+		text = new Path(dir.toURI().toString(),"dfkkop.txt");
+		columnar = new Path(dir.toURI().toString(),"dfkkop.seq");
+		String line = FileUtils.readFileToString(new File(ColumnarReaderBenchmark.class.getResource("/TestDfkkopParser_test_case.txt").getFile()),
+												 StandardCharsets.UTF_8).trim();
+		String[] values = line.split("\u0001",-1);
+		try (OutputStream out = fs.create(text)) {
+			for (int i = 0; i < ROWS; i++) {
+				values[17] = Long.toString(850000000000L + i);
+				out.write((String.join("\u0001",values) + "\n").getBytes(StandardCharsets.UTF_8));
+			}
+		}
+		new ColumnarConverter(conf,parser).setNullValues("\\N","00000000").convert(text,columnar);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		FileUtils.deleteDirectory(dir);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ROWS)
+	public long parseText() throws IOException {
+		long total = 0;
+		DelimRecord record = parser.newRecord();
+		try (TextLineReader reader = new TextLineReader(conf,text)) {
+			while (reader.next()) {
+				record.reset(reader.getLine());
+				total += record.getLong(vkont) + record.getDecimal(betrh,2);
+			}
+		}
+		return total;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ROWS)
+	public long parseBatch() throws IOException {
+		long total = 0;
+		try (TextLineReader reader = new TextLineReader(conf,text)) {
+			ColumnBatch batch;
+			while ((batch = batchParser.read(reader)) != null) {
+				long[] vkonts = batch.getLongColumn("vkont").getValues();
+				long[] betrhs = batch.getLongColumn("betrh").getValues();
+				for (int row = 0; row < batch.getRowCount(); row++)
+					total += vkonts[row] + betrhs[row];
+			}
+		}
+		return total;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ROWS)
+	public long readColumnar() throws IOException {
+		long total = 0;
+		try (ColumnarReader reader = new ColumnarReader(conf,columnar,"vkont","betrh")) {
+			while (reader.next()) {
+				ColumnBatch batch = reader.getBatch();
+				long[] vkonts = batch.getLongColumn("vkont").getValues();
+				long[] betrhs = batch.getLongColumn("betrh").getValues();
+				for (int row = 0; row < batch.getRowCount(); row++)
+					total += vkonts[row] + betrhs[row];
+			}
+		}
+		return total;
+	}
+
+}
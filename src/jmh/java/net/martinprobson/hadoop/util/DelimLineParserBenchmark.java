@@ -0,0 +1,189 @@
+package net.martinprobson.hadoop.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.hadoop.io.Text;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Field extraction benchmarks over the wide DFKKOP test line.
+ * <p>Scores are nanoseconds per field (each invocation reads {@value #FIELDS} fields by
+ * position or {@value #NAMED_FIELDS} fields by name), run with <code>-prof gc</code> for allocation rates.
+ *
+ * @author martinr
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DelimLineParserBenchmark {
+
+	static final int FIELDS = 180;
+	static final int NAMED_FIELDS = 10;
+	static final int LONG_FIELD_LENGTH = 60;
+	private static final String[] NAMES = { "vkont", "gpart", "opbel", "bldat", "budat",
+											"faedn", "betrh", "sbeth", "xanza", "waers" };
+
+	private Text line;
+	/** {@value #FIELDS} fields of {@value #LONG_FIELD_LENGTH} bytes. */
+	private Text longFieldLine;
+	private String separator;
+	private DelimLineParser parser;
+	private DelimRecord record;
+	private Text field;
+	private int[] handles;
+
+	@Setup
+	public void setUp() throws IOException {
+		File file = new File(DelimLineParserBenchmark.class.getResource("/TestDfkkopParser_test_case.txt").getFile());
+		line = new Text(FileUtils.readFileToString(file,Charset.defaultCharset()));
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < FIELDS; i++) {
+			for (int j = 0; j < LONG_FIELD_LENGTH; j++)
+				sb.append((char) ('a' + (i + j) % 26));
+			sb.append('\u0001');
+		}
+		longFieldLine = new Text(sb.toString());
+		parser = new DelimLineParser("/dfkkop.properties");
+		separator = parser.getFieldSeparator();
+		record = parser.newRecord();
+		field = new Text();
+		handles = new int[NAMES.length];
+		for (int i = 0; i < NAMES.length; i++)
+			handles[i] = parser.getSchema().getPosition(NAMES[i]);
+	}
+
+	/**
+	 * The original implementation: decode and split the line for every field.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(FIELDS)
+	public void splitGetFieldByPosition(Blackhole bh) {
+		for (int i = 1; i <= FIELDS; i++)
+			bh.consume(line.toString().split(separator,i + 1)[i - 1]);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(FIELDS)
+	public void parserGetFieldByPosition(Blackhole bh) {
+		for (int i = 1; i <= FIELDS; i++)
+			bh.consume(parser.getFieldByPosition(line,i));
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(FIELDS)
+	public void parserGetFieldByPositionText(Blackhole bh) {
+		for (int i = 1; i <= FIELDS; i++)
+			bh.consume(parser.getFieldByPosition(line,i,field));
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(FIELDS)
+	public void recordGetFieldByPositionText(Blackhole bh) {
+		record.reset(line);
+		for (int i = 1; i <= FIELDS; i++)
+			bh.consume(record.getFieldByPosition(i,field));
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(FIELDS)
+	public int scan() {
+		return count(line,WIDE_SCAN);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(FIELDS)
+	public int scanSwar() {
+		return count(line,SWAR_SCAN);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(FIELDS)
+	public int scanScalar() {
+		return count(line,SCALAR_SCAN);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(FIELDS)
+	public int scanLongFields() {
+		return count(longFieldLine,WIDE_SCAN);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(FIELDS)
+	public int scanLongFieldsSwar() {
+		return count(longFieldLine,SWAR_SCAN);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(FIELDS)
+	public int scanLongFieldsScalar() {
+		return count(longFieldLine,SCALAR_SCAN);
+	}
+
+	private static final int WIDE_SCAN = 0;
+	private static final int SWAR_SCAN = 1;
+	private static final int SCALAR_SCAN = 2;
+
+	private static int indexOf(int scan, byte[] bytes, int from, int to) {
+		switch (scan) {
+		case SWAR_SCAN:
+			return SeparatorScanner.indexOfSwar(bytes,from,to,(byte) 1);
+		case SCALAR_SCAN:
+			return SeparatorScanner.indexOfScalar(bytes,from,to,(byte) 1);
+		default:
+			return SeparatorScanner.indexOf(bytes,from,to,(byte) 1);
+		}
+	}
+
+	private static int count(Text text, int scan) {
+		byte[] bytes = text.getBytes();
+		int length = text.getLength();
+		int count = 0;
+		for (int i = indexOf(scan,bytes,0,length); i >= 0; i = indexOf(scan,bytes,i + 1,length))
+			count++;
+		return count;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(NAMED_FIELDS)
+	public void parserGetFieldByName(Blackhole bh) {
+		for (String name : NAMES)
+			bh.consume(parser.getFieldByName(line,name));
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(NAMED_FIELDS)
+	public void recordGetFieldByName(Blackhole bh) {
+		record.reset(line);
+		for (String name : NAMES)
+			bh.consume(record.getFieldByName(name,field));
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(NAMED_FIELDS)
+	public void recordGetFieldByHandle(Blackhole bh) {
+		record.reset(line);
+		for (int handle : handles)
+			bh.consume(record.getFieldByPosition(handle,field));
+	}
+
+}
@@ -0,0 +1,121 @@
+package net.martinprobson.hadoop.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Summing two typed fields of a DFKKOP extract with a {@link ParsePipeline} of varying numbers of
+ * workers, against the same loop on a single thread (as <code>ColumnarReaderBenchmark.parseText</code>).
+ * <p>Scores are nanoseconds per row.
+ *
+ * @author martinr
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParsePipelineBenchmark {
+
+	static final int ROWS = 100000;
+
+	@Param({ "1", "4", "16" })
+	private int workers;
+
+	private Configuration conf;
+	private File dir;
+	private DelimLineParser parser;
+	private Path text;
+	private int vkont;
+	private int betrh;
+
+	@Setup
+	public void setUp() throws IOException {
+		conf = new Configuration();
+		FileSystem fs = FileSystem.getLocal(conf);
+		Properties fields = new Properties();
+		try (InputStream in = ParsePipelineBenchmark.class.getResourceAsStream("/dfkkop.properties")) {
+			fields.load(in);
+		}
+		fields.put("vkont","18,long");
+		fields.put("betrh","43,decimal(2)");
+		parser = new DelimLineParser(fields);
+		vkont = parser.getSchema().getPosition("vkont");
+		betrh = parser.getSchema().getPosition("betrh");
+		dir = Files.createTempDirectory("pipeline").toFile();
+		text = new Path(dir.toURI().toString(),"dfkkop.txt");
+		String line = FileUtils.readFileToString(new File(ParsePipelineBenchmark.class.getResource("/TestDfkkopParser_test_case.txt").getFile()),
+												 StandardCharsets.UTF_8).trim();
+		String[] values = line.split("\u0001",-1);
+		try (OutputStream out = fs.create(text)) {
+			for (int i = 0; i < ROWS; i++) {
+				values[17] = Long.toString(850000000000L + i);
+				out.write((String.join("\u0001",values) + "\n").getBytes(StandardCharsets.UTF_8));
+			}
+		}
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		FileUtils.deleteDirectory(dir);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ROWS)
+	public long singleThread() throws IOException {
+		long total = 0;
+		DelimRecord record = parser.newRecord();
+		try (TextLineReader reader = new TextLineReader(conf,text)) {
+			while (reader.next()) {
+				record.reset(reader.getLine());
+				total += record.getLong(vkont) + record.getDecimal(betrh,2);
+			}
+		}
+		return total;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ROWS)
+	public long pipeline() throws IOException {
+		final long[] total = new long[1];
+		new ParsePipeline(conf,parser,workers).run(text,new ParsePipeline.Mapper<Long>() {
+			@Override
+			public Long map(DelimRecord record) {
+				return record.getLong(vkont) + record.getDecimal(betrh,2);
+			}
+		},new ParsePipeline.Consumer<Long>() {
+			@Override
+			public void consume(Long value) {
+				total[0] += value;
+			}
+		});
+		return total[0];
+	}
+
+}
@@ -0,0 +1,109 @@
+package net.martinprobson.hadoop.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.hadoop.io.Text;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Cost of the {@link QuotedFieldScanner} parsing modes against the plain single byte separator,
+ * indexing the DFKKOP test line with a {@link DelimRecord} and reading every field.
+ * <p>Scores are nanoseconds per field. <code>quotedLine</code> is the same line with every
+ * fourth field quoted and containing the separator (not run for the plain modes).
+ *
+ * @author martinr
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QuotedParserBenchmark {
+
+	static final int FIELDS = 180;
+
+	public enum ParseMode {
+		/** Single byte separator, no quotes (the default). */
+		PLAIN,
+		/** Two byte literal separator, no quotes. */
+		MULTI_BYTE,
+		/** Single byte separator with a quote character. */
+		QUOTE,
+		/** Single byte separator with quote and escape characters. */
+		QUOTE_ESCAPE
+	}
+
+	@Param
+	private ParseMode mode;
+
+	private Text line;
+	private Text quoted;
+	private DelimRecord record;
+	private Text field;
+
+	@Setup
+	public void setUp() throws IOException {
+		File file = new File(QuotedParserBenchmark.class.getResource("/TestDfkkopParser_test_case.txt").getFile());
+		String contents = FileUtils.readFileToString(file,Charset.defaultCharset());
+		String separator = mode == ParseMode.MULTI_BYTE ? "||" : "\u0001";
+		DelimLineParser parser = new DelimLineParser(new Properties(),null);
+		parser.setLiteralSeparator(separator);
+		if (mode == ParseMode.QUOTE || mode == ParseMode.QUOTE_ESCAPE)
+			parser.setQuoteChar('"');
+		if (mode == ParseMode.QUOTE_ESCAPE)
+			parser.setEscapeChar('\\');
+		String[] fields = contents.split("\u0001",-1);
+		StringBuilder plain = new StringBuilder();
+		StringBuilder withQuotes = new StringBuilder();
+		for (int i = 0; i < fields.length; i++) {
+			if (i > 0) {
+				plain.append(separator);
+				withQuotes.append(separator);
+			}
+			plain.append(fields[i]);
+			withQuotes.append(i % 4 == 0 ? "\"" + fields[i] + separator + "x\"" : fields[i]);
+		}
+		line = new Text(plain.toString());
+		quoted = new Text(withQuotes.toString());
+		record = parser.newRecord();
+		field = new Text();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(FIELDS)
+	public void line(Blackhole bh) {
+		record.reset(line);
+		for (int i = 1; i <= FIELDS; i++)
+			bh.consume(record.getFieldByPosition(i,field));
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(FIELDS)
+	public void quotedLine(Blackhole bh) {
+		if (mode == ParseMode.PLAIN || mode == ParseMode.MULTI_BYTE)
+			return;
+		record.reset(quoted);
+		for (int i = 1; i <= FIELDS; i++)
+			bh.consume(record.getFieldByPosition(i,field));
+	}
+
+}
@@ -0,0 +1,103 @@
+package net.martinprobson.hadoop.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.SequenceFile.CompressionType;
+import org.apache.hadoop.io.Text;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Writing DFKKOP-like records (the account number as the key, the whole line as the value, with the
+ * account and amount varied) to SequenceFiles with {@link SeqFileWriter}, with each compression
+ * type, to a single file and to four part files with {@link ParallelSeqFileWriter}.
+ * <p>Scores are nanoseconds per record (each record is about {@value #RECORD_BYTES} bytes uncompressed).
+ *
+ * @author martinr
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SeqFileWriterBenchmark {
+
+	static final int RECORDS = 20000;
+	static final int RECORD_BYTES = 738;
+
+	/** Compression type and codec alias, as accepted by <code>CompressionCodecFactory.getCodecByName</code>. */
+	@Param({ "none", "record-deflate", "block-deflate", "block-bzip2" })
+	public String compression;
+
+	private Configuration conf;
+	private File dir;
+	private Path file;
+	private Path parts;
+	private SeqFileWriter.Options options;
+	private final List<Pair<Text,Text>> records = new ArrayList<>();
+
+	@Setup
+	public void setUp() throws IOException {
+		conf = new Configuration();
+		dir = Files.createTempDirectory("seqwrite").toFile();
+		file = new Path(dir.toURI().toString(),"dfkkop.seq");
+		parts = new Path(dir.toURI().toString(),"parts");
+		String[] type = compression.split("-");
+		options = new SeqFileWriter.Options().setCompression(CompressionType.valueOf(type[0].toUpperCase()));
+		if (type.length > 1)
+			options.setCodec(type[1]);
+		String line = FileUtils.readFileToString(new File(SeqFileWriterBenchmark.class.getResource("/TestDfkkopParser_test_case.txt").getFile()),
+												 StandardCharsets.UTF_8).trim();
+		String[] values = line.split("\u0001",-1);
+		for (int i = 0; i < RECORDS; i++) {
+			String account = Long.toString(850000000000L + i % 997);
+			values[17] = account;
+			values[42] = String.format("%d.%02d-",i % 1000,i % 100);
+			records.add(new ImmutablePair<>(new Text(account),new Text(String.join("\u0001",values))));
+		}
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		FileUtils.deleteDirectory(dir);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(RECORDS)
+	public long write() throws IOException {
+		try (SeqFileWriter<Text,Text> writer = new SeqFileWriter<>(conf,file,Text.class,Text.class,options)) {
+			return writer.append(records);
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(RECORDS)
+	public long writeParts() throws IOException {
+		return new ParallelSeqFileWriter(conf,4).setOptions(options).write(parts,Text.class,Text.class,records.iterator()).getBytes();
+	}
+
+}
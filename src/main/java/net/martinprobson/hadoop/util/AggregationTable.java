@@ -0,0 +1,248 @@
+package net.martinprobson.hadoop.util;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Open addressing hash table from byte string keys to a row of <code>long</code> aggregates, for {@link Aggregator}.
+ * <p>Keys are copied end to end into a single byte array, and the aggregates of every group are held
+ * in one <code>long[]</code>, so the table holds no object per group. Slots hold the group number and
+ * its hash, so probing (linear) only compares keys whose hashes match.
+ * <p>Instances are not thread safe.
+ *
+ * @author martinr
+ *
+ */
+final class AggregationTable {
+
+	private static final int INITIAL_SLOTS = 1024;
+	private static final int INITIAL_GROUPS = INITIAL_SLOTS / 2;
+
+	private final Aggregator.Function[] functions;
+	/** Group number + 1 of each slot, 0 if the slot is empty. */
+	private int[] slots = new int[INITIAL_SLOTS];
+	private int[] slotHashes = new int[INITIAL_SLOTS];
+	private byte[] keys = new byte[64 * 1024];
+	private int keysUsed = 0;
+	private int[] keyStarts = new int[INITIAL_GROUPS];
+	private int[] keyLengths = new int[INITIAL_GROUPS];
+	private int[] hashes = new int[INITIAL_GROUPS];
+	/** Aggregates by group * functions.length + aggregate. */
+	private long[] values;
+	/** Set where an aggregate has seen a (non null) value. */
+	private boolean[] seen;
+	private int groups = 0;
+
+	AggregationTable(Aggregator.Function[] functions) {
+		this.functions = functions;
+		this.values = new long[INITIAL_GROUPS * functions.length];
+		this.seen = new boolean[INITIAL_GROUPS * functions.length];
+	}
+
+	/**
+	 * @return hash of key[start..start+length).
+	 */
+	static int hash(byte[] key, int start, int length) {
+		int h = 0x9747b28c;
+		for (int i = start; i < start + length; i++)
+			h = 31 * h + key[i];
+		// Spread the bits (murmur3 finaliser), as both the low bits (slots) and high bits (spill partitions) are used.
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return h;
+	}
+
+	/**
+	 * Find the group for key, adding an empty group if there is none.
+	 * @return the group number.
+	 */
+	int find(byte[] key, int start, int length, int hash) {
+		int mask = slots.length - 1;
+		int slot = hash & mask;
+		while (true) {
+			int group = slots[slot] - 1;
+			if (group < 0)
+				break;
+			if (slotHashes[slot] == hash && equals(group,key,start,length))
+				return group;
+			slot = (slot + 1) & mask;
+		}
+		int group = addGroup(key,start,length,hash);
+		slots[slot] = group + 1;
+		slotHashes[slot] = hash;
+		if (groups * 2 > slots.length)
+			rehash();
+		return group;
+	}
+
+	private boolean equals(int group, byte[] key, int start, int length) {
+		if (keyLengths[group] != length)
+			return false;
+		int from = keyStarts[group];
+		for (int i = 0; i < length; i++)
+			if (keys[from + i] != key[start + i])
+				return false;
+		return true;
+	}
+
+	private int addGroup(byte[] key, int start, int length, int hash) {
+		if (groups == keyStarts.length) {
+			int capacity = groups * 2;
+			keyStarts = Arrays.copyOf(keyStarts,capacity);
+			keyLengths = Arrays.copyOf(keyLengths,capacity);
+			hashes = Arrays.copyOf(hashes,capacity);
+			values = Arrays.copyOf(values,capacity * functions.length);
+			seen = Arrays.copyOf(seen,capacity * functions.length);
+		}
+		if (keysUsed + length > keys.length)
+			keys = Arrays.copyOf(keys,Math.max(keys.length * 2,keysUsed + length));
+		System.arraycopy(key,start,keys,keysUsed,length);
+		keyStarts[groups] = keysUsed;
+		keyLengths[groups] = length;
+		hashes[groups] = hash;
+		keysUsed += length;
+		int base = groups * functions.length;
+		for (int a = 0; a < functions.length; a++)
+			values[base + a] = functions[a].initial();
+		return groups++;
+	}
+
+	private void rehash() {
+		int[] newSlots = new int[slots.length * 2];
+		int[] newHashes = new int[slots.length * 2];
+		int mask = newSlots.length - 1;
+		for (int group = 0; group < groups; group++) {
+			int slot = hashes[group] & mask;
+			while (newSlots[slot] != 0)
+				slot = (slot + 1) & mask;
+			newSlots[slot] = group + 1;
+			newHashes[slot] = hashes[group];
+		}
+		slots = newSlots;
+		slotHashes = newHashes;
+	}
+
+	/**
+	 * Add a row's value to an aggregate of group.
+	 * @param value - ignored for COUNT.
+	 */
+	void update(int group, int aggregate, long value) {
+		int i = group * functions.length + aggregate;
+		values[i] = functions[aggregate].apply(values[i],value);
+		seen[i] = true;
+	}
+
+	/**
+	 * Combine a partial aggregate (from another table) with an aggregate of group.
+	 */
+	void merge(int group, int aggregate, long value, boolean hasValue) {
+		if (!hasValue)
+			return;
+		int i = group * functions.length + aggregate;
+		values[i] = functions[aggregate].combine(values[i],value);
+		seen[i] = true;
+	}
+
+	/**
+	 * Combine every group of other into this table.
+	 */
+	void merge(AggregationTable other) {
+		for (int g = 0; g < other.groups; g++) {
+			int group = find(other.keys,other.keyStarts[g],other.keyLengths[g],other.hashes[g]);
+			int base = g * functions.length;
+			for (int a = 0; a < functions.length; a++)
+				merge(group,a,other.values[base + a],other.seen[base + a]);
+		}
+	}
+
+	int size() {
+		return groups;
+	}
+
+	byte[] getKeys() {
+		return keys;
+	}
+
+	int getKeyStart(int group) {
+		return keyStarts[group];
+	}
+
+	int getKeyLength(int group) {
+		return keyLengths[group];
+	}
+
+	long getValue(int group, int aggregate) {
+		return values[group * functions.length + aggregate];
+	}
+
+	boolean hasValue(int group, int aggregate) {
+		return seen[group * functions.length + aggregate];
+	}
+
+	/**
+	 * @return approximate bytes used by the groups, including two slots (8 bytes each) per group.
+	 * The arrays are up to twice this, as they double when full.
+	 */
+	long memory() {
+		return keysUsed + groups * (28L + functions.length * 9L);
+	}
+
+	/**
+	 * Empty the table, keeping its arrays.
+	 */
+	void clear() {
+		Arrays.fill(slots,0);
+		Arrays.fill(seen,0,groups * functions.length,false);
+		groups = 0;
+		keysUsed = 0;
+	}
+
+	/**
+	 * Write every group to the partition chosen by the top bits of its hash, then empty the table.
+	 * @param partitions - one stream per partition, a power of 2.
+	 */
+	void spill(DataOutputStream[] partitions) throws IOException {
+		int shift = 32 - Integer.numberOfTrailingZeros(partitions.length);
+		for (int group = 0; group < groups; group++) {
+			DataOutputStream out = partitions.length == 1 ? partitions[0] : partitions[hashes[group] >>> shift];
+			out.writeInt(keyLengths[group]);
+			out.write(keys,keyStarts[group],keyLengths[group]);
+			int base = group * functions.length;
+			for (int a = 0; a < functions.length; a++) {
+				out.writeBoolean(seen[base + a]);
+				out.writeLong(values[base + a]);
+			}
+		}
+		clear();
+	}
+
+	/**
+	 * Merge the groups written by {@link #spill} from in.
+	 */
+	void load(DataInputStream in) throws IOException {
+		byte[] key = new byte[256];
+		while (true) {
+			int length;
+			try {
+				length = in.readInt();
+			} catch (EOFException e) {
+				return;
+			}
+			if (length > key.length)
+				key = new byte[Math.max(key.length * 2,length)];
+			in.readFully(key,0,length);
+			int group = find(key,0,length,hash(key,0,length));
+			for (int a = 0; a < functions.length; a++) {
+				boolean hasValue = in.readBoolean();
+				merge(group,a,in.readLong(),hasValue);
+			}
+		}
+	}
+
+}
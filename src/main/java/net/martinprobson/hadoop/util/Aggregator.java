@@ -0,0 +1,633 @@
+package net.martinprobson.hadoop.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IOUtils;
+
+/**
+ * Group the lines of delimited files by one or more key fields and compute COUNT, SUM, MIN and MAX
+ * of numeric fields, e.g. sum <code>betrh</code> by <code>vkont</code>, on a single machine.
+ * <p>Lines are parsed by a {@link ParsePipeline}, each worker aggregating into its own hash table
+ * ({@link AggregationTable}), and the tables are merged once the input has been read. Tables are keyed
+ * by the bytes of the key fields and hold every aggregate as a <code>long</code>, so there is no
+ * object (String, BigDecimal, map entry) per line or per group: -
+ * <ul>
+ * <li>Numeric key fields held as a long (see {@link ColumnType}) are keyed by their parsed value, so
+ * <code>0042</code> and <code>42</code> are the same key, other key fields by their (trimmed) text.</li>
+ * <li>Aggregated fields must have a numeric type held as a long in the schema (INT, LONG,
+ * DECIMAL, DATE or TIMESTAMP), e.g. <code>betrh=43,decimal(2)</code>, and sums are exact.</li>
+ * <li>As in SQL, null fields (blank, or one of the {@link #setNullValues null values}) are ignored
+ * by SUM, MIN and MAX, COUNT counts lines, and null key fields form their own group.</li>
+ * </ul>
+ * <p>Each worker may use a share of the {@link #setMemoryLimit memoryLimit} (an estimate of the bytes
+ * used by its groups, the table's arrays may be up to twice this). A worker whose table
+ * outgrows its share writes the table's groups to {@link #setPartitions partitions} spill files
+ * on local disk, by hash of the key, and empties it. If anything was spilled, the partitions are
+ * then merged one at a time, so the whole result need never fit in memory at once (each partition
+ * must, about 1/partitions of the distinct keys).
+ * <p>Groups are passed to the {@link GroupHandler} in no particular order.
+ * <p>Example: -
+ * <pre>
+ * new Aggregator(conf,parser,"vkont").sum("betrh").count().aggregate(path,new Aggregator.GroupHandler() {
+ *     public void handle(Aggregator.Group group) {
+ *         System.out.println(group.getKey(0) + " " + group.getValueString(0) + " " + group.getValue(1));
+ *     }
+ * });
+ * </pre>
+ *
+ * @author martinr
+ *
+ */
+public class Aggregator {
+
+	private static final Log LOG = LogFactory.getLog(Aggregator.class);
+
+	private static final int DEFAULT_PARTITIONS = 16;
+	private static final int SPILL_BUFFER_SIZE = 16 * 1024;
+
+	/**
+	 * Aggregate functions, each held as a long.
+	 */
+	public enum Function {
+		COUNT, SUM, MIN, MAX;
+
+		long initial() {
+			switch (this) {
+			case MIN:
+				return Long.MAX_VALUE;
+			case MAX:
+				return Long.MIN_VALUE;
+			default:
+				return 0;
+			}
+		}
+
+		/**
+		 * @return acc updated with a line's value.
+		 * @throws ArithmeticException if a SUM overflows a long.
+		 */
+		long apply(long acc, long value) {
+			switch (this) {
+			case COUNT:
+				return acc + 1;
+			case SUM:
+				return Math.addExact(acc,value);
+			case MIN:
+				return Math.min(acc,value);
+			default:
+				return Math.max(acc,value);
+			}
+		}
+
+		/**
+		 * @return acc combined with a partial aggregate.
+		 */
+		long combine(long acc, long partial) {
+			return this == COUNT ? acc + partial : apply(acc,partial);
+		}
+	}
+
+	/**
+	 * Callback receiving each group of the result.
+	 */
+	public interface GroupHandler {
+
+		/**
+		 * Process one group.
+		 * <p>The same instance is re-used for every group, so must not be kept beyond the call.
+		 * @param group
+		 * @throws IOException
+		 */
+		void handle(Group group) throws IOException;
+
+	}
+
+	private final Configuration conf;
+	private final DelimLineParser parser;
+	private final FieldSchema schema;
+	private final int[] keyPositions;
+	private final List<Function> functions = new ArrayList<>();
+	/** Field position of each aggregate, 0 for COUNT. */
+	private final List<Integer> positions = new ArrayList<>();
+	private int workers = Math.max(1,Runtime.getRuntime().availableProcessors() - 2);
+	private long memoryLimit = Runtime.getRuntime().maxMemory() / 4;
+	private int partitions = DEFAULT_PARTITIONS;
+	private File spillDirectory = new File(System.getProperty("java.io.tmpdir"));
+	private String[] nullValues = null;
+
+	/**
+	 * @param conf - Hadoop configuration referencing file system to use.
+	 * @param parser - field separator and (typed) schema of the text.
+	 * @param keyFields - names of the fields to group by.
+	 * @throws NoSuchElementException if a field name is not in the schema.
+	 */
+	public Aggregator(Configuration conf, DelimLineParser parser, String... keyFields) {
+		if (keyFields.length == 0)
+			throw new IllegalArgumentException("At least one key field is required");
+		this.conf = conf;
+		this.parser = parser;
+		this.schema = parser.getSchema();
+		this.keyPositions = new int[keyFields.length];
+		for (int i = 0; i < keyFields.length; i++)
+			keyPositions[i] = schema.getPosition(keyFields[i]);
+	}
+
+	/**
+	 * Add a count of the lines in each group.
+	 * @return this aggregator.
+	 */
+	public Aggregator count() {
+		functions.add(Function.COUNT);
+		positions.add(0);
+		return this;
+	}
+
+	/**
+	 * Add the sum of field in each group.
+	 * @param fieldName - a numeric field (held as a long).
+	 * @return this aggregator.
+	 */
+	public Aggregator sum(String fieldName) {
+		return add(Function.SUM,fieldName);
+	}
+
+	/**
+	 * Add the minimum of field in each group.
+	 * @param fieldName - a numeric field (held as a long).
+	 * @return this aggregator.
+	 */
+	public Aggregator min(String fieldName) {
+		return add(Function.MIN,fieldName);
+	}
+
+	/**
+	 * Add the maximum of field in each group.
+	 * @param fieldName - a numeric field (held as a long).
+	 * @return this aggregator.
+	 */
+	public Aggregator max(String fieldName) {
+		return add(Function.MAX,fieldName);
+	}
+
+	private Aggregator add(Function function, String fieldName) {
+		int position = schema.getPosition(fieldName);
+		ColumnType type = schema.getType(position);
+		if (!type.isLong())
+			throw new IllegalArgumentException("Field: " + fieldName + " is " + type + ", " + function + " needs a numeric type held as a long");
+		functions.add(function);
+		positions.add(position);
+		return this;
+	}
+
+	/**
+	 * @param workers - number of parsing (and aggregating) threads (default the number of cores less two).
+	 * @return this aggregator.
+	 */
+	public Aggregator setWorkers(int workers) {
+		if (workers <= 0)
+			throw new IllegalArgumentException("workers must be > 0");
+		this.workers = workers;
+		return this;
+	}
+
+	/**
+	 * @param memoryLimit - approximate bytes of heap for the hash tables (default a quarter of the maximum heap).
+	 * @return this aggregator.
+	 */
+	public Aggregator setMemoryLimit(long memoryLimit) {
+		if (memoryLimit <= 0)
+			throw new IllegalArgumentException("memoryLimit must be > 0");
+		this.memoryLimit = memoryLimit;
+		return this;
+	}
+
+	/**
+	 * @param partitions - number of spill partitions, a power of 2 (default {@value #DEFAULT_PARTITIONS}).
+	 * @return this aggregator.
+	 */
+	public Aggregator setPartitions(int partitions) {
+		if (partitions <= 0 || Integer.bitCount(partitions) != 1)
+			throw new IllegalArgumentException("partitions must be a power of 2");
+		this.partitions = partitions;
+		return this;
+	}
+
+	/**
+	 * @param spillDirectory - local directory for spill files (default <code>java.io.tmpdir</code>).
+	 * @return this aggregator.
+	 */
+	public Aggregator setSpillDirectory(File spillDirectory) {
+		this.spillDirectory = spillDirectory;
+		return this;
+	}
+
+	/**
+	 * @param values - field values treated as null, see {@link ParsedRecord#setNullValues}.
+	 * @return this aggregator.
+	 */
+	public Aggregator setNullValues(String... values) {
+		this.nullValues = values;
+		return this;
+	}
+
+	/**
+	 * Aggregate every line of path.
+	 * @param path - a file, a directory (read recursively) or a glob.
+	 * @param handler - called for each group.
+	 * @return statistics of the run.
+	 * @throws IOException if the files cannot be read, spill files cannot be written, or a field cannot be parsed.
+	 */
+	public Report aggregate(Path path, GroupHandler handler) throws IOException {
+		final Run run = new Run();
+		try {
+			ParsePipeline pipeline = new ParsePipeline(conf,parser,workers);
+			if (nullValues != null)
+				pipeline.setNullValues(nullValues);
+			ParsePipeline.Report parse = pipeline.run(path,new ParsePipeline.Mapper<Void>() {
+				@Override
+				public Void map(DelimRecord record) throws IOException {
+					run.local.get().add(record);
+					return null;
+				}
+			},new ParsePipeline.Consumer<Void>() {
+				@Override
+				public void consume(Void value) {
+				}
+			});
+			long groups = run.emit(handler);
+			LOG.debug("Aggregated " + parse.getParser().getItems() + " lines into " + groups + " groups, "
+					  + run.spills + " spills");
+			return new Report(parse,groups,run.spills);
+		} finally {
+			run.close();
+		}
+	}
+
+	/**
+	 * State of a single call to aggregate.
+	 */
+	private final class Run {
+		private final Function[] functionArray = functions.toArray(new Function[0]);
+		private final int[] positionArray = new int[positions.size()];
+		private final List<Worker> all = new ArrayList<>();
+		private final ThreadLocal<Worker> local = new ThreadLocal<Worker>() {
+			@Override
+			protected Worker initialValue() {
+				synchronized (all) {
+					Worker worker = new Worker(Run.this,all.size());
+					all.add(worker);
+					return worker;
+				}
+			}
+		};
+		private File directory;
+		private int spills = 0;
+
+		Run() {
+			for (int a = 0; a < positionArray.length; a++)
+				positionArray[a] = positions.get(a);
+		}
+
+		synchronized File directory() throws IOException {
+			if (directory == null)
+				directory = Files.createTempDirectory(spillDirectory.toPath(),"aggregate").toFile();
+			return directory;
+		}
+
+		synchronized void spilled() {
+			spills++;
+		}
+
+		/**
+		 * Merge the workers' tables, in memory or (if any spilled) partition by partition, and pass each group to handler.
+		 */
+		long emit(GroupHandler handler) throws IOException {
+			long total = 0;
+			boolean spill = false;
+			for (Worker worker : all) {
+				total += worker.table.memory();
+				spill |= worker.out != null;
+			}
+			if (!spill && total <= memoryLimit) {
+				AggregationTable merged = null;
+				for (Worker worker : all) {
+					if (merged == null || worker.table.size() > merged.size())
+						merged = worker.table;
+				}
+				if (merged == null)
+					return 0;
+				for (Worker worker : all)
+					if (worker.table != merged)
+						merged.merge(worker.table);
+				return emit(merged,handler);
+			}
+			for (Worker worker : all)
+				worker.spill();
+			for (Worker worker : all)
+				worker.closeSpill();
+			long groups = 0;
+			AggregationTable table = new AggregationTable(functionArray);
+			for (int p = 0; p < partitions; p++) {
+				for (Worker worker : all) {
+					if (worker.out == null)
+						continue;
+					try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(worker.file(p)),SPILL_BUFFER_SIZE))) {
+						table.load(in);
+					}
+				}
+				groups += emit(table,handler);
+				table.clear();
+			}
+			return groups;
+		}
+
+		private long emit(AggregationTable table, GroupHandler handler) throws IOException {
+			Group group = new Group(table);
+			for (int g = 0; g < table.size(); g++) {
+				group.set(g);
+				handler.handle(group);
+			}
+			return table.size();
+		}
+
+		void close() {
+			for (Worker worker : all)
+				worker.closeSpill();
+			if (directory != null) {
+				File[] files = directory.listFiles();
+				if (files != null)
+					for (File file : files)
+						if (!file.delete())
+							LOG.warn("Cannot delete spill file " + file);
+				if (!directory.delete())
+					LOG.warn("Cannot delete spill directory " + directory);
+			}
+		}
+	}
+
+	/**
+	 * Per thread hash table, key buffer and spill files.
+	 */
+	private final class Worker {
+		private final Run run;
+		private final int id;
+		private final AggregationTable table;
+		private final long limit;
+		private byte[] key = new byte[256];
+		private DataOutputStream[] out;
+
+		Worker(Run run, int id) {
+			this.run = run;
+			this.id = id;
+			this.table = new AggregationTable(run.functionArray);
+			this.limit = memoryLimit / workers;
+		}
+
+		void add(DelimRecord record) throws IOException {
+			int length = key(record);
+			int group = table.find(key,0,length,AggregationTable.hash(key,0,length));
+			int fieldCount = record.getFieldCount();
+			for (int a = 0; a < run.functionArray.length; a++) {
+				int position = run.positionArray[a];
+				if (position == 0) {
+					table.update(group,a,0);
+				} else if (position <= fieldCount && !record.isNull(position)) {
+					table.update(group,a,schema.getType(position).parse(record,position,schema.getScale(position)));
+				}
+			}
+			if (table.memory() > limit)
+				spill();
+		}
+
+		/**
+		 * Encode the key fields of record into key, each as a null flag followed by the parsed value
+		 * (8 bytes) of a numeric field or the length and trimmed bytes of a STRING field.
+		 * @return length of the key.
+		 */
+		private int key(DelimRecord record) {
+			int length = 0;
+			int fieldCount = record.getFieldCount();
+			for (int position : keyPositions) {
+				ColumnType type = schema.getType(position);
+				if (position > fieldCount || record.isNull(position)) {
+					key = ensure(key,length + 1);
+					key[length++] = 0;
+				} else if (type.isLong()) {
+					key = ensure(key,length + 9);
+					key[length++] = 1;
+					long value = type.parse(record,position,schema.getScale(position));
+					for (int shift = 56; shift >= 0; shift -= 8)
+						key[length++] = (byte) (value >>> shift);
+				} else {
+					byte[] bytes = record.getBytes();
+					int end = record.getFieldStart(position) + record.getFieldLength(position);
+					int start = ByteFields.trimStart(bytes,record.getFieldStart(position),end);
+					end = ByteFields.trimEnd(bytes,start,end);
+					key = ensure(key,length + 5 + end - start);
+					key[length++] = 1;
+					for (int shift = 24; shift >= 0; shift -= 8)
+						key[length++] = (byte) ((end - start) >>> shift);
+					System.arraycopy(bytes,start,key,length,end - start);
+					length += end - start;
+				}
+			}
+			return length;
+		}
+
+		void spill() throws IOException {
+			if (table.size() == 0)
+				return;
+			if (out == null) {
+				out = new DataOutputStream[partitions];
+				for (int p = 0; p < partitions; p++)
+					out[p] = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file(p)),SPILL_BUFFER_SIZE));
+			}
+			table.spill(out);
+			run.spilled();
+		}
+
+		File file(int partition) throws IOException {
+			return new File(run.directory(),"w" + id + "-p" + partition);
+		}
+
+		void closeSpill() {
+			if (out != null)
+				IOUtils.cleanup(LOG,out);
+		}
+	}
+
+	private static byte[] ensure(byte[] bytes, int length) {
+		return length > bytes.length ? Arrays.copyOf(bytes,Math.max(bytes.length * 2,length)) : bytes;
+	}
+
+	/**
+	 * A group of the result, its key fields and aggregates.
+	 */
+	public final class Group {
+		private final AggregationTable table;
+		private int group;
+		/** Offset of each key field's null flag in the table's key bytes. */
+		private final int[] keyOffsets = new int[keyPositions.length];
+
+		Group(AggregationTable table) {
+			this.table = table;
+		}
+
+		void set(int group) {
+			this.group = group;
+			byte[] keys = table.getKeys();
+			int offset = table.getKeyStart(group);
+			for (int i = 0; i < keyPositions.length; i++) {
+				keyOffsets[i] = offset;
+				if (keys[offset++] != 0)
+					offset += schema.getType(keyPositions[i]).isLong() ? 8 : 4 + readInt(keys,offset);
+			}
+		}
+
+		/**
+		 * @param i - key field index, in the order given to the constructor.
+		 * @return true if the key field is null.
+		 */
+		public boolean isKeyNull(int i) {
+			return table.getKeys()[keyOffsets[i]] == 0;
+		}
+
+		/**
+		 * @param i - key field index, in the order given to the constructor.
+		 * @return the value of a numeric key field (as {@link ColumnType}).
+		 * @throws IllegalStateException if the key field is null or a STRING.
+		 */
+		public long getLongKey(int i) {
+			if (isKeyNull(i) || !schema.getType(keyPositions[i]).isLong())
+				throw new IllegalStateException("Key " + i + " is null or not numeric");
+			byte[] keys = table.getKeys();
+			long value = 0;
+			for (int b = keyOffsets[i] + 1; b < keyOffsets[i] + 9; b++)
+				value = value << 8 | (keys[b] & 0xff);
+			return value;
+		}
+
+		/**
+		 * @param i - key field index, in the order given to the constructor.
+		 * @return the key field as text (see {@link #getValueString}), null if it is null.
+		 */
+		public String getKey(int i) {
+			if (isKeyNull(i))
+				return null;
+			int position = keyPositions[i];
+			if (schema.getType(position).isLong())
+				return schema.getType(position).format(getLongKey(i),schema.getScale(position));
+			byte[] keys = table.getKeys();
+			return new String(keys,keyOffsets[i] + 5,readInt(keys,keyOffsets[i] + 1),StandardCharsets.UTF_8);
+		}
+
+		/**
+		 * @param aggregate - aggregate index, in the order they were added.
+		 * @return false if the aggregate is null (SUM, MIN or MAX of a group where the field is always null).
+		 */
+		public boolean hasValue(int aggregate) {
+			return table.hasValue(group,aggregate);
+		}
+
+		/**
+		 * @param aggregate - aggregate index, in the order they were added.
+		 * @return the aggregate as a long (as {@link ColumnType}, so a DECIMAL sum is scaled), 0 if it is null.
+		 */
+		public long getValue(int aggregate) {
+			return hasValue(aggregate) ? table.getValue(group,aggregate) : 0;
+		}
+
+		/**
+		 * @param aggregate - aggregate index, in the order they were added.
+		 * @return the aggregate as text: DECIMAL values with their decimal places, DATE values as
+		 * <code>yyyy-MM-dd</code>, others as a number, null if it is null.
+		 */
+		public String getValueString(int aggregate) {
+			if (!hasValue(aggregate))
+				return null;
+			int position = positions.get(aggregate);
+			if (position == 0)
+				return Long.toString(getValue(aggregate));
+			return schema.getType(position).format(getValue(aggregate),schema.getScale(position));
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < keyPositions.length; i++)
+				sb.append(i == 0 ? "" : ",").append(getKey(i));
+			for (int a = 0; a < functions.size(); a++)
+				sb.append(a == 0 ? " " : ",").append(getValueString(a));
+			return sb.toString();
+		}
+	}
+
+	private static int readInt(byte[] bytes, int offset) {
+		return (bytes[offset] & 0xff) << 24 | (bytes[offset + 1] & 0xff) << 16 | (bytes[offset + 2] & 0xff) << 8 | (bytes[offset + 3] & 0xff);
+	}
+
+	/**
+	 * Outcome of an aggregation.
+	 */
+	public static final class Report {
+		private final ParsePipeline.Report parse;
+		private final long groups;
+		private final int spills;
+
+		Report(ParsePipeline.Report parse, long groups, int spills) {
+			this.parse = parse;
+			this.groups = groups;
+			this.spills = spills;
+		}
+
+		/**
+		 * @return throughput of the parsing stages.
+		 */
+		public ParsePipeline.Report getParseReport() {
+			return parse;
+		}
+
+		/**
+		 * @return number of lines aggregated.
+		 */
+		public long getLines() {
+			return parse.getParser().getItems();
+		}
+
+		/**
+		 * @return number of groups in the result.
+		 */
+		public long getGroups() {
+			return groups;
+		}
+
+		/**
+		 * @return number of times a worker's table was spilled to disk.
+		 */
+		public int getSpills() {
+			return spills;
+		}
+
+		@Override
+		public String toString() {
+			return getLines() + " lines, " + groups + " groups, " + spills + " spills";
+		}
+	}
+
+}
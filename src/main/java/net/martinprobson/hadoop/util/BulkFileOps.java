@@ -0,0 +1,230 @@
+package net.martinprobson.hadoop.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.Path;
+
+/**
+ * Delete, or check the existence of, many paths concurrently using a bounded pool of threads.
+ * <p>Unlike {@link HDFSUtil#deletePath} a failure does not stop the JVM (or the other
+ * operations), the outcome for every path is returned in a {@link Report}.
+ * <p>Paths are resolved against the file system given by the Configuration, and the
+ * {@link HDFSUtil#getStatusCache status cache} is invalidated for deleted paths.
+ *
+ * @author martinr
+ *
+ */
+public class BulkFileOps {
+
+	private static final Log LOG = LogFactory.getLog(BulkFileOps.class);
+
+	private final FileStatusCache cache;
+	private final int threads;
+
+	/**
+	 * @param conf - Hadoop configuration referencing file system to use.
+	 * @param threads - Maximum number of operations to run at the same time.
+	 * @throws IOException if the file system cannot be created.
+	 */
+	public BulkFileOps(Configuration conf, int threads) throws IOException {
+		if (threads <= 0)
+			throw new IllegalArgumentException("threads must be > 0");
+		this.cache = HDFSUtil.getStatusCache(conf);
+		this.threads = threads;
+	}
+
+	/**
+	 * Recursively delete each path.
+	 * @param paths - paths to delete.
+	 * @return report, {@link Result#getValue()} is false for paths that did not exist.
+	 * @throws IOException only if interrupted while waiting, failed deletes are reported in the result.
+	 */
+	public Report delete(Collection<Path> paths) throws IOException {
+		return run(paths,new Operation() {
+			@Override
+			public boolean apply(Path path) throws IOException {
+				long timer = Metrics.start();
+				try {
+					return cache.getFileSystem().delete(path,true);
+				} finally {
+					Metrics.increment(Metrics.Counter.NAMENODE_CALLS);
+					Metrics.stop(Metrics.Timer.METADATA,timer);
+					cache.invalidate(path);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Recursively delete every path matched by glob.
+	 * @param glob - e.g. <code>/data/out/part-*</code>.
+	 * @return report, empty if nothing matches.
+	 * @throws IOException if the glob cannot be expanded, failed deletes are reported in the result.
+	 */
+	public Report delete(Path glob) throws IOException {
+		FileStatus[] matches = cache.getFileSystem().globStatus(glob);
+		if (matches == null)
+			return new Report(Collections.<Result>emptyList());
+		return delete(Arrays.asList(FileUtil.stat2Paths(matches)));
+	}
+
+	/**
+	 * Check whether each path exists.
+	 * @param paths - paths to check.
+	 * @return report, {@link Result#getValue()} is true for paths that exist.
+	 * @throws IOException only if interrupted while waiting, failed checks are reported in the result.
+	 */
+	public Report exists(Collection<Path> paths) throws IOException {
+		return run(paths,new Operation() {
+			@Override
+			public boolean apply(Path path) throws IOException {
+				return cache.exists(path);
+			}
+		});
+	}
+
+	private interface Operation {
+		boolean apply(Path path) throws IOException;
+	}
+
+	private Report run(Collection<Path> paths, final Operation operation) throws IOException {
+		ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads,Math.max(paths.size(),1)));
+		try {
+			List<Future<Result>> futures = new ArrayList<>();
+			for (final Path path : paths) {
+				futures.add(pool.submit(new Callable<Result>() {
+					@Override
+					public Result call() {
+						try {
+							return new Result(path,operation.apply(path),null);
+						} catch (IOException | RuntimeException e) {
+							LOG.error("Error processing " + path,e);
+							return new Result(path,false,e);
+						}
+					}
+				}));
+			}
+			List<Result> results = new ArrayList<>();
+			for (Future<Result> future : futures)
+				results.add(Util.getResult(future));
+			return new Report(results);
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Outcome of an operation on one path.
+	 */
+	public static final class Result {
+		private final Path path;
+		private final boolean value;
+		private final Exception error;
+
+		Result(Path path, boolean value, Exception error) {
+			this.path = path;
+			this.value = value;
+			this.error = error;
+		}
+
+		/**
+		 * @return the path, as given.
+		 */
+		public Path getPath() {
+			return path;
+		}
+
+		/**
+		 * @return true if the path was deleted (or exists), false if it did not exist or the operation failed.
+		 */
+		public boolean getValue() {
+			return value;
+		}
+
+		/**
+		 * @return the exception that caused the operation to fail, null if it succeeded.
+		 */
+		public Exception getError() {
+			return error;
+		}
+
+		public boolean isSuccess() {
+			return error == null;
+		}
+
+		@Override
+		public String toString() {
+			return path + (error == null ? " " + value : " failed: " + error);
+		}
+	}
+
+	/**
+	 * Outcome of an operation on each of a collection of paths.
+	 */
+	public static final class Report {
+		private final List<Result> results;
+
+		Report(List<Result> results) {
+			this.results = Collections.unmodifiableList(results);
+		}
+
+		/**
+		 * @return a result for every path, in the order the paths were given.
+		 */
+		public List<Result> getResults() {
+			return results;
+		}
+
+		/**
+		 * @return results of the operations that failed.
+		 */
+		public List<Result> getFailures() {
+			List<Result> failures = new ArrayList<>();
+			for (Result result : results)
+				if (!result.isSuccess())
+					failures.add(result);
+			return failures;
+		}
+
+		/**
+		 * @return true if every operation succeeded.
+		 */
+		public boolean isSuccess() {
+			for (Result result : results)
+				if (!result.isSuccess())
+					return false;
+			return true;
+		}
+
+		/**
+		 * @return number of successful operations with a value of true (paths deleted, or paths existing).
+		 */
+		public int count() {
+			int count = 0;
+			for (Result result : results)
+				if (result.getValue())
+					count++;
+			return count;
+		}
+
+		@Override
+		public String toString() {
+			return results.size() + " paths, " + count() + " true, " + getFailures().size() + " failed";
+		}
+	}
+
+}
@@ -0,0 +1,414 @@
+package net.martinprobson.hadoop.util;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Parse primitive values directly from a range of UTF-8 bytes, without creating intermediate Strings.
+ * <p>All methods take a buffer and a <code>[start,end)</code> range. Leading and trailing spaces (and tabs)
+ * are ignored, so space padded fields can be parsed directly.
+ * <p>Dates and timestamps are parsed as UTC and accept the formats <code>yyyyMMdd</code>,
+ * <code>yyyy-MM-dd</code> and <code>yyyy-MM-dd HH:mm:ss[.fffffffff]</code>.
+ *
+ * @author martinr
+ *
+ */
+public final class ByteFields {
+
+	private static final long SECONDS_PER_DAY = 86400L;
+	private static final long[] POWERS_OF_TEN = new long[19];
+	/** Powers of ten that are exact doubles. */
+	private static final double[] DOUBLE_POWERS_OF_TEN = new double[23];
+
+	static {
+		POWERS_OF_TEN[0] = 1;
+		for (int i = 1; i < POWERS_OF_TEN.length; i++)
+			POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+		DOUBLE_POWERS_OF_TEN[0] = 1;
+		for (int i = 1; i < DOUBLE_POWERS_OF_TEN.length; i++)
+			DOUBLE_POWERS_OF_TEN[i] = DOUBLE_POWERS_OF_TEN[i - 1] * 10;
+	}
+
+	private ByteFields() {
+	}
+
+	/**
+	 * @return true if bytes[start..end) is empty or only contains spaces.
+	 */
+	public static boolean isBlank(byte[] bytes, int start, int end) {
+		return trimStart(bytes,start,end) == end;
+	}
+
+	/**
+	 * @return true if bytes[start..end), ignoring leading and trailing spaces, equals value.
+	 */
+	public static boolean equalsTrimmed(byte[] bytes, int start, int end, byte[] value) {
+		start = trimStart(bytes,start,end);
+		end = trimEnd(bytes,start,end);
+		if (end - start != value.length)
+			return false;
+		for (int i = 0; i < value.length; i++)
+			if (bytes[start + i] != value[i])
+				return false;
+		return true;
+	}
+
+	/**
+	 * Parse a (optionally signed) decimal integer.
+	 * @return the value.
+	 * @throws NumberFormatException if the range does not hold an integer that fits in an int.
+	 */
+	public static int parseInt(byte[] bytes, int start, int end) throws NumberFormatException {
+		long value = parseLong(bytes,start,end);
+		if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE)
+			throw numberFormatException("Value out of int range",bytes,start,end);
+		return (int) value;
+	}
+
+	/**
+	 * Parse a (optionally signed) decimal integer.
+	 * @return the value.
+	 * @throws NumberFormatException if the range does not hold an integer that fits in a long.
+	 */
+	public static long parseLong(byte[] bytes, int start, int end) throws NumberFormatException {
+		return parseDecimal(bytes,start,end,0);
+	}
+
+	/**
+	 * Parse a decimal number such as <code>753.57</code> as a long scaled by 10^scale,
+	 * so with a scale of 2 <code>753.57</code> returns 75357 and <code>3.5</code> returns 350.
+	 * <p>The sign may lead or trail the digits (SAP writes negative amounts as <code>753.57-</code>).
+	 * @param scale - number of decimal places to keep (0-18).
+	 * @return the scaled value.
+	 * @throws NumberFormatException if the range is not a number, has more significant decimal
+	 * places than scale or does not fit in a long once scaled.
+	 */
+	public static long parseDecimal(byte[] bytes, int start, int end, int scale) throws NumberFormatException {
+		if (scale < 0 || scale >= POWERS_OF_TEN.length)
+			throw new IllegalArgumentException("Scale " + scale + " is not valid");
+		int from = trimStart(bytes,start,end);
+		int to = trimEnd(bytes,from,end);
+		boolean negative = false;
+		if (from < to && (bytes[from] == '-' || bytes[from] == '+')) {
+			negative = bytes[from] == '-';
+			from++;
+		} else if (from < to && (bytes[to - 1] == '-' || bytes[to - 1] == '+')) {
+			negative = bytes[to - 1] == '-';
+			to--;
+		}
+		// Accumulate as a negative number so Long.MIN_VALUE can be represented.
+		long value = 0;
+		int digits = 0;
+		int decimals = -1;
+		for (int i = from; i < to; i++) {
+			byte b = bytes[i];
+			if (b == '.' && decimals < 0) {
+				decimals = 0;
+				continue;
+			}
+			if (b < '0' || b > '9')
+				throw numberFormatException("Not a number",bytes,start,end);
+			digits++;
+			if (decimals >= 0 && ++decimals > scale) {
+				if (b != '0')
+					throw numberFormatException("More than " + scale + " decimal places",bytes,start,end);
+				continue;
+			}
+			value = accumulate(value,b - '0',bytes,start,end);
+		}
+		if (digits == 0)
+			throw numberFormatException("Not a number",bytes,start,end);
+		for (int i = Math.max(decimals,0); i < scale; i++)
+			value = accumulate(value,0,bytes,start,end);
+		if (!negative) {
+			if (value == Long.MIN_VALUE)
+				throw numberFormatException("Value out of long range",bytes,start,end);
+			value = -value;
+		}
+		return value;
+	}
+
+	private static long accumulate(long value, int digit, byte[] bytes, int start, int end) {
+		if (value < Long.MIN_VALUE / 10)
+			throw numberFormatException("Value out of long range",bytes,start,end);
+		value *= 10;
+		if (value < Long.MIN_VALUE + digit)
+			throw numberFormatException("Value out of long range",bytes,start,end);
+		return value - digit;
+	}
+
+	/**
+	 * Parse a floating point number such as <code>753.57</code>, <code>-1.5e3</code> or <code>753.57-</code>.
+	 * <p>Numbers of up to 15 significant digits with a small exponent (the common case) are converted exactly
+	 * without creating a String, other values fall back to <code>Double.parseDouble</code>.
+	 * @return the value.
+	 * @throws NumberFormatException if the range is not a number.
+	 */
+	public static double parseDouble(byte[] bytes, int start, int end) throws NumberFormatException {
+		int from = trimStart(bytes,start,end);
+		int to = trimEnd(bytes,from,end);
+		boolean negative = false;
+		if (from < to && (bytes[from] == '-' || bytes[from] == '+')) {
+			negative = bytes[from] == '-';
+			from++;
+		} else if (from < to && (bytes[to - 1] == '-' || bytes[to - 1] == '+')) {
+			negative = bytes[to - 1] == '-';
+			to--;
+		}
+		long mantissa = 0;
+		int digits = 0;
+		int exponent = 0;
+		boolean seen = false;
+		boolean point = false;
+		int i = from;
+		for (; i < to; i++) {
+			byte b = bytes[i];
+			if (b == '.' && !point) {
+				point = true;
+			} else if (b >= '0' && b <= '9') {
+				seen = true;
+				if (mantissa == 0 && b == '0') {
+					if (point)
+						exponent--;
+					continue;
+				}
+				if (++digits > 15)
+					return parseDoubleSlow(bytes,start,end,from,to,negative);
+				mantissa = mantissa * 10 + (b - '0');
+				if (point)
+					exponent--;
+			} else {
+				break;
+			}
+		}
+		if (!seen)
+			throw numberFormatException("Not a number",bytes,start,end);
+		if (i < to && (bytes[i] == 'e' || bytes[i] == 'E')) {
+			int j = i + 1;
+			boolean negativeExponent = j < to && bytes[j] == '-';
+			if (j < to && (bytes[j] == '-' || bytes[j] == '+'))
+				j++;
+			int value = 0;
+			int k = j;
+			while (k < to && k - j < 4 && bytes[k] >= '0' && bytes[k] <= '9')
+				value = value * 10 + (bytes[k++] - '0');
+			if (k == to && k > j) {
+				exponent += negativeExponent ? -value : value;
+				i = k;
+			}
+		}
+		if (i < to || exponent <= -DOUBLE_POWERS_OF_TEN.length || exponent >= DOUBLE_POWERS_OF_TEN.length)
+			return parseDoubleSlow(bytes,start,end,from,to,negative);
+		// The mantissa (< 2^53) and the power of ten are both exact doubles, so one multiply or divide rounds correctly.
+		double value = exponent < 0 ? mantissa / DOUBLE_POWERS_OF_TEN[-exponent] : mantissa * DOUBLE_POWERS_OF_TEN[exponent];
+		return negative ? -value : value;
+	}
+
+	private static double parseDoubleSlow(byte[] bytes, int start, int end, int from, int to, boolean negative) {
+		for (int i = from; i < to; i++) {
+			byte b = bytes[i];
+			if (!(b >= '0' && b <= '9' || b == '.' || b == 'e' || b == 'E' || (b == '-' || b == '+') && i > from))
+				throw numberFormatException("Not a number",bytes,start,end);
+		}
+		try {
+			double value = Double.parseDouble(toString(bytes,from,to));
+			return negative ? -value : value;
+		} catch (NumberFormatException e) {
+			throw numberFormatException("Not a number",bytes,start,end);
+		}
+	}
+
+	/**
+	 * Parse a date as the number of days since 1970-01-01.
+	 * <p>Any time of day following the date is ignored.
+	 * @return the epoch day.
+	 * @throws NumberFormatException if the range is not a valid date.
+	 */
+	public static long parseEpochDay(byte[] bytes, int start, int end) throws NumberFormatException {
+		int from = trimStart(bytes,start,end);
+		int to = trimEnd(bytes,from,end);
+		int year, month, day;
+		if (to - from >= 10 && bytes[from + 4] == '-' && bytes[from + 7] == '-') {
+			year = digits(bytes,from,4,start,end);
+			month = digits(bytes,from + 5,2,start,end);
+			day = digits(bytes,from + 8,2,start,end);
+		} else if (to - from == 8) {
+			year = digits(bytes,from,4,start,end);
+			month = digits(bytes,from + 4,2,start,end);
+			day = digits(bytes,from + 6,2,start,end);
+		} else {
+			throw numberFormatException("Not a date",bytes,start,end);
+		}
+		if (month < 1 || month > 12 || day < 1 || day > daysInMonth(year,month))
+			throw numberFormatException("Not a date",bytes,start,end);
+		return epochDay(year,month,day);
+	}
+
+	/**
+	 * Parse a timestamp as the number of microseconds since 1970-01-01 00:00:00 UTC.
+	 * <p>Unlike {@link #parseEpochNanos parseEpochNanos} this can represent dates up to
+	 * 9999-12-31. Fractional digits beyond microseconds are truncated.
+	 * @return the epoch microseconds.
+	 * @throws NumberFormatException if the range is not a valid date or timestamp.
+	 */
+	public static long parseEpochMicros(byte[] bytes, int start, int end) throws NumberFormatException {
+		int from = trimStart(bytes,start,end);
+		int to = trimEnd(bytes,from,end);
+		long seconds = epochSeconds(bytes,from,to,start,end);
+		return seconds * 1000000L + fraction(bytes,from,to,6,start,end);
+	}
+
+	/**
+	 * Parse a timestamp as the number of nanoseconds since 1970-01-01 00:00:00 UTC.
+	 * <p>Epoch nanoseconds only cover the years 1677 to 2262, so high value dates such as
+	 * <code>9999-12-31</code> need {@link #parseEpochMicros parseEpochMicros}.
+	 * @return the epoch nanoseconds.
+	 * @throws NumberFormatException if the range is not a valid timestamp or is outside the range of a long.
+	 */
+	public static long parseEpochNanos(byte[] bytes, int start, int end) throws NumberFormatException {
+		int from = trimStart(bytes,start,end);
+		int to = trimEnd(bytes,from,end);
+		long seconds = epochSeconds(bytes,from,to,start,end);
+		try {
+			return Math.addExact(Math.multiplyExact(seconds,1000000000L),fraction(bytes,from,to,9,start,end));
+		} catch (ArithmeticException e) {
+			throw numberFormatException("Timestamp out of epoch nanosecond range",bytes,start,end);
+		}
+	}
+
+	/**
+	 * Parse a flag. <code>X</code>, <code>Y</code>, <code>T</code>, <code>1</code> and
+	 * <code>true</code> are true; blank, <code>N</code>, <code>F</code>, <code>0</code> and
+	 * <code>false</code> are false (all case insensitive).
+	 * @return the flag value.
+	 * @throws IllegalArgumentException if the range does not hold a flag.
+	 */
+	public static boolean parseFlag(byte[] bytes, int start, int end) throws IllegalArgumentException {
+		int from = trimStart(bytes,start,end);
+		int to = trimEnd(bytes,from,end);
+		if (from == to)
+			return false;
+		if (to - from == 1) {
+			switch (bytes[from]) {
+			case 'X': case 'x': case 'Y': case 'y': case 'T': case 't': case '1':
+				return true;
+			case 'N': case 'n': case 'F': case 'f': case '0':
+				return false;
+			default:
+				break;
+			}
+		} else if (equalsIgnoreCase(bytes,from,to,"true")) {
+			return true;
+		} else if (equalsIgnoreCase(bytes,from,to,"false")) {
+			return false;
+		}
+		throw new IllegalArgumentException("Not a flag: '" + toString(bytes,start,end) + "'");
+	}
+
+	/**
+	 * Seconds since the epoch of the date and (optional) time of day in bytes[from..to).
+	 */
+	private static long epochSeconds(byte[] bytes, int from, int to, int start, int end) {
+		long seconds = parseEpochDay(bytes,from,Math.min(to,from + 10)) * SECONDS_PER_DAY;
+		if (to - from > 10) {
+			if (to - from < 19 || (bytes[from + 10] != ' ' && bytes[from + 10] != 'T')
+					|| bytes[from + 13] != ':' || bytes[from + 16] != ':')
+				throw numberFormatException("Not a timestamp",bytes,start,end);
+			int hours = digits(bytes,from + 11,2,start,end);
+			int minutes = digits(bytes,from + 14,2,start,end);
+			int secs = digits(bytes,from + 17,2,start,end);
+			if (hours > 23 || minutes > 59 || secs > 59)
+				throw numberFormatException("Not a timestamp",bytes,start,end);
+			seconds += hours * 3600L + minutes * 60L + secs;
+		}
+		return seconds;
+	}
+
+	/**
+	 * Fraction of a second following the seconds of a timestamp in bytes[from..to), in units of 10^-precision.
+	 */
+	private static long fraction(byte[] bytes, int from, int to, int precision, int start, int end) {
+		int i = from + 19;
+		if (to - from <= 19)
+			return 0;
+		if (bytes[i] != '.' || i + 1 == to)
+			throw numberFormatException("Not a timestamp",bytes,start,end);
+		long value = 0;
+		int count = 0;
+		for (i++; i < to; i++) {
+			byte b = bytes[i];
+			if (b < '0' || b > '9')
+				throw numberFormatException("Not a timestamp",bytes,start,end);
+			if (count++ < precision)
+				value = value * 10 + (b - '0');
+		}
+		return count < precision ? value * POWERS_OF_TEN[precision - count] : value;
+	}
+
+	private static int digits(byte[] bytes, int from, int count, int start, int end) {
+		int value = 0;
+		for (int i = from; i < from + count; i++) {
+			byte b = bytes[i];
+			if (b < '0' || b > '9')
+				throw numberFormatException("Not a date",bytes,start,end);
+			value = value * 10 + (b - '0');
+		}
+		return value;
+	}
+
+	private static boolean isLeapYear(int year) {
+		return (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+	}
+
+	private static int daysInMonth(int year, int month) {
+		switch (month) {
+		case 2:
+			return isLeapYear(year) ? 29 : 28;
+		case 4: case 6: case 9: case 11:
+			return 30;
+		default:
+			return 31;
+		}
+	}
+
+	/**
+	 * Days since 1970-01-01 of a proleptic Gregorian date (see java.time.LocalDate#toEpochDay).
+	 */
+	static long epochDay(int year, int month, int day) {
+		long y = month <= 2 ? year - 1 : year;
+		long era = Math.floorDiv(y,400L);
+		long yearOfEra = y - era * 400;
+		long dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+		long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+		return era * 146097 + dayOfEra - 719468;
+	}
+
+	private static boolean equalsIgnoreCase(byte[] bytes, int from, int to, String value) {
+		if (to - from != value.length())
+			return false;
+		for (int i = 0; i < value.length(); i++)
+			if (Character.toLowerCase((char) bytes[from + i]) != value.charAt(i))
+				return false;
+		return true;
+	}
+
+	static int trimStart(byte[] bytes, int start, int end) {
+		while (start < end && (bytes[start] == ' ' || bytes[start] == '\t'))
+			start++;
+		return start;
+	}
+
+	static int trimEnd(byte[] bytes, int start, int end) {
+		while (end > start && (bytes[end - 1] == ' ' || bytes[end - 1] == '\t'))
+			end--;
+		return end;
+	}
+
+	private static String toString(byte[] bytes, int start, int end) {
+		return new String(bytes,start,end - start,StandardCharsets.UTF_8);
+	}
+
+	private static NumberFormatException numberFormatException(String msg, byte[] bytes, int start, int end) {
+		return new NumberFormatException(msg + ": '" + toString(bytes,start,end) + "'");
+	}
+
+}
@@ -0,0 +1,108 @@
+package net.martinprobson.hadoop.util;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.apache.hadoop.io.Text;
+
+/**
+ * A column of byte string (UTF-8) values, held end to end in a single byte array.
+ *
+ * @author martinr
+ *
+ */
+public class BytesColumnVector extends ColumnVector {
+
+	private byte[] data = new byte[16 * 1024];
+	/** Row n is data[offsets[n]..offsets[n+1]). */
+	private int[] offsets = new int[1025];
+
+	/**
+	 * @param row
+	 * @param value - set to the value of row (empty if the row is null).
+	 * @return value.
+	 */
+	public Text get(int row, Text value) {
+		value.set(data,offsets[row],offsets[row + 1] - offsets[row]);
+		return value;
+	}
+
+	/**
+	 * @param row
+	 * @return the value of row, null if the row is null.
+	 */
+	public String getString(int row) {
+		return isNull(row) ? null : new String(data,offsets[row],offsets[row + 1] - offsets[row],StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @return the data array holding every value, see {@link #getStart}, for use without copying.
+	 */
+	public byte[] getData() {
+		return data;
+	}
+
+	/**
+	 * @param row
+	 * @return offset of the value of row in {@link #getData()}.
+	 */
+	public int getStart(int row) {
+		return offsets[row];
+	}
+
+	/**
+	 * @param row
+	 * @return length of the value of row.
+	 */
+	public int getLength(int row) {
+		return offsets[row + 1] - offsets[row];
+	}
+
+	/**
+	 * Append bytes[start..start+length) as the value of the next row.
+	 */
+	public void append(byte[] bytes, int start, int length) {
+		ensureCapacity(size + 1,offsets[size] + length);
+		System.arraycopy(bytes,start,data,offsets[size],length);
+		offsets[size + 1] = offsets[size] + length;
+		size++;
+	}
+
+	@Override
+	public void appendNull() {
+		ensureCapacity(size + 1,offsets[size]);
+		offsets[size + 1] = offsets[size];
+		setNull(size++);
+	}
+
+	private void ensureCapacity(int rows, int bytes) {
+		if (rows + 1 > offsets.length)
+			offsets = Arrays.copyOf(offsets,Math.max(offsets.length * 2,rows + 1));
+		if (bytes > data.length)
+			data = Arrays.copyOf(data,Math.max(data.length * 2,bytes));
+	}
+
+	@Override
+	int valuesLength() {
+		return size * 4 + offsets[size];
+	}
+
+	@Override
+	void encodeValues(ByteBuffer out) {
+		for (int row = 0; row < size; row++)
+			out.putInt(offsets[row + 1] - offsets[row]);
+		out.put(data,0,offsets[size]);
+	}
+
+	@Override
+	void decodeValues(ByteBuffer in, int rows) {
+		ensureCapacity(rows,0);
+		offsets[0] = 0;
+		for (int row = 0; row < rows; row++)
+			offsets[row + 1] = offsets[row] + in.getInt();
+		ensureCapacity(rows,offsets[rows]);
+		in.get(data,0,offsets[rows]);
+	}
+
+}
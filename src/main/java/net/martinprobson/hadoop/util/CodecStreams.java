@@ -0,0 +1,114 @@
+package net.martinprobson.hadoop.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.CommonConfigurationKeysPublic;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.compress.CodecPool;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.io.compress.Decompressor;
+import org.apache.hadoop.io.compress.SplittableCompressionCodec;
+
+/**
+ * Open files, decompressing them if their name has the extension of a known codec (e.g.
+ * <code>.gz</code>, <code>.bz2</code>, <code>.snappy</code>, <code>.deflate</code>), as found
+ * by <code>CompressionCodecFactory</code> from the <code>io.compression.codecs</code> setting.
+ * <p>Decompressors are borrowed from <code>CodecPool</code> and returned when the stream is
+ * closed, so opening many files does not allocate (native) decompressors each time.
+ * <p>The read buffer size is taken from {@value #BUFFER_SIZE_KEY}, or
+ * <code>io.file.buffer.size</code> if that is not set.
+ *
+ * @author martinr
+ *
+ */
+public final class CodecStreams {
+
+	/** Configuration key, buffer size used to open files (default {@value #DEFAULT_BUFFER_SIZE}). */
+	public static final String BUFFER_SIZE_KEY = "hadoop.util.read.buffer.size";
+	public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+	private CodecStreams() {
+	}
+
+	/**
+	 * @param conf - Hadoop configuration listing the available codecs.
+	 * @param path - file name.
+	 * @return the codec for path's extension, or null if it is not compressed.
+	 */
+	public static CompressionCodec getCodec(Configuration conf, Path path) {
+		return new CompressionCodecFactory(conf).getCodec(path);
+	}
+
+	/**
+	 * @param codec - codec, or null for an uncompressed file.
+	 * @return true if files compressed with codec can be read in ranges.
+	 */
+	public static boolean isSplittable(CompressionCodec codec) {
+		return codec == null || codec instanceof SplittableCompressionCodec;
+	}
+
+	/**
+	 * @param conf
+	 * @return buffer size to open files with.
+	 */
+	public static int getBufferSize(Configuration conf) {
+		return conf.getInt(BUFFER_SIZE_KEY,conf.getInt(CommonConfigurationKeysPublic.IO_FILE_BUFFER_SIZE_KEY,DEFAULT_BUFFER_SIZE));
+	}
+
+	/**
+	 * Open path, decompressing it if needed.
+	 * @param conf - Hadoop configuration referencing file system to use.
+	 * @param path - file to open.
+	 * @return stream of the (uncompressed) contents of path, the caller must close it.
+	 * @throws IOException
+	 */
+	public static InputStream open(Configuration conf, Path path) throws IOException {
+		FSDataInputStream in = path.getFileSystem(conf).open(path,getBufferSize(conf));
+		CompressionCodec codec = getCodec(conf,path);
+		if (codec == null)
+			return in;
+		try {
+			return decompress(codec,in);
+		} catch (IOException | RuntimeException e) {
+			in.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Wrap in with a pooled decompressor for codec.
+	 * @param codec
+	 * @param in - compressed stream.
+	 * @return the uncompressed stream, closing it closes in and returns the decompressor to the pool.
+	 * @throws IOException
+	 */
+	static InputStream decompress(CompressionCodec codec, InputStream in) throws IOException {
+		final Decompressor decompressor = CodecPool.getDecompressor(codec);
+		try {
+			return new FilterInputStream(codec.createInputStream(in,decompressor)) {
+				private boolean closed = false;
+
+				@Override
+				public void close() throws IOException {
+					if (closed)
+						return;
+					closed = true;
+					try {
+						super.close();
+					} finally {
+						CodecPool.returnDecompressor(decompressor);
+					}
+				}
+			};
+		} catch (IOException | RuntimeException e) {
+			CodecPool.returnDecompressor(decompressor);
+			throw e;
+		}
+	}
+
+}
@@ -0,0 +1,422 @@
+package net.martinprobson.hadoop.util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+/**
+ * A batch of rows stored column by column, the value type of the files written by {@link ColumnarConverter}.
+ * <p>There is one column for each named field of the schema, held in a {@link LongColumnVector}
+ * (numeric types, already parsed), a {@link DoubleColumnVector} (DOUBLE) or a {@link BytesColumnVector} (STRING). Each column is
+ * serialized as a separate length prefixed chunk, so {@link #readFields readFields} can skip
+ * the columns not in the {@link #setProjection projection} without decoding them. Each chunk is
+ * compressed separately (with <code>Deflater</code>), so skipped columns are not decompressed either.
+ * <p>The serialized form describes its own columns (position and type), the schema is only
+ * needed to look columns up by name.
+ *
+ * @author martinr
+ *
+ */
+public class ColumnBatch implements Writable {
+
+	private static final byte RAW = 0;
+	private static final byte DEFLATE = 1;
+
+	private FieldSchema schema = FieldSchema.EMPTY;
+	private FieldProjection projection = null;
+	private int rows = 0;
+	private int[] positions = new int[0];
+	private ColumnType[] types = new ColumnType[0];
+	private int[] scales = new int[0];
+	private ColumnVector[] vectors = new ColumnVector[0];
+	/** False for columns skipped by the projection on the last read. */
+	private boolean[] loaded = new boolean[0];
+	/** Column index by position, -1 if there is no column for the position. */
+	private int[] columnIndex = new int[0];
+	private byte[] buffer = new byte[64 * 1024];
+	private byte[] compressed = new byte[64 * 1024];
+	private int compressionLevel = Deflater.BEST_SPEED;
+	private Deflater deflater;
+	private Inflater inflater;
+
+	/**
+	 * An empty batch, for reading.
+	 */
+	public ColumnBatch() {
+	}
+
+	/**
+	 * An empty batch with a column for each named field of schema, for writing.
+	 * @param schema
+	 */
+	public ColumnBatch(FieldSchema schema) {
+		this(schema,null);
+	}
+
+	/**
+	 * An empty batch with a column for each field of projection, for writing.
+	 * @param schema
+	 * @param projection - fields to hold, null for every named field of schema.
+	 */
+	public ColumnBatch(FieldSchema schema, FieldProjection projection) {
+		this.schema = schema;
+		int[] named = new int[projection == null ? schema.size() : projection.size()];
+		int n = 0;
+		if (projection == null) {
+			for (String name : schema.getFieldNames())
+				named[n++] = schema.getPosition(name);
+		} else {
+			for (int slot = 0; slot < projection.size(); slot++)
+				named[n++] = projection.getPosition(slot);
+		}
+		Arrays.sort(named);
+		ColumnType[] namedTypes = new ColumnType[n];
+		int[] namedScales = new int[n];
+		for (int i = 0; i < n; i++) {
+			namedTypes[i] = schema.getType(named[i]);
+			namedScales[i] = schema.getScale(named[i]);
+		}
+		setColumns(named,namedTypes,namedScales);
+		Arrays.fill(loaded,true);
+	}
+
+	/**
+	 * @param schema - used to look up columns by name.
+	 * @return this batch.
+	 */
+	public ColumnBatch setSchema(FieldSchema schema) {
+		this.schema = schema;
+		return this;
+	}
+
+	/**
+	 * @return the schema used to look up columns by name.
+	 */
+	public FieldSchema getSchema() {
+		return schema;
+	}
+
+	/**
+	 * @param compressionLevel - <code>Deflater</code> level used to compress each column on write,
+	 * 0 to store columns uncompressed (default <code>BEST_SPEED</code>).
+	 * @return this batch.
+	 */
+	public ColumnBatch setCompressionLevel(int compressionLevel) {
+		this.compressionLevel = compressionLevel;
+		return this;
+	}
+
+	/**
+	 * Only decode the columns in projection on the next {@link #readFields readFields}.
+	 * @param projection - columns to decode, null to decode every column.
+	 * @return this batch.
+	 */
+	public ColumnBatch setProjection(FieldProjection projection) {
+		this.projection = projection;
+		return this;
+	}
+
+	/**
+	 * @return number of rows in the batch.
+	 */
+	public int getRowCount() {
+		return rows;
+	}
+
+	/**
+	 * @return number of columns in the batch (including columns not loaded).
+	 */
+	public int getColumnCount() {
+		return positions.length;
+	}
+
+	/**
+	 * @param column - column index, from 0.
+	 * @return field position of column.
+	 */
+	public int getPosition(int column) {
+		return positions[column];
+	}
+
+	/**
+	 * @param fieldPosition
+	 * @return type of the column for fieldPosition.
+	 * @throws NoSuchElementException if there is no column for fieldPosition.
+	 */
+	public ColumnType getType(int fieldPosition) throws NoSuchElementException {
+		return types[index(fieldPosition,false)];
+	}
+
+	/**
+	 * @param fieldPosition
+	 * @return the values of the column for fieldPosition.
+	 * @throws NoSuchElementException if there is no column for fieldPosition, or it was not in the projection.
+	 */
+	public ColumnVector getColumn(int fieldPosition) throws NoSuchElementException {
+		return vectors[index(fieldPosition,true)];
+	}
+
+	/**
+	 * @param fieldName
+	 * @return the values of the column for fieldName.
+	 * @throws NoSuchElementException if there is no column for fieldName, or it was not in the projection.
+	 */
+	public ColumnVector getColumn(String fieldName) throws NoSuchElementException {
+		return getColumn(schema.getPosition(fieldName));
+	}
+
+	/**
+	 * @param fieldName
+	 * @return the values of the (numeric) column for fieldName.
+	 * @throws NoSuchElementException if there is no column for fieldName, or it was not in the projection.
+	 * @throws ClassCastException if the column is a STRING or DOUBLE.
+	 */
+	public LongColumnVector getLongColumn(String fieldName) throws NoSuchElementException {
+		return (LongColumnVector) getColumn(fieldName);
+	}
+
+	/**
+	 * @param fieldName
+	 * @return the values of the (DOUBLE) column for fieldName.
+	 * @throws NoSuchElementException if there is no column for fieldName, or it was not in the projection.
+	 * @throws ClassCastException if the column is not a DOUBLE.
+	 */
+	public DoubleColumnVector getDoubleColumn(String fieldName) throws NoSuchElementException {
+		return (DoubleColumnVector) getColumn(fieldName);
+	}
+
+	/**
+	 * @param fieldName
+	 * @return the values of the (STRING) column for fieldName.
+	 * @throws NoSuchElementException if there is no column for fieldName, or it was not in the projection.
+	 * @throws ClassCastException if the column is not a STRING.
+	 */
+	public BytesColumnVector getBytesColumn(String fieldName) throws NoSuchElementException {
+		return (BytesColumnVector) getColumn(fieldName);
+	}
+
+	private int index(int fieldPosition, boolean mustBeLoaded) {
+		int i = fieldPosition > 0 && fieldPosition < columnIndex.length ? columnIndex[fieldPosition] : -1;
+		if (i < 0)
+			throw new NoSuchElementException("Field: " + fieldPosition + " does not exist");
+		if (mustBeLoaded && !loaded[i])
+			throw new NoSuchElementException("Field: " + fieldPosition + " is not in the projection");
+		return i;
+	}
+
+	/**
+	 * @param column - column index, from 0.
+	 * @return the vector of column, for filling a column at a time.
+	 */
+	ColumnVector getVector(int column) {
+		return vectors[column];
+	}
+
+	/**
+	 * Set the number of rows, once every vector has been filled with rows values.
+	 */
+	void setRowCount(int rows) {
+		this.rows = rows;
+	}
+
+	/**
+	 * Empty the batch, keeping its columns.
+	 */
+	public void reset() {
+		rows = 0;
+		for (ColumnVector vector : vectors)
+			vector.reset();
+	}
+
+	/**
+	 * Append the current line of record as a row.
+	 * <p>Numeric fields that are {@link ParsedRecord#isNull null} (blank, or one of the record's null
+	 * values), and STRING fields matching one of the null values, are stored as null, as are fields
+	 * missing from the line.
+	 * @param record - positioned at a line.
+	 * @throws NumberFormatException if a numeric field cannot be parsed.
+	 */
+	public void add(ParsedRecord record) throws NumberFormatException {
+		int fieldCount = record.getFieldCount();
+		for (int i = 0; i < positions.length; i++) {
+			int position = positions[i];
+			ColumnVector vector = vectors[i];
+			if (position > fieldCount) {
+				vector.appendNull();
+			} else if (types[i].isNumeric()) {
+				if (record.isNull(position))
+					vector.appendNull();
+				else if (types[i] == ColumnType.DOUBLE)
+					((DoubleColumnVector) vector).append(record.getDouble(position));
+				else
+					((LongColumnVector) vector).append(types[i].parse(record,position,scales[i]));
+			} else {
+				int start = record.getFieldStart(position);
+				int length = record.getFieldLength(position);
+				if (!ByteFields.isBlank(record.getBytes(),start,start + length) && record.isNull(position))
+					vector.appendNull();
+				else
+					((BytesColumnVector) vector).append(record.getBytes(),start,length);
+			}
+		}
+		rows++;
+	}
+
+	@Override
+	public void write(DataOutput out) throws IOException {
+		WritableUtils.writeVInt(out,rows);
+		WritableUtils.writeVInt(out,positions.length);
+		for (int i = 0; i < positions.length; i++) {
+			if (!loaded[i])
+				throw new IllegalStateException("Field: " + positions[i] + " was not loaded, cannot write");
+			int length = vectors[i].encodedLength();
+			buffer = grow(buffer,length);
+			vectors[i].encode(ByteBuffer.wrap(buffer,0,length));
+			int stored = length;
+			if (compressionLevel != 0) {
+				if (deflater == null)
+					deflater = new Deflater(compressionLevel);
+				deflater.reset();
+				deflater.setInput(buffer,0,length);
+				deflater.finish();
+				compressed = grow(compressed,length);
+				stored = deflater.deflate(compressed,0,length);
+				if (!deflater.finished())
+					stored = length;
+			}
+			WritableUtils.writeVInt(out,positions[i]);
+			out.writeByte(types[i].ordinal());
+			WritableUtils.writeVInt(out,scales[i]);
+			WritableUtils.writeVInt(out,length);
+			if (stored < length) {
+				out.writeByte(DEFLATE);
+				WritableUtils.writeVInt(out,stored);
+				out.write(compressed,0,stored);
+			} else {
+				out.writeByte(RAW);
+				WritableUtils.writeVInt(out,length);
+				out.write(buffer,0,length);
+			}
+		}
+	}
+
+	@Override
+	public void readFields(DataInput in) throws IOException {
+		rows = WritableUtils.readVInt(in);
+		int columns = WritableUtils.readVInt(in);
+		int[] readPositions = new int[columns];
+		ColumnType[] readTypes = new ColumnType[columns];
+		int[] readScales = new int[columns];
+		boolean[] readLoaded = new boolean[columns];
+		int[] lengths = new int[columns];
+		int[] storedLengths = new int[columns];
+		byte[] encodings = new byte[columns];
+		int total = 0;
+		for (int i = 0; i < columns; i++) {
+			readPositions[i] = WritableUtils.readVInt(in);
+			int ordinal = in.readByte();
+			if (ordinal < 0 || ordinal >= ColumnType.values().length)
+				throw new IOException("Invalid column type " + ordinal);
+			readTypes[i] = ColumnType.values()[ordinal];
+			readScales[i] = WritableUtils.readVInt(in);
+			lengths[i] = WritableUtils.readVInt(in);
+			encodings[i] = in.readByte();
+			storedLengths[i] = WritableUtils.readVInt(in);
+			readLoaded[i] = projection == null || projection.getSlot(readPositions[i]) >= 0;
+			if (readLoaded[i]) {
+				compressed = grow(compressed,total + storedLengths[i]);
+				in.readFully(compressed,total,storedLengths[i]);
+				total += storedLengths[i];
+			} else {
+				skipFully(in,storedLengths[i]);
+			}
+		}
+		setColumns(readPositions,readTypes,readScales);
+		loaded = readLoaded;
+		int offset = 0;
+		for (int i = 0; i < columns; i++) {
+			if (!loaded[i]) {
+				vectors[i].reset();
+				continue;
+			}
+			ByteBuffer chunk;
+			if (encodings[i] == DEFLATE) {
+				buffer = grow(buffer,lengths[i]);
+				inflate(compressed,offset,storedLengths[i],buffer,lengths[i]);
+				chunk = ByteBuffer.wrap(buffer,0,lengths[i]);
+			} else {
+				chunk = ByteBuffer.wrap(compressed,offset,lengths[i]);
+			}
+			vectors[i].decode(chunk,rows);
+			offset += storedLengths[i];
+		}
+	}
+
+	private void inflate(byte[] in, int offset, int length, byte[] out, int outLength) throws IOException {
+		if (inflater == null)
+			inflater = new Inflater();
+		inflater.reset();
+		inflater.setInput(in,offset,length);
+		try {
+			if (inflater.inflate(out,0,outLength) != outLength || !inflater.finished())
+				throw new IOException("Corrupt column, expected " + outLength + " bytes");
+		} catch (DataFormatException e) {
+			throw new IOException("Corrupt column",e);
+		}
+	}
+
+	private static void skipFully(DataInput in, int length) throws IOException {
+		while (length > 0) {
+			int skipped = in.skipBytes(length);
+			if (skipped <= 0) {
+				in.readByte();
+				skipped = 1;
+			}
+			length -= skipped;
+		}
+	}
+
+	/**
+	 * @return bytes, or a larger copy of it if it is shorter than length.
+	 */
+	private static byte[] grow(byte[] bytes, int length) {
+		return length > bytes.length ? Arrays.copyOf(bytes,Math.max(bytes.length * 2,length)) : bytes;
+	}
+
+	/**
+	 * Replace the columns, keeping the existing vectors where the type is unchanged.
+	 */
+	private void setColumns(int[] newPositions, ColumnType[] newTypes, int[] newScales) {
+		if (Arrays.equals(positions,newPositions) && Arrays.equals(types,newTypes)) {
+			scales = newScales;
+			return;
+		}
+		ColumnVector[] newVectors = new ColumnVector[newPositions.length];
+		int maxPosition = 0;
+		for (int i = 0; i < newPositions.length; i++) {
+			int old = newPositions[i] < columnIndex.length ? columnIndex[newPositions[i]] : -1;
+			newVectors[i] = old >= 0 && types[old] == newTypes[i] ? vectors[old]
+								: newTypes[i].newVector();
+			maxPosition = Math.max(maxPosition,newPositions[i]);
+		}
+		columnIndex = new int[maxPosition + 1];
+		Arrays.fill(columnIndex,-1);
+		for (int i = 0; i < newPositions.length; i++)
+			columnIndex[newPositions[i]] = i;
+		positions = newPositions;
+		types = newTypes;
+		scales = newScales;
+		vectors = newVectors;
+		loaded = new boolean[newPositions.length];
+	}
+
+}
@@ -0,0 +1,263 @@
+package net.martinprobson.hadoop.util;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+import org.apache.hadoop.io.Text;
+
+/**
+ * Parse delimited lines a batch at a time into the column vectors of a {@link ColumnBatch}, for
+ * processing a few columns over many rows in tight loops, rather than a row at a time.
+ * <p>Lines are added until the batch is full (or the input ends), each is indexed once, keeping
+ * only the offsets of the projected fields. {@link #finish()} then converts each column in turn,
+ * over every row of the batch, to the type declared in the schema: -
+ * <ul>
+ * <li>DOUBLE - a <code>double[]</code>, {@link DoubleColumnVector}.</li>
+ * <li>INT, LONG, DECIMAL, DATE, TIMESTAMP - a <code>long[]</code>, {@link LongColumnVector}.</li>
+ * <li>STRING - offsets into a single byte array, {@link BytesColumnVector}.</li>
+ * </ul>
+ * <p>Null fields, and fields missing from a line, are set in the null bitmap of each vector, as
+ * {@link ColumnBatch#add}: nullness is taken from the record each line is indexed with, so follows its
+ * {@link #setNullValues null values} and {@link #setBlankIsNull blankIsNull} setting.
+ * <p>The line buffer, field offsets, batch and vectors are all re-used, so once they have grown
+ * to fit a batch, parsing allocates nothing. The batch returned is the same instance every time,
+ * and is only valid until the next line is added.
+ * <p>Example: -
+ * <pre>
+ * ColumnBatchParser batches = new ColumnBatchParser(parser,"vkont","betrh");
+ * try (TextLineReader reader = HDFSUtil.openLines(conf,path)) {
+ *     ColumnBatch batch;
+ *     while ((batch = batches.read(reader)) != null) {
+ *         long[] betrh = batch.getLongColumn("betrh").getValues();
+ *         for (int row = 0; row &lt; batch.getRowCount(); row++)
+ *             total += betrh[row];
+ *     }
+ * }
+ * </pre>
+ * <p>Instances are not thread safe.
+ *
+ * @author martinr
+ *
+ */
+public class ColumnBatchParser {
+
+	private static final int DEFAULT_BATCH_ROWS = 4096;
+
+	private final FieldSchema schema;
+	private final DelimRecord record;
+	private final ColumnBatch batch;
+	private final int[] positions;
+	private final ColumnType[] types;
+	private final int[] scales;
+	private final int batchRows;
+	/** Lines (or their decoded fields) added to the batch, end to end. */
+	private byte[] data = new byte[256 * 1024];
+	private int used = 0;
+	/** Field offsets into data, by column * batchRows + row, start -1 if the field is null or missing. */
+	private final int[] starts;
+	private final int[] ends;
+	private int rows = 0;
+
+	/**
+	 * @param parser - field separator and (typed) schema of the text.
+	 * @param fieldNames - the fields to parse, none for every named field of the schema.
+	 * @throws NoSuchElementException if a field name is not in the schema.
+	 */
+	public ColumnBatchParser(DelimLineParser parser, String... fieldNames) {
+		this(parser,DEFAULT_BATCH_ROWS,fieldNames);
+	}
+
+	/**
+	 * @param parser - field separator and (typed) schema of the text.
+	 * @param batchRows - rows per batch (default {@value #DEFAULT_BATCH_ROWS}).
+	 * @param fieldNames - the fields to parse, none for every named field of the schema.
+	 * @throws NoSuchElementException if a field name is not in the schema.
+	 */
+	public ColumnBatchParser(DelimLineParser parser, int batchRows, String... fieldNames) {
+		if (batchRows <= 0)
+			throw new IllegalArgumentException("batchRows must be > 0");
+		this.schema = parser.getSchema();
+		this.batchRows = batchRows;
+		FieldProjection projection = fieldNames.length > 0 ? FieldProjection.of(schema,fieldNames) : null;
+		this.record = parser.newRecord();
+		this.batch = new ColumnBatch(schema,projection);
+		// Lines are only indexed as far as the last field needed.
+		record.setProjection(projection != null ? projection
+								: schema.getMaxPosition() > 0 ? FieldProjection.ofPositions(schema.getMaxPosition()) : null);
+		int columns = batch.getColumnCount();
+		this.positions = new int[columns];
+		this.types = new ColumnType[columns];
+		this.scales = new int[columns];
+		for (int c = 0; c < columns; c++) {
+			positions[c] = batch.getPosition(c);
+			types[c] = schema.getType(positions[c]);
+			scales[c] = schema.getScale(positions[c]);
+		}
+		this.starts = new int[columns * batchRows];
+		this.ends = new int[columns * batchRows];
+	}
+
+	/**
+	 * Set the values (in addition to blank fields) stored as null, as {@link ParsedRecord#setNullValues}.
+	 * @param values - The null values, leading and trailing spaces are ignored when comparing.
+	 * @return this parser.
+	 */
+	public ColumnBatchParser setNullValues(String... values) {
+		record.setNullValues(values);
+		return this;
+	}
+
+	/**
+	 * Set whether blank numeric fields are stored as null, as {@link ParsedRecord#setBlankIsNull}.
+	 * @param blankIsNull - true (the default) if blank fields are null.
+	 * @return this parser.
+	 */
+	public ColumnBatchParser setBlankIsNull(boolean blankIsNull) {
+		record.setBlankIsNull(blankIsNull);
+		return this;
+	}
+
+	/**
+	 * Parse the next batch of lines from reader.
+	 * @param reader
+	 * @return the batch, holding up to batchRows rows, or null if reader has no more lines.
+	 * @throws IOException if the lines cannot be read.
+	 * @throws NumberFormatException if a typed field cannot be parsed.
+	 */
+	public ColumnBatch read(TextLineReader reader) throws IOException, NumberFormatException {
+		while (rows < batchRows && reader.next())
+			add(reader.getLine());
+		return rows == 0 ? null : finish();
+	}
+
+	/**
+	 * Add a line to the batch.
+	 * @param line
+	 * @return true if the batch is now full, and must be {@link #finish() finished} before adding more lines.
+	 */
+	public boolean add(Text line) {
+		return add(line.getBytes(),0,line.getLength());
+	}
+
+	/**
+	 * Add the line in bytes[start..start+length) to the batch.
+	 * @param bytes - buffer holding the line (copied, so may be re-used once this returns).
+	 * @param start - offset of the line in bytes.
+	 * @param length - length of the line.
+	 * @return true if the batch is now full, and must be {@link #finish() finished} before adding more lines.
+	 * @throws IllegalStateException if the batch is already full.
+	 */
+	public boolean add(byte[] bytes, int start, int length) {
+		if (rows == batchRows)
+			throw new IllegalStateException("Batch is full, call finish()");
+		int lineStart = used;
+		append(bytes,start,length);
+		record.reset(data,lineStart,length);
+		byte[] fields = record.getBytes();
+		if (fields != data)
+			used = lineStart; // Quoted or escaped fields are decoded into the record, copy them instead of the line.
+		int fieldCount = record.getFieldCount();
+		for (int c = 0, i = rows; c < positions.length; c++, i += batchRows) {
+			int position = positions[c];
+			if (position > fieldCount) {
+				starts[i] = -1;
+				continue;
+			}
+			int fieldStart = record.getFieldStart(position);
+			int fieldLength = record.getFieldLength(position);
+			if (types[c].isNumeric() ? record.isNull(position)
+									 : !ByteFields.isBlank(fields,fieldStart,fieldStart + fieldLength) && record.isNull(position)) {
+				starts[i] = -1;
+				continue;
+			}
+			if (fields != data) {
+				starts[i] = used;
+				append(fields,fieldStart,fieldLength);
+			} else {
+				starts[i] = fieldStart;
+			}
+			ends[i] = starts[i] + fieldLength;
+		}
+		return ++rows == batchRows;
+	}
+
+	private void append(byte[] bytes, int start, int length) {
+		if (used + length > data.length)
+			data = Arrays.copyOf(data,Math.max(data.length * 2,used + length));
+		System.arraycopy(bytes,start,data,used,length);
+		used += length;
+	}
+
+	/**
+	 * Convert the lines added since the last call into the batch.
+	 * @return the batch, re-used by the next call.
+	 * @throws NumberFormatException if a typed field cannot be parsed.
+	 */
+	public ColumnBatch finish() throws NumberFormatException {
+		batch.reset();
+		try {
+			for (int c = 0; c < positions.length; c++) {
+				ColumnVector vector = batch.getVector(c);
+				int from = c * batchRows;
+				switch (types[c]) {
+				case STRING:
+					fillBytes((BytesColumnVector) vector,from);
+					break;
+				case DOUBLE:
+					fillDoubles((DoubleColumnVector) vector,from);
+					break;
+				default:
+					fillLongs((LongColumnVector) vector,from,types[c],scales[c]);
+				}
+			}
+			batch.setRowCount(rows);
+			return batch;
+		} finally {
+			rows = 0;
+			used = 0;
+		}
+	}
+
+	private void fillBytes(BytesColumnVector vector, int from) {
+		for (int i = from; i < from + rows; i++) {
+			if (starts[i] < 0)
+				vector.appendNull();
+			else
+				vector.append(data,starts[i],ends[i] - starts[i]);
+		}
+	}
+
+	private void fillDoubles(DoubleColumnVector vector, int from) {
+		for (int i = from; i < from + rows; i++) {
+			if (starts[i] < 0)
+				vector.appendNull();
+			else
+				vector.append(ByteFields.parseDouble(data,starts[i],ends[i]));
+		}
+	}
+
+	private void fillLongs(LongColumnVector vector, int from, ColumnType type, int scale) {
+		for (int i = from; i < from + rows; i++) {
+			if (starts[i] < 0)
+				vector.appendNull();
+			else
+				vector.append(type.parse(data,starts[i],ends[i],scale));
+		}
+	}
+
+	/**
+	 * @return the batch filled by {@link #finish()}.
+	 */
+	public ColumnBatch getBatch() {
+		return batch;
+	}
+
+	/**
+	 * @return the number of lines added since the last {@link #finish()}.
+	 */
+	public int getPendingRows() {
+		return rows;
+	}
+
+}
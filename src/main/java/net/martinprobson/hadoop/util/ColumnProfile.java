@@ -0,0 +1,327 @@
+package net.martinprobson.hadoop.util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+/**
+ * Statistics of one field, part of a {@link DataProfile}.
+ * <p>Every line is classified as missing (the line has fewer fields), blank, null (one of the
+ * {@link ParsedRecord#setNullValues null values}), invalid (cannot be parsed as the field's type)
+ * or valid. Valid values are added to: -
+ * <ul>
+ * <li>a {@link HyperLogLog} for the approximate number of distinct values,</li>
+ * <li>a {@link TopValues} for the most frequent values,</li>
+ * <li>a {@link ValueHistogram} of the values (for types held as a long) or of their lengths (STRING),
+ * giving the exact minimum and maximum. DOUBLE fields have no histogram, only a minimum and maximum.</li>
+ * </ul>
+ * <p>Numeric values are counted by their parsed value, so <code>0042</code> and <code>42</code> are
+ * the same value, STRING values by their trimmed text.
+ * <p>Memory is fixed by the sketches, whatever the number of lines, see {@link Profiler}.
+ *
+ * @author martinr
+ *
+ */
+public class ColumnProfile implements Writable {
+
+	private String name;
+	private int position;
+	private ColumnType type;
+	private int scale;
+	private long present = 0;
+	private long blanks = 0;
+	private long nulls = 0;
+	private long invalid = 0;
+	private String invalidExample = null;
+	private double doubleMin = Double.POSITIVE_INFINITY;
+	private double doubleMax = Double.NEGATIVE_INFINITY;
+	private HyperLogLog distinct;
+	private TopValues top;
+	private ValueHistogram histogram;
+	/** Encoded numeric value, for top. */
+	private final byte[] key = new byte[8];
+
+	/**
+	 * Construct an empty profile, to be read with {@link #readFields}.
+	 */
+	public ColumnProfile() {
+		this("",0,ColumnType.STRING,0,new HyperLogLog(),new TopValues(),new ValueHistogram());
+	}
+
+	ColumnProfile(String name, int position, ColumnType type, int scale, HyperLogLog distinct, TopValues top, ValueHistogram histogram) {
+		this.name = name;
+		this.position = position;
+		this.type = type;
+		this.scale = scale;
+		this.distinct = distinct;
+		this.top = top;
+		this.histogram = type == ColumnType.DOUBLE ? null : histogram;
+	}
+
+	/**
+	 * Add the field of record, to be called once per line.
+	 */
+	void add(ParsedRecord record) {
+		if (position > record.getFieldCount())
+			return;
+		present++;
+		byte[] bytes = record.getBytes();
+		int start = record.getFieldStart(position);
+		int end = start + record.getFieldLength(position);
+		if (ByteFields.isBlank(bytes,start,end)) {
+			blanks++;
+			return;
+		}
+		if (record.isNull(position)) {
+			nulls++;
+			return;
+		}
+		if (type == ColumnType.STRING) {
+			start = ByteFields.trimStart(bytes,start,end);
+			end = ByteFields.trimEnd(bytes,start,end);
+			long hash = HyperLogLog.hash(bytes,start,end);
+			distinct.add(hash);
+			top.add(bytes,start,end - start,hash);
+			histogram.add(end - start);
+			return;
+		}
+		long value;
+		try {
+			if (type == ColumnType.DOUBLE) {
+				double d = ByteFields.parseDouble(bytes,start,end);
+				doubleMin = Math.min(doubleMin,d);
+				doubleMax = Math.max(doubleMax,d);
+				value = Double.doubleToLongBits(d == 0 ? 0.0 : d);
+			} else {
+				value = type.parse(record,position,scale);
+				histogram.add(value);
+			}
+		} catch (NumberFormatException e) {
+			if (invalid++ == 0)
+				invalidExample = new String(bytes,start,end - start,StandardCharsets.UTF_8);
+			return;
+		}
+		long hash = HyperLogLog.hash(value);
+		distinct.add(hash);
+		for (int i = 0, shift = 56; i < 8; i++, shift -= 8)
+			key[i] = (byte) (value >>> shift);
+		top.add(key,0,8,hash);
+	}
+
+	/**
+	 * Combine other, the profile of the same field over other lines, into this profile.
+	 * @throws IllegalArgumentException if other is of a different field or its sketches differ in size.
+	 */
+	public void merge(ColumnProfile other) {
+		if (other.position != position || other.type != type)
+			throw new IllegalArgumentException("Cannot merge profile of " + other.name + " into " + name);
+		present += other.present;
+		blanks += other.blanks;
+		nulls += other.nulls;
+		if (invalid == 0)
+			invalidExample = other.invalidExample;
+		invalid += other.invalid;
+		doubleMin = Math.min(doubleMin,other.doubleMin);
+		doubleMax = Math.max(doubleMax,other.doubleMax);
+		distinct.merge(other.distinct);
+		top.merge(other.top);
+		if (histogram != null)
+			histogram.merge(other.histogram);
+	}
+
+	/**
+	 * @return the field name.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the field position.
+	 */
+	public int getPosition() {
+		return position;
+	}
+
+	/**
+	 * @return the field type.
+	 */
+	public ColumnType getType() {
+		return type;
+	}
+
+	/**
+	 * @return number of lines holding the field.
+	 */
+	public long getPresent() {
+		return present;
+	}
+
+	/**
+	 * @return number of lines where the field is empty or spaces.
+	 */
+	public long getBlanks() {
+		return blanks;
+	}
+
+	/**
+	 * @return number of lines where the field is one of the null values.
+	 */
+	public long getNulls() {
+		return nulls;
+	}
+
+	/**
+	 * @return number of lines where the field cannot be parsed as its type.
+	 */
+	public long getInvalid() {
+		return invalid;
+	}
+
+	/**
+	 * @return the first invalid value found, null if there are none.
+	 */
+	public String getInvalidExample() {
+		return invalidExample;
+	}
+
+	/**
+	 * @return number of valid (not blank, null or invalid) values.
+	 */
+	public long getValid() {
+		return present - blanks - nulls - invalid;
+	}
+
+	/**
+	 * @return the approximate number of distinct valid values.
+	 */
+	public long getDistinct() {
+		return distinct.estimate();
+	}
+
+	/**
+	 * @return the histogram of the values (types held as a long) or their lengths (STRING),
+	 * null for DOUBLE fields.
+	 */
+	public ValueHistogram getHistogram() {
+		return histogram;
+	}
+
+	/**
+	 * @return the smallest valid value as text (see {@link #getTopValues}), the shortest length for
+	 * STRING fields, null if there are no valid values.
+	 */
+	public String getMin() {
+		if (getValid() == 0)
+			return null;
+		return type == ColumnType.DOUBLE ? Double.toString(doubleMin) : format(histogram.getMin());
+	}
+
+	/**
+	 * @return the largest valid value as text (see {@link #getTopValues}), the longest length for
+	 * STRING fields, null if there are no valid values.
+	 */
+	public String getMax() {
+		if (getValid() == 0)
+			return null;
+		return type == ColumnType.DOUBLE ? Double.toString(doubleMax) : format(histogram.getMax());
+	}
+
+	private String format(long value) {
+		return type == ColumnType.STRING ? Long.toString(value) : type.format(value,scale);
+	}
+
+	/**
+	 * @return the most frequent valid values, most frequent first, and their estimated counts.
+	 * Numeric values are formatted as their type (DECIMAL values with their decimal places,
+	 * DATE values as <code>yyyy-MM-dd</code>).
+	 */
+	public Map<String,Long> getTopValues() {
+		Map<String,Long> values = new LinkedHashMap<>();
+		for (TopValues.Value value : top.getTop()) {
+			byte[] bytes = value.getBytes();
+			String text;
+			if (type == ColumnType.STRING) {
+				text = new String(bytes,StandardCharsets.UTF_8);
+			} else {
+				long l = 0;
+				for (byte b : bytes)
+					l = l << 8 | (b & 0xff);
+				text = type == ColumnType.DOUBLE ? Double.toString(Double.longBitsToDouble(l)) : type.format(l,scale);
+			}
+			values.put(text,value.getCount());
+		}
+		return values;
+	}
+
+	@Override
+	public void write(DataOutput out) throws IOException {
+		Text.writeString(out,name);
+		WritableUtils.writeVInt(out,position);
+		out.writeByte(type.ordinal());
+		WritableUtils.writeVInt(out,scale);
+		WritableUtils.writeVLong(out,present);
+		WritableUtils.writeVLong(out,blanks);
+		WritableUtils.writeVLong(out,nulls);
+		WritableUtils.writeVLong(out,invalid);
+		if (invalid > 0)
+			Text.writeString(out,invalidExample);
+		out.writeDouble(doubleMin);
+		out.writeDouble(doubleMax);
+		distinct.write(out);
+		top.write(out);
+		if (histogram != null)
+			histogram.write(out);
+	}
+
+	@Override
+	public void readFields(DataInput in) throws IOException {
+		name = Text.readString(in);
+		position = WritableUtils.readVInt(in);
+		int ordinal = in.readByte();
+		if (ordinal < 0 || ordinal >= ColumnType.values().length)
+			throw new IOException("Invalid column type " + ordinal);
+		type = ColumnType.values()[ordinal];
+		scale = WritableUtils.readVInt(in);
+		present = WritableUtils.readVLong(in);
+		blanks = WritableUtils.readVLong(in);
+		nulls = WritableUtils.readVLong(in);
+		invalid = WritableUtils.readVLong(in);
+		invalidExample = invalid > 0 ? Text.readString(in) : null;
+		doubleMin = in.readDouble();
+		doubleMax = in.readDouble();
+		distinct.readFields(in);
+		top.readFields(in);
+		if (type == ColumnType.DOUBLE) {
+			histogram = null;
+		} else {
+			if (histogram == null)
+				histogram = new ValueHistogram();
+			histogram.readFields(in);
+		}
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(name).append(' ').append(type)
+		  .append(" present=").append(present)
+		  .append(" blanks=").append(blanks)
+		  .append(" nulls=").append(nulls)
+		  .append(" invalid=").append(invalid)
+		  .append(" distinct~").append(getDistinct());
+		if (getValid() > 0)
+			sb.append(type == ColumnType.STRING ? " length=" : " min=").append(getMin())
+			  .append(type == ColumnType.STRING ? ".." : " max=").append(getMax());
+		sb.append(" top=").append(getTopValues());
+		return sb.toString();
+	}
+
+}
@@ -0,0 +1,110 @@
+package net.martinprobson.hadoop.util;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Type of a field, as declared in a {@link FieldSchema} with <code>name=position,type</code>.
+ * <p>DOUBLE is held as a <code>double</code>, every other type except STRING is held as a
+ * <code>long</code> once parsed: -
+ * <ul>
+ * <li>INT, LONG - the value.</li>
+ * <li>DECIMAL - the value scaled by 10^scale, declared as <code>decimal(scale)</code>.</li>
+ * <li>DATE - days since 1970-01-01.</li>
+ * <li>TIMESTAMP - microseconds since 1970-01-01 00:00:00.</li>
+ * </ul>
+ *
+ * @author martinr
+ *
+ */
+public enum ColumnType {
+
+	STRING, INT, LONG, DECIMAL, DATE, TIMESTAMP, DOUBLE;
+
+	/**
+	 * @return true if values of this type are held as a <code>long</code> or <code>double</code>.
+	 */
+	public boolean isNumeric() {
+		return this != STRING;
+	}
+
+	/**
+	 * @return true if values of this type are held as a <code>long</code>, see {@link #parse}.
+	 */
+	boolean isLong() {
+		return this != STRING && this != DOUBLE;
+	}
+
+	/**
+	 * @return an empty vector to hold values of this type.
+	 */
+	ColumnVector newVector() {
+		switch (this) {
+		case STRING:
+			return new BytesColumnVector();
+		case DOUBLE:
+			return new DoubleColumnVector();
+		default:
+			return new LongColumnVector();
+		}
+	}
+
+	/**
+	 * Parse the value of field from record, for the types held as a long.
+	 * @param record - current record.
+	 * @param fieldPosition
+	 * @param scale - decimal places, for DECIMAL.
+	 * @return the field as a long, see class description.
+	 * @throws NumberFormatException if the field is null or cannot be parsed.
+	 */
+	long parse(ParsedRecord record, int fieldPosition, int scale) throws NumberFormatException {
+		if (record.isNull(fieldPosition))
+			throw new NumberFormatException("Field Position " + fieldPosition + " is null");
+		int start = record.getFieldStart(fieldPosition);
+		return parse(record.getBytes(),start,start + record.getFieldLength(fieldPosition),scale);
+	}
+
+	/**
+	 * Parse the value in bytes[start..end), for the types held as a long.
+	 * @param bytes
+	 * @param start
+	 * @param end - offset (exclusive) of the end of the value.
+	 * @param scale - decimal places, for DECIMAL.
+	 * @return the value as a long, see class description.
+	 * @throws NumberFormatException if the value cannot be parsed.
+	 */
+	long parse(byte[] bytes, int start, int end, int scale) throws NumberFormatException {
+		switch (this) {
+		case INT:
+			return ByteFields.parseInt(bytes,start,end);
+		case LONG:
+			return ByteFields.parseLong(bytes,start,end);
+		case DECIMAL:
+			return ByteFields.parseDecimal(bytes,start,end,scale);
+		case DATE:
+			return ByteFields.parseEpochDay(bytes,start,end);
+		case TIMESTAMP:
+			return ByteFields.parseEpochMicros(bytes,start,end);
+		default:
+			throw new IllegalStateException(this + " is not held as a long");
+		}
+	}
+
+	/**
+	 * Format a value held as a long (see {@link #parse}) as text.
+	 * @param value
+	 * @param scale - decimal places, for DECIMAL.
+	 * @return DECIMAL values with their decimal places, DATE values as <code>yyyy-MM-dd</code>, others as a number.
+	 */
+	String format(long value, int scale) {
+		switch (this) {
+		case DECIMAL:
+			return BigDecimal.valueOf(value,scale).toPlainString();
+		case DATE:
+			return LocalDate.ofEpochDay(value).toString();
+		default:
+			return Long.toString(value);
+		}
+	}
+
+}
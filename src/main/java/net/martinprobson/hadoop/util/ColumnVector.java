@@ -0,0 +1,110 @@
+package net.martinprobson.hadoop.util;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * The values of one column for a batch of rows, with a bitmap of null rows.
+ * <p>Vectors are re-used from batch to batch, {@link #reset()} empties a vector but keeps
+ * its arrays, which only grow.
+ *
+ * @author martinr
+ *
+ */
+public abstract class ColumnVector {
+
+	/** Bit per row, set if the row is null. */
+	private long[] nulls = new long[1];
+	private boolean hasNulls = false;
+	protected int size = 0;
+
+	/**
+	 * @return number of rows in the vector.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @param row
+	 * @return true if row is null.
+	 */
+	public boolean isNull(int row) {
+		return hasNulls && (nulls[row >>> 6] & (1L << row)) != 0;
+	}
+
+	/**
+	 * @return true if any row is null.
+	 */
+	public boolean hasNulls() {
+		return hasNulls;
+	}
+
+	/**
+	 * Empty the vector.
+	 */
+	public void reset() {
+		if (hasNulls)
+			Arrays.fill(nulls,0);
+		hasNulls = false;
+		size = 0;
+	}
+
+	/**
+	 * Append a null row.
+	 */
+	public abstract void appendNull();
+
+	protected void setNull(int row) {
+		if (row >>> 6 >= nulls.length)
+			nulls = Arrays.copyOf(nulls,Math.max(nulls.length * 2,(row >>> 6) + 1));
+		nulls[row >>> 6] |= 1L << row;
+		hasNulls = true;
+	}
+
+	/**
+	 * @return bytes needed by {@link #encode}.
+	 */
+	int encodedLength() {
+		return 1 + (hasNulls ? words() * 8 : 0) + valuesLength();
+	}
+
+	/**
+	 * Write the null bitmap and values to out.
+	 */
+	void encode(ByteBuffer out) {
+		out.put((byte) (hasNulls ? 1 : 0));
+		if (hasNulls)
+			out.asLongBuffer().put(nulls,0,words());
+		out.position(out.position() + (hasNulls ? words() * 8 : 0));
+		encodeValues(out);
+	}
+
+	/**
+	 * Replace the contents of the vector with rows rows read from in.
+	 */
+	void decode(ByteBuffer in, int rows) {
+		reset();
+		size = rows;
+		if (in.get() != 0) {
+			int words = words();
+			if (nulls.length < words)
+				nulls = new long[words];
+			in.asLongBuffer().get(nulls,0,words);
+			in.position(in.position() + words * 8);
+			hasNulls = true;
+		}
+		decodeValues(in,rows);
+	}
+
+	private int words() {
+		return (size + 63) >>> 6;
+	}
+
+	abstract int valuesLength();
+
+	abstract void encodeValues(ByteBuffer out);
+
+	abstract void decodeValues(ByteBuffer in, int rows);
+
+}
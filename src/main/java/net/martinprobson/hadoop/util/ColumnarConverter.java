@@ -0,0 +1,160 @@
+package net.martinprobson.hadoop.util;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.zip.Deflater;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.SequenceFile.CompressionType;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.DefaultCodec;
+import org.apache.hadoop.util.ReflectionUtils;
+
+/**
+ * Convert a delimited text file into a SequenceFile of {@link ColumnBatch}es, so the text is
+ * parsed once rather than by every job that reads it.
+ * <p>By default each column of a batch is compressed separately, and the SequenceFile itself is
+ * not compressed, so readers of a few columns neither decompress nor decode the others.
+ * SequenceFile (e.g. BLOCK) compression can be used instead, {@link #setCompression setCompression},
+ * which compresses better but makes every reader decompress every column.
+ * <p>Each record holds up to {@link #setBatchRows batchRows} rows, keyed by the (0 based)
+ * number of its first row as a <code>LongWritable</code>. Fields are parsed to the types
+ * declared in the parser's {@link FieldSchema} (e.g. <code>betrh=43,decimal(2)</code>), and
+ * the schema is stored in the file metadata so {@link ColumnarReader} can read the file
+ * without the properties file. Only the named fields of the schema are converted.
+ *
+ * @author martinr
+ *
+ */
+public class ColumnarConverter {
+
+	private static final Log LOG = LogFactory.getLog(ColumnarConverter.class);
+
+	/** Metadata key prefix for the schema, each field is stored as column.name=position,type. */
+	static final String SCHEMA_PREFIX = "column.";
+
+	private static final int DEFAULT_BATCH_ROWS = 4096;
+
+	private final Configuration conf;
+	private final DelimLineParser parser;
+	private int batchRows = DEFAULT_BATCH_ROWS;
+	private CompressionType compressionType = CompressionType.NONE;
+	private CompressionCodec codec;
+	private int columnCompressionLevel = Deflater.BEST_SPEED;
+	private String[] nullValues = null;
+
+	/**
+	 * @param conf - Hadoop configuration referencing file system to use.
+	 * @param parser - field separator and (typed) schema of the text.
+	 */
+	public ColumnarConverter(Configuration conf, DelimLineParser parser) {
+		this.conf = conf;
+		this.parser = parser;
+		this.codec = ReflectionUtils.newInstance(DefaultCodec.class,conf);
+	}
+
+	/**
+	 * @param batchRows - rows per {@link ColumnBatch} (default {@value #DEFAULT_BATCH_ROWS}).
+	 * @return this converter.
+	 */
+	public ColumnarConverter setBatchRows(int batchRows) {
+		if (batchRows <= 0)
+			throw new IllegalArgumentException("batchRows must be > 0");
+		this.batchRows = batchRows;
+		return this;
+	}
+
+	/**
+	 * @param compressionType - SequenceFile compression (default NONE).
+	 * @param codec - compression codec (default <code>DefaultCodec</code>), ignored for NONE.
+	 * @return this converter.
+	 */
+	public ColumnarConverter setCompression(CompressionType compressionType, CompressionCodec codec) {
+		this.compressionType = compressionType;
+		this.codec = codec;
+		return this;
+	}
+
+	/**
+	 * @param level - <code>Deflater</code> level used for each column, 0 for none (default <code>BEST_SPEED</code>).
+	 * @return this converter.
+	 */
+	public ColumnarConverter setColumnCompression(int level) {
+		this.columnCompressionLevel = level;
+		return this;
+	}
+
+	/**
+	 * @param values - values converted to null, see {@link DelimRecord#setNullValues}.
+	 * @return this converter.
+	 */
+	public ColumnarConverter setNullValues(String... values) {
+		this.nullValues = values;
+		return this;
+	}
+
+	/**
+	 * Convert input to output.
+	 * @param input - delimited text file.
+	 * @param output - SequenceFile to write, replaced if it exists.
+	 * @return number of rows converted.
+	 * @throws IOException if a file cannot be read or written, or a typed field cannot be parsed.
+	 */
+	public long convert(Path input, Path output) throws IOException {
+		DelimRecord record = parser.newRecord();
+		if (nullValues != null)
+			record.setNullValues(nullValues);
+		ColumnBatch batch = new ColumnBatch(parser.getSchema()).setCompressionLevel(columnCompressionLevel);
+		LongWritable firstRow = new LongWritable(0);
+		long rows = 0;
+		try (TextLineReader lines = new TextLineReader(conf,input);
+			 SeqFileWriter<LongWritable,ColumnBatch> writer = new SeqFileWriter<>(conf,output,LongWritable.class,ColumnBatch.class,
+				 new SeqFileWriter.Options().setCompression(compressionType).setCodec(codec)
+											.setMetadata(metadata(parser.getSchema())))) {
+			while (lines.next()) {
+				try {
+					batch.add(record.reset(lines.getLine()));
+				} catch (NumberFormatException e) {
+					Metrics.increment(Metrics.Counter.MALFORMED_LINES);
+					throw new IOException(input + " line " + (rows + 1) + ": " + e.getMessage(),e);
+				}
+				rows++;
+				if (batch.getRowCount() == batchRows) {
+					writer.append(firstRow,batch);
+					firstRow.set(rows);
+					batch.reset();
+				}
+			}
+			if (batch.getRowCount() > 0)
+				writer.append(firstRow,batch);
+		}
+		LOG.debug("Converted " + rows + " rows from " + input + " to " + output);
+		return rows;
+	}
+
+	static SequenceFile.Metadata metadata(FieldSchema schema) {
+		TreeMap<Text,Text> entries = new TreeMap<>();
+		for (Map.Entry<Object,Object> entry : schema.toProperties().entrySet())
+			entries.put(new Text(SCHEMA_PREFIX + entry.getKey()),new Text((String) entry.getValue()));
+		return new SequenceFile.Metadata(entries);
+	}
+
+	static FieldSchema schema(SequenceFile.Metadata metadata) {
+		Properties properties = new Properties();
+		for (Map.Entry<Text,Text> entry : metadata.getMetadata().entrySet()) {
+			String key = entry.getKey().toString();
+			if (key.startsWith(SCHEMA_PREFIX))
+				properties.setProperty(key.substring(SCHEMA_PREFIX.length()),entry.getValue().toString());
+		}
+		return FieldSchema.fromProperties(properties);
+	}
+
+}
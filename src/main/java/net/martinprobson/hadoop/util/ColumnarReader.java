@@ -0,0 +1,95 @@
+package net.martinprobson.hadoop.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.SequenceFile;
+
+/**
+ * Read the {@link ColumnBatch}es of a file written by {@link ColumnarConverter}, decoding only
+ * the requested columns.
+ * <p>Example: -
+ * <pre>
+ * try (ColumnarReader reader = new ColumnarReader(conf,path,"vkont","betrh")) {
+ *     while (reader.next()) {
+ *         ColumnBatch batch = reader.getBatch();
+ *         LongColumnVector betrh = batch.getLongColumn("betrh");
+ *         for (int row = 0; row &lt; batch.getRowCount(); row++)
+ *             total += betrh.get(row);
+ *     }
+ * }
+ * </pre>
+ * <p>The same batch is re-used for every call to {@link #next()}. Instances are not thread safe.
+ *
+ * @author martinr
+ *
+ */
+public class ColumnarReader implements Closeable {
+
+	private final SequenceFile.Reader reader;
+	private final FieldSchema schema;
+	private final LongWritable firstRow = new LongWritable();
+	private final ColumnBatch batch = new ColumnBatch();
+
+	/**
+	 * Open fileName for reading.
+	 * @param conf - Hadoop configuration referencing file system to use.
+	 * @param fileName - file written by {@link ColumnarConverter}.
+	 * @param fieldNames - columns to decode, every column if none are given.
+	 * @throws IOException
+	 * @throws java.util.NoSuchElementException if a field name is not in the file's schema.
+	 */
+	public ColumnarReader(Configuration conf, Path fileName, String... fieldNames) throws IOException {
+		this.reader = new SequenceFile.Reader(conf,SequenceFile.Reader.file(fileName));
+		try {
+			if (reader.getValueClass() != ColumnBatch.class)
+				throw new IOException(fileName + " is not a columnar file, value class is " + reader.getValueClass().getName());
+			this.schema = ColumnarConverter.schema(reader.getMetadata());
+			batch.setSchema(schema);
+			if (fieldNames.length > 0)
+				batch.setProjection(FieldProjection.of(schema,fieldNames));
+		} catch (IOException | RuntimeException e) {
+			reader.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Read the next batch into {@link #getBatch()}.
+	 * @return true if a batch was read, false at the end of the file.
+	 * @throws IOException
+	 */
+	public boolean next() throws IOException {
+		return reader.next(firstRow,batch);
+	}
+
+	/**
+	 * @return the current batch (the same instance is returned for every batch).
+	 */
+	public ColumnBatch getBatch() {
+		return batch;
+	}
+
+	/**
+	 * @return the (0 based) row number in the file of the first row of the current batch.
+	 */
+	public long getFirstRow() {
+		return firstRow.get();
+	}
+
+	/**
+	 * @return the schema stored in the file.
+	 */
+	public FieldSchema getSchema() {
+		return schema;
+	}
+
+	@Override
+	public void close() throws IOException {
+		reader.close();
+	}
+
+}
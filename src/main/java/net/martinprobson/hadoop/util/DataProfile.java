@@ -0,0 +1,131 @@
+package net.martinprobson.hadoop.util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+/**
+ * Profile of the fields of delimited (or fixed width) lines, one {@link ColumnProfile} per field,
+ * built in a single pass by {@link Profiler}.
+ * <p>Profiles of the same fields, built with the same {@link Profiler} settings, can be
+ * {@link #merge merged}, so files can be profiled in parallel, or in the map tasks of a MapReduce
+ * job (a profile is a <code>Writable</code>, written by each mapper and merged by a reducer): -
+ * <pre>
+ * // Mapper
+ * protected void setup(Context context) {
+ *     profile = new Profiler(conf,parser).newProfile();
+ * }
+ * protected void map(LongWritable key, DelimRecord record, Context context) {
+ *     profile.add(record);
+ * }
+ * protected void cleanup(Context context) throws IOException, InterruptedException {
+ *     context.write(NullWritable.get(),profile);
+ * }
+ * </pre>
+ *
+ * @author martinr
+ *
+ */
+public class DataProfile implements Writable {
+
+	private long lines = 0;
+	private ColumnProfile[] columns;
+
+	/**
+	 * Construct an empty profile, to be read with {@link #readFields}.
+	 */
+	public DataProfile() {
+		this(new ColumnProfile[0]);
+	}
+
+	DataProfile(ColumnProfile[] columns) {
+		this.columns = columns;
+	}
+
+	/**
+	 * Add a line.
+	 * @param record - the parsed line.
+	 */
+	public void add(ParsedRecord record) {
+		lines++;
+		for (ColumnProfile column : columns)
+			column.add(record);
+	}
+
+	/**
+	 * Combine other, a profile of the same fields over other lines, into this profile.
+	 * @throws IllegalArgumentException if other is of different fields, or was built with different settings.
+	 */
+	public void merge(DataProfile other) {
+		if (other.columns.length != columns.length)
+			throw new IllegalArgumentException("Cannot merge a profile of " + other.columns.length + " fields into " + columns.length);
+		lines += other.lines;
+		for (int c = 0; c < columns.length; c++)
+			columns[c].merge(other.columns[c]);
+	}
+
+	/**
+	 * @return number of lines profiled.
+	 */
+	public long getLines() {
+		return lines;
+	}
+
+	/**
+	 * @return the profile of each field, in position order.
+	 */
+	public List<ColumnProfile> getColumns() {
+		return Collections.unmodifiableList(Arrays.asList(columns));
+	}
+
+	/**
+	 * @param fieldName
+	 * @return the profile of the field.
+	 * @throws NoSuchElementException if the field was not profiled.
+	 */
+	public ColumnProfile getColumn(String fieldName) throws NoSuchElementException {
+		for (ColumnProfile column : columns)
+			if (column.getName().equalsIgnoreCase(fieldName))
+				return column;
+		throw new NoSuchElementException("Field: " + fieldName + " was not profiled");
+	}
+
+	@Override
+	public void write(DataOutput out) throws IOException {
+		WritableUtils.writeVLong(out,lines);
+		WritableUtils.writeVInt(out,columns.length);
+		for (ColumnProfile column : columns)
+			column.write(out);
+	}
+
+	@Override
+	public void readFields(DataInput in) throws IOException {
+		lines = WritableUtils.readVLong(in);
+		int count = WritableUtils.readVInt(in);
+		if (count != columns.length) {
+			ColumnProfile[] read = new ColumnProfile[count];
+			for (int c = 0; c < count; c++)
+				read[c] = c < columns.length ? columns[c] : new ColumnProfile();
+			columns = read;
+		}
+		for (ColumnProfile column : columns)
+			column.readFields(in);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(lines).append(" lines");
+		for (ColumnProfile column : columns)
+			sb.append(System.lineSeparator()).append(column);
+		return sb.toString();
+	}
+
+}
@@ -4,8 +4,10 @@
 package net.martinprobson.hadoop.util;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.NoSuchElementException;
 import java.util.Properties;
+import java.util.regex.Pattern;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -23,10 +25,22 @@ import org.apache.hadoop.io.Text;
  * <li>field2=fieldposition2</li>
  * etc
  * </ul>
+ * <p>The mappings are compiled into a {@link FieldSchema} when the parser is constructed. 
  * <p>If a properties file is not supplied, then fields can only be accessed via the 
  * {@link #getFieldByPosition getFieldByPosition} method.
  * <p>The field separator used can be set via {@link #setFieldSeparator setFieldSeparator} 
  * method, otherwise it defaults to the standard Hadoop <code>\u0001<\code>.  
+ * <p>When the separator is a single ASCII character (or a single regex-escaped character such 
+ * as <code>\\|</code>) fields are located by scanning the bytes of the <code>Text</code> 
+ * directly, without decoding the line or using a regular expression. 
+ * {@link #getFieldByPosition(Text, int, Text)} returns the field into a caller supplied 
+ * <code>Text</code> so no objects are allocated per call. Any other separator is treated as a 
+ * regular expression, as before.
+ * <p>{@link #setLiteralSeparator setLiteralSeparator} sets a separator that is matched as literal 
+ * bytes, whatever its length or characters (so <code>|</code> is not regex alternation). Together 
+ * with a {@link #setQuoteChar quote} or {@link #setEscapeChar escape} character, or when the literal 
+ * separator is more than one byte, lines are split by a {@link QuotedFieldScanner} state machine, 
+ * which removes quotes and escapes from the fields returned.
  * 
  * @author martinr
  *
@@ -34,39 +48,57 @@ import org.apache.hadoop.io.Text;
 public class DelimLineParser {
 	
 	private static final Log LOG = LogFactory.getLog(DelimLineParser.class);
-	private Properties fieldNameLookup;
-	private String fieldSeparator = "\u0001";
+	private final FieldSchema schema;
+	private String fieldSeparator;
+	/** Literal separator byte, or -1 if the separator must be treated as a regex. */
+	private int separatorByte;
+	/** Compiled separator, only used when there is no literal separator byte. */
+	private Pattern separatorPattern;
+	/** Literal separator bytes, or null if the separator is a regex. */
+	private byte[] literalSeparator;
+	private int quoteChar = QuotedFieldScanner.NONE;
+	private int escapeChar = QuotedFieldScanner.NONE;
+	/** State machine used to split lines, or null if they are split at a single separator byte. */
+	private QuotedFieldScanner scanner;
 	
-	private static Properties loadFieldNames(String propertiesFile) {
-		Properties fields = new Properties();
+	private static final String DEFAULT_FIELD_SEPARATOR = "\u0001";
+	private static final String REGEX_META_CHARS = ".$|()[]{}^?*+\\";
+	
+	private static FieldSchema loadFieldNames(String propertiesFile) {
 		try {
-			fields.load(DelimLineParser.class.getResourceAsStream(propertiesFile));
+			FieldSchema schema = FieldSchema.load(propertiesFile);
+			LOG.debug("Loaded " + schema.size() + " field names from " + propertiesFile);
+			return schema;
 		} catch (IOException e) {
-			LOG.fatal("Cannot load field properties from classpath", e);
-			System.exit(2);
+			throw new IllegalArgumentException("Cannot load field properties " + propertiesFile + " from classpath",e);
 		}
-		return fields;
 	}
 	
 	
+	/**
+	 * Construct a new parser with the given schema and fieldSep.
+	 * @param schema - The compiled field->position mappings.
+	 * @param fieldSep - The field separator to use when spliting the line.
+	 */
+	public DelimLineParser(FieldSchema schema, String fieldSep) {
+		this.schema = schema != null ? schema : FieldSchema.EMPTY;
+		setFieldSeparator(fieldSep != null ? fieldSep : DEFAULT_FIELD_SEPARATOR);
+	}
+	
 	/**
 	 * Construct a new parser with the given propertiesFileName and fieldSep.
 	 * @param propertiesFileName - The properties file holding field->position mappings.
 	 * @param fieldSep - The field separator to use when spliting the line.
+	 * @throws IllegalArgumentException if the properties file cannot be loaded or is invalid.
 	 */
 	public DelimLineParser(String propertiesFileName, String fieldSep) {
-		if (propertiesFileName != null) {
-			this.fieldNameLookup = loadFieldNames(propertiesFileName);
-		}
-		else
-			this.fieldNameLookup = new Properties();
-		if (fieldSep != null)
-			setFieldSeparator(fieldSep);
+		this(propertiesFileName != null ? loadFieldNames(propertiesFileName) : null,fieldSep);
 	}
 	
 	/**
 	 * Construct a new parser with the given propertiesFileName and default fieldSep.
 	 * @param propertiesFileName - The properties file holding field->position mappings.
+	 * @throws IllegalArgumentException if the properties file cannot be loaded or is invalid.
 	 */
 	public DelimLineParser(String propertiesFileName) {
 		this(propertiesFileName,null);
@@ -76,6 +108,7 @@ public class DelimLineParser {
 	/**
 	 * Construct a new parser with the given propertiesFileName and default fieldSep.
 	 * @param fieldProperties - The properties holding field->position mappings.
+	 * @throws IllegalArgumentException if a field position is invalid.
 	 */
 	public DelimLineParser(Properties fieldProperties) {
 		this(fieldProperties,null);
@@ -85,16 +118,10 @@ public class DelimLineParser {
 	 * Construct a new parser with the given propertiesFileName and fieldSep.
 	 * @param fieldProperties - The properties holding field->position mappings.
 	 * @param fieldSep - The field separator to use when spliting the line.
+	 * @throws IllegalArgumentException if a field position is invalid.
 	 */
 	public DelimLineParser(Properties fieldProperties, String fieldSep) {
-		if (fieldProperties == null) {
-			this.fieldNameLookup = new Properties();
-		} 
-		else {
-			this.fieldNameLookup = fieldProperties;
-		}
-		if (fieldSep != null)
-			setFieldSeparator(fieldSep);
+		this(fieldProperties != null ? FieldSchema.fromProperties(fieldProperties) : null,fieldSep);
 	}
 
 	
@@ -105,7 +132,7 @@ public class DelimLineParser {
 	 * <p>Calls to {@link #getFieldByName getFieldByName} will throw a NoSuchElement Exception.
 	 */
 	public DelimLineParser() {
-		this(new Properties(),null);
+		this(FieldSchema.EMPTY,null);
 	}
 	
 	/**
@@ -117,11 +144,144 @@ public class DelimLineParser {
 	 */
 	public String getFieldByPosition(Text line,int fieldPosition) throws NoSuchElementException {
 		
-		String fields[] = line.toString().split(getFieldSeparator(),fieldPosition+1);
-		if ((fieldPosition <= 0) || (fieldPosition-1 > fields.length)) {
+		if (scanner != null)
+			return getFieldByPosition(line,fieldPosition,new Text()).toString();
+		String field;
+		if (separatorByte < 0) {
+			String fields[] = separatorPattern.split(line.toString(),fieldPosition+1);
+			if ((fieldPosition <= 0) || (fieldPosition > fields.length)) {
+				throw new NoSuchElementException("Field Position " + fieldPosition + " does not exist");
+			}
+			field = fields[fieldPosition-1];
+		} else {
+			byte[] bytes = line.getBytes();
+			int start = fieldStart(bytes,line.getLength(),fieldPosition);
+			int end = fieldEnd(bytes,line.getLength(),start);
+			field = new String(bytes,start,end - start,StandardCharsets.UTF_8);
+		}
+		if (Metrics.enabled)
+			Metrics.increment(Metrics.Counter.FIELDS_PARSED);
+		return field;
+	}
+	
+	/**
+	 * Copy the contents of the field in position specified by fieldPosition into field.
+	 * <p>The line bytes are scanned directly, nothing is decoded and (once field has grown 
+	 * to the size of the largest field) nothing is allocated. 
+	 * @param line - The line to parse.
+	 * @param fieldPosition
+	 * @param field - Text to receive the field contents (re-used across calls).
+	 * @return field
+	 * @throws NoSuchElementException if field does not exist.
+	 * @throws IllegalStateException if the field separator is a regex other than a single byte.
+	 */
+	public Text getFieldByPosition(Text line,int fieldPosition,Text field) throws NoSuchElementException {
+		
+		checkLiteral();
+		byte[] bytes = line.getBytes();
+		int length = line.getLength();
+		if (scanner != null) {
+			int start = quotedFieldStart(bytes,length,fieldPosition);
+			decode(bytes,start,scanner.fieldEnd(bytes,start,length),field);
+		} else {
+			int start = fieldStart(bytes,length,fieldPosition);
+			int end = fieldEnd(bytes,length,start);
+			field.set(bytes,start,end - start);
+		}
+		if (Metrics.enabled)
+			Metrics.increment(Metrics.Counter.FIELDS_PARSED);
+		return field;
+	}
+	
+	/**
+	 * Extract just the fields in projection from line in a single left to right pass, 
+	 * stopping at the projection's highest field position.
+	 * @param line - The line to parse.
+	 * @param projection - The fields required.
+	 * @param fields - Array of at least projection.size() Text objects (re-used across calls), 
+	 * fields[i] receives the field at projection.getPosition(i).
+	 * @return fields
+	 * @throws NoSuchElementException if a projected field does not exist.
+	 * @throws IllegalStateException if the field separator is a regex other than a single byte.
+	 */
+	public Text[] getFields(Text line,FieldProjection projection,Text[] fields) throws NoSuchElementException {
+		
+		checkLiteral();
+		byte[] bytes = line.getBytes();
+		int length = line.getLength();
+		int maxPosition = projection.getMaxPosition();
+		int separatorLength = scanner != null ? scanner.getSeparatorLength() : 1;
+		int start = 0;
+		for (int position = 1; position <= maxPosition; position++) {
+			if (start > length)
+				throw new NoSuchElementException("Field Position " + position + " does not exist");
+			int end = scanner != null ? scanner.fieldEnd(bytes,start,length) : fieldEnd(bytes,length,start);
+			int slot = projection.getSlot(position);
+			if (slot >= 0) {
+				if (scanner != null)
+					decode(bytes,start,end,fields[slot]);
+				else
+					fields[slot].set(bytes,start,end - start);
+			}
+			start = end + separatorLength;
+		}
+		if (Metrics.enabled)
+			Metrics.add(Metrics.Counter.FIELDS_PARSED,projection.size());
+		return fields;
+	}
+	
+	private void checkLiteral() {
+		if (scanner == null && separatorByte < 0)
+			throw new IllegalStateException("Field separator '" + fieldSeparator + "' is not a single literal byte");
+	}
+	
+	/**
+	 * Return the byte offset of the start of the field at fieldPosition, splitting with the scanner. 
+	 */
+	private int quotedFieldStart(byte[] bytes,int length,int fieldPosition) {
+		if (fieldPosition <= 0)
+			throw new NoSuchElementException("Field Position " + fieldPosition + " does not exist");
+		int start = 0;
+		for (int i = 1; i < fieldPosition; i++) {
+			int end = scanner.fieldEnd(bytes,start,length);
+			if (end == length)
+				throw new NoSuchElementException("Field Position " + fieldPosition + " does not exist");
+			start = end + scanner.getSeparatorLength();
+		}
+		return start;
+	}
+	
+	/**
+	 * Copy the raw field bytes[start..end) into field, then remove its quotes and escapes in place.
+	 */
+	private void decode(byte[] bytes,int start,int end,Text field) {
+		field.set(bytes,start,end - start);
+		byte[] buffer = field.getBytes();
+		field.set(buffer,0,scanner.decode(buffer,0,end - start,buffer,0));
+	}
+	
+	/**
+	 * Return the byte offset of the start of the field at fieldPosition. 
+	 */
+	private int fieldStart(byte[] bytes,int length,int fieldPosition) {
+		if (fieldPosition <= 0)
 			throw new NoSuchElementException("Field Position " + fieldPosition + " does not exist");
+		int start = 0;
+		for (int i = 1; i < fieldPosition; i++) {
+			int sep = SeparatorScanner.indexOf(bytes,start,length,(byte) separatorByte);
+			if (sep < 0)
+				throw new NoSuchElementException("Field Position " + fieldPosition + " does not exist");
+			start = sep + 1;
 		}
-		return fields[fieldPosition-1];
+		return start;
+	}
+	
+	/**
+	 * Return the byte offset (exclusive) of the end of the field starting at start.
+	 */
+	private int fieldEnd(byte[] bytes,int length,int start) {
+		int end = SeparatorScanner.indexOf(bytes,start,length,(byte) separatorByte);
+		return end < 0 ? length : end;
 	}
 	
 	/**
@@ -132,22 +292,122 @@ public class DelimLineParser {
 	 * @throws NoSuchElementException if field does not exist.
 	 */
 	public String getFieldByName(Text line,String fieldName) throws NoSuchElementException {
-		
-		int fieldPosition;
-		
-		if ((fieldNameLookup.getProperty(fieldName.toLowerCase()) == null)) 
-			throw new NoSuchElementException("Field: " + fieldName  + "does not exist");
-		else 
-			fieldPosition = Integer.parseInt(fieldNameLookup.getProperty(fieldName.toLowerCase()));
-		return getFieldByPosition(line,fieldPosition);
+		return getFieldByPosition(line,schema.getPosition(fieldName));
+	}
+	
+	/**
+	 * Create a new {@link DelimRecord} that parses lines using this parser's field separator 
+	 * and field names.
+	 * @return a new record cursor, to be re-used across lines.
+	 */
+	public DelimRecord newRecord() {
+		return new DelimRecord(this);
+	}
+	
+	/**
+	 * Get the compiled field name mappings.
+	 * @return the field schema (empty if no properties were supplied).
+	 */
+	public FieldSchema getSchema() {
+		return schema;
+	}
+	
+	/**
+	 * @return the literal separator byte, or -1 if the separator is a regex or more than one byte.
+	 */
+	int getSeparatorByte() {
+		return separatorByte;
+	}
+	
+	/**
+	 * @return the state machine splitting lines, or null if they are split at a single separator byte.
+	 */
+	QuotedFieldScanner getScanner() {
+		return scanner;
 	}
 	
 	/**
 	 * Set the field separator to be used.
+	 * <p>A single character, or a single regex-escaped character, is matched literally, anything 
+	 * else is a regular expression. 
 	 * @param fieldSeparator
+	 * @throws IllegalStateException if a quote or escape character is set and the separator is a regex.
 	 */
 	public void setFieldSeparator(String fieldSeparator) {
+		int separatorByte = literalSeparatorByte(fieldSeparator);
+		Pattern separatorPattern = separatorByte < 0 ? Pattern.compile(fieldSeparator) : null;
+		byte[] literalSeparator = separatorByte < 0 ? null : new byte[] { (byte) separatorByte };
+		update(fieldSeparator,separatorByte,separatorPattern,literalSeparator,quoteChar,escapeChar);
+	}
+	
+	/**
+	 * Set a field separator that is matched as literal bytes (its UTF-8 encoding), of any length.
+	 * @param fieldSeparator
+	 * @throws IllegalArgumentException if the separator is empty or contains the quote or escape character.
+	 */
+	public void setLiteralSeparator(String fieldSeparator) {
+		byte[] bytes = fieldSeparator.getBytes(StandardCharsets.UTF_8);
+		if (bytes.length == 0)
+			throw new IllegalArgumentException("Field separator must not be empty");
+		update(fieldSeparator,bytes.length == 1 ? bytes[0] & 0xFF : -1,null,bytes,quoteChar,escapeChar);
+	}
+	
+	/**
+	 * Treat fields starting with quoteChar as quoted (see {@link QuotedFieldScanner}).
+	 * @param quoteChar - ASCII quote character, e.g. <code>"</code>, or {@link QuotedFieldScanner#NONE}.
+	 * @throws IllegalArgumentException if quoteChar is not ASCII or is part of the separator.
+	 * @throws IllegalStateException if the separator is a regex.
+	 */
+	public void setQuoteChar(int quoteChar) {
+		update(fieldSeparator,separatorByte,separatorPattern,literalSeparator,quoteChar,escapeChar);
+	}
+	
+	/**
+	 * Treat the byte (or separator) following escapeChar as literal (see {@link QuotedFieldScanner}).
+	 * @param escapeChar - ASCII escape character, e.g. <code>\</code>, or {@link QuotedFieldScanner#NONE}.
+	 * @throws IllegalArgumentException if escapeChar is not ASCII or is part of the separator.
+	 * @throws IllegalStateException if the separator is a regex.
+	 */
+	public void setEscapeChar(int escapeChar) {
+		update(fieldSeparator,separatorByte,separatorPattern,literalSeparator,quoteChar,escapeChar);
+	}
+	
+	/**
+	 * @return the quote character, or {@link QuotedFieldScanner#NONE}.
+	 */
+	public int getQuoteChar() {
+		return quoteChar;
+	}
+	
+	/**
+	 * @return the escape character, or {@link QuotedFieldScanner#NONE}.
+	 */
+	public int getEscapeChar() {
+		return escapeChar;
+	}
+	
+	/**
+	 * Validate the new separator, quote and escape settings (building the scanner they need) 
+	 * before replacing the current ones, so a rejected setting leaves the parser unchanged. 
+	 */
+	private void update(String fieldSeparator,int separatorByte,Pattern separatorPattern,byte[] literalSeparator,
+						int quoteChar,int escapeChar) {
+		QuotedFieldScanner scanner;
+		boolean plain = quoteChar == QuotedFieldScanner.NONE && escapeChar == QuotedFieldScanner.NONE;
+		if (plain && (literalSeparator == null || literalSeparator.length == 1)) {
+			scanner = null;
+		} else if (literalSeparator == null) {
+			throw new IllegalStateException("Quote and escape characters need a literal field separator, not '" + fieldSeparator + "'");
+		} else {
+			scanner = new QuotedFieldScanner(literalSeparator,quoteChar,escapeChar);
+		}
 		this.fieldSeparator = fieldSeparator;
+		this.separatorByte = separatorByte;
+		this.separatorPattern = separatorPattern;
+		this.literalSeparator = literalSeparator;
+		this.quoteChar = quoteChar;
+		this.escapeChar = escapeChar;
+		this.scanner = scanner;
 	}
 	
 	/**
@@ -157,5 +417,23 @@ public class DelimLineParser {
 	public String getFieldSeparator() {
 		return fieldSeparator;
 	}
+	
+	/**
+	 * Work out if the (regex) separator matches exactly one ASCII character.
+	 * @param separator
+	 * @return the separator byte, or -1 if the separator has to be treated as a regex.
+	 */
+	private static int literalSeparatorByte(String separator) {
+		if (separator.length() == 1) {
+			char c = separator.charAt(0);
+			if (c < 0x80 && REGEX_META_CHARS.indexOf(c) < 0)
+				return c;
+		} else if (separator.length() == 2 && separator.charAt(0) == '\\') {
+			char c = separator.charAt(1);
+			if (c < 0x80 && !Character.isLetterOrDigit(c))
+				return c;
+		}
+		return -1;
+	}
 
 }
@@ -0,0 +1,266 @@
+package net.martinprobson.hadoop.util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+/**
+ * A re-usable cursor over a single delimited line.
+ * <p>{@link #reset(Text) reset} finds every field separator in one pass over the line bytes
+ * and records the field offsets in primitive arrays. Fields can then be read by position or
+ * name without re-scanning the line.
+ * <p>The offset arrays are grown on demand and kept between calls to reset, so a single
+ * record created once per task and reset for each input line does not allocate in the steady state.
+ * <p>The record refers to the bytes of the line passed to reset (they are not copied),
+ * so the line must not be modified while the record is in use. The exception is a parser 
+ * with a quote or escape character, or a multi-byte separator, where the line is split by a 
+ * {@link QuotedFieldScanner} and the fields, without quotes and escapes, are copied into a 
+ * buffer owned by the record.
+ * <p>Field access and the typed accessors are provided by {@link ParsedRecord}.
+ * <p>Instances are not thread safe.
+ * <p>Create with {@link DelimLineParser#newRecord()}.
+ * <p>As a <code>Writable</code> the record is serialized as its line bytes. Hadoop serialization
+ * creates records with the no argument constructor and configures them with
+ * {@link #setConf setConf}, taking the schema, separator and null values from the
+ * {@link DelimitedInputFormat} configuration keys.
+ *
+ * @author martinr
+ *
+ */
+public class DelimRecord extends ParsedRecord implements Writable, Configurable {
+
+	private static final int DEFAULT_FIELD_CAPACITY = 64;
+
+	private byte separator;
+	/** State machine splitting lines with quotes, escapes or a multi-byte separator, null for a plain separator. */
+	private QuotedFieldScanner scanner;
+	private Configuration conf;
+
+	/** The line, which {@link #bytes} also refers to unless fields are decoded by the scanner. */
+	private byte[] line = EMPTY;
+	private int lineStart;
+	private int lineLength;
+	/** Buffer owned by this record, holding the line read by {@link #readFields readFields}. */
+	private byte[] buffer = EMPTY;
+	/** Buffer owned by this record, holding the fields with quotes and escapes removed. */
+	private byte[] decoded = EMPTY;
+	/** Stop indexing the line after this many fields. */
+	private int maxFields = Integer.MAX_VALUE;
+
+	/**
+	 * Construct a record with no schema and the default field separator, for Hadoop 
+	 * serialization, which then calls {@link #setConf setConf}.
+	 */
+	public DelimRecord() {
+		this(new DelimLineParser());
+	}
+
+	/**
+	 * Construct a new record using the separator and field names of parser.
+	 * @param parser - The parser supplying field separator and field name mappings.
+	 * @throws IllegalStateException if the parser's field separator is not a single literal byte.
+	 */
+	public DelimRecord(DelimLineParser parser) {
+		this(parser,DEFAULT_FIELD_CAPACITY);
+	}
+
+	/**
+	 * Construct a new record using the separator and field names of parser.
+	 * @param parser - The parser supplying field separator and field name mappings.
+	 * @param expectedFields - Initial size of the field offset arrays.
+	 * @throws IllegalStateException if the parser's field separator is not a single literal byte.
+	 */
+	public DelimRecord(DelimLineParser parser, int expectedFields) {
+		super(parser.getSchema(),expectedFields);
+		setParser(parser);
+	}
+
+	private void setParser(DelimLineParser parser) {
+		if (parser.getScanner() == null && parser.getSeparatorByte() < 0)
+			throw new IllegalStateException("Field separator '" + parser.getFieldSeparator() + "' is not a single literal byte");
+		this.schema = parser.getSchema();
+		this.separator = (byte) parser.getSeparatorByte();
+		this.scanner = parser.getScanner();
+	}
+
+	/**
+	 * Take the schema, separator, null values and projected fields from the {@link DelimitedInputFormat}
+	 * keys of conf.
+	 * @param conf
+	 * @throws IllegalArgumentException if the schema cannot be loaded.
+	 * @throws NoSuchElementException if a projected field is not in the schema.
+	 * @throws IllegalStateException if the separator is not a single literal byte.
+	 */
+	@Override
+	public void setConf(Configuration conf) {
+		this.conf = conf;
+		setParser(DelimitedInputFormat.createParser(conf));
+		String[] nulls = conf.getStrings(DelimitedInputFormat.NULL_VALUES_KEY);
+		if (nulls != null)
+			setNullValues(nulls);
+		String[] fields = conf.getTrimmedStrings(DelimitedInputFormat.FIELDS_KEY);
+		setProjection(fields.length > 0 ? FieldProjection.of(schema,fields) : null);
+	}
+
+	@Override
+	public Configuration getConf() {
+		return conf;
+	}
+
+	/**
+	 * Write the current line.
+	 */
+	@Override
+	public void write(DataOutput out) throws IOException {
+		WritableUtils.writeVInt(out,lineLength);
+		out.write(line,lineStart,lineLength);
+	}
+
+	/**
+	 * Read a line into a buffer owned by this record and index its fields.
+	 */
+	@Override
+	public void readFields(DataInput in) throws IOException {
+		int length = WritableUtils.readVInt(in);
+		if (buffer.length < length)
+			buffer = new byte[Math.max(length,buffer.length * 2)];
+		in.readFully(buffer,0,length);
+		reset(buffer,0,length);
+	}
+
+	/**
+	 * Point this record at a new line and index its fields.
+	 * @param line - The line to parse.
+	 * @return this record.
+	 */
+	public DelimRecord reset(Text line) {
+		return reset(line.getBytes(),0,line.getLength());
+	}
+
+	/**
+	 * Point this record at a new line held in bytes[start..start+length) and index its fields.
+	 * @param bytes - Buffer holding the line.
+	 * @param start - Offset of the line in bytes.
+	 * @param length - Length of the line.
+	 * @return this record.
+	 */
+	public DelimRecord reset(byte[] bytes, int start, int length) {
+		this.line = bytes;
+		this.lineStart = start;
+		this.lineLength = length;
+		if (scanner != null)
+			indexQuoted(bytes,start,start + length);
+		else
+			index(bytes,start,start + length);
+		if (Metrics.enabled) {
+			Metrics.increment(Metrics.Counter.LINES_PARSED);
+			Metrics.record(Metrics.Distribution.LINE_LENGTH,length);
+			Metrics.record(Metrics.Distribution.FIELDS_PER_LINE,fieldCount);
+		}
+		return this;
+	}
+
+	private void index(byte[] bytes, int start, int end) {
+		this.bytes = bytes;
+		int count = 0;
+		int fieldStart = start;
+		while (count < maxFields) {
+			int sep = SeparatorScanner.indexOf(bytes,fieldStart,end,separator);
+			if (sep < 0)
+				break;
+			count = addField(count,fieldStart,sep);
+			fieldStart = sep + 1;
+		}
+		fieldCount = count < maxFields ? addField(count,fieldStart,end) : count;
+	}
+
+	/**
+	 * Split the line with the scanner, decoding each field into the decoded buffer.
+	 */
+	private void indexQuoted(byte[] bytes, int start, int end) {
+		if (decoded.length < end - start)
+			decoded = new byte[Math.max(end - start,decoded.length * 2)];
+		this.bytes = decoded;
+		int separatorLength = scanner.getSeparatorLength();
+		int count = 0;
+		int fieldStart = start;
+		int out = 0;
+		while (count < maxFields) {
+			int fieldEnd = scanner.fieldEnd(bytes,fieldStart,end);
+			int outEnd = scanner.decode(bytes,fieldStart,fieldEnd,decoded,out);
+			count = addField(count,out,outEnd);
+			out = outEnd;
+			if (fieldEnd == end)
+				break;
+			fieldStart = fieldEnd + separatorLength;
+		}
+		fieldCount = count;
+	}
+
+	/**
+	 * Only index the fields up to the highest position in projection on subsequent calls
+	 * to reset, the rest of each line is not scanned.
+	 * <p>Fields after the projection's highest position are reported as not existing.
+	 * @param projection - The fields required, or null to index every field.
+	 * @return this record.
+	 */
+	public DelimRecord setProjection(FieldProjection projection) {
+		this.maxFields = projection != null ? projection.getMaxPosition() : Integer.MAX_VALUE;
+		return this;
+	}
+
+	private int addField(int count, int start, int end) {
+		if (count == starts.length) {
+			starts = Arrays.copyOf(starts,count * 2);
+			ends = Arrays.copyOf(ends,count * 2);
+		}
+		starts[count] = start;
+		ends[count] = end;
+		return count + 1;
+	}
+
+	/**
+	 * @return the number of fields in the current line (up to the projection's highest position
+	 * if a projection is set).
+	 */
+	@Override
+	public int getFieldCount() {
+		return fieldCount;
+	}
+
+	@Override
+	public DelimRecord setNullValues(String... values) {
+		super.setNullValues(values);
+		return this;
+	}
+
+	@Override
+	public DelimRecord setBlankIsNull(boolean blankIsNull) {
+		super.setBlankIsNull(blankIsNull);
+		return this;
+	}
+
+	@Override
+	public DelimRecord setTrim(boolean trim) {
+		super.setTrim(trim);
+		return this;
+	}
+
+	/**
+	 * @return the current line.
+	 */
+	@Override
+	public String toString() {
+		return new String(line,lineStart,lineLength,StandardCharsets.UTF_8);
+	}
+
+}
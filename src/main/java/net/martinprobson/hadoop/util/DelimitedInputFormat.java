@@ -0,0 +1,152 @@
+package net.martinprobson.hadoop.util;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+
+/**
+ * An InputFormat for delimited text files that gives each mapper the line already split
+ * into fields, as a {@link DelimRecord}, rather than a <code>Text</code> line to be re-scanned
+ * with {@link DelimLineParser}.
+ * <p>Keys are the byte offset of the line in the file (as with <code>TextInputFormat</code>).
+ * The value is a single record, reset for each line, so must not be held across calls to
+ * <code>map()</code>.
+ * <p>The record is configured from: -
+ * <ul>
+ * <li>{@value #SCHEMA_KEY} - field name properties file on the classpath (see {@link DelimLineParser}).</li>
+ * <li>{@value #SEPARATOR_KEY} - field separator, a single byte (default <code>\u0001</code>).</li>
+ * <li>{@value #LITERAL_SEPARATOR_KEY} - if true the separator is matched as literal bytes, of any length.</li>
+ * <li>{@value #QUOTE_KEY}, {@value #ESCAPE_KEY} - quote and escape characters (default none), 
+ * see {@link QuotedFieldScanner}.</li>
+ * <li>{@value #NULL_VALUES_KEY} - comma separated values read as null (default <code>\N</code>).</li>
+ * <li>{@value #FIELDS_KEY} - comma separated field names used by the job, if set the rest of each
+ * line after the highest of their positions is not scanned.</li>
+ * </ul>
+ * <p>Files are split as with <code>TextInputFormat</code>: uncompressed and bzip2 files are split,
+ * other compressed files are read whole by one mapper.
+ *
+ * @author martinr
+ *
+ */
+public class DelimitedInputFormat extends FileInputFormat<LongWritable,DelimRecord> {
+
+	public static final String SCHEMA_KEY = "hadoop.util.delimited.schema";
+	public static final String SEPARATOR_KEY = "hadoop.util.delimited.separator";
+	public static final String LITERAL_SEPARATOR_KEY = "hadoop.util.delimited.separator.literal";
+	public static final String QUOTE_KEY = "hadoop.util.delimited.quote";
+	public static final String ESCAPE_KEY = "hadoop.util.delimited.escape";
+	public static final String NULL_VALUES_KEY = "hadoop.util.delimited.null.values";
+	public static final String FIELDS_KEY = "hadoop.util.delimited.fields";
+
+	/**
+	 * @param job
+	 * @param propertiesFileName - field name properties file on the classpath.
+	 */
+	public static void setSchema(Job job, String propertiesFileName) {
+		job.getConfiguration().set(SCHEMA_KEY,propertiesFileName);
+	}
+
+	/**
+	 * @param job
+	 * @param separator - single byte field separator.
+	 */
+	public static void setFieldSeparator(Job job, String separator) {
+		setFieldSeparator(job.getConfiguration(),separator);
+	}
+
+	/**
+	 * Control characters (such as the default <code>\u0001</code>) are stored escaped as
+	 * <code>\\uXXXX</code>, as XML configuration files cannot hold them.
+	 * @param conf
+	 * @param separator - single byte field separator.
+	 */
+	public static void setFieldSeparator(Configuration conf, String separator) {
+		if (separator.length() == 1 && separator.charAt(0) < ' ')
+			separator = String.format("\\u%04x",(int) separator.charAt(0));
+		conf.set(SEPARATOR_KEY,separator);
+	}
+
+	/**
+	 * @param job
+	 * @param separator - field separator matched as literal bytes, of any length.
+	 */
+	public static void setLiteralSeparator(Job job, String separator) {
+		setFieldSeparator(job.getConfiguration(),separator);
+		job.getConfiguration().setBoolean(LITERAL_SEPARATOR_KEY,true);
+	}
+
+	/**
+	 * @param job
+	 * @param quote - ASCII quote character.
+	 */
+	public static void setQuoteChar(Job job, char quote) {
+		job.getConfiguration().set(QUOTE_KEY,String.valueOf(quote));
+	}
+
+	/**
+	 * @param job
+	 * @param escape - ASCII escape character.
+	 */
+	public static void setEscapeChar(Job job, char escape) {
+		job.getConfiguration().set(ESCAPE_KEY,String.valueOf(escape));
+	}
+
+	/**
+	 * @param job
+	 * @param values - field values to treat as null.
+	 */
+	public static void setNullValues(Job job, String... values) {
+		job.getConfiguration().setStrings(NULL_VALUES_KEY,values);
+	}
+
+	/**
+	 * @param job
+	 * @param fieldNames - the fields used by the job.
+	 */
+	public static void setFields(Job job, String... fieldNames) {
+		job.getConfiguration().setStrings(FIELDS_KEY,fieldNames);
+	}
+
+	/**
+	 * @param conf
+	 * @return a parser for the schema, separator, quote and escape characters set in conf.
+	 * @throws IllegalArgumentException if the schema cannot be loaded, or the quote or escape character is invalid.
+	 * @throws IllegalStateException if a quote or escape character is set with a regex separator.
+	 */
+	public static DelimLineParser createParser(Configuration conf) {
+		String separator = conf.get(SEPARATOR_KEY);
+		if (separator != null && separator.matches("\\\\u[0-9a-fA-F]{4}"))
+			separator = String.valueOf((char) Integer.parseInt(separator.substring(2),16));
+		boolean literal = separator != null && conf.getBoolean(LITERAL_SEPARATOR_KEY,false);
+		DelimLineParser parser = new DelimLineParser(conf.get(SCHEMA_KEY),literal ? null : separator);
+		if (literal)
+			parser.setLiteralSeparator(separator);
+		parser.setQuoteChar(getChar(conf,QUOTE_KEY));
+		parser.setEscapeChar(getChar(conf,ESCAPE_KEY));
+		return parser;
+	}
+
+	private static int getChar(Configuration conf, String key) {
+		String value = conf.get(key,"");
+		if (value.length() > 1)
+			throw new IllegalArgumentException(key + " must be a single character, not '" + value + "'");
+		return value.isEmpty() ? QuotedFieldScanner.NONE : value.charAt(0);
+	}
+
+	@Override
+	public RecordReader<LongWritable,DelimRecord> createRecordReader(InputSplit split, TaskAttemptContext context) {
+		return new DelimitedRecordReader();
+	}
+
+	@Override
+	protected boolean isSplitable(JobContext context, Path file) {
+		return CodecStreams.isSplittable(CodecStreams.getCodec(context.getConfiguration(),file));
+	}
+
+}
@@ -0,0 +1,76 @@
+package net.martinprobson.hadoop.util;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+
+/**
+ * Reads the lines of a file split with {@link TextLineReader} (so following the
+ * <code>LineRecordReader</code> rules for lines crossing split boundaries) and indexes each
+ * one into a reused {@link DelimRecord}.
+ * <p>The record refers directly to the reader's line buffer, no bytes are copied.
+ *
+ * @author martinr
+ *
+ */
+public class DelimitedRecordReader extends RecordReader<LongWritable,DelimRecord> {
+
+	private final LongWritable key = new LongWritable();
+	private DelimRecord record;
+	private TextLineReader reader;
+	private long start;
+	private long length;
+
+	@Override
+	public void initialize(InputSplit genericSplit, TaskAttemptContext context) throws IOException {
+		FileSplit split = (FileSplit) genericSplit;
+		Configuration conf = context.getConfiguration();
+		this.record = new DelimRecord();
+		record.setConf(conf);
+		this.start = split.getStart();
+		this.length = split.getLength();
+		this.reader = new TextLineReader(conf,split.getPath(),start,length);
+	}
+
+	@Override
+	public boolean nextKeyValue() throws IOException {
+		long position = reader.getPosition();
+		if (!reader.next())
+			return false;
+		key.set(position);
+		record.reset(reader.getLine());
+		return true;
+	}
+
+	@Override
+	public LongWritable getCurrentKey() {
+		return key;
+	}
+
+	@Override
+	public DelimRecord getCurrentValue() {
+		return record;
+	}
+
+	/**
+	 * @return fraction of the split read, approximate for compressed files.
+	 */
+	@Override
+	public float getProgress() {
+		if (reader == null || length <= 0)
+			return 0.0f;
+		return Math.min(1.0f,Math.max(0.0f,(reader.getPosition() - start) / (float) length));
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (reader != null)
+			reader.close();
+	}
+
+}
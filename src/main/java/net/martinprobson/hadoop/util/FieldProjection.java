@@ -0,0 +1,108 @@
+package net.martinprobson.hadoop.util;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * Immutable set of field positions a job actually needs from each line.
+ * <p>Parsers use a projection to extract just the requested fields in one left to right pass,
+ * stopping at the {@link #getMaxPosition highest requested position} so the unused tail of
+ * wide lines is never scanned.
+ * <p>Fields are held in the order they were requested; {@link #getSlot getSlot} maps a field
+ * position back to its index in that order.
+ *
+ * @author martinr
+ *
+ */
+public final class FieldProjection {
+
+	private final int[] positions;
+	private final String[] names;
+	/** Index into positions for each field position, -1 if not projected. */
+	private final int[] slots;
+
+	private FieldProjection(int[] positions, String[] names) {
+		this.positions = positions;
+		this.names = names;
+		int maxPosition = 0;
+		for (int position : positions) {
+			if (position <= 0)
+				throw new IllegalArgumentException("Field Position " + position + " is not valid");
+			maxPosition = Math.max(maxPosition,position);
+		}
+		this.slots = new int[maxPosition + 1];
+		Arrays.fill(slots,-1);
+		for (int i = 0; i < positions.length; i++) {
+			if (slots[positions[i]] != -1)
+				throw new IllegalArgumentException("Field Position " + positions[i] + " is requested more than once");
+			slots[positions[i]] = i;
+		}
+	}
+
+	/**
+	 * Create a projection of the named fields.
+	 * @param schema - The schema used to resolve the names.
+	 * @param fieldNames - The fields required.
+	 * @return the projection.
+	 * @throws NoSuchElementException if a field does not exist in schema.
+	 * @throws IllegalArgumentException if a field is requested more than once.
+	 */
+	public static FieldProjection of(FieldSchema schema, String... fieldNames) {
+		int[] positions = new int[fieldNames.length];
+		String[] names = new String[fieldNames.length];
+		for (int i = 0; i < fieldNames.length; i++) {
+			positions[i] = schema.getPosition(fieldNames[i]);
+			names[i] = schema.getFieldName(positions[i]);
+		}
+		return new FieldProjection(positions,names);
+	}
+
+	/**
+	 * Create a projection of the given field positions.
+	 * @param fieldPositions - The field positions required.
+	 * @return the projection.
+	 * @throws IllegalArgumentException if a position is not positive or is requested more than once.
+	 */
+	public static FieldProjection ofPositions(int... fieldPositions) {
+		return new FieldProjection(fieldPositions.clone(),new String[fieldPositions.length]);
+	}
+
+	/**
+	 * @return the number of projected fields.
+	 */
+	public int size() {
+		return positions.length;
+	}
+
+	/**
+	 * @param slot - index of the field in request order.
+	 * @return field position of the field.
+	 */
+	public int getPosition(int slot) {
+		return positions[slot];
+	}
+
+	/**
+	 * @param slot - index of the field in request order.
+	 * @return name of the field, null if the projection was created from positions.
+	 */
+	public String getFieldName(int slot) {
+		return names[slot];
+	}
+
+	/**
+	 * @param fieldPosition
+	 * @return index of fieldPosition in request order, or -1 if it is not projected.
+	 */
+	public int getSlot(int fieldPosition) {
+		return fieldPosition > 0 && fieldPosition < slots.length ? slots[fieldPosition] : -1;
+	}
+
+	/**
+	 * @return the highest projected field position, parsing can stop after this field.
+	 */
+	public int getMaxPosition() {
+		return slots.length - 1;
+	}
+
+}
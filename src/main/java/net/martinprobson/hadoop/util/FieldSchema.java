@@ -0,0 +1,218 @@
+package net.martinprobson.hadoop.util;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Immutable mapping of field names to field positions, compiled once from a properties file.
+ * <p>The properties must be in the format: -
+ * <ul>
+ * <li>field1=fieldposition1</li>
+ * <li>field2=fieldposition2,type</li>
+ * etc
+ * </ul>
+ * <p>Field names are case insensitive and positions start at 1. The type is optional, one of
+ * <code>string</code> (the default), <code>int</code>, <code>long</code>, <code>decimal(scale)</code>,
+ * <code>double</code>, <code>date</code> or <code>timestamp</code>, see {@link ColumnType}. Several names may
+ * refer to the same position, provided they declare the same type. Errors in the properties
+ * are reported when the schema is built rather than when a field is first accessed.
+ * <p>Resolve a name once with {@link #getPosition getPosition} and keep the returned
+ * position as a handle, so hot loops can access fields by position with no hashing or parsing.
+ *
+ * @author martinr
+ *
+ */
+public final class FieldSchema {
+
+	/**
+	 * A schema with no field names.
+	 */
+	public static final FieldSchema EMPTY = new FieldSchema(Collections.<String,Integer>emptyMap(),
+															 Collections.<String,ColumnType>emptyMap(),
+															 Collections.<String,Integer>emptyMap());
+
+	private final Map<String,Integer> positions;
+	/** Field names, types and decimal scales indexed by position (null where a position has no name). */
+	private final String[] names;
+	private final ColumnType[] types;
+	private final int[] scales;
+
+	private FieldSchema(Map<String,Integer> positions, Map<String,ColumnType> types, Map<String,Integer> scales) {
+		this.positions = Collections.unmodifiableMap(positions);
+		int maxPosition = 0;
+		for (int position : positions.values())
+			maxPosition = Math.max(maxPosition,position);
+		this.names = new String[maxPosition + 1];
+		this.types = new ColumnType[maxPosition + 1];
+		this.scales = new int[maxPosition + 1];
+		for (Map.Entry<String,Integer> entry : positions.entrySet()) {
+			int position = entry.getValue();
+			// Where names share a position, the first in order is the field's name.
+			if (names[position] == null || entry.getKey().compareTo(names[position]) < 0)
+				names[position] = entry.getKey();
+			this.types[position] = types.get(entry.getKey());
+			Integer scale = scales.get(entry.getKey());
+			this.scales[position] = scale == null ? 0 : scale;
+		}
+	}
+
+	/**
+	 * Build a schema from a properties file on the classpath.
+	 * @param propertiesFileName - The properties file holding field->position mappings.
+	 * @return the compiled schema.
+	 * @throws IOException if the properties file cannot be found or read.
+	 * @throws IllegalArgumentException if a field position is not a positive integer.
+	 */
+	public static FieldSchema load(String propertiesFileName) throws IOException {
+		Properties fields = new Properties();
+		try (InputStream in = FieldSchema.class.getResourceAsStream(propertiesFileName)) {
+			if (in == null)
+				throw new FileNotFoundException("Cannot find " + propertiesFileName + " on classpath");
+			fields.load(in);
+		}
+		return fromProperties(fields);
+	}
+
+	/**
+	 * Build a schema from properties holding field->position mappings.
+	 * @param fieldProperties
+	 * @return the compiled schema.
+	 * @throws IllegalArgumentException if a field position is not a positive integer, a type is not valid,
+	 * a field is defined more than once (names differing only in case) or fields at the same position
+	 * have different types.
+	 */
+	public static FieldSchema fromProperties(Properties fieldProperties) {
+		Map<String,Integer> positions = new HashMap<>();
+		Map<String,ColumnType> types = new HashMap<>();
+		Map<String,Integer> scales = new HashMap<>();
+		Map<Integer,String> byPosition = new HashMap<>();
+		for (String name : fieldProperties.stringPropertyNames()) {
+			String value = fieldProperties.getProperty(name).trim();
+			String key = name.toLowerCase();
+			int comma = value.indexOf(',');
+			String type = comma < 0 ? "string" : value.substring(comma + 1).trim().toLowerCase();
+			if (comma >= 0)
+				value = value.substring(0,comma).trim();
+			int position;
+			try {
+				position = Integer.parseInt(value);
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Field: " + name + " has invalid position '" + value + "'",e);
+			}
+			if (position <= 0)
+				throw new IllegalArgumentException("Field: " + name + " has invalid position '" + value + "'");
+			if (positions.containsKey(key))
+				throw new IllegalArgumentException("Field: " + name + " is defined more than once");
+			positions.put(key,position);
+			try {
+				if (type.startsWith("decimal(") && type.endsWith(")")) {
+					types.put(key,ColumnType.DECIMAL);
+					scales.put(key,Integer.parseInt(type.substring("decimal(".length(),type.length() - 1).trim()));
+				} else {
+					types.put(key,ColumnType.valueOf(type.toUpperCase()));
+				}
+			} catch (IllegalArgumentException e) {
+				throw new IllegalArgumentException("Field: " + name + " has invalid type '" + type + "'",e);
+			}
+			if (types.get(key) == ColumnType.DECIMAL && (scales.get(key) < 0 || scales.get(key) > 18))
+				throw new IllegalArgumentException("Field: " + name + " has invalid type '" + type + "'");
+			String other = byPosition.put(position,key);
+			if (other != null && (types.get(other) != types.get(key) || !Objects.equals(scales.get(other),scales.get(key))))
+				throw new IllegalArgumentException("Fields: " + other + " and " + key + " at position " + position
+												   + " have different types");
+		}
+		return new FieldSchema(positions,types,scales);
+	}
+
+	/**
+	 * The inverse of {@link #fromProperties fromProperties}.
+	 * @return properties holding field->position,type mappings.
+	 */
+	public Properties toProperties() {
+		Properties properties = new Properties();
+		for (Map.Entry<String,Integer> entry : positions.entrySet()) {
+			int position = entry.getValue();
+			String type = types[position] == ColumnType.DECIMAL ? "decimal(" + scales[position] + ")"
+																 : types[position].name().toLowerCase();
+			properties.setProperty(entry.getKey(),position + "," + type);
+		}
+		return properties;
+	}
+
+	/**
+	 * Lookup the position of the field named by fieldName.
+	 * @param fieldName - (case insensitive) field name.
+	 * @return field position.
+	 * @throws NoSuchElementException if field does not exist.
+	 */
+	public int getPosition(String fieldName) throws NoSuchElementException {
+		Integer position = positions.get(fieldName);
+		if (position == null)
+			position = positions.get(fieldName.toLowerCase());
+		if (position == null)
+			throw new NoSuchElementException("Field: " + fieldName  + " does not exist");
+		return position;
+	}
+
+	/**
+	 * @param fieldName - (case insensitive) field name.
+	 * @return true if the schema contains fieldName.
+	 */
+	public boolean hasField(String fieldName) {
+		return positions.containsKey(fieldName) || positions.containsKey(fieldName.toLowerCase());
+	}
+
+	/**
+	 * @param position
+	 * @return the (lower case) name of the field at position, or null if the position is not named.
+	 */
+	public String getFieldName(int position) {
+		return position > 0 && position < names.length ? names[position] : null;
+	}
+
+	/**
+	 * @param position
+	 * @return the type of the field at position, STRING if the position is not named.
+	 */
+	public ColumnType getType(int position) {
+		return position > 0 && position < types.length && types[position] != null ? types[position] : ColumnType.STRING;
+	}
+
+	/**
+	 * @param position
+	 * @return the number of decimal places of the field at position, 0 if it is not a DECIMAL.
+	 */
+	public int getScale(int position) {
+		return position > 0 && position < scales.length ? scales[position] : 0;
+	}
+
+	/**
+	 * @return the (lower case) names of all fields in the schema.
+	 */
+	public Set<String> getFieldNames() {
+		return positions.keySet();
+	}
+
+	/**
+	 * @return the highest field position in the schema, 0 if the schema is empty.
+	 */
+	public int getMaxPosition() {
+		return names.length - 1;
+	}
+
+	/**
+	 * @return the number of named fields.
+	 */
+	public int size() {
+		return positions.size();
+	}
+
+}
@@ -0,0 +1,240 @@
+package net.martinprobson.hadoop.util;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+/**
+ * A resolved <code>FileSystem</code> with a bounded cache of <code>FileStatus</code> lookups, to
+ * save NameNode round trips when the same paths are checked repeatedly.
+ * <p>Entries (including "does not exist" results) are kept for ttlMillis, and the least
+ * recently used entries are dropped once there are more than maxEntries. A ttlMillis of 0
+ * disables caching, every lookup then goes to the file system.
+ * <p>Changes made through other clients are not seen until an entry expires, so code that
+ * changes paths through the file system directly should call {@link #invalidate(Path)}.
+ * <p>Instances are thread safe.
+ *
+ * @author martinr
+ *
+ */
+public class FileStatusCache {
+
+	private static final Log LOG = LogFactory.getLog(FileStatusCache.class);
+
+	/** Configuration key, milliseconds to cache file status for (default 0, no caching). */
+	public static final String TTL_KEY = "hadoop.util.status.cache.ttl.ms";
+	/** Configuration key, maximum number of cached paths (default {@value #DEFAULT_MAX_ENTRIES}). */
+	public static final String MAX_ENTRIES_KEY = "hadoop.util.status.cache.max.entries";
+	public static final int DEFAULT_MAX_ENTRIES = 10000;
+
+	private final FileSystem fs;
+	private final long ttlNanos;
+	private final LinkedHashMap<Path,Entry> cache;
+
+	/**
+	 * @param fs - file system to query.
+	 * @param ttlMillis - how long entries are valid for, 0 to disable caching.
+	 * @param maxEntries - maximum number of cached paths.
+	 */
+	public FileStatusCache(FileSystem fs, long ttlMillis, final int maxEntries) {
+		this.fs = fs;
+		this.ttlNanos = ttlMillis * 1000000L;
+		this.cache = new LinkedHashMap<Path,Entry>(16,0.75f,true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Path,Entry> eldest) {
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * @return the file system this cache queries.
+	 */
+	public FileSystem getFileSystem() {
+		return fs;
+	}
+
+	/**
+	 * @param path - path to look up.
+	 * @return status of path, or null if it does not exist.
+	 * @throws IOException
+	 */
+	public FileStatus getFileStatus(Path path) throws IOException {
+		Path key = fs.makeQualified(path);
+		Entry entry = lookup(key);
+		if (entry != null) {
+			Metrics.increment(Metrics.Counter.STATUS_CACHE_HITS);
+			return entry.status;
+		}
+		FileStatus status;
+		long timer = Metrics.start();
+		try {
+			status = fs.getFileStatus(key);
+		} catch (FileNotFoundException e) {
+			status = null;
+		} finally {
+			Metrics.increment(Metrics.Counter.NAMENODE_CALLS);
+			Metrics.stop(Metrics.Timer.METADATA,timer);
+		}
+		put(key,status);
+		return status;
+	}
+
+	/**
+	 * @param path - path to check.
+	 * @return true if path exists.
+	 * @throws IOException
+	 */
+	public boolean exists(Path path) throws IOException {
+		return getFileStatus(path) != null;
+	}
+
+	/**
+	 * Check whether each of a collection of paths exists.
+	 * <p>Uncached paths that share a parent directory are checked with a single
+	 * <code>listStatus</code> of the parent rather than a <code>getFileStatus</code> each.
+	 * @param paths - paths to check.
+	 * @return map from each path (as given) to whether it exists, in iteration order of paths.
+	 * @throws IOException
+	 */
+	public Map<Path,Boolean> existsAll(Collection<Path> paths) throws IOException {
+		Map<Path,Boolean> result = new LinkedHashMap<>();
+		Map<Path,List<Path>> byParent = new LinkedHashMap<>();
+		for (Path path : paths) {
+			Path key = fs.makeQualified(path);
+			Entry entry = lookup(key);
+			if (entry != null) {
+				Metrics.increment(Metrics.Counter.STATUS_CACHE_HITS);
+				result.put(path,entry.status != null);
+			} else {
+				result.put(path,null);
+				Path parent = key.getParent();
+				List<Path> siblings = byParent.get(parent);
+				if (siblings == null)
+					byParent.put(parent,siblings = new ArrayList<>());
+				siblings.add(path);
+			}
+		}
+		for (Map.Entry<Path,List<Path>> group : byParent.entrySet()) {
+			List<Path> siblings = group.getValue();
+			if (group.getKey() == null || siblings.size() == 1) {
+				for (Path path : siblings)
+					result.put(path,exists(path));
+			} else {
+				Map<String,FileStatus> children = listChildren(group.getKey());
+				for (Path path : siblings) {
+					FileStatus status = children.get(path.getName());
+					put(fs.makeQualified(path),status);
+					result.put(path,status != null);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @param dir - qualified path of the directory to list.
+	 * @return the children of dir by name, none if dir does not exist or is a file.
+	 */
+	private Map<String,FileStatus> listChildren(Path dir) throws IOException {
+		Map<String,FileStatus> children = new LinkedHashMap<>();
+		long timer = Metrics.start();
+		try {
+			// Listing a file returns the file itself, which is not a child of dir.
+			for (FileStatus child : fs.listStatus(dir))
+				if (dir.equals(child.getPath().getParent()))
+					children.put(child.getPath().getName(),child);
+		} catch (FileNotFoundException e) {
+			LOG.debug(dir + " does not exist");
+		} finally {
+			Metrics.increment(Metrics.Counter.NAMENODE_CALLS);
+			Metrics.stop(Metrics.Timer.METADATA,timer);
+		}
+		return children;
+	}
+
+	/**
+	 * Forget path, everything below it and its ancestors (which a write to path may create).
+	 * @param path - path that has been changed.
+	 */
+	public void invalidate(Path path) {
+		Path key = fs.makeQualified(path);
+		Set<Path> ancestors = new HashSet<>();
+		for (Path p = key; p != null; p = p.getParent())
+			ancestors.add(p);
+		String prefix = key.toString() + Path.SEPARATOR;
+		synchronized (cache) {
+			for (Iterator<Path> i = cache.keySet().iterator(); i.hasNext();) {
+				Path cached = i.next();
+				if (ancestors.contains(cached) || cached.toString().startsWith(prefix))
+					i.remove();
+			}
+		}
+	}
+
+	/**
+	 * Forget every cached path.
+	 */
+	public void invalidateAll() {
+		synchronized (cache) {
+			cache.clear();
+		}
+	}
+
+	/**
+	 * @return number of cached paths (including expired entries not yet removed).
+	 */
+	public int size() {
+		synchronized (cache) {
+			return cache.size();
+		}
+	}
+
+	private Entry lookup(Path key) {
+		if (ttlNanos <= 0)
+			return null;
+		synchronized (cache) {
+			Entry entry = cache.get(key);
+			if (entry != null && System.nanoTime() - entry.time > ttlNanos) {
+				cache.remove(key);
+				return null;
+			}
+			return entry;
+		}
+	}
+
+	private void put(Path key, FileStatus status) {
+		if (ttlNanos <= 0)
+			return;
+		synchronized (cache) {
+			cache.put(key,new Entry(status,System.nanoTime()));
+		}
+	}
+
+	private static final class Entry {
+		/** null if the path does not exist. */
+		final FileStatus status;
+		final long time;
+
+		Entry(FileStatus status, long time) {
+			this.status = status;
+			this.time = time;
+		}
+	}
+
+}
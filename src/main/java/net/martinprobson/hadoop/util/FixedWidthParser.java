@@ -0,0 +1,178 @@
+package net.martinprobson.hadoop.util;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.NoSuchElementException;
+import java.util.Properties;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.io.Text;
+
+/**
+ * Utility class to extract fields from a fixed width line, the counterpart of {@link DelimLineParser}.
+ * <p>The layout is read from a properties file (on the classpath) of <code>name=offset,length[,type]</code>
+ * entries, see {@link FixedWidthSchema}. Fields are numbered in order of offset and can be read by
+ * position or name.
+ * <p>Fields are located by their offsets in the <code>Text</code> bytes, so access is constant time with
+ * no scanning. A line shorter than the layout truncates its last field, and fields starting after the
+ * end of the line do not exist.
+ * <p>Space padding is kept unless {@link #setTrim setTrim(true)} is called.
+ * <p>Use {@link #newRecord()} for the typed accessors and null handling of {@link ParsedRecord}.
+ *
+ * @author martinr
+ *
+ */
+public class FixedWidthParser {
+
+	private static final Log LOG = LogFactory.getLog(FixedWidthParser.class);
+
+	private final FixedWidthSchema layout;
+	private boolean trim = false;
+
+	private static FixedWidthSchema loadLayout(String propertiesFile) {
+		try {
+			FixedWidthSchema layout = FixedWidthSchema.load(propertiesFile);
+			LOG.debug("Loaded " + layout.size() + " fixed width fields from " + propertiesFile);
+			return layout;
+		} catch (IOException e) {
+			throw new IllegalArgumentException("Cannot load field properties " + propertiesFile + " from classpath",e);
+		}
+	}
+
+	/**
+	 * Construct a new parser with the given layout.
+	 * @param layout - The compiled field->offset,length mappings.
+	 */
+	public FixedWidthParser(FixedWidthSchema layout) {
+		this.layout = layout;
+	}
+
+	/**
+	 * Construct a new parser with the given propertiesFileName.
+	 * @param propertiesFileName - The properties file holding field->offset,length mappings.
+	 * @throws IllegalArgumentException if the properties file cannot be loaded or is invalid.
+	 */
+	public FixedWidthParser(String propertiesFileName) {
+		this(loadLayout(propertiesFileName));
+	}
+
+	/**
+	 * Construct a new parser with the given fieldProperties.
+	 * @param fieldProperties - The properties holding field->offset,length mappings.
+	 * @throws IllegalArgumentException if a field offset, length or type is invalid.
+	 */
+	public FixedWidthParser(Properties fieldProperties) {
+		this(FixedWidthSchema.fromProperties(fieldProperties));
+	}
+
+	/**
+	 * Return the contents of the field in position specified by fieldPosition.
+	 * @param line - The line to parse.
+	 * @param fieldPosition
+	 * @return String contents of the field.
+	 * @throws NoSuchElementException if field does not exist.
+	 */
+	public String getFieldByPosition(Text line,int fieldPosition) throws NoSuchElementException {
+		byte[] bytes = line.getBytes();
+		int start = fieldStart(bytes,line.getLength(),fieldPosition);
+		int end = fieldEnd(bytes,line.getLength(),fieldPosition,start);
+		return new String(bytes,start,end - start,StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Copy the contents of the field in position specified by fieldPosition into field.
+	 * @param line - The line to parse.
+	 * @param fieldPosition
+	 * @param field - Text to receive the field contents (re-used across calls).
+	 * @return field
+	 * @throws NoSuchElementException if field does not exist.
+	 */
+	public Text getFieldByPosition(Text line,int fieldPosition,Text field) throws NoSuchElementException {
+		byte[] bytes = line.getBytes();
+		int start = fieldStart(bytes,line.getLength(),fieldPosition);
+		int end = fieldEnd(bytes,line.getLength(),fieldPosition,start);
+		field.set(bytes,start,end - start);
+		return field;
+	}
+
+	/**
+	 * Extract just the fields in projection from line.
+	 * @param line - The line to parse.
+	 * @param projection - The fields required.
+	 * @param fields - Array of at least projection.size() Text objects (re-used across calls),
+	 * fields[i] receives the field at projection.getPosition(i).
+	 * @return fields
+	 * @throws NoSuchElementException if a projected field does not exist.
+	 */
+	public Text[] getFields(Text line,FieldProjection projection,Text[] fields) throws NoSuchElementException {
+		for (int i = 0; i < projection.size(); i++)
+			getFieldByPosition(line,projection.getPosition(i),fields[i]);
+		return fields;
+	}
+
+	/**
+	 * Return the contents of the field named by fieldName.
+	 * @param line - The line to parse.
+	 * @param fieldName
+	 * @return String contents of the field.
+	 * @throws NoSuchElementException if field does not exist.
+	 */
+	public String getFieldByName(Text line,String fieldName) throws NoSuchElementException {
+		return getFieldByPosition(line,getSchema().getPosition(fieldName));
+	}
+
+	private int fieldStart(byte[] bytes,int length,int fieldPosition) {
+		if (fieldPosition <= 0 || fieldPosition > layout.size() || layout.getOffset(fieldPosition) >= length)
+			throw new NoSuchElementException("Field Position " + fieldPosition + " does not exist");
+		int start = layout.getOffset(fieldPosition);
+		return trim ? ByteFields.trimStart(bytes,start,fieldEnd(length,fieldPosition)) : start;
+	}
+
+	private int fieldEnd(byte[] bytes,int length,int fieldPosition,int start) {
+		int end = fieldEnd(length,fieldPosition);
+		return trim ? ByteFields.trimEnd(bytes,start,end) : end;
+	}
+
+	private int fieldEnd(int length,int fieldPosition) {
+		return Math.min(layout.getOffset(fieldPosition) + layout.getLength(fieldPosition),length);
+	}
+
+	/**
+	 * Create a new {@link FixedWidthRecord} using this parser's layout and trim setting.
+	 * @return a new record cursor, to be re-used across lines.
+	 */
+	public FixedWidthRecord newRecord() {
+		return new FixedWidthRecord(this);
+	}
+
+	/**
+	 * @return the field names and positions.
+	 */
+	public FieldSchema getSchema() {
+		return layout.getFieldSchema();
+	}
+
+	/**
+	 * @return the field offsets and lengths.
+	 */
+	public FixedWidthSchema getFixedWidthSchema() {
+		return layout;
+	}
+
+	/**
+	 * Remove leading and trailing spaces from the fields returned.
+	 * @param trim - true to trim fields (the default is false).
+	 */
+	public void setTrim(boolean trim) {
+		this.trim = trim;
+	}
+
+	/**
+	 * @return true if fields are trimmed.
+	 */
+	public boolean isTrim() {
+		return trim;
+	}
+
+}
@@ -0,0 +1,114 @@
+package net.martinprobson.hadoop.util;
+
+import java.nio.charset.StandardCharsets;
+
+import org.apache.hadoop.io.Text;
+
+/**
+ * A re-usable cursor over a single fixed width line.
+ * <p>Field offsets come straight from the {@link FixedWidthSchema}, so {@link #reset(Text) reset}
+ * does not look at the line bytes at all, and every field access is constant time. The offsets are
+ * only recomputed when a line is shorter than the schema width (its last fields are then truncated
+ * or missing) or starts at a different offset in its buffer.
+ * <p>Fields keep their padding unless {@link #setTrim trimming} is enabled (the typed accessors
+ * always ignore it).
+ * <p>The record refers to the bytes of the line passed to reset (they are not copied),
+ * so the line must not be modified while the record is in use.
+ * <p>Field access and the typed accessors are provided by {@link ParsedRecord}.
+ * <p>Instances are not thread safe.
+ * <p>Create with {@link FixedWidthParser#newRecord()}.
+ *
+ * @author martinr
+ *
+ */
+public class FixedWidthRecord extends ParsedRecord {
+
+	private final FixedWidthSchema layout;
+	private int lineStart;
+	private int lineLength;
+	/** Line start the offset arrays were computed for, -1 if they must be recomputed. */
+	private int layoutStart = -1;
+
+	/**
+	 * Construct a new record using the schema and trim setting of parser.
+	 * @param parser - The parser supplying the field layout.
+	 */
+	public FixedWidthRecord(FixedWidthParser parser) {
+		super(parser.getSchema(),parser.getFixedWidthSchema().size());
+		this.layout = parser.getFixedWidthSchema();
+		setTrim(parser.isTrim());
+	}
+
+	/**
+	 * Point this record at a new line.
+	 * @param line - The line to parse.
+	 * @return this record.
+	 */
+	public FixedWidthRecord reset(Text line) {
+		return reset(line.getBytes(),0,line.getLength());
+	}
+
+	/**
+	 * Point this record at a new line held in bytes[start..start+length).
+	 * @param bytes - Buffer holding the line.
+	 * @param start - Offset of the line in bytes.
+	 * @param length - Length of the line.
+	 * @return this record.
+	 */
+	public FixedWidthRecord reset(byte[] bytes, int start, int length) {
+		this.bytes = bytes;
+		this.lineStart = start;
+		this.lineLength = length;
+		if (start != layoutStart || length < layout.getWidth()) {
+			int count = 0;
+			while (count < layout.size() && layout.getOffset(count + 1) < length) {
+				int offset = layout.getOffset(count + 1);
+				starts[count] = start + offset;
+				ends[count] = start + Math.min(offset + layout.getLength(count + 1),length);
+				count++;
+			}
+			fieldCount = count;
+			layoutStart = length < layout.getWidth() ? -1 : start;
+		}
+		if (Metrics.enabled) {
+			Metrics.increment(Metrics.Counter.LINES_PARSED);
+			Metrics.record(Metrics.Distribution.LINE_LENGTH,length);
+			Metrics.record(Metrics.Distribution.FIELDS_PER_LINE,fieldCount);
+		}
+		return this;
+	}
+
+	/**
+	 * @return the field layout.
+	 */
+	public FixedWidthSchema getFixedWidthSchema() {
+		return layout;
+	}
+
+	@Override
+	public FixedWidthRecord setNullValues(String... values) {
+		super.setNullValues(values);
+		return this;
+	}
+
+	@Override
+	public FixedWidthRecord setBlankIsNull(boolean blankIsNull) {
+		super.setBlankIsNull(blankIsNull);
+		return this;
+	}
+
+	@Override
+	public FixedWidthRecord setTrim(boolean trim) {
+		super.setTrim(trim);
+		return this;
+	}
+
+	/**
+	 * @return the current line.
+	 */
+	@Override
+	public String toString() {
+		return new String(bytes,lineStart,lineLength,StandardCharsets.UTF_8);
+	}
+
+}
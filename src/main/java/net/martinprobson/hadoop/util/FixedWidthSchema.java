@@ -0,0 +1,157 @@
+package net.martinprobson.hadoop.util;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Immutable layout of a fixed width record, compiled once from a properties file.
+ * <p>The properties must be in the format: -
+ * <ul>
+ * <li>field1=offset1,length1</li>
+ * <li>field2=offset2,length2,type</li>
+ * etc
+ * </ul>
+ * <p>Offsets are in bytes from the start of the line, starting at 0. The optional type is as for
+ * {@link FieldSchema}. Fields are numbered 1, 2, ... in order of offset, so the field names and types
+ * are available as a {@link FieldSchema} and fields can be accessed by position or name in the same
+ * way as delimited fields. Fields may overlap, and gaps between fields are ignored.
+ *
+ * @author martinr
+ *
+ */
+public final class FixedWidthSchema {
+
+	private final FieldSchema fieldSchema;
+	/** Offsets and lengths indexed by position - 1. */
+	private final int[] offsets;
+	private final int[] lengths;
+	private final int width;
+
+	private FixedWidthSchema(FieldSchema fieldSchema, int[] offsets, int[] lengths) {
+		this.fieldSchema = fieldSchema;
+		this.offsets = offsets;
+		this.lengths = lengths;
+		int w = 0;
+		for (int i = 0; i < offsets.length; i++)
+			w = Math.max(w,offsets[i] + lengths[i]);
+		this.width = w;
+	}
+
+	/**
+	 * Build a schema from a properties file on the classpath.
+	 * @param propertiesFileName - The properties file holding field->offset,length mappings.
+	 * @return the compiled schema.
+	 * @throws IOException if the properties file cannot be found or read.
+	 * @throws IllegalArgumentException if a field offset, length or type is not valid.
+	 */
+	public static FixedWidthSchema load(String propertiesFileName) throws IOException {
+		Properties fields = new Properties();
+		try (InputStream in = FixedWidthSchema.class.getResourceAsStream(propertiesFileName)) {
+			if (in == null)
+				throw new FileNotFoundException("Cannot find " + propertiesFileName + " on classpath");
+			fields.load(in);
+		}
+		return fromProperties(fields);
+	}
+
+	/**
+	 * Build a schema from properties holding field->offset,length mappings.
+	 * @param fieldProperties
+	 * @return the compiled schema.
+	 * @throws IllegalArgumentException if a field offset, length or type is not valid.
+	 */
+	public static FixedWidthSchema fromProperties(Properties fieldProperties) {
+		List<Field> fields = new ArrayList<>();
+		for (String name : fieldProperties.stringPropertyNames()) {
+			String value = fieldProperties.getProperty(name).trim();
+			String[] parts = value.split(",",3);
+			if (parts.length < 2)
+				throw new IllegalArgumentException("Field: " + name + " must be offset,length not '" + value + "'");
+			int offset;
+			int length;
+			try {
+				offset = Integer.parseInt(parts[0].trim());
+				length = Integer.parseInt(parts[1].trim());
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Field: " + name + " has invalid offset or length '" + value + "'",e);
+			}
+			if (offset < 0 || length <= 0)
+				throw new IllegalArgumentException("Field: " + name + " has invalid offset or length '" + value + "'");
+			fields.add(new Field(name,offset,length,parts.length > 2 ? parts[2].trim() : "string"));
+		}
+		Collections.sort(fields,new Comparator<Field>() {
+			@Override
+			public int compare(Field a, Field b) {
+				return a.offset != b.offset ? Integer.compare(a.offset,b.offset) : a.name.compareToIgnoreCase(b.name);
+			}
+		});
+		Properties positions = new Properties();
+		int[] offsets = new int[fields.size()];
+		int[] lengths = new int[fields.size()];
+		for (int i = 0; i < fields.size(); i++) {
+			Field field = fields.get(i);
+			positions.setProperty(field.name,(i + 1) + "," + field.type);
+			offsets[i] = field.offset;
+			lengths[i] = field.length;
+		}
+		return new FixedWidthSchema(FieldSchema.fromProperties(positions),offsets,lengths);
+	}
+
+	private static final class Field {
+		final String name;
+		final int offset;
+		final int length;
+		final String type;
+
+		Field(String name, int offset, int length, String type) {
+			this.name = name;
+			this.offset = offset;
+			this.length = length;
+			this.type = type;
+		}
+	}
+
+	/**
+	 * @return the field names, positions and types.
+	 */
+	public FieldSchema getFieldSchema() {
+		return fieldSchema;
+	}
+
+	/**
+	 * @param position - field position, 1 to {@link #size()}.
+	 * @return offset of the field from the start of the line.
+	 */
+	public int getOffset(int position) {
+		return offsets[position - 1];
+	}
+
+	/**
+	 * @param position - field position, 1 to {@link #size()}.
+	 * @return length of the field in bytes.
+	 */
+	public int getLength(int position) {
+		return lengths[position - 1];
+	}
+
+	/**
+	 * @return length of a complete line, the end of the field that ends last.
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * @return the number of fields.
+	 */
+	public int size() {
+		return offsets.length;
+	}
+
+}
@@ -1,30 +1,27 @@
 package net.martinprobson.hadoop.util;
 
 import java.io.BufferedReader;
-import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.charset.Charset;
-import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
 
-import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
-import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
-import org.apache.hadoop.io.IOUtils;
-import org.apache.hadoop.io.SequenceFile;
 import org.apache.hadoop.io.Writable;
-import org.apache.hadoop.io.WritableUtils;
-import org.apache.hadoop.util.ReflectionUtils;
 
 /**
  * Utility methods for dealing with HDFS (and local) filesystems.
@@ -36,6 +33,39 @@ public class HDFSUtil {
 
     private static final Log LOG = LogFactory.getLog(HDFSUtil.class);
 
+    /** Resolved file system and status cache for each Configuration (by identity). */
+    private static final Map<Configuration,FileStatusCache> STATUS_CACHES = new WeakHashMap<>();
+
+	/**
+	 * Get the metadata cache for the file system given by Configuration, creating it on first use.
+	 * <p>The <code>FileSystem</code> is resolved once per Configuration instance, so later 
+	 * changes to conf are not seen. Status caching is off unless {@value FileStatusCache#TTL_KEY} is set.
+	 * @param conf - Hadoop configuration referencing file system to use.
+	 * @return status cache for conf.
+	 * @throws IOException
+	 */
+	public static FileStatusCache getStatusCache(Configuration conf) throws IOException {
+		synchronized (STATUS_CACHES) {
+			FileStatusCache cache = STATUS_CACHES.get(conf);
+			if (cache == null) {
+				cache = new FileStatusCache(FileSystem.get(conf),
+											conf.getLong(FileStatusCache.TTL_KEY,0),
+											conf.getInt(FileStatusCache.MAX_ENTRIES_KEY,FileStatusCache.DEFAULT_MAX_ENTRIES));
+				STATUS_CACHES.put(conf,cache);
+			}
+			return cache;
+		}
+	}
+
+	/**
+	 * @param conf - Hadoop configuration referencing file system to use.
+	 * @return the (cached) file system given by Configuration.
+	 * @throws IOException
+	 */
+	public static FileSystem getFileSystem(Configuration conf) throws IOException {
+		return getStatusCache(conf).getFileSystem();
+	}
+
 	/**
 	 * Check if a path exists in the file system given by Configuration.
 	 * @param conf - Hadoop confiuration referencing file system to use.
@@ -45,9 +75,7 @@ public class HDFSUtil {
 	public static boolean pathExists(Configuration conf, Path name) {
 		boolean rc = true;
 		try {
-			FileSystem.get(conf).getFileStatus(name);
-		} catch (FileNotFoundException e) {
-				rc = false;
+			rc = getStatusCache(conf).exists(name);
 		} catch (IOException e) {
 			LOG.error("Error getFileStatus() " + name,e);
 			System.exit(2);
@@ -57,6 +85,18 @@ public class HDFSUtil {
 		return rc;
 	}
 
+	/**
+	 * Check whether each of a collection of paths exists, listing shared parent directories once
+	 * rather than checking each path. See {@link FileStatusCache#existsAll}.
+	 * @param conf - Hadoop configuration referencing file system to use.
+	 * @param names - Path names to check.
+	 * @return map from each path to whether it exists.
+	 * @throws IOException 
+	 */
+	public static Map<Path,Boolean> pathsExist(Configuration conf, Collection<Path> names) throws IOException {
+		return getStatusCache(conf).existsAll(names);
+	}
+
 	/**
 	 * Delete a path exists in the file system given by Configuration.
 	 * @param conf - Hadoop configuration referencing file system to use.
@@ -66,16 +106,65 @@ public class HDFSUtil {
 	public static void deletePath(Configuration conf, Path name) {
 		LOG.debug("Deleting " + name);
 		try {
-			FileSystem.get(conf).delete(name,true);
+			FileStatusCache cache = getStatusCache(conf);
+			long timer = Metrics.start();
+			try {
+				cache.getFileSystem().delete(name,true);
+			} finally {
+				Metrics.increment(Metrics.Counter.NAMENODE_CALLS);
+				Metrics.stop(Metrics.Timer.METADATA,timer);
+				cache.invalidate(name);
+			}
 		} catch (IOException e) {
 			LOG.error("Error deletePath() " + name,e);
 			System.exit(2);
 		}
 	}
 	
-	//@TODO Re-factor
+	/**
+	 * Recursively delete a collection of paths concurrently, without stopping on the first failure.
+	 * See {@link BulkFileOps}.
+	 * @param conf - Hadoop configuration referencing file system to use.
+	 * @param names - Path names to delete.
+	 * @param threads - number of deletes to run at the same time.
+	 * @return the outcome for each path.
+	 * @throws IOException 
+	 */
+	public static BulkFileOps.Report deletePaths(Configuration conf, Collection<Path> names, int threads) throws IOException {
+		return new BulkFileOps(conf,threads).delete(names);
+	}
+
+	/**
+	 * Recursively delete every path matching glob concurrently, without stopping on the first failure.
+	 * See {@link BulkFileOps}.
+	 * @param conf - Hadoop configuration referencing file system to use.
+	 * @param glob - pattern of paths to delete, e.g. <code>/data/out/part-*</code>.
+	 * @param threads - number of deletes to run at the same time.
+	 * @return the outcome for each matching path.
+	 * @throws IOException 
+	 */
+	public static BulkFileOps.Report deletePaths(Configuration conf, Path glob, int threads) throws IOException {
+		return new BulkFileOps(conf,threads).delete(glob);
+	}
+	
+	/**
+	 * Copy files between (or within) file systems, copying up to threads files at a time. 
+	 * Files whose target already matches are skipped. See {@link ParallelCopier}.
+	 * @param conf - Hadoop configuration used to resolve source and target file systems.
+	 * @param src - a file, a directory or a glob, e.g. <code>file:///staging/in/*</code>.
+	 * @param dst - target file or directory, e.g. <code>hdfs://nn/data/in</code>.
+	 * @param threads - number of files to copy at the same time.
+	 * @return the outcome (and throughput) of each file.
+	 * @throws IOException if the sources cannot be listed.
+	 */
+	public static ParallelCopier.Report copy(Configuration conf, Path src, Path dst, int threads) throws IOException {
+		return new ParallelCopier(conf,threads).copy(src,dst);
+	}
+
 	/**
 	 * Read a Hadoop SequenceFile.
+	 * <p>Every record is copied and held in memory, for large files use 
+	 * {@link #openSeqFile openSeqFile} or {@link #readSeqFile(Configuration, Path, RecordHandler)}.
 	 * @param conf - Hadoop configuration referencing file system to use.
 	 * @param path - file to be read (Path)
 	 * @return List of Writable Pairs containing the key/value contents of the file.
@@ -85,28 +174,121 @@ public class HDFSUtil {
 
 		List<Pair<Writable,Writable>> lines = new ArrayList<>();
 		
-		SequenceFile.Reader reader = null;
-		try {
-			reader = new SequenceFile.Reader(conf,SequenceFile.Reader.file(fileName));
-			Writable key = (Writable) ReflectionUtils.newInstance(reader.getKeyClass(),conf);
-			Writable value = (Writable) ReflectionUtils.newInstance(reader.getValueClass(),conf);
-			while (reader.next(key,value)) {
-				Pair<Writable,Writable> line =  new ImmutablePair<>(WritableUtils.clone(key, conf),
-																     WritableUtils.clone(value, conf));
-				lines.add(line);
-			}
-			
-		} finally {
-			IOUtils.closeStream(reader);
+		try (SeqFileReader<Writable,Writable> reader = openSeqFile(conf,fileName)) {
+			while (reader.next()) 
+				lines.add(reader.copy());
 		}
 		
 		return lines;
 	}
 	
+	/**
+	 * Stream the records of a Hadoop SequenceFile to handler.
+	 * <p>The same key and value instances are passed to handler for every record, so memory use 
+	 * does not depend on the size of the file.
+	 * @param conf - Hadoop configuration referencing file system to use.
+	 * @param path - file to be read (Path)
+	 * @param handler - called for each record.
+	 * @return number of records read.
+	 * @throws IOException 
+	 */
+	public static <K extends Writable, V extends Writable> long readSeqFile(Configuration conf, Path fileName, 
+																			RecordHandler<K,V> handler) throws IOException {
+		long records = 0;
+		try (SeqFileReader<K,V> reader = openSeqFile(conf,fileName)) {
+			while (reader.next()) {
+				handler.handle(reader.getKey(),reader.getValue());
+				records++;
+			}
+		}
+		return records;
+	}
+	
+	/**
+	 * Read every SequenceFile in a directory (or matching a glob), such as the <code>part-r-*</code> 
+	 * files of a job's output, concurrently using up to threads readers.
+	 * <p>handler is called concurrently from the reading threads, so must be thread safe. 
+	 * See {@link ParallelSeqFileReader} for ordered delivery and splitting large files.
+	 * @param conf - Hadoop configuration referencing file system to use.
+	 * @param path - file, directory or glob to be read (Path)
+	 * @param threads - number of files to read at the same time.
+	 * @param handler - called for each record.
+	 * @return number of records read.
+	 * @throws IOException 
+	 */
+	public static <K extends Writable, V extends Writable> long readSeqFiles(Configuration conf, Path path, int threads,
+																			 RecordHandler<K,V> handler) throws IOException {
+		return new ParallelSeqFileReader(conf,threads).read(path,handler);
+	}
+	
+	/**
+	 * Open a Hadoop SequenceFile for streaming, record at a time reading.
+	 * @param conf - Hadoop configuration referencing file system to use.
+	 * @param path - file to be read (Path)
+	 * @return reader positioned before the first record, the caller must close it.
+	 * @throws IOException 
+	 */
+	public static <K extends Writable, V extends Writable> SeqFileReader<K,V> openSeqFile(Configuration conf, Path fileName) throws IOException {
+		return new SeqFileReader<>(conf,fileName);
+	}
+
+	/**
+	 * Create a Hadoop SequenceFile for writing, with BLOCK compression (see {@link SeqFileWriter}).
+	 * @param conf - Hadoop configuration referencing file system to use.
+	 * @param fileName - file to be written, replacing any existing file.
+	 * @param keyClass - class of the keys.
+	 * @param valueClass - class of the values.
+	 * @return writer, the caller must close it.
+	 * @throws IOException 
+	 */
+	public static <K extends Writable, V extends Writable> SeqFileWriter<K,V> createSeqFile(Configuration conf, Path fileName,
+																						  Class<K> keyClass, Class<V> valueClass) throws IOException {
+		return new SeqFileWriter<>(conf,fileName,keyClass,valueClass);
+	}
+
+	/**
+	 * Write a Hadoop SequenceFile holding records.
+	 * @param conf - Hadoop configuration referencing file system to use.
+	 * @param fileName - file to be written, replacing any existing file.
+	 * @param keyClass - class of the keys.
+	 * @param valueClass - class of the values.
+	 * @param records - key/value pairs to write.
+	 * @param options - compression, buffer and block settings.
+	 * @return number of records written.
+	 * @throws IOException 
+	 */
+	public static <K extends Writable, V extends Writable> long writeSeqFile(Configuration conf, Path fileName, Class<K> keyClass, Class<V> valueClass,
+																			 Iterator<? extends Pair<? extends K,? extends V>> records,
+																			 SeqFileWriter.Options options) throws IOException {
+		try (SeqFileWriter<K,V> writer = new SeqFileWriter<>(conf,fileName,keyClass,valueClass,options)) {
+			return writer.append(records);
+		}
+	}
+
+	/**
+	 * Write records into parts SequenceFiles (<code>part-00000</code> etc.) of a directory concurrently.
+	 * See {@link ParallelSeqFileWriter}.
+	 * @param conf - Hadoop configuration referencing file system to use.
+	 * @param dir - output directory.
+	 * @param parts - number of part files to write at the same time.
+	 * @param keyClass - class of the keys.
+	 * @param valueClass - class of the values.
+	 * @param records - key/value pairs to write.
+	 * @param options - compression, buffer and block settings of each part.
+	 * @return the records and bytes written to each part.
+	 * @throws IOException 
+	 */
+	public static <K extends Writable, V extends Writable> ParallelSeqFileWriter.Report writeSeqFiles(Configuration conf, Path dir, int parts,
+																									  Class<K> keyClass, Class<V> valueClass,
+																									  Iterator<? extends Pair<? extends K,? extends V>> records,
+																									  SeqFileWriter.Options options) throws IOException {
+		return new ParallelSeqFileWriter(conf,parts).setOptions(options).write(dir,keyClass,valueClass,records);
+	}
+	
 	
 	//@TODO Re-factor
 	/**
-	 * Read a file.
+	 * Read a file, decompressing it if its extension matches a codec (see {@link CodecStreams}).
 	 * @param conf - Hadoop configuration referencing file system to use.
 	 * @param path - file to be read (Path)
 	 * @return String representation of file.
@@ -114,7 +296,7 @@ public class HDFSUtil {
 	public static String readFile(Configuration conf, Path fileName) {
 		StringBuilder lines = new StringBuilder();
 		try {
-			FSDataInputStream in = FileSystem.get(conf).open(fileName);   
+			InputStream in = CodecStreams.open(conf,getFileSystem(conf).makeQualified(fileName));
 			BufferedReader br = new BufferedReader(new InputStreamReader(in,Charset.defaultCharset()));			
 			String tmp; 
 			while ((tmp = br.readLine()) != null) 
@@ -129,9 +311,73 @@ public class HDFSUtil {
 	}
 	
 	
+	/**
+	 * Stream the lines of a file to handler as raw UTF-8 bytes, without decoding or holding the file in memory.
+	 * <p>The same <code>Text</code> instance is passed to handler for every line.
+	 * @param conf - Hadoop configuration referencing file system to use.
+	 * @param path - file to be read (Path)
+	 * @param handler - called for each line.
+	 * @return number of lines read.
+	 * @throws IOException 
+	 */
+	public static long readFile(Configuration conf, Path fileName, LineHandler handler) throws IOException {
+		long lines = 0;
+		try (TextLineReader reader = openLines(conf,fileName)) {
+			while (reader.next()) {
+				handler.handle(reader.getLine());
+				lines++;
+			}
+		}
+		return lines;
+	}
+	
+	/**
+	 * Open a file for streaming, line at a time reading into a re-used <code>Text</code>.
+	 * @param conf - Hadoop configuration referencing file system to use.
+	 * @param path - file to be read (Path)
+	 * @return reader positioned before the first line, the caller must close it.
+	 * @throws IOException 
+	 */
+	public static TextLineReader openLines(Configuration conf, Path fileName) throws IOException {
+		return new TextLineReader(conf,fileName);
+	}
+	
+	/**
+	 * Read the lines of a (large) file concurrently, one range per block, using up to threads readers.
+	 * <p>handler is called concurrently from the reading threads, so must be thread safe, and 
+	 * lines are not delivered in file order. See {@link ParallelTextReader}.
+	 * @param conf - Hadoop configuration referencing file system to use.
+	 * @param path - file to be read (Path)
+	 * @param threads - number of ranges to read at the same time.
+	 * @param handler - called for each line.
+	 * @return number of lines read.
+	 * @throws IOException 
+	 */
+	public static long readFile(Configuration conf, Path fileName, int threads, LineHandler handler) throws IOException {
+		return new ParallelTextReader(conf,threads).read(fileName,handler);
+	}
+	
+	/**
+	 * Parse the lines of files on all cores, with a reader thread, workers parsing batches of lines 
+	 * and a single consumer thread. See {@link ParsePipeline}.
+	 * @param conf - Hadoop configuration referencing file system to use.
+	 * @param path - a file, directory or glob to be read (Path)
+	 * @param parser - field separator and schema of the text.
+	 * @param workers - number of parsing threads.
+	 * @param mapper - called concurrently for each parsed line.
+	 * @param consumer - called by one thread for each value returned by mapper.
+	 * @return throughput of each stage.
+	 * @throws IOException 
+	 */
+	public static <T> ParsePipeline.Report parseFiles(Configuration conf, Path path, DelimLineParser parser, int workers,
+													   ParsePipeline.Mapper<T> mapper, ParsePipeline.Consumer<T> consumer) throws IOException {
+		return new ParsePipeline(conf,parser,workers).run(path,mapper,consumer);
+	}
+	
+	
 	//@TODO Re-factor
 	/**
-	 * Read a file.
+	 * Read a file, decompressing it if its extension matches a codec (see {@link CodecStreams}).
 	 * @param conf - Hadoop configuration referencing file system to use.
 	 * @param path - file to be read (Path)
 	 * @return List<String> collection of lines from file.
@@ -139,7 +385,7 @@ public class HDFSUtil {
 	public static List<String> readFileasList(Configuration conf, Path fileName) {
 		List<String> lines = new ArrayList<>();
 		try {
-			FSDataInputStream in = FileSystem.get(conf).open(fileName);   
+			InputStream in = CodecStreams.open(conf,getFileSystem(conf).makeQualified(fileName));
 			BufferedReader br = new BufferedReader(new InputStreamReader(in,Charset.defaultCharset()));			
 			String tmp; 
 			while ((tmp = br.readLine()) != null) 
@@ -156,6 +402,9 @@ public class HDFSUtil {
 	
 	/**
 	 * Read a file from local filesystem
+	 * <p>The file is mapped into memory and decoded straight from the mapping, so it is not 
+	 * first copied onto the heap. Files over 2GB cannot be held in a String, stream them with 
+	 * {@link #readFile(Configuration, Path, LineHandler)} or a {@link MappedFile} instead.
 	 * @param path - file to be read (URI)
 	 * @param encoding - charset encoding.
 	 * @return String representation of file.
@@ -163,8 +412,13 @@ public class HDFSUtil {
 	public static String readLocalFile(URI path, Charset encoding) 
 			  throws IOException 
 			{
-			  byte[] encoded = Files.readAllBytes(Paths.get(path));
-			  return new String(encoded, encoding);
+			  try (MappedFile file = new MappedFile(Paths.get(path))) {
+				  if (file.getSegments().size() > 1)
+					  throw new IOException(path + " is too large (" + file.size() + " bytes) to read into a String");
+				  if (file.size() == 0)
+					  return "";
+				  return encoding.decode(file.getSegments().get(0)).toString();
+			  }
 			}
 
 	/**
@@ -0,0 +1,161 @@
+package net.martinprobson.hadoop.util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hadoop.io.Writable;
+
+/**
+ * Approximate count of distinct values (HyperLogLog), in a fixed 2^precision bytes whatever the
+ * number of values added.
+ * <p>Values are added as a 64 bit hash, see {@link #hash(byte[], int, int)} and {@link #hash(long)}.
+ * The first <code>precision</code> bits of the hash choose a register, which keeps the longest run of
+ * leading zeros seen in the remaining bits. The standard error of the estimate is about
+ * 1.04 / sqrt(2^precision), e.g. 1.6% at the default precision of {@value #DEFAULT_PRECISION} (4KB).
+ * Small counts are estimated by linear counting, so are close to exact.
+ * <p>Sketches of the same precision can be {@link #merge merged}, e.g. those built by parallel
+ * workers or map tasks, giving the distinct count of the combined input.
+ * <p>Instances are not thread safe.
+ *
+ * @author martinr
+ *
+ */
+public class HyperLogLog implements Writable {
+
+	static final int DEFAULT_PRECISION = 12;
+	private static final int MIN_PRECISION = 4;
+	private static final int MAX_PRECISION = 18;
+
+	private int precision;
+	private byte[] registers;
+
+	/**
+	 * Construct an empty sketch of the default precision ({@value #DEFAULT_PRECISION}).
+	 */
+	public HyperLogLog() {
+		this(DEFAULT_PRECISION);
+	}
+
+	/**
+	 * @param precision - log2 of the number of registers, from 4 to 18.
+	 */
+	public HyperLogLog(int precision) {
+		if (precision < MIN_PRECISION || precision > MAX_PRECISION)
+			throw new IllegalArgumentException("precision must be from " + MIN_PRECISION + " to " + MAX_PRECISION);
+		this.precision = precision;
+		this.registers = new byte[1 << precision];
+	}
+
+	/**
+	 * @return 64 bit hash of bytes[start..end), suitable for {@link #add}.
+	 */
+	public static long hash(byte[] bytes, int start, int end) {
+		long h = 0xcbf29ce484222325L; // FNV-1a
+		for (int i = start; i < end; i++)
+			h = (h ^ (bytes[i] & 0xff)) * 0x100000001b3L;
+		return mix(h);
+	}
+
+	/**
+	 * @return 64 bit hash of value, suitable for {@link #add}.
+	 */
+	public static long hash(long value) {
+		return mix(value + 0x9e3779b97f4a7c15L);
+	}
+
+	/**
+	 * Murmur3 finaliser, so every bit of the hash depends on every bit of h.
+	 */
+	private static long mix(long h) {
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	/**
+	 * Add a value.
+	 * @param hash - 64 bit hash of the value.
+	 */
+	public void add(long hash) {
+		int register = (int) (hash >>> (64 - precision));
+		// The marker bit limits the run of zeros to the bits below the register number.
+		byte rank = (byte) (Long.numberOfLeadingZeros(hash << precision | 1L << (precision - 1)) + 1);
+		if (rank > registers[register])
+			registers[register] = rank;
+	}
+
+	/**
+	 * Combine other into this sketch.
+	 * @param other - a sketch of the same precision.
+	 * @throws IllegalArgumentException if the precisions differ.
+	 */
+	public void merge(HyperLogLog other) {
+		if (other.precision != precision)
+			throw new IllegalArgumentException("Cannot merge precision " + other.precision + " into " + precision);
+		for (int i = 0; i < registers.length; i++)
+			if (other.registers[i] > registers[i])
+				registers[i] = other.registers[i];
+	}
+
+	/**
+	 * @return the approximate number of distinct values added.
+	 */
+	public long estimate() {
+		int m = registers.length;
+		double sum = 0;
+		int zeros = 0;
+		for (byte rank : registers) {
+			sum += Double.longBitsToDouble((1023L - rank) << 52); // 2^-rank
+			if (rank == 0)
+				zeros++;
+		}
+		double alpha = m == 16 ? 0.673 : m == 32 ? 0.697 : m == 64 ? 0.709 : 0.7213 / (1 + 1.079 / m);
+		double estimate = alpha * m * m / sum;
+		if (estimate <= 2.5 * m && zeros > 0)
+			estimate = m * Math.log((double) m / zeros);
+		return Math.round(estimate);
+	}
+
+	/**
+	 * @return log2 of the number of registers.
+	 */
+	public int getPrecision() {
+		return precision;
+	}
+
+	/**
+	 * Remove every value.
+	 */
+	public void clear() {
+		Arrays.fill(registers,(byte) 0);
+	}
+
+	@Override
+	public void write(DataOutput out) throws IOException {
+		out.writeByte(precision);
+		out.write(registers);
+	}
+
+	@Override
+	public void readFields(DataInput in) throws IOException {
+		int readPrecision = in.readByte();
+		if (readPrecision < MIN_PRECISION || readPrecision > MAX_PRECISION)
+			throw new IOException("Invalid HyperLogLog precision " + readPrecision);
+		if (readPrecision != precision) {
+			precision = readPrecision;
+			registers = new byte[1 << precision];
+		}
+		in.readFully(registers);
+	}
+
+	@Override
+	public String toString() {
+		return Long.toString(estimate());
+	}
+
+}
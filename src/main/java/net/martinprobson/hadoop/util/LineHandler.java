@@ -0,0 +1,24 @@
+package net.martinprobson.hadoop.util;
+
+import java.io.IOException;
+
+import org.apache.hadoop.io.Text;
+
+/**
+ * Callback receiving the lines of a text file one at a time, as raw UTF-8 bytes.
+ * <p>The same <code>Text</code> instance is re-used for every line, so a handler that keeps a
+ * line beyond the call must copy it.
+ *
+ * @author martinr
+ *
+ */
+public interface LineHandler {
+
+	/**
+	 * Process one line (without the line terminator).
+	 * @param line
+	 * @throws IOException
+	 */
+	void handle(Text line) throws IOException;
+
+}
@@ -0,0 +1,69 @@
+package net.martinprobson.hadoop.util;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A column of <code>long</code> values, used for every numeric {@link ColumnType} except DOUBLE.
+ *
+ * @author martinr
+ *
+ */
+public class LongColumnVector extends ColumnVector {
+
+	private long[] values = new long[1024];
+
+	/**
+	 * @param row
+	 * @return the value of row (0 if the row is null).
+	 */
+	public long get(int row) {
+		return values[row];
+	}
+
+	/**
+	 * @return the values array, valid from 0 to {@link #size()}, for tight loops.
+	 */
+	public long[] getValues() {
+		return values;
+	}
+
+	/**
+	 * @param value - value of the next row.
+	 */
+	public void append(long value) {
+		ensureCapacity(size + 1);
+		values[size++] = value;
+	}
+
+	@Override
+	public void appendNull() {
+		ensureCapacity(size + 1);
+		values[size] = 0;
+		setNull(size++);
+	}
+
+	private void ensureCapacity(int rows) {
+		if (rows > values.length)
+			values = Arrays.copyOf(values,Math.max(values.length * 2,rows));
+	}
+
+	@Override
+	int valuesLength() {
+		return size * 8;
+	}
+
+	@Override
+	void encodeValues(ByteBuffer out) {
+		out.asLongBuffer().put(values,0,size);
+		out.position(out.position() + size * 8);
+	}
+
+	@Override
+	void decodeValues(ByteBuffer in, int rows) {
+		ensureCapacity(rows);
+		in.asLongBuffer().get(values,0,rows);
+		in.position(in.position() + rows * 8);
+	}
+
+}
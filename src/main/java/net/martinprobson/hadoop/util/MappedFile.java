@@ -0,0 +1,195 @@
+package net.martinprobson.hadoop.util;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.hadoop.io.Text;
+
+/**
+ * A local file mapped into memory with <code>FileChannel.map</code>.
+ * <p>A single mapping is limited to 2GB, so larger files are mapped as a series of segments.
+ * Each segment ends at a line terminator, so no line is split between segments (a line longer
+ * than a segment is an error). The file contents are never copied onto the heap in full,
+ * {@link #readLine(Text)} copies each line once, straight from the mapping into a re-used
+ * <code>Text</code>, which can then be passed to {@link DelimRecord#reset(Text)}.
+ * <p>Lines are terminated by <code>\n</code>, <code>\r</code> or <code>\r\n</code>, as
+ * with Hadoop's <code>LineReader</code>.
+ * <p>Mappings are released when they are garbage collected, not by {@link #close()}, and
+ * instances are not thread safe (although each {@link #getSegments() segment} can be read by a
+ * different thread).
+ *
+ * @author martinr
+ *
+ */
+public class MappedFile implements Closeable {
+
+	static final int MAX_SEGMENT_SIZE = Integer.MAX_VALUE;
+
+	private final FileChannel channel;
+	private final long size;
+	private final List<ByteBuffer> segments;
+	private final BufferInputStream segmentInput = new BufferInputStream();
+	private final DataInputStream dataInput = new DataInputStream(segmentInput);
+	private int segment = 0;
+	private long position = 0;
+
+	/**
+	 * Map file.
+	 * @param file - local file to map.
+	 * @throws IOException
+	 */
+	public MappedFile(Path file) throws IOException {
+		this(file,MAX_SEGMENT_SIZE);
+	}
+
+	MappedFile(Path file, int maxSegmentSize) throws IOException {
+		this.channel = FileChannel.open(file,StandardOpenOption.READ);
+		try {
+			this.size = channel.size();
+			this.segments = map(file,maxSegmentSize);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	private List<ByteBuffer> map(Path file, int maxSegmentSize) throws IOException {
+		List<ByteBuffer> result = new ArrayList<>();
+		long start = 0;
+		while (start < size) {
+			int length = (int) Math.min(maxSegmentSize,size - start);
+			ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY,start,length);
+			if (start + length < size) {
+				length = lineBoundary(buffer,length);
+				if (length == 0)
+					throw new IOException("Line at offset " + start + " of " + file + " is longer than " + maxSegmentSize + " bytes");
+				buffer.limit(length);
+			}
+			result.add(buffer.slice());
+			start += length;
+		}
+		return result;
+	}
+
+	/**
+	 * @return the length of buffer up to and including the last complete line terminator, 0 if
+	 * there is none. A trailing <code>\r</code> is not complete, it may be followed by <code>\n</code>.
+	 */
+	private static int lineBoundary(ByteBuffer buffer, int length) {
+		for (int i = length - 1; i >= 0; i--) {
+			byte b = buffer.get(i);
+			if (b == '\n' || (b == '\r' && i < length - 1 && buffer.get(i + 1) != '\n'))
+				return i + 1;
+		}
+		return 0;
+	}
+
+	/**
+	 * @return the size of the file in bytes.
+	 */
+	public long size() {
+		return size;
+	}
+
+	/**
+	 * @return the mapped segments, in file order, as read only buffers positioned at their start.
+	 * Each segment ends at a line terminator (or the end of the file).
+	 */
+	public List<ByteBuffer> getSegments() {
+		List<ByteBuffer> result = new ArrayList<>(segments.size());
+		for (ByteBuffer buffer : segments) {
+			ByteBuffer view = buffer.asReadOnlyBuffer();
+			view.position(0);
+			result.add(view);
+		}
+		return Collections.unmodifiableList(result);
+	}
+
+	/**
+	 * Read the next line (without its terminator) into line.
+	 * @param line - set to the contents of the line.
+	 * @return true if a line was read, false at the end of the file.
+	 * @throws IOException
+	 */
+	public boolean readLine(Text line) throws IOException {
+		for (; segment < segments.size(); segment++) {
+			ByteBuffer buffer = segments.get(segment);
+			int start = buffer.position();
+			int limit = buffer.limit();
+			if (start == limit)
+				continue;
+			int end = start;
+			byte b = 0;
+			while (end < limit && (b = buffer.get(end)) != '\n' && b != '\r')
+				end++;
+			int next = end;
+			if (end < limit)
+				next += b == '\r' && end + 1 < limit && buffer.get(end + 1) == '\n' ? 2 : 1;
+			segmentInput.buffer = buffer;
+			line.readWithKnownLength(dataInput,end - start);
+			buffer.position(next);
+			position += next - start;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Call handler for each remaining line.
+	 * @param handler - called with the same <code>Text</code> for every line.
+	 * @return number of lines read.
+	 * @throws IOException
+	 */
+	public long forEachLine(LineHandler handler) throws IOException {
+		Text line = new Text();
+		long lines = 0;
+		while (readLine(line)) {
+			handler.handle(line);
+			lines++;
+		}
+		return lines;
+	}
+
+	/**
+	 * @return the file offset following the last line read.
+	 */
+	public long getPosition() {
+		return position;
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	/**
+	 * Lets <code>Text.readWithKnownLength</code> copy straight out of a mapped segment.
+	 */
+	private static final class BufferInputStream extends InputStream {
+		ByteBuffer buffer;
+
+		@Override
+		public int read() {
+			return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if (!buffer.hasRemaining())
+				return -1;
+			len = Math.min(len,buffer.remaining());
+			buffer.get(b,off,len);
+			return len;
+		}
+	}
+
+}
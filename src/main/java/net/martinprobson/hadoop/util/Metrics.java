@@ -0,0 +1,368 @@
+package net.martinprobson.hadoop.util;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.mapreduce.Counters;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+
+/**
+ * Opt-in, process wide counters, timers and histograms for parsing and file system calls.
+ * <p>Metrics are off unless enabled with {@link #setEnabled setEnabled(true)} or the system
+ * property <code>-Dhadoop.util.metrics=true</code>. Every instrumented call site checks the
+ * {@link #enabled} flag first, so when disabled the cost is a single field read.
+ * <p>Values can be read: -
+ * <ul>
+ * <li>inside a MapReduce task, by copying them into the job's counters with
+ * {@link #publish(TaskAttemptContext)} (e.g. from <code>cleanup()</code>).</li>
+ * <li>through JMX, after {@link #registerMBean()}, as <code>net.martinprobson.hadoop.util:type=Metrics</code>.</li>
+ * <li>directly, with {@link #snapshot()}.</li>
+ * </ul>
+ * <p>All methods are thread safe.
+ *
+ * @author martinr
+ *
+ */
+public final class Metrics {
+
+	private static final Log LOG = LogFactory.getLog(Metrics.class);
+
+	/** Hadoop counter group used by {@link #publish}. */
+	public static final String COUNTER_GROUP = "HadoopUtil";
+	public static final String MBEAN_NAME = "net.martinprobson.hadoop.util:type=Metrics";
+
+	/**
+	 * Event counts.
+	 */
+	public enum Counter {
+		/** Lines split into fields by DelimRecord or FixedWidthRecord. */
+		LINES_PARSED,
+		/** Lines rejected by ColumnarConverter, as a field cannot be parsed as its type. */
+		MALFORMED_LINES,
+		/** Fields returned by DelimLineParser (which re-scans the line for each one), by position, name or projection. */
+		FIELDS_PARSED,
+		/** Text and SequenceFiles opened for reading. */
+		FILES_OPENED,
+		LINES_READ,
+		/** Bytes of lines read, uncompressed, including line terminators. */
+		BYTES_READ,
+		/** SequenceFile records read. */
+		RECORDS_READ,
+		/** Calls to the file system for metadata (getFileStatus, listStatus, delete). */
+		NAMENODE_CALLS,
+		STATUS_CACHE_HITS,
+		FILES_COPIED,
+		BYTES_COPIED,
+		/** SequenceFiles created by SeqFileWriter. */
+		FILES_WRITTEN,
+		/** SequenceFile records written. */
+		RECORDS_WRITTEN
+	}
+
+	/**
+	 * Timed operations, each recorded as a histogram of nanoseconds.
+	 */
+	public enum Timer {
+		/** Opening a file for reading. */
+		OPEN,
+		/** A metadata call to the file system. */
+		METADATA,
+		/** Copying one file. */
+		COPY
+	}
+
+	/**
+	 * Distributions of values, each recorded as a histogram.
+	 */
+	public enum Distribution {
+		/** Bytes per line parsed. */
+		LINE_LENGTH,
+		/** Fields per line parsed. */
+		FIELDS_PER_LINE
+	}
+
+	/**
+	 * Read by every instrumented call site before doing anything else.
+	 */
+	static volatile boolean enabled = Boolean.getBoolean("hadoop.util.metrics");
+
+	private static final LongAdder[] COUNTERS = new LongAdder[Counter.values().length];
+	private static final Histogram[] TIMERS = new Histogram[Timer.values().length];
+	private static final Histogram[] DISTRIBUTIONS = new Histogram[Distribution.values().length];
+
+	static {
+		for (int i = 0; i < COUNTERS.length; i++)
+			COUNTERS[i] = new LongAdder();
+		for (int i = 0; i < TIMERS.length; i++)
+			TIMERS[i] = new Histogram();
+		for (int i = 0; i < DISTRIBUTIONS.length; i++)
+			DISTRIBUTIONS[i] = new Histogram();
+	}
+
+	private Metrics() {
+	}
+
+	/**
+	 * @param on - true to start collecting metrics, false to stop (values collected so far are kept).
+	 */
+	public static void setEnabled(boolean on) {
+		enabled = on;
+	}
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Set every counter and histogram back to zero.
+	 */
+	public static void reset() {
+		for (LongAdder counter : COUNTERS)
+			counter.reset();
+		for (Histogram timer : TIMERS)
+			timer.reset();
+		for (Histogram distribution : DISTRIBUTIONS)
+			distribution.reset();
+	}
+
+	/**
+	 * @param counter - counter to add 1 to, if metrics are enabled.
+	 */
+	public static void increment(Counter counter) {
+		if (enabled)
+			COUNTERS[counter.ordinal()].increment();
+	}
+
+	/**
+	 * @param counter - counter to add value to, if metrics are enabled.
+	 * @param value
+	 */
+	public static void add(Counter counter, long value) {
+		if (enabled)
+			COUNTERS[counter.ordinal()].add(value);
+	}
+
+	/**
+	 * @param distribution - histogram to record value in, if metrics are enabled.
+	 * @param value
+	 */
+	public static void record(Distribution distribution, long value) {
+		if (enabled)
+			DISTRIBUTIONS[distribution.ordinal()].record(value);
+	}
+
+	/**
+	 * Start timing an operation, pass the result to {@link #stop stop}.
+	 * @return the start time, or 0 if metrics are disabled.
+	 */
+	public static long start() {
+		return enabled ? System.nanoTime() : 0;
+	}
+
+	/**
+	 * @param timer - timer to record the operation in.
+	 * @param start - value returned by {@link #start()}, nothing is recorded if it is 0.
+	 */
+	public static void stop(Timer timer, long start) {
+		if (start != 0)
+			TIMERS[timer.ordinal()].record(System.nanoTime() - start);
+	}
+
+	/**
+	 * @param counter
+	 * @return current value of counter.
+	 */
+	public static long get(Counter counter) {
+		return COUNTERS[counter.ordinal()].sum();
+	}
+
+	/**
+	 * @param timer
+	 * @return histogram of the nanoseconds taken by timer's operations.
+	 */
+	public static Histogram get(Timer timer) {
+		return TIMERS[timer.ordinal()];
+	}
+
+	/**
+	 * @param distribution
+	 * @return histogram of distribution's values.
+	 */
+	public static Histogram get(Distribution distribution) {
+		return DISTRIBUTIONS[distribution.ordinal()];
+	}
+
+	/**
+	 * @return current values, by name. Each timer and distribution gives NAME_COUNT, NAME_SUM, NAME_MAX,
+	 * NAME_P50 and NAME_P99 (timer values are in nanoseconds).
+	 */
+	public static Map<String,Long> snapshot() {
+		Map<String,Long> values = new LinkedHashMap<>();
+		for (Counter counter : Counter.values())
+			values.put(counter.name(),get(counter));
+		for (Timer timer : Timer.values())
+			get(timer).snapshot(timer.name() + "_NANOS",values);
+		for (Distribution distribution : Distribution.values())
+			get(distribution).snapshot(distribution.name(),values);
+		return Collections.unmodifiableMap(values);
+	}
+
+	/**
+	 * Set the counters of group {@value #COUNTER_GROUP} in counters to the current values.
+	 * <p>Values are totals for the JVM, so with JVM re-use enabled they include earlier tasks.
+	 * @param counters
+	 */
+	public static void publish(Counters counters) {
+		for (Map.Entry<String,Long> value : snapshot().entrySet())
+			counters.findCounter(COUNTER_GROUP,value.getKey()).setValue(value.getValue());
+	}
+
+	/**
+	 * Set the counters of group {@value #COUNTER_GROUP} of a running task to the current values.
+	 * @param context - the task's context.
+	 */
+	public static void publish(TaskAttemptContext context) {
+		for (Map.Entry<String,Long> value : snapshot().entrySet())
+			context.getCounter(COUNTER_GROUP,value.getKey()).setValue(value.getValue());
+	}
+
+	/**
+	 * Register an MXBean, named {@value #MBEAN_NAME}, exposing the current values with the platform MBean server.
+	 * Registering more than once has no effect.
+	 */
+	public static synchronized void registerMBean() {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			ObjectName name = new ObjectName(MBEAN_NAME);
+			if (!server.isRegistered(name))
+				server.registerMBean(new MetricsBean(),name);
+		} catch (JMException e) {
+			LOG.warn("Cannot register " + MBEAN_NAME,e);
+		}
+	}
+
+	/**
+	 * JMX view of {@link Metrics}.
+	 */
+	public interface MetricsMXBean {
+		boolean isEnabled();
+
+		void setEnabled(boolean enabled);
+
+		Map<String,Long> getValues();
+
+		void reset();
+	}
+
+	private static final class MetricsBean implements MetricsMXBean {
+		@Override
+		public boolean isEnabled() {
+			return Metrics.isEnabled();
+		}
+
+		@Override
+		public void setEnabled(boolean enabled) {
+			Metrics.setEnabled(enabled);
+		}
+
+		@Override
+		public Map<String,Long> getValues() {
+			return Metrics.snapshot();
+		}
+
+		@Override
+		public void reset() {
+			Metrics.reset();
+		}
+	}
+
+	/**
+	 * Histogram of non negative values in power of 2 buckets: bucket 0 holds 0, bucket n holds
+	 * [2^(n-1),2^n). Percentiles are therefore accurate to within a factor of 2.
+	 */
+	public static final class Histogram {
+		private static final int BUCKETS = 64;
+
+		private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+		private final LongAdder count = new LongAdder();
+		private final LongAdder sum = new LongAdder();
+		private volatile long maxValue = 0;
+
+		void record(long value) {
+			if (value < 0)
+				value = 0;
+			buckets.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(value));
+			count.increment();
+			sum.add(value);
+			if (value > maxValue)
+				updateMax(value);
+		}
+
+		private synchronized void updateMax(long value) {
+			if (value > maxValue)
+				maxValue = value;
+		}
+
+		void reset() {
+			for (int i = 0; i < BUCKETS; i++)
+				buckets.set(i,0);
+			count.reset();
+			sum.reset();
+			maxValue = 0;
+		}
+
+		public long getCount() {
+			return count.sum();
+		}
+
+		public long getSum() {
+			return sum.sum();
+		}
+
+		public long getMax() {
+			return maxValue;
+		}
+
+		/**
+		 * @param percentile - between 0 and 100.
+		 * @return upper bound of the bucket holding the given percentile, 0 if there are no values.
+		 */
+		public long getPercentile(double percentile) {
+			long total = getCount();
+			if (total == 0)
+				return 0;
+			long rank = (long) Math.ceil(total * percentile / 100.0);
+			long seen = 0;
+			for (int i = 0; i < BUCKETS; i++) {
+				seen += buckets.get(i);
+				if (seen >= rank && seen > 0)
+					return i == 0 ? 0 : Math.min(maxValue,i == BUCKETS - 1 ? Long.MAX_VALUE : (1L << i) - 1);
+			}
+			return maxValue;
+		}
+
+		void snapshot(String name, Map<String,Long> values) {
+			values.put(name + "_COUNT",getCount());
+			values.put(name + "_SUM",getSum());
+			values.put(name + "_MAX",getMax());
+			values.put(name + "_P50",getPercentile(50));
+			values.put(name + "_P99",getPercentile(99));
+		}
+
+		@Override
+		public String toString() {
+			return "count=" + getCount() + " sum=" + getSum() + " max=" + getMax() + " p50=" + getPercentile(50) + " p99=" + getPercentile(99);
+		}
+	}
+
+}
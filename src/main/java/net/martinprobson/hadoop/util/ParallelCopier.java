@@ -0,0 +1,408 @@
+package net.martinprobson.hadoop.util;
+
+import java.io.Closeable;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileChecksum;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocatedFileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
+import org.apache.hadoop.io.IOUtils;
+
+/**
+ * Copy files between file systems (local to HDFS, HDFS to local or HDFS to HDFS), many files at a time.
+ * <p>Source and target are fully qualified by their own scheme, e.g. <code>file:///staging/in</code> and
+ * <code>hdfs://nn/data/in</code>, unqualified paths use the default file system of the Configuration.
+ * As with <code>hadoop fs -cp</code>, a source directory is copied recursively, and sources are
+ * copied into the target if it is an existing directory, otherwise to the target itself.
+ * <p>Files whose target already exists with the same length are skipped if their checksums match.
+ * Where either file system does not provide checksums (e.g. the local file system), or their
+ * checksums are not comparable (e.g. HDFS files of different block sizes), the contents of source
+ * and target are read and compared instead, stopping at the first difference.
+ * <p>Each file is copied by one thread, with a bounded pool copying up to threads files at a time.
+ * Failures are reported per file in the returned {@link Report}, and do not stop the other copies.
+ *
+ * @author martinr
+ *
+ */
+public class ParallelCopier {
+
+	private static final Log LOG = LogFactory.getLog(ParallelCopier.class);
+
+	private static final int DEFAULT_BUFFER_SIZE = 128 * 1024;
+
+	private final Configuration conf;
+	private final int threads;
+	private int bufferSize = DEFAULT_BUFFER_SIZE;
+	private short replication = 0;
+	private long blockSize = 0;
+
+	/**
+	 * @param conf - Hadoop configuration used to resolve source and target file systems.
+	 * @param threads - Maximum number of files to copy at the same time.
+	 */
+	public ParallelCopier(Configuration conf, int threads) {
+		if (threads <= 0)
+			throw new IllegalArgumentException("threads must be > 0");
+		this.conf = conf;
+		this.threads = threads;
+	}
+
+	/**
+	 * @param bufferSize - size of the read and write buffers, and of each copy (default 128KB).
+	 * @return this copier.
+	 */
+	public ParallelCopier setBufferSize(int bufferSize) {
+		this.bufferSize = bufferSize;
+		return this;
+	}
+
+	/**
+	 * @param replication - replication of target files, 0 (the default) uses the target file system default.
+	 * @return this copier.
+	 */
+	public ParallelCopier setReplication(short replication) {
+		this.replication = replication;
+		return this;
+	}
+
+	/**
+	 * @param blockSize - block size of target files, 0 (the default) uses the target file system default.
+	 * @return this copier.
+	 */
+	public ParallelCopier setBlockSize(long blockSize) {
+		this.blockSize = blockSize;
+		return this;
+	}
+
+	/**
+	 * Copy src to dst.
+	 * @param src - a file, a directory or a glob.
+	 * @param dst - target file or directory.
+	 * @return the outcome for each file.
+	 * @throws IOException if the sources cannot be listed (failed copies are reported in the result).
+	 */
+	public Report copy(Path src, Path dst) throws IOException {
+		FileSystem srcFs = src.getFileSystem(conf);
+		final FileSystem dstFs = dst.getFileSystem(conf);
+		FileStatus[] matches = srcFs.globStatus(src);
+		if (matches == null || matches.length == 0)
+			throw new FileNotFoundException(src + " does not exist");
+		boolean intoDir = isDirectory(dstFs,dst);
+		if (matches.length > 1 && !intoDir)
+			throw new IOException("Copying " + matches.length + " sources, " + dst + " must be an existing directory");
+		List<FileStatus> sources = new ArrayList<>();
+		List<Path> targets = new ArrayList<>();
+		for (FileStatus match : matches) {
+			Path root = intoDir ? new Path(dst,match.getPath().getName()) : dst;
+			if (match.isDirectory()) {
+				String prefix = match.getPath().toUri().getPath();
+				RemoteIterator<LocatedFileStatus> files = srcFs.listFiles(match.getPath(),true);
+				while (files.hasNext()) {
+					LocatedFileStatus file = files.next();
+					sources.add(file);
+					targets.add(new Path(root,file.getPath().toUri().getPath().substring(prefix.length() + 1)));
+				}
+			} else {
+				sources.add(match);
+				targets.add(root);
+			}
+		}
+		LOG.debug("Copying " + sources.size() + " files from " + src + " to " + dst + " with " + threads + " threads");
+		return copy(srcFs,sources,dstFs,targets);
+	}
+
+	private static boolean isDirectory(FileSystem fs, Path path) throws IOException {
+		try {
+			return fs.getFileStatus(path).isDirectory();
+		} catch (FileNotFoundException e) {
+			return false;
+		}
+	}
+
+	private Report copy(final FileSystem srcFs, List<FileStatus> sources, final FileSystem dstFs, List<Path> targets) throws IOException {
+		ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads,Math.max(sources.size(),1)));
+		try {
+			List<Future<Result>> futures = new ArrayList<>();
+			for (int i = 0; i < sources.size(); i++) {
+				final FileStatus source = sources.get(i);
+				final Path target = targets.get(i);
+				futures.add(pool.submit(new Callable<Result>() {
+					@Override
+					public Result call() {
+						long start = System.nanoTime();
+						try {
+							if (matches(srcFs,source,dstFs,target))
+								return new Result(source.getPath(),target,0,System.nanoTime() - start,true,null);
+							long bytes = copyFile(srcFs,source.getPath(),dstFs,target);
+							return new Result(source.getPath(),target,bytes,System.nanoTime() - start,false,null);
+						} catch (IOException | RuntimeException e) {
+							LOG.error("Error copying " + source.getPath() + " to " + target,e);
+							return new Result(source.getPath(),target,0,System.nanoTime() - start,false,e);
+						}
+					}
+				}));
+			}
+			List<Result> results = new ArrayList<>();
+			for (Future<Result> future : futures)
+				results.add(Util.getResult(future));
+			return new Report(results);
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * @return true if target exists and has the same length and checksum (or, without checksums, contents) as source.
+	 */
+	private boolean matches(FileSystem srcFs, FileStatus source, FileSystem dstFs, Path target) throws IOException {
+		FileStatus existing;
+		try {
+			existing = dstFs.getFileStatus(target);
+		} catch (FileNotFoundException e) {
+			return false;
+		}
+		if (!existing.isFile() || existing.getLen() != source.getLen())
+			return false;
+		FileChecksum srcChecksum = srcFs.getFileChecksum(source.getPath());
+		FileChecksum dstChecksum = srcChecksum == null ? null : dstFs.getFileChecksum(target);
+		// HDFS checksums (MD5-of-MD5-of-CRC) depend on the block size and bytes per CRC, which are 
+		// part of the algorithm name, so checksums of different algorithms cannot be compared.
+		if (srcChecksum != null && dstChecksum != null && srcChecksum.getAlgorithmName().equals(dstChecksum.getAlgorithmName())
+			&& srcChecksum.getLength() == dstChecksum.getLength())
+			return srcChecksum.equals(dstChecksum);
+		return sameContents(srcFs,source.getPath(),dstFs,target);
+	}
+
+	/**
+	 * @return true if source and target hold the same bytes (they are known to be the same length).
+	 */
+	private boolean sameContents(FileSystem srcFs, Path source, FileSystem dstFs, Path target) throws IOException {
+		try (InputStream src = srcFs.open(source,bufferSize);
+			 InputStream dst = dstFs.open(target,bufferSize)) {
+			byte[] srcBuffer = new byte[bufferSize];
+			byte[] dstBuffer = new byte[bufferSize];
+			int read;
+			while ((read = src.read(srcBuffer)) > 0) {
+				IOUtils.readFully(dst,dstBuffer,0,read);
+				for (int i = 0; i < read; i++)
+					if (srcBuffer[i] != dstBuffer[i])
+						return false;
+			}
+			return dst.read() < 0;
+		}
+	}
+
+	private long copyFile(FileSystem srcFs, Path source, FileSystem dstFs, Path target) throws IOException {
+		short targetReplication = replication > 0 ? replication : dstFs.getDefaultReplication(target);
+		long targetBlockSize = blockSize > 0 ? blockSize : dstFs.getDefaultBlockSize(target);
+		FileStatusCache statusCache = HDFSUtil.getStatusCache(conf);
+		long timer = Metrics.start();
+		long bytes = 0;
+		boolean done = false;
+		try (InputStream in = srcFs.open(source,bufferSize);
+			 OutputStream out = dstFs.create(target,true,bufferSize,targetReplication,targetBlockSize)) {
+			byte[] buffer = new byte[bufferSize];
+			int read;
+			while ((read = in.read(buffer)) > 0) {
+				out.write(buffer,0,read);
+				bytes += read;
+			}
+			done = true;
+			Metrics.increment(Metrics.Counter.FILES_COPIED);
+			Metrics.add(Metrics.Counter.BYTES_COPIED,bytes);
+			Metrics.stop(Metrics.Timer.COPY,timer);
+		} finally {
+			if (!done)
+				IOUtils.cleanup(LOG,new TargetCleanup(dstFs,target));
+			if (dstFs == statusCache.getFileSystem())
+				statusCache.invalidate(target);
+		}
+		return bytes;
+	}
+
+	/**
+	 * Removes a partially copied target.
+	 */
+	private static final class TargetCleanup implements Closeable {
+		private final FileSystem fs;
+		private final Path target;
+
+		TargetCleanup(FileSystem fs, Path target) {
+			this.fs = fs;
+			this.target = target;
+		}
+
+		@Override
+		public void close() throws IOException {
+			fs.delete(target,false);
+		}
+	}
+
+	/**
+	 * Outcome of copying one file.
+	 */
+	public static final class Result {
+		private final Path source;
+		private final Path target;
+		private final long bytes;
+		private final long nanos;
+		private final boolean skipped;
+		private final Exception error;
+
+		Result(Path source, Path target, long bytes, long nanos, boolean skipped, Exception error) {
+			this.source = source;
+			this.target = target;
+			this.bytes = bytes;
+			this.nanos = nanos;
+			this.skipped = skipped;
+			this.error = error;
+		}
+
+		public Path getSource() {
+			return source;
+		}
+
+		public Path getTarget() {
+			return target;
+		}
+
+		/**
+		 * @return number of bytes copied (0 if skipped).
+		 */
+		public long getBytes() {
+			return bytes;
+		}
+
+		/**
+		 * @return elapsed time of the copy (or check) in nanoseconds.
+		 */
+		public long getNanos() {
+			return nanos;
+		}
+
+		/**
+		 * @return copy throughput.
+		 */
+		public double getBytesPerSecond() {
+			return nanos == 0 ? 0 : bytes * 1e9 / nanos;
+		}
+
+		/**
+		 * @return true if the target already matched the source, so was not copied.
+		 */
+		public boolean isSkipped() {
+			return skipped;
+		}
+
+		/**
+		 * @return the exception that caused the copy to fail, null if it succeeded.
+		 */
+		public Exception getError() {
+			return error;
+		}
+
+		public boolean isSuccess() {
+			return error == null;
+		}
+
+		@Override
+		public String toString() {
+			if (error != null)
+				return source + " -> " + target + " failed: " + error;
+			if (skipped)
+				return source + " -> " + target + " skipped";
+			return String.format("%s -> %s %d bytes %.1f MB/s",source,target,bytes,getBytesPerSecond() / (1024 * 1024));
+		}
+	}
+
+	/**
+	 * Outcome of copying each file.
+	 */
+	public static final class Report {
+		private final List<Result> results;
+
+		Report(List<Result> results) {
+			this.results = Collections.unmodifiableList(results);
+		}
+
+		/**
+		 * @return a result for every source file.
+		 */
+		public List<Result> getResults() {
+			return results;
+		}
+
+		/**
+		 * @return results of the copies that failed.
+		 */
+		public List<Result> getFailures() {
+			List<Result> failures = new ArrayList<>();
+			for (Result result : results)
+				if (!result.isSuccess())
+					failures.add(result);
+			return failures;
+		}
+
+		/**
+		 * @return true if every file was copied (or skipped).
+		 */
+		public boolean isSuccess() {
+			return getFailures().isEmpty();
+		}
+
+		/**
+		 * @return number of files copied (not counting skipped or failed files).
+		 */
+		public int getCopied() {
+			int copied = 0;
+			for (Result result : results)
+				if (result.isSuccess() && !result.isSkipped())
+					copied++;
+			return copied;
+		}
+
+		/**
+		 * @return number of files skipped as the target already matched.
+		 */
+		public int getSkipped() {
+			int skipped = 0;
+			for (Result result : results)
+				if (result.isSkipped())
+					skipped++;
+			return skipped;
+		}
+
+		/**
+		 * @return total bytes copied.
+		 */
+		public long getBytes() {
+			long bytes = 0;
+			for (Result result : results)
+				bytes += result.getBytes();
+			return bytes;
+		}
+
+		@Override
+		public String toString() {
+			return results.size() + " files, " + getCopied() + " copied, " + getSkipped() + " skipped, "
+				   + getFailures().size() + " failed, " + getBytes() + " bytes";
+		}
+	}
+
+}
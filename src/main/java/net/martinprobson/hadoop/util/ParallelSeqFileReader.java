@@ -0,0 +1,311 @@
+package net.martinprobson.hadoop.util;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.PathFilter;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.util.ReflectionUtils;
+
+/**
+ * Read a directory (or glob) of SequenceFiles, such as the <code>part-r-*</code> output of a job,
+ * using a bounded pool of threads with one {@link SeqFileReader} per file.
+ * <p>Large files can optionally be divided at sync markers into ranges of
+ * {@link #setSplitSize splitSize} bytes, which are read concurrently.
+ * <p>Records are delivered to a {@link RecordHandler} in one of two ways: -
+ * <ul>
+ * <li>unordered (the default) - the handler is called directly, and concurrently, by the reading
+ * threads, each with its own re-used key/value instances. The handler must be thread safe.</li>
+ * <li>{@link #setOrdered ordered} - reading threads serialize records into batches that are
+ * handed back through bounded queues, and the handler is called on the calling thread in file
+ * (and then record) order. Files are ordered by name.</li>
+ * </ul>
+ * Hidden files (names starting with <code>_</code> or <code>.</code>, e.g. <code>_SUCCESS</code>) are ignored.
+ *
+ * @author martinr
+ *
+ */
+public class ParallelSeqFileReader {
+
+	private static final Log LOG = LogFactory.getLog(ParallelSeqFileReader.class);
+
+	/** Ignore _SUCCESS, _logs, .crc files etc. */
+	static final PathFilter HIDDEN_FILE_FILTER = new PathFilter() {
+		@Override
+		public boolean accept(Path p) {
+			String name = p.getName();
+			return !name.startsWith("_") && !name.startsWith(".");
+		}
+	};
+
+	private static final int DEFAULT_BATCH_BYTES = 256 * 1024;
+	private static final int DEFAULT_QUEUE_DEPTH = 4;
+
+	private final Configuration conf;
+	private final int threads;
+	private long splitSize = 0;
+	private boolean ordered = false;
+	private int batchBytes = DEFAULT_BATCH_BYTES;
+	private int queueDepth = DEFAULT_QUEUE_DEPTH;
+
+	/**
+	 * @param conf - Hadoop configuration referencing file system to use.
+	 * @param threads - Maximum number of files (or ranges) to read at the same time.
+	 */
+	public ParallelSeqFileReader(Configuration conf, int threads) {
+		if (threads <= 0)
+			throw new IllegalArgumentException("threads must be > 0");
+		this.conf = conf;
+		this.threads = threads;
+	}
+
+	/**
+	 * Divide files larger than splitSize into ranges of (about) splitSize bytes, aligned at sync markers.
+	 * @param splitSize - range size in bytes, 0 (the default) reads each file with a single reader.
+	 * @return this reader.
+	 */
+	public ParallelSeqFileReader setSplitSize(long splitSize) {
+		this.splitSize = splitSize;
+		return this;
+	}
+
+	/**
+	 * @param ordered - if true the handler is called on the calling thread in file order,
+	 * otherwise it is called concurrently by the reading threads.
+	 * @return this reader.
+	 */
+	public ParallelSeqFileReader setOrdered(boolean ordered) {
+		this.ordered = ordered;
+		return this;
+	}
+
+	/**
+	 * Size of the batches handed from reading threads to the calling thread in ordered mode.
+	 * A reading thread blocks once queueDepth batches of its file (or range) are waiting to be
+	 * handled, so larger files are never held in memory in full.
+	 * @param batchBytes - bytes of serialized records per batch.
+	 * @param queueDepth - batches buffered per file (or range).
+	 * @return this reader.
+	 */
+	public ParallelSeqFileReader setBatching(int batchBytes, int queueDepth) {
+		this.batchBytes = batchBytes;
+		this.queueDepth = queueDepth;
+		return this;
+	}
+
+	/**
+	 * List the (non hidden) files matched by path, sorted by name.
+	 * @param fs - file system to use.
+	 * @param path - a file, a directory or a glob.
+	 * @return matching files.
+	 * @throws IOException
+	 */
+	static List<FileStatus> listFiles(FileSystem fs, Path path) throws IOException {
+		FileStatus[] matches = fs.globStatus(path,HIDDEN_FILE_FILTER);
+		if (matches == null)
+			throw new FileNotFoundException(path + " does not exist");
+		List<FileStatus> files = new ArrayList<>();
+		for (FileStatus match : matches) {
+			if (match.isDirectory())
+				files.addAll(Arrays.asList(fs.listStatus(match.getPath(),HIDDEN_FILE_FILTER)));
+			else
+				files.add(match);
+		}
+		List<FileStatus> result = new ArrayList<>();
+		for (FileStatus file : files)
+			if (file.isFile())
+				result.add(file);
+		Collections.sort(result,new Comparator<FileStatus>() {
+			@Override
+			public int compare(FileStatus a, FileStatus b) {
+				return a.getPath().compareTo(b.getPath());
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * Read every record of every file matched by path.
+	 * @param path - a SequenceFile, a directory of SequenceFiles or a glob.
+	 * @param handler - called for each record, see class description for threading.
+	 * @return number of records read.
+	 * @throws IOException if a file cannot be read, or the handler fails.
+	 */
+	public <K extends Writable, V extends Writable> long read(Path path, RecordHandler<K,V> handler) throws IOException {
+		FileSystem fs = path.getFileSystem(conf);
+		List<Range> ranges = new ArrayList<>();
+		for (FileStatus file : listFiles(fs,path)) {
+			long length = file.getLen();
+			if (splitSize <= 0 || length <= splitSize) {
+				ranges.add(new Range(file.getPath(),0,Long.MAX_VALUE));
+			} else {
+				for (long start = 0; start < length; start += splitSize)
+					ranges.add(new Range(file.getPath(),start,Math.min(splitSize,length - start)));
+			}
+		}
+		LOG.debug("Reading " + ranges.size() + " ranges from " + path + " with " + threads + " threads");
+		ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads,Math.max(ranges.size(),1)));
+		try {
+			return ordered ? readOrdered(pool,ranges,handler) : readUnordered(pool,ranges,handler);
+		} finally {
+			Util.shutdown(pool);
+		}
+	}
+
+	private <K extends Writable, V extends Writable> long readUnordered(ExecutorService pool, List<Range> ranges,
+																		final RecordHandler<K,V> handler) throws IOException {
+		List<Future<Long>> results = new ArrayList<>();
+		for (final Range range : ranges) {
+			results.add(pool.submit(new Callable<Long>() {
+				@Override
+				public Long call() throws IOException {
+					long records = 0;
+					try (SeqFileReader<K,V> reader = new SeqFileReader<>(conf,range.file,range.start,range.length)) {
+						while (reader.next()) {
+							// Stop once read has failed (see Util.shutdown), rather than handle records after it returns.
+							Util.checkInterrupted();
+							handler.handle(reader.getKey(),reader.getValue());
+							records++;
+						}
+					}
+					return records;
+				}
+			}));
+		}
+		long records = 0;
+		for (Future<Long> result : results)
+			records += Util.getResult(result);
+		return records;
+	}
+
+	private <K extends Writable, V extends Writable> long readOrdered(ExecutorService pool, List<Range> ranges,
+																	  RecordHandler<K,V> handler) throws IOException {
+		List<BlockingQueue<Batch>> queues = new ArrayList<>();
+		List<Future<Long>> results = new ArrayList<>();
+		for (final Range range : ranges) {
+			final BlockingQueue<Batch> queue = new ArrayBlockingQueue<>(queueDepth);
+			queues.add(queue);
+			// Tasks start in submission order, so the range being consumed always has a running reader.
+			results.add(pool.submit(new Callable<Long>() {
+				@Override
+				public Long call() throws IOException, InterruptedException {
+					long records = 0;
+					boolean interrupted = false;
+					try (SeqFileReader<Writable,Writable> reader = new SeqFileReader<>(conf,range.file,range.start,range.length)) {
+						Batch batch = new Batch(reader.getKeyClass(),reader.getValueClass(),batchBytes);
+						while (reader.next()) {
+							reader.getKey().write(batch.buffer);
+							reader.getValue().write(batch.buffer);
+							batch.records++;
+							records++;
+							if (batch.buffer.getLength() >= batchBytes) {
+								queue.put(batch);
+								batch = new Batch(reader.getKeyClass(),reader.getValueClass(),batchBytes);
+							}
+						}
+						queue.put(batch);
+					} catch (InterruptedException e) {
+						// The read was abandoned (see read), nothing will take END from a full queue.
+						interrupted = true;
+						throw e;
+					} finally {
+						if (!interrupted)
+							queue.put(Batch.END);
+					}
+					return records;
+				}
+			}));
+		}
+		long records = 0;
+		DataInputBuffer in = new DataInputBuffer();
+		K key = null;
+		V value = null;
+		for (int i = 0; i < ranges.size(); i++) {
+			BlockingQueue<Batch> queue = queues.get(i);
+			Batch batch;
+			while ((batch = take(queue)) != Batch.END) {
+				if (key == null || key.getClass() != batch.keyClass)
+					key = newInstance(batch.keyClass);
+				if (value == null || value.getClass() != batch.valueClass)
+					value = newInstance(batch.valueClass);
+				in.reset(batch.buffer.getData(),batch.buffer.getLength());
+				for (int n = 0; n < batch.records; n++) {
+					key.readFields(in);
+					value.readFields(in);
+					handler.handle(key,value);
+				}
+			}
+			// Surfaces the reader's exception, if it failed.
+			records += Util.getResult(results.get(i));
+		}
+		return records;
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T> T newInstance(Class<?> c) {
+		return (T) ReflectionUtils.newInstance(c,conf);
+	}
+
+	private static Batch take(BlockingQueue<Batch> queue) throws IOException {
+		try {
+			return queue.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted waiting for records");
+		}
+	}
+
+	/**
+	 * A byte range of a file.
+	 */
+	private static final class Range {
+		final Path file;
+		final long start;
+		final long length;
+
+		Range(Path file, long start, long length) {
+			this.file = file;
+			this.start = start;
+			this.length = length;
+		}
+	}
+
+	/**
+	 * Serialized records passed from a reading thread to the calling thread.
+	 */
+	private static final class Batch {
+		static final Batch END = new Batch(null,null,0);
+
+		final Class<?> keyClass;
+		final Class<?> valueClass;
+		final DataOutputBuffer buffer;
+		int records;
+
+		Batch(Class<?> keyClass, Class<?> valueClass, int size) {
+			this.keyClass = keyClass;
+			this.valueClass = valueClass;
+			this.buffer = new DataOutputBuffer(size);
+		}
+	}
+
+}
@@ -0,0 +1,290 @@
+package net.martinprobson.hadoop.util;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.util.ReflectionUtils;
+
+/**
+ * Write records into a directory of SequenceFiles, <code>part-00000</code>, <code>part-00001</code>
+ * etc., one {@link SeqFileWriter} and thread per part file, so the parts are serialized, compressed
+ * and written concurrently.
+ * <p>The calling thread serializes records into batches of about {@link #setBatching batchBytes},
+ * which are taken by whichever writing thread is free, so faster parts receive more records. A fixed
+ * number of batches circulate between the calling and writing threads, so the caller blocks (rather
+ * than buffering more records) when the writers fall behind.
+ * <p>Records within a part are in the order given, but records are not otherwise ordered across
+ * parts. The parts can be read back with {@link ParallelSeqFileReader}.
+ *
+ * @author martinr
+ *
+ */
+public class ParallelSeqFileWriter {
+
+	private static final Log LOG = LogFactory.getLog(ParallelSeqFileWriter.class);
+
+	private static final int DEFAULT_BATCH_BYTES = 256 * 1024;
+	private static final int DEFAULT_QUEUE_DEPTH = 2;
+
+	private final Configuration conf;
+	private final int parts;
+	private SeqFileWriter.Options options = new SeqFileWriter.Options();
+	private int batchBytes = DEFAULT_BATCH_BYTES;
+	private int queueDepth = DEFAULT_QUEUE_DEPTH;
+
+	/**
+	 * @param conf - Hadoop configuration referencing file system to use.
+	 * @param parts - number of part files (and writing threads).
+	 */
+	public ParallelSeqFileWriter(Configuration conf, int parts) {
+		if (parts <= 0)
+			throw new IllegalArgumentException("parts must be > 0");
+		this.conf = conf;
+		this.parts = parts;
+	}
+
+	/**
+	 * @param options - compression, buffer and block settings of every part.
+	 * @return this writer.
+	 */
+	public ParallelSeqFileWriter setOptions(SeqFileWriter.Options options) {
+		this.options = options;
+		return this;
+	}
+
+	/**
+	 * Size of the batches handed from the calling thread to the writing threads.
+	 * @param batchBytes - bytes of serialized records per batch.
+	 * @param queueDepth - batches buffered per part.
+	 * @return this writer.
+	 */
+	public ParallelSeqFileWriter setBatching(int batchBytes, int queueDepth) {
+		if (batchBytes <= 0 || queueDepth <= 0)
+			throw new IllegalArgumentException("batchBytes and queueDepth must be > 0");
+		this.batchBytes = batchBytes;
+		this.queueDepth = queueDepth;
+		return this;
+	}
+
+	/**
+	 * @param dir - output directory.
+	 * @param part - part number.
+	 * @return path of the part file.
+	 */
+	static Path partFile(Path dir, int part) {
+		return new Path(dir,String.format("part-%05d",part));
+	}
+
+	/**
+	 * Write every record of records into the part files of dir, replacing any existing parts of the same name.
+	 * @param dir - output directory, created if it does not exist.
+	 * @param keyClass - class of the keys.
+	 * @param valueClass - class of the values.
+	 * @param records - key/value pairs, whose keys and values may be re-used between pairs.
+	 * @return the records and bytes written to each part.
+	 * @throws IOException if a part cannot be written.
+	 */
+	public <K extends Writable, V extends Writable> Report write(Path dir, final Class<K> keyClass, final Class<V> valueClass,
+																 Iterator<? extends Pair<? extends K,? extends V>> records) throws IOException {
+		LOG.debug("Writing " + parts + " parts to " + dir);
+		long start = System.nanoTime();
+		int batches = parts * (queueDepth + 1);
+		final BlockingQueue<Batch> free = new ArrayBlockingQueue<>(batches);
+		for (int i = 0; i < batches; i++)
+			free.add(new Batch(batchBytes));
+		final BlockingQueue<Batch> full = new ArrayBlockingQueue<>(batches + parts);
+		final long[] partRecords = new long[parts];
+		final long[] partBytes = new long[parts];
+		List<Path> files = new ArrayList<>();
+		ExecutorService pool = Executors.newFixedThreadPool(parts);
+		try {
+			List<Future<Void>> results = new ArrayList<>();
+			for (int p = 0; p < parts; p++) {
+				final int part = p;
+				final Path file = partFile(dir,part);
+				files.add(file);
+				results.add(pool.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws IOException, InterruptedException {
+						K key = ReflectionUtils.newInstance(keyClass,conf);
+						V value = ReflectionUtils.newInstance(valueClass,conf);
+						DataInputBuffer in = new DataInputBuffer();
+						try (SeqFileWriter<K,V> writer = new SeqFileWriter<>(conf,file,keyClass,valueClass,options)) {
+							Batch batch;
+							while ((batch = full.take()) != Batch.END) {
+								in.reset(batch.buffer.getData(),batch.buffer.getLength());
+								for (int n = 0; n < batch.records; n++) {
+									key.readFields(in);
+									value.readFields(in);
+									writer.append(key,value);
+								}
+								batch.clear();
+								free.put(batch);
+							}
+							partRecords[part] = writer.getRecords();
+						}
+						partBytes[part] = file.getFileSystem(conf).getFileStatus(file).getLen();
+						return null;
+					}
+				}));
+			}
+			Batch batch = take(free,results);
+			while (records.hasNext()) {
+				Pair<? extends K,? extends V> record = records.next();
+				record.getKey().write(batch.buffer);
+				record.getValue().write(batch.buffer);
+				batch.records++;
+				if (batch.buffer.getLength() >= batchBytes) {
+					full.add(batch);
+					batch = take(free,results);
+				}
+			}
+			if (batch.records > 0)
+				full.add(batch);
+			for (int p = 0; p < parts; p++)
+				full.add(Batch.END);
+			for (Future<Void> result : results)
+				Util.getResult(result);
+		} finally {
+			pool.shutdownNow();
+		}
+		return new Report(files,partRecords,partBytes,System.nanoTime() - start);
+	}
+
+	/**
+	 * Take a free batch, failing if a writing thread has failed (so will no longer free batches).
+	 */
+	private static Batch take(BlockingQueue<Batch> free, List<Future<Void>> results) throws IOException {
+		try {
+			while (true) {
+				Batch batch = free.poll(100,TimeUnit.MILLISECONDS);
+				if (batch != null)
+					return batch;
+				for (Future<Void> result : results)
+					if (result.isDone())
+						Util.getResult(result);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted waiting for writers");
+		}
+	}
+
+	/**
+	 * Serialized records passed from the calling thread to a writing thread.
+	 */
+	private static final class Batch {
+		static final Batch END = new Batch(0);
+
+		final DataOutputBuffer buffer;
+		int records;
+
+		Batch(int size) {
+			this.buffer = new DataOutputBuffer(size);
+		}
+
+		void clear() {
+			buffer.reset();
+			records = 0;
+		}
+	}
+
+	/**
+	 * Outcome of a write.
+	 */
+	public static final class Report {
+		private final List<Path> files;
+		private final long[] records;
+		private final long[] bytes;
+		private final long nanos;
+
+		Report(List<Path> files, long[] records, long[] bytes, long nanos) {
+			this.files = Collections.unmodifiableList(files);
+			this.records = records;
+			this.bytes = bytes;
+			this.nanos = nanos;
+		}
+
+		/**
+		 * @return the part files, in part order.
+		 */
+		public List<Path> getFiles() {
+			return files;
+		}
+
+		/**
+		 * @param part
+		 * @return number of records written to part.
+		 */
+		public long getRecords(int part) {
+			return records[part];
+		}
+
+		/**
+		 * @return number of records written.
+		 */
+		public long getRecords() {
+			long total = 0;
+			for (long r : records)
+				total += r;
+			return total;
+		}
+
+		/**
+		 * @return bytes written (the total length of the part files).
+		 */
+		public long getBytes() {
+			long total = 0;
+			for (long b : bytes)
+				total += b;
+			return total;
+		}
+
+		/**
+		 * @return elapsed time of the write.
+		 */
+		public long getNanos() {
+			return nanos;
+		}
+
+		/**
+		 * @return records written per second.
+		 */
+		public double getRecordsPerSecond() {
+			return nanos == 0 ? 0 : getRecords() * 1e9 / nanos;
+		}
+
+		/**
+		 * @return bytes written per second.
+		 */
+		public double getBytesPerSecond() {
+			return nanos == 0 ? 0 : getBytes() * 1e9 / nanos;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%d parts, %d records, %d bytes, %.0f records/s, %.1f MB/s",files.size(),getRecords(),getBytes(),
+								 getRecordsPerSecond(),getBytesPerSecond() / (1024 * 1024));
+		}
+	}
+
+}
@@ -0,0 +1,135 @@
+package net.martinprobson.hadoop.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.BlockLocation;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+/**
+ * Read the lines of a large text file concurrently.
+ * <p>The file is divided into byte ranges, one per HDFS block (from
+ * <code>FileSystem.getFileBlockLocations</code>), optionally sub-divided further into ranges of
+ * at most {@link #setSplitSize splitSize} bytes (the local file system reports a single block per file).
+ * The ranges are read by a bounded pool of threads, each with a {@link TextLineReader} that
+ * uses the same rule as Hadoop's <code>LineRecordReader</code>: every range except the first 
+ * skips its first (partial) line, and every range reads the line that straddles its end, so 
+ * each line is read exactly once.
+ * <p>Compressed files are decompressed (see {@link CodecStreams}). Files compressed with bzip2
+ * are divided into ranges like uncompressed files, other compressed files are read by one thread.
+ * <p>The {@link LineHandler} is called concurrently by the reading threads (each with its own
+ * re-used <code>Text</code>), so must be thread safe. Lines are not delivered in file order.
+ *
+ * @author martinr
+ *
+ */
+public class ParallelTextReader {
+
+	private static final Log LOG = LogFactory.getLog(ParallelTextReader.class);
+
+	private final Configuration conf;
+	private final int threads;
+	private long splitSize = 0;
+
+	/**
+	 * @param conf - Hadoop configuration referencing file system to use.
+	 * @param threads - Maximum number of ranges to read at the same time.
+	 */
+	public ParallelTextReader(Configuration conf, int threads) {
+		if (threads <= 0)
+			throw new IllegalArgumentException("threads must be > 0");
+		this.conf = conf;
+		this.threads = threads;
+	}
+
+	/**
+	 * Divide blocks larger than splitSize into ranges of at most splitSize bytes.
+	 * @param splitSize - range size in bytes, 0 (the default) reads one range per block.
+	 * @return this reader.
+	 */
+	public ParallelTextReader setSplitSize(long splitSize) {
+		this.splitSize = splitSize;
+		return this;
+	}
+
+	/**
+	 * Divide a file into ranges, aligned to its block locations. Files compressed with a codec 
+	 * that is not splittable are read as a single range.
+	 * @param fs - file system holding the file.
+	 * @param file - status of the file.
+	 * @return list of {start,length} ranges covering the file.
+	 * @throws IOException
+	 */
+	List<long[]> getRanges(FileSystem fs, FileStatus file) throws IOException {
+		List<long[]> ranges = new ArrayList<>();
+		if (!CodecStreams.isSplittable(CodecStreams.getCodec(conf,file.getPath()))) {
+			ranges.add(new long[] { 0, Long.MAX_VALUE });
+			return ranges;
+		}
+		BlockLocation[] blocks = fs.getFileBlockLocations(file,0,file.getLen());
+		if (blocks == null || blocks.length == 0)
+			blocks = new BlockLocation[] { new BlockLocation(null,null,0,file.getLen()) };
+		for (BlockLocation block : blocks) {
+			long blockEnd = block.getOffset() + block.getLength();
+			long step = splitSize > 0 ? splitSize : block.getLength();
+			for (long start = block.getOffset(); start < blockEnd; start += step)
+				ranges.add(new long[] { start, Math.min(step,blockEnd - start) });
+		}
+		return ranges;
+	}
+
+	/**
+	 * Read every line of fileName.
+	 * @param fileName - text file to read.
+	 * @param handler - called (concurrently) for each line.
+	 * @return number of lines read.
+	 * @throws IOException if the file cannot be read, or the handler fails.
+	 */
+	public long read(final Path fileName, final LineHandler handler) throws IOException {
+		FileSystem fs = fileName.getFileSystem(conf);
+		List<long[]> ranges = getRanges(fs,fs.getFileStatus(fileName));
+		LOG.debug("Reading " + ranges.size() + " ranges from " + fileName + " with " + threads + " threads");
+		ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads,Math.max(ranges.size(),1)));
+		try {
+			List<Future<Long>> results = new ArrayList<>();
+			for (final long[] range : ranges) {
+				results.add(pool.submit(new Callable<Long>() {
+					@Override
+					public Long call() throws IOException {
+						return readRange(fileName,range[0],range[1],handler);
+					}
+				}));
+			}
+			long lines = 0;
+			for (Future<Long> result : results)
+				lines += Util.getResult(result);
+			return lines;
+		} finally {
+			Util.shutdown(pool);
+		}
+	}
+
+	private long readRange(Path fileName, long start, long length, LineHandler handler) throws IOException {
+		long lines = 0;
+		try (TextLineReader reader = new TextLineReader(conf,fileName,start,length)) {
+			while (reader.next()) {
+				// Stop once read has failed (see Util.shutdown), rather than handle lines after it returns.
+				Util.checkInterrupted();
+				handler.handle(reader.getLine());
+				lines++;
+			}
+		}
+		return lines;
+	}
+
+}
@@ -0,0 +1,519 @@
+package net.martinprobson.hadoop.util;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocatedFileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
+import org.apache.hadoop.io.Text;
+
+/**
+ * Parse delimited text files on all cores of a single machine, outside MapReduce.
+ * <p>The pipeline has three stages, connected by bounded queues: -
+ * <ul>
+ * <li>reader - one thread reading the lines of each file in turn (with a {@link TextLineReader},
+ * so local or HDFS, compressed or not) and copying them into batches of up to
+ * {@link #setBatchLines batchLines} lines.</li>
+ * <li>workers - threads each with their own {@link DelimRecord}, parsing each line of a batch and
+ * passing it to the {@link Mapper}, which returns the value (if any) to be consumed.</li>
+ * <li>consumer - one thread passing the values of each batch to the {@link Consumer}, so the
+ * consumer need not be thread safe.</li>
+ * </ul>
+ * <p>Lines and values are handed between threads a batch at a time, and the batches are recycled,
+ * so the queues are touched once per batch rather than once per line, and the pipeline does not
+ * allocate per line. A fixed number of line batches circulate ({@link #setQueueBatches queueBatches}
+ * plus one per thread), so if the workers or the consumer fall behind the reader blocks, rather than
+ * the queued lines growing without limit.
+ * <p>Values are consumed in batches as the workers finish them, so not in file order.
+ * A failure in any stage (or callback) stops the other stages and is thrown by {@link #run run}.
+ * <p>Each run returns a {@link Report} of the throughput of each stage, and the time each spent
+ * blocked on its queues, which shows the stage limiting the pipeline: a reader that waits
+ * for free batches, or workers that wait for the consumer, mean more workers will not help.
+ * <p>The parser is shared (read only) by the workers, and must not be changed during a run.
+ * Lines are read by a single thread, typically at several times the rate one worker parses them,
+ * so a reader can keep many workers busy, see {@link Stage#getWaitNanos()}.
+ *
+ * @author martinr
+ *
+ */
+public class ParsePipeline {
+
+	private static final Log LOG = LogFactory.getLog(ParsePipeline.class);
+
+	private static final int DEFAULT_BATCH_LINES = 1024;
+
+	/** Marks the end of the lines (one per worker), and of each worker's values. */
+	private static final LineBatch END_LINES = new LineBatch(0);
+	private static final List<Object> END_VALUES = Collections.emptyList();
+
+	/**
+	 * Worker stage callback, called concurrently by the worker threads.
+	 * @param <T> - type of the values passed to the consumer.
+	 */
+	public interface Mapper<T> {
+
+		/**
+		 * Turn one parsed line into a value for the consumer.
+		 * <p>The record is re-used for the next line, so the value must not refer to it.
+		 * @param record - the parsed line.
+		 * @return the value to consume, or null to drop the line.
+		 * @throws IOException
+		 */
+		T map(DelimRecord record) throws IOException;
+
+	}
+
+	/**
+	 * Consumer stage callback, called by a single thread.
+	 * @param <T> - type of the values returned by the mapper.
+	 */
+	public interface Consumer<T> {
+
+		/**
+		 * Process one value.
+		 * @param value
+		 * @throws IOException
+		 */
+		void consume(T value) throws IOException;
+
+	}
+
+	private final Configuration conf;
+	private final DelimLineParser parser;
+	private final int workers;
+	private int batchLines = DEFAULT_BATCH_LINES;
+	private int queueBatches;
+	private String[] nullValues = null;
+
+	/**
+	 * @param conf - Hadoop configuration referencing file system to use.
+	 * @param parser - field separator and schema of the text.
+	 * @param workers - number of parsing threads, e.g. the number of cores less two
+	 * (for the reader and consumer).
+	 */
+	public ParsePipeline(Configuration conf, DelimLineParser parser, int workers) {
+		if (workers <= 0)
+			throw new IllegalArgumentException("workers must be > 0");
+		this.conf = conf;
+		this.parser = parser;
+		this.workers = workers;
+		this.queueBatches = 2 * workers;
+	}
+
+	/**
+	 * @param batchLines - lines per batch handed from the reader to a worker (default {@value #DEFAULT_BATCH_LINES}).
+	 * @return this pipeline.
+	 */
+	public ParsePipeline setBatchLines(int batchLines) {
+		if (batchLines <= 0)
+			throw new IllegalArgumentException("batchLines must be > 0");
+		this.batchLines = batchLines;
+		return this;
+	}
+
+	/**
+	 * @param queueBatches - capacity, in batches, of the queues between the stages (default twice the workers).
+	 * @return this pipeline.
+	 */
+	public ParsePipeline setQueueBatches(int queueBatches) {
+		if (queueBatches <= 0)
+			throw new IllegalArgumentException("queueBatches must be > 0");
+		this.queueBatches = queueBatches;
+		return this;
+	}
+
+	/**
+	 * @param values - field values the workers' records treat as null (see {@link ParsedRecord#setNullValues}).
+	 * @return this pipeline.
+	 */
+	public ParsePipeline setNullValues(String... values) {
+		this.nullValues = values;
+		return this;
+	}
+
+	/**
+	 * Parse every line of path.
+	 * @param path - a file, a directory (read recursively) or a glob.
+	 * @param mapper - called (concurrently) for each line.
+	 * @param consumer - called (by one thread) for each value returned by mapper.
+	 * @return throughput of each stage.
+	 * @throws IOException if the files cannot be read, or a callback fails.
+	 */
+	public <T> Report run(Path path, Mapper<T> mapper, Consumer<T> consumer) throws IOException {
+		List<Path> files = listFiles(path);
+		LOG.debug("Parsing " + files.size() + " files from " + path + " with " + workers + " workers");
+		Run<T> run = new Run<>(files,mapper,consumer);
+		long start = System.nanoTime();
+		ExecutorService pool = Executors.newFixedThreadPool(workers + 2);
+		try {
+			CompletionService<Void> tasks = new ExecutorCompletionService<>(pool);
+			tasks.submit(run.reader());
+			for (int i = 0; i < workers; i++)
+				tasks.submit(run.worker());
+			tasks.submit(run.consumer());
+			for (int i = 0; i < workers + 2; i++)
+				Util.getResult(tasks.take());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted waiting for pipeline");
+		} finally {
+			pool.shutdownNow();
+		}
+		return new Report(System.nanoTime() - start,run.readStage,run.parseStage,run.consumeStage);
+	}
+
+	private List<Path> listFiles(Path path) throws IOException {
+		FileSystem fs = path.getFileSystem(conf);
+		FileStatus[] matches = fs.globStatus(path);
+		if (matches == null || matches.length == 0)
+			throw new FileNotFoundException(path + " does not exist");
+		List<Path> files = new ArrayList<>();
+		for (FileStatus match : matches) {
+			if (match.isDirectory()) {
+				RemoteIterator<LocatedFileStatus> listing = fs.listFiles(match.getPath(),true);
+				while (listing.hasNext())
+					files.add(listing.next().getPath());
+			} else {
+				files.add(match.getPath());
+			}
+		}
+		return files;
+	}
+
+	/**
+	 * A batch of lines, copied end to end into one buffer.
+	 */
+	private static final class LineBatch {
+		private byte[] data;
+		private final int[] starts;
+		private final int[] lengths;
+		private int size;
+		private int used;
+
+		LineBatch(int lines) {
+			this.data = new byte[lines * 128];
+			this.starts = new int[lines];
+			this.lengths = new int[lines];
+		}
+
+		boolean isFull() {
+			return size == starts.length;
+		}
+
+		void add(Text line) {
+			int length = line.getLength();
+			if (used + length > data.length)
+				data = Arrays.copyOf(data,Math.max(data.length * 2,used + length));
+			System.arraycopy(line.getBytes(),0,data,used,length);
+			starts[size] = used;
+			lengths[size] = length;
+			used += length;
+			size++;
+		}
+
+		void clear() {
+			size = 0;
+			used = 0;
+		}
+	}
+
+	/**
+	 * The queues and stage statistics of a single run.
+	 */
+	private final class Run<T> {
+		private final List<Path> files;
+		private final Mapper<T> mapper;
+		private final Consumer<T> consumer;
+		private final BlockingQueue<LineBatch> free;
+		private final BlockingQueue<LineBatch> lines;
+		private final BlockingQueue<List<T>> values;
+		private final BlockingQueue<List<T>> freeValues;
+		private final Stage readStage = new Stage("reader");
+		private final Stage parseStage = new Stage("parser");
+		private final Stage consumeStage = new Stage("consumer");
+
+		Run(List<Path> files, Mapper<T> mapper, Consumer<T> consumer) {
+			this.files = files;
+			this.mapper = mapper;
+			this.consumer = consumer;
+			int batches = queueBatches + workers + 1;
+			this.free = new ArrayBlockingQueue<>(batches);
+			for (int i = 0; i < batches; i++)
+				free.add(new LineBatch(batchLines));
+			this.lines = new ArrayBlockingQueue<>(batches + workers);
+			this.values = new ArrayBlockingQueue<>(queueBatches + workers);
+			this.freeValues = new ArrayBlockingQueue<>(queueBatches + 2 * workers + 1);
+		}
+
+		Callable<Void> reader() {
+			return new Callable<Void>() {
+				@Override
+				public Void call() throws IOException, InterruptedException {
+					long start = System.nanoTime();
+					long wait = 0;
+					long count = 0;
+					long bytes = 0;
+					long batches = 0;
+					long t = System.nanoTime();
+					LineBatch batch = free.take();
+					wait += System.nanoTime() - t;
+					for (Path file : files) {
+						try (TextLineReader in = new TextLineReader(conf,file)) {
+							while (in.next()) {
+								batch.add(in.getLine());
+								bytes += in.getLine().getLength();
+								count++;
+								if (batch.isFull()) {
+									t = System.nanoTime();
+									lines.put(batch);
+									batch = free.take();
+									wait += System.nanoTime() - t;
+									batches++;
+								}
+							}
+						}
+					}
+					t = System.nanoTime();
+					if (batch.size > 0) {
+						lines.put(batch);
+						batches++;
+					}
+					for (int i = 0; i < workers; i++)
+						lines.put(END_LINES);
+					wait += System.nanoTime() - t;
+					readStage.add(count,bytes,batches,System.nanoTime() - start,wait);
+					return null;
+				}
+			};
+		}
+
+		Callable<Void> worker() {
+			return new Callable<Void>() {
+				@Override
+				@SuppressWarnings("unchecked")
+				public Void call() throws IOException, InterruptedException {
+					long start = System.nanoTime();
+					long wait = 0;
+					long count = 0;
+					long bytes = 0;
+					long batches = 0;
+					DelimRecord record = parser.newRecord();
+					if (nullValues != null)
+						record.setNullValues(nullValues);
+					while (true) {
+						long t = System.nanoTime();
+						LineBatch batch = lines.take();
+						wait += System.nanoTime() - t;
+						if (batch == END_LINES)
+							break;
+						List<T> out = freeValues.poll();
+						if (out == null)
+							out = new ArrayList<>(batch.size);
+						for (int i = 0; i < batch.size; i++) {
+							T value = mapper.map(record.reset(batch.data,batch.starts[i],batch.lengths[i]));
+							if (value != null)
+								out.add(value);
+						}
+						count += batch.size;
+						bytes += batch.used;
+						batches++;
+						batch.clear();
+						t = System.nanoTime();
+						free.put(batch);
+						values.put(out);
+						wait += System.nanoTime() - t;
+					}
+					long t = System.nanoTime();
+					values.put((List<T>) END_VALUES);
+					wait += System.nanoTime() - t;
+					parseStage.add(count,bytes,batches,System.nanoTime() - start,wait);
+					return null;
+				}
+			};
+		}
+
+		Callable<Void> consumer() {
+			return new Callable<Void>() {
+				@Override
+				public Void call() throws IOException, InterruptedException {
+					long start = System.nanoTime();
+					long wait = 0;
+					long count = 0;
+					long batches = 0;
+					int running = workers;
+					while (running > 0) {
+						long t = System.nanoTime();
+						List<T> batch = values.take();
+						wait += System.nanoTime() - t;
+						if (batch == END_VALUES) {
+							running--;
+							continue;
+						}
+						for (T value : batch)
+							consumer.consume(value);
+						count += batch.size();
+						batches++;
+						batch.clear();
+						freeValues.offer(batch);
+					}
+					consumeStage.add(count,0,batches,System.nanoTime() - start,wait);
+					return null;
+				}
+			};
+		}
+	}
+
+	/**
+	 * Statistics of one stage of a run, summed over its threads.
+	 */
+	public static final class Stage {
+		private final String name;
+		private int threads;
+		private long items;
+		private long bytes;
+		private long batches;
+		private long nanos;
+		private long waitNanos;
+
+		Stage(String name) {
+			this.name = name;
+		}
+
+		synchronized void add(long items, long bytes, long batches, long nanos, long waitNanos) {
+			this.threads++;
+			this.items += items;
+			this.bytes += bytes;
+			this.batches += batches;
+			this.nanos += nanos;
+			this.waitNanos += waitNanos;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public synchronized int getThreads() {
+			return threads;
+		}
+
+		/**
+		 * @return lines read (reader), lines parsed (parser) or values consumed (consumer).
+		 */
+		public synchronized long getItems() {
+			return items;
+		}
+
+		/**
+		 * @return line bytes read or parsed (0 for the consumer).
+		 */
+		public synchronized long getBytes() {
+			return bytes;
+		}
+
+		public synchronized long getBatches() {
+			return batches;
+		}
+
+		/**
+		 * @return running time of the stage's threads, summed over the threads.
+		 */
+		public synchronized long getNanos() {
+			return nanos;
+		}
+
+		/**
+		 * @return time the stage's threads spent blocked on the queues, summed over the threads.
+		 */
+		public synchronized long getWaitNanos() {
+			return waitNanos;
+		}
+
+		/**
+		 * @return fraction of the stage's running time not spent waiting on the queues.
+		 */
+		public synchronized double getUtilisation() {
+			return nanos == 0 ? 0 : (double) (nanos - waitNanos) / nanos;
+		}
+
+		@Override
+		public synchronized String toString() {
+			return String.format("%s: %d threads, %d items, %d bytes, %d batches, %.0f%% busy",
+								 name,threads,items,bytes,batches,getUtilisation() * 100);
+		}
+	}
+
+	/**
+	 * Outcome of a run.
+	 */
+	public static final class Report {
+		private final long nanos;
+		private final Stage reader;
+		private final Stage parser;
+		private final Stage consumer;
+
+		Report(long nanos, Stage reader, Stage parser, Stage consumer) {
+			this.nanos = nanos;
+			this.reader = reader;
+			this.parser = parser;
+			this.consumer = consumer;
+		}
+
+		/**
+		 * @return elapsed time of the run.
+		 */
+		public long getNanos() {
+			return nanos;
+		}
+
+		public Stage getReader() {
+			return reader;
+		}
+
+		public Stage getParser() {
+			return parser;
+		}
+
+		public Stage getConsumer() {
+			return consumer;
+		}
+
+		/**
+		 * @return lines parsed per second of the run.
+		 */
+		public double getLinesPerSecond() {
+			return nanos == 0 ? 0 : parser.getItems() * 1e9 / nanos;
+		}
+
+		/**
+		 * @return bytes parsed per second of the run.
+		 */
+		public double getBytesPerSecond() {
+			return nanos == 0 ? 0 : parser.getBytes() * 1e9 / nanos;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%d lines in %.3fs, %.0f lines/s %.1f MB/s%n  %s%n  %s%n  %s",parser.getItems(),nanos / 1e9,
+								 getLinesPerSecond(),getBytesPerSecond() / (1024 * 1024),reader,parser,consumer);
+		}
+	}
+
+}
@@ -0,0 +1,434 @@
+package net.martinprobson.hadoop.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.NoSuchElementException;
+
+import org.apache.hadoop.io.Text;
+
+/**
+ * Base class of the re-usable cursors over a single line, {@link DelimRecord} and {@link FixedWidthRecord}.
+ * <p>Subclasses split each line into fields, recording their offsets in the {@link #starts} and
+ * {@link #ends} arrays, this class provides field access by position or name and the typed accessors.
+ * <p>Typed accessors ({@link #getLong getLong}, {@link #getDecimal getDecimal}, 
+ * {@link #getEpochDay getEpochDay} etc) parse the field bytes directly via {@link ByteFields}.
+ * A field is null if it is blank (empty or only spaces, unless {@link #setBlankIsNull blankIsNull} 
+ * is false) or matches one of the {@link #setNullValues null values} (<code>\\N</code> by default). 
+ * The single argument accessors throw NumberFormatException for null fields (except 
+ * {@link #getFlag(int) getFlag}, which returns false), the two argument versions return the 
+ * supplied default.
+ * <p>Instances are not thread safe.
+ *
+ * @author martinr
+ *
+ */
+public abstract class ParsedRecord {
+
+	protected static final byte[] EMPTY = new byte[0];
+	private static final byte[][] DEFAULT_NULL_VALUES = { "\\N".getBytes(StandardCharsets.UTF_8) };
+
+	/** Field names of the record. */
+	protected FieldSchema schema;
+	/** Buffer the field offsets refer to. */
+	protected byte[] bytes = EMPTY;
+	/** Offset of the start of each field (index 0 is field position 1). */
+	protected int[] starts;
+	/** Offset (exclusive) of the end of each field. */
+	protected int[] ends;
+	protected int fieldCount;
+	private byte[][] nullValues = DEFAULT_NULL_VALUES;
+	private boolean blankIsNull = true;
+	private boolean trim = false;
+
+	/**
+	 * @param schema - field names.
+	 * @param capacity - initial size of the offset arrays.
+	 */
+	protected ParsedRecord(FieldSchema schema, int capacity) {
+		this.schema = schema;
+		this.starts = new int[Math.max(capacity,1)];
+		this.ends = new int[starts.length];
+	}
+
+	/**
+	 * @return the number of fields in the current line.
+	 */
+	public int getFieldCount() {
+		return fieldCount;
+	}
+
+	/**
+	 * Return the contents of the field in position specified by fieldPosition.
+	 * @param fieldPosition
+	 * @return String contents of the field.
+	 * @throws NoSuchElementException if field does not exist.
+	 */
+	public String getFieldByPosition(int fieldPosition) throws NoSuchElementException {
+		int i = index(fieldPosition);
+		int start = start(i);
+		return new String(bytes,start,end(i,start) - start,StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Copy the contents of the field in position specified by fieldPosition into field.
+	 * @param fieldPosition
+	 * @param field - Text to receive the field contents (re-used across calls).
+	 * @return field
+	 * @throws NoSuchElementException if field does not exist.
+	 */
+	public Text getFieldByPosition(int fieldPosition, Text field) throws NoSuchElementException {
+		int i = index(fieldPosition);
+		int start = start(i);
+		field.set(bytes,start,end(i,start) - start);
+		return field;
+	}
+
+	/**
+	 * Return the contents of the field named by fieldName.
+	 * @param fieldName
+	 * @return String contents of the field.
+	 * @throws NoSuchElementException if field does not exist.
+	 * @see FieldSchema#getPosition
+	 */
+	public String getFieldByName(String fieldName) throws NoSuchElementException {
+		return getFieldByPosition(schema.getPosition(fieldName));
+	}
+
+	/**
+	 * Copy the contents of the field named by fieldName into field.
+	 * @param fieldName
+	 * @param field - Text to receive the field contents (re-used across calls).
+	 * @return field
+	 * @throws NoSuchElementException if field does not exist.
+	 */
+	public Text getFieldByName(String fieldName, Text field) throws NoSuchElementException {
+		return getFieldByPosition(schema.getPosition(fieldName),field);
+	}
+
+	/**
+	 * Set the values (in addition to blank fields) that the typed accessors treat as null, 
+	 * e.g. <code>\\N</code> or <code>00000000</code> for SAP initial dates. 
+	 * @param values - The null values, leading and trailing spaces are ignored when comparing.
+	 * @return this record.
+	 */
+	public ParsedRecord setNullValues(String... values) {
+		byte[][] nulls = new byte[values.length][];
+		for (int i = 0; i < values.length; i++)
+			nulls[i] = values[i].trim().getBytes(StandardCharsets.UTF_8);
+		this.nullValues = nulls;
+		return this;
+	}
+
+	/**
+	 * Set whether blank fields (empty or only spaces) are null, e.g. false where a blank amount 
+	 * should fail to parse rather than be skipped.
+	 * @param blankIsNull - true (the default) if blank fields are null.
+	 * @return this record.
+	 */
+	public ParsedRecord setBlankIsNull(boolean blankIsNull) {
+		this.blankIsNull = blankIsNull;
+		return this;
+	}
+
+	/**
+	 * @return true if blank fields are null.
+	 */
+	public boolean isBlankIsNull() {
+		return blankIsNull;
+	}
+
+	/**
+	 * @param fieldPosition
+	 * @return true if the field is blank (if {@link #isBlankIsNull blankIsNull}) or matches one of the null values.
+	 * @throws NoSuchElementException if field does not exist.
+	 */
+	public boolean isNull(int fieldPosition) throws NoSuchElementException {
+		return isNullAt(index(fieldPosition));
+	}
+
+	/**
+	 * @param fieldPosition
+	 * @return the field as an int.
+	 * @throws NoSuchElementException if field does not exist.
+	 * @throws NumberFormatException if the field is null or not an int.
+	 */
+	public int getInt(int fieldPosition) throws NoSuchElementException, NumberFormatException {
+		int i = nonNullIndex(fieldPosition);
+		return ByteFields.parseInt(bytes,starts[i],ends[i]);
+	}
+
+	/**
+	 * @param fieldPosition
+	 * @param defaultValue - value to return if the field is null.
+	 * @return the field as an int.
+	 * @throws NoSuchElementException if field does not exist.
+	 * @throws NumberFormatException if the field is not an int.
+	 */
+	public int getInt(int fieldPosition, int defaultValue) throws NoSuchElementException, NumberFormatException {
+		int i = nullableIndex(fieldPosition);
+		return i < 0 ? defaultValue : ByteFields.parseInt(bytes,starts[i],ends[i]);
+	}
+
+	/**
+	 * @param fieldPosition
+	 * @return the field as a long.
+	 * @throws NoSuchElementException if field does not exist.
+	 * @throws NumberFormatException if the field is null or not a long.
+	 */
+	public long getLong(int fieldPosition) throws NoSuchElementException, NumberFormatException {
+		int i = nonNullIndex(fieldPosition);
+		return ByteFields.parseLong(bytes,starts[i],ends[i]);
+	}
+
+	/**
+	 * @param fieldPosition
+	 * @param defaultValue - value to return if the field is null.
+	 * @return the field as a long.
+	 * @throws NoSuchElementException if field does not exist.
+	 * @throws NumberFormatException if the field is not a long.
+	 */
+	public long getLong(int fieldPosition, long defaultValue) throws NoSuchElementException, NumberFormatException {
+		int i = nullableIndex(fieldPosition);
+		return i < 0 ? defaultValue : ByteFields.parseLong(bytes,starts[i],ends[i]);
+	}
+
+	/**
+	 * @param fieldPosition
+	 * @return the field as a double, see {@link ByteFields#parseDouble ByteFields.parseDouble}.
+	 * @throws NoSuchElementException if field does not exist.
+	 * @throws NumberFormatException if the field is null or not a number.
+	 */
+	public double getDouble(int fieldPosition) throws NoSuchElementException, NumberFormatException {
+		int i = nonNullIndex(fieldPosition);
+		return ByteFields.parseDouble(bytes,starts[i],ends[i]);
+	}
+
+	/**
+	 * @param fieldPosition
+	 * @param defaultValue - value to return if the field is null.
+	 * @return the field as a double, see {@link ByteFields#parseDouble ByteFields.parseDouble}.
+	 * @throws NoSuchElementException if field does not exist.
+	 * @throws NumberFormatException if the field is not a number.
+	 */
+	public double getDouble(int fieldPosition, double defaultValue) throws NoSuchElementException, NumberFormatException {
+		int i = nullableIndex(fieldPosition);
+		return i < 0 ? defaultValue : ByteFields.parseDouble(bytes,starts[i],ends[i]);
+	}
+
+	/**
+	 * @param fieldPosition
+	 * @param scale - number of decimal places.
+	 * @return the field as a long scaled by 10^scale, see {@link ByteFields#parseDecimal ByteFields.parseDecimal}.
+	 * @throws NoSuchElementException if field does not exist.
+	 * @throws NumberFormatException if the field is null or not a decimal of the given scale.
+	 */
+	public long getDecimal(int fieldPosition, int scale) throws NoSuchElementException, NumberFormatException {
+		int i = nonNullIndex(fieldPosition);
+		return ByteFields.parseDecimal(bytes,starts[i],ends[i],scale);
+	}
+
+	/**
+	 * @param fieldPosition
+	 * @param scale - number of decimal places.
+	 * @param defaultValue - value to return if the field is null.
+	 * @return the field as a long scaled by 10^scale, see {@link ByteFields#parseDecimal ByteFields.parseDecimal}.
+	 * @throws NoSuchElementException if field does not exist.
+	 * @throws NumberFormatException if the field is not a decimal of the given scale.
+	 */
+	public long getDecimal(int fieldPosition, int scale, long defaultValue) throws NoSuchElementException, NumberFormatException {
+		int i = nullableIndex(fieldPosition);
+		return i < 0 ? defaultValue : ByteFields.parseDecimal(bytes,starts[i],ends[i],scale);
+	}
+
+	/**
+	 * @param fieldPosition
+	 * @return the field as days since 1970-01-01.
+	 * @throws NoSuchElementException if field does not exist.
+	 * @throws NumberFormatException if the field is null or not a date.
+	 */
+	public long getEpochDay(int fieldPosition) throws NoSuchElementException, NumberFormatException {
+		int i = nonNullIndex(fieldPosition);
+		return ByteFields.parseEpochDay(bytes,starts[i],ends[i]);
+	}
+
+	/**
+	 * @param fieldPosition
+	 * @param defaultValue - value to return if the field is null.
+	 * @return the field as days since 1970-01-01.
+	 * @throws NoSuchElementException if field does not exist.
+	 * @throws NumberFormatException if the field is not a date.
+	 */
+	public long getEpochDay(int fieldPosition, long defaultValue) throws NoSuchElementException, NumberFormatException {
+		int i = nullableIndex(fieldPosition);
+		return i < 0 ? defaultValue : ByteFields.parseEpochDay(bytes,starts[i],ends[i]);
+	}
+
+	/**
+	 * @param fieldPosition
+	 * @return the field as microseconds since 1970-01-01 00:00:00 UTC.
+	 * @throws NoSuchElementException if field does not exist.
+	 * @throws NumberFormatException if the field is null or not a timestamp.
+	 */
+	public long getEpochMicros(int fieldPosition) throws NoSuchElementException, NumberFormatException {
+		int i = nonNullIndex(fieldPosition);
+		return ByteFields.parseEpochMicros(bytes,starts[i],ends[i]);
+	}
+
+	/**
+	 * @param fieldPosition
+	 * @param defaultValue - value to return if the field is null.
+	 * @return the field as microseconds since 1970-01-01 00:00:00 UTC.
+	 * @throws NoSuchElementException if field does not exist.
+	 * @throws NumberFormatException if the field is not a timestamp.
+	 */
+	public long getEpochMicros(int fieldPosition, long defaultValue) throws NoSuchElementException, NumberFormatException {
+		int i = nullableIndex(fieldPosition);
+		return i < 0 ? defaultValue : ByteFields.parseEpochMicros(bytes,starts[i],ends[i]);
+	}
+
+	/**
+	 * @param fieldPosition
+	 * @return the field as nanoseconds since 1970-01-01 00:00:00 UTC.
+	 * @throws NoSuchElementException if field does not exist.
+	 * @throws NumberFormatException if the field is null, not a timestamp or out of range.
+	 */
+	public long getEpochNanos(int fieldPosition) throws NoSuchElementException, NumberFormatException {
+		int i = nonNullIndex(fieldPosition);
+		return ByteFields.parseEpochNanos(bytes,starts[i],ends[i]);
+	}
+
+	/**
+	 * @param fieldPosition
+	 * @param defaultValue - value to return if the field is null.
+	 * @return the field as nanoseconds since 1970-01-01 00:00:00 UTC.
+	 * @throws NoSuchElementException if field does not exist.
+	 * @throws NumberFormatException if the field is not a timestamp or out of range.
+	 */
+	public long getEpochNanos(int fieldPosition, long defaultValue) throws NoSuchElementException, NumberFormatException {
+		int i = nullableIndex(fieldPosition);
+		return i < 0 ? defaultValue : ByteFields.parseEpochNanos(bytes,starts[i],ends[i]);
+	}
+
+	/**
+	 * @param fieldPosition
+	 * @return the field as a flag, blank and null fields are false.
+	 * @throws NoSuchElementException if field does not exist.
+	 * @throws IllegalArgumentException if the field is not a flag.
+	 * @see ByteFields#parseFlag
+	 */
+	public boolean getFlag(int fieldPosition) throws NoSuchElementException, IllegalArgumentException {
+		return getFlag(fieldPosition,false);
+	}
+
+	/**
+	 * @param fieldPosition
+	 * @param defaultValue - value to return if the field is null.
+	 * @return the field as a flag, blank fields (if not null) are false.
+	 * @throws NoSuchElementException if field does not exist.
+	 * @throws IllegalArgumentException if the field is not a flag.
+	 * @see ByteFields#parseFlag
+	 */
+	public boolean getFlag(int fieldPosition, boolean defaultValue) throws NoSuchElementException, IllegalArgumentException {
+		int i = nullableIndex(fieldPosition);
+		return i < 0 ? defaultValue : ByteFields.parseFlag(bytes,starts[i],ends[i]);
+	}
+
+	/**
+	 * @return the schema used to resolve field names.
+	 */
+	public FieldSchema getSchema() {
+		return schema;
+	}
+
+	/**
+	 * @return the buffer holding the current line (or its decoded fields, if the parser quotes or 
+	 * escapes fields), see {@link #getFieldStart getFieldStart}.
+	 */
+	public byte[] getBytes() {
+		return bytes;
+	}
+
+	/**
+	 * @param fieldPosition
+	 * @return offset into {@link #getBytes()} of the start of the field.
+	 * @throws NoSuchElementException if field does not exist.
+	 */
+	public int getFieldStart(int fieldPosition) throws NoSuchElementException {
+		return start(index(fieldPosition));
+	}
+
+	/**
+	 * @param fieldPosition
+	 * @return length in bytes of the field.
+	 * @throws NoSuchElementException if field does not exist.
+	 */
+	public int getFieldLength(int fieldPosition) throws NoSuchElementException {
+		int i = index(fieldPosition);
+		int start = start(i);
+		return end(i,start) - start;
+	}
+
+	/**
+	 * Remove leading and trailing spaces from the fields returned by {@link #getFieldByPosition getFieldByPosition}
+	 * and {@link #getFieldByName getFieldByName} (and their offsets). The typed accessors always ignore them.
+	 * @param trim - true to trim fields (the default is false).
+	 * @return this record.
+	 */
+	public ParsedRecord setTrim(boolean trim) {
+		this.trim = trim;
+		return this;
+	}
+
+	/**
+	 * @return true if fields are trimmed.
+	 */
+	public boolean isTrim() {
+		return trim;
+	}
+
+	private int start(int i) {
+		return trim ? ByteFields.trimStart(bytes,starts[i],ends[i]) : starts[i];
+	}
+
+	private int end(int i, int start) {
+		return trim ? ByteFields.trimEnd(bytes,start,ends[i]) : ends[i];
+	}
+
+	/**
+	 * @return true if the field at index i is blank (if blankIsNull) or matches one of the null values.
+	 */
+	private boolean isNullAt(int i) {
+		if (blankIsNull && ByteFields.isBlank(bytes,starts[i],ends[i]))
+			return true;
+		for (byte[] value : nullValues)
+			if (ByteFields.equalsTrimmed(bytes,starts[i],ends[i],value))
+				return true;
+		return false;
+	}
+
+	private int nonNullIndex(int fieldPosition) {
+		int i = index(fieldPosition);
+		if (isNullAt(i))
+			throw new NumberFormatException("Field Position " + fieldPosition + " is null");
+		return i;
+	}
+
+	/**
+	 * @return index into the offset arrays of fieldPosition, or -1 if the field is null.
+	 */
+	private int nullableIndex(int fieldPosition) {
+		int i = index(fieldPosition);
+		return isNullAt(i) ? -1 : i;
+	}
+
+	/**
+	 * @return index into the offset arrays of fieldPosition.
+	 * @throws NoSuchElementException if field does not exist.
+	 */
+	protected final int index(int fieldPosition) {
+		if (fieldPosition <= 0 || fieldPosition > fieldCount)
+			throw new NoSuchElementException("Field Position " + fieldPosition + " does not exist");
+		return fieldPosition - 1;
+	}
+
+
+}
@@ -0,0 +1,179 @@
+package net.martinprobson.hadoop.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+
+/**
+ * Profile the fields of delimited files in a single pass: blank, null, invalid and missing counts,
+ * minimum and maximum, approximate distinct count, most frequent values and a histogram of each
+ * field (see {@link ColumnProfile}), typed by the schema of the parser.
+ * <p>Lines are parsed by a {@link ParsePipeline}, each worker adding to its own {@link DataProfile},
+ * and the workers' profiles are {@link DataProfile#merge merged} at the end.
+ * <p>Memory is bounded whatever the size of the input, as each field is summarised by fixed size
+ * sketches, per worker about: -
+ * <ul>
+ * <li>2^precision bytes for the distinct count ({@link HyperLogLog}, 4KB by default),</li>
+ * <li>depth * width longs and topValues values for the most frequent values ({@link TopValues}, 32KB by default),</li>
+ * <li>histogramBins longs for the histogram ({@link ValueHistogram}, 512 bytes by default).</li>
+ * </ul>
+ * <p>Example: -
+ * <pre>
+ * DataProfile profile = new Profiler(conf,parser).setNullValues("\\N","00000000").profile(path);
+ * System.out.println(profile.getColumn("betrh").getMax());
+ * </pre>
+ *
+ * @author martinr
+ *
+ */
+public class Profiler {
+
+	private static final Log LOG = LogFactory.getLog(Profiler.class);
+
+	private final Configuration conf;
+	private final DelimLineParser parser;
+	private final FieldSchema schema;
+	private final int[] positions;
+	private int workers = Math.max(1,Runtime.getRuntime().availableProcessors() - 2);
+	private String[] nullValues = null;
+	private int precision = HyperLogLog.DEFAULT_PRECISION;
+	private int topValues = TopValues.DEFAULT_CAPACITY;
+	private int depth = TopValues.DEFAULT_DEPTH;
+	private int width = TopValues.DEFAULT_WIDTH;
+	private int histogramBins = ValueHistogram.DEFAULT_BINS;
+
+	/**
+	 * @param conf - Hadoop configuration referencing file system to use.
+	 * @param parser - field separator and (typed) schema of the text.
+	 * @param fieldNames - the fields to profile, none for every named field of the schema.
+	 * @throws NoSuchElementException if a field name is not in the schema.
+	 */
+	public Profiler(Configuration conf, DelimLineParser parser, String... fieldNames) {
+		this.conf = conf;
+		this.parser = parser;
+		this.schema = parser.getSchema();
+		List<String> names = fieldNames.length > 0 ? Arrays.asList(fieldNames) : new ArrayList<>(schema.getFieldNames());
+		this.positions = new int[names.size()];
+		for (int i = 0; i < positions.length; i++)
+			positions[i] = schema.getPosition(names.get(i));
+		Arrays.sort(positions);
+	}
+
+	/**
+	 * @param workers - number of parsing (and profiling) threads (default the number of cores less two).
+	 * @return this profiler.
+	 */
+	public Profiler setWorkers(int workers) {
+		if (workers <= 0)
+			throw new IllegalArgumentException("workers must be > 0");
+		this.workers = workers;
+		return this;
+	}
+
+	/**
+	 * @param values - field values counted as null, see {@link ParsedRecord#setNullValues}.
+	 * @return this profiler.
+	 */
+	public Profiler setNullValues(String... values) {
+		this.nullValues = values;
+		return this;
+	}
+
+	/**
+	 * @param precision - log2 of the registers of each distinct count, see {@link HyperLogLog}
+	 * (default {@value HyperLogLog#DEFAULT_PRECISION}).
+	 * @return this profiler.
+	 */
+	public Profiler setPrecision(int precision) {
+		new HyperLogLog(precision); // Validate.
+		this.precision = precision;
+		return this;
+	}
+
+	/**
+	 * @param topValues - number of most frequent values kept per field (default {@value TopValues#DEFAULT_CAPACITY}).
+	 * @param depth - rows of counters, see {@link TopValues} (default {@value TopValues#DEFAULT_DEPTH}).
+	 * @param width - counters per row, a power of 2 (default {@value TopValues#DEFAULT_WIDTH}).
+	 * @return this profiler.
+	 */
+	public Profiler setTopValues(int topValues, int depth, int width) {
+		new TopValues(topValues,depth,width); // Validate.
+		this.topValues = topValues;
+		this.depth = depth;
+		this.width = width;
+		return this;
+	}
+
+	/**
+	 * @param histogramBins - bins of each histogram (default {@value ValueHistogram#DEFAULT_BINS}).
+	 * @return this profiler.
+	 */
+	public Profiler setHistogramBins(int histogramBins) {
+		new ValueHistogram(histogramBins); // Validate.
+		this.histogramBins = histogramBins;
+		return this;
+	}
+
+	/**
+	 * Create an empty profile of the fields with this profiler's settings, to which lines can be
+	 * {@link DataProfile#add added}, e.g. in a map task. Profiles created by profilers with the
+	 * same settings can be merged.
+	 * @return a new profile.
+	 */
+	public DataProfile newProfile() {
+		ColumnProfile[] columns = new ColumnProfile[positions.length];
+		for (int c = 0; c < columns.length; c++) {
+			int position = positions[c];
+			columns[c] = new ColumnProfile(schema.getFieldName(position),position,schema.getType(position),schema.getScale(position),
+										   new HyperLogLog(precision),new TopValues(topValues,depth,width),new ValueHistogram(histogramBins));
+		}
+		return new DataProfile(columns);
+	}
+
+	/**
+	 * Profile every line of path.
+	 * @param path - a file, a directory (read recursively) or a glob.
+	 * @return the profile.
+	 * @throws IOException if the files cannot be read.
+	 */
+	public DataProfile profile(Path path) throws IOException {
+		final List<DataProfile> all = new ArrayList<>();
+		final ThreadLocal<DataProfile> local = new ThreadLocal<DataProfile>() {
+			@Override
+			protected DataProfile initialValue() {
+				DataProfile profile = newProfile();
+				synchronized (all) {
+					all.add(profile);
+				}
+				return profile;
+			}
+		};
+		ParsePipeline pipeline = new ParsePipeline(conf,parser,workers);
+		if (nullValues != null)
+			pipeline.setNullValues(nullValues);
+		ParsePipeline.Report report = pipeline.run(path,new ParsePipeline.Mapper<Void>() {
+			@Override
+			public Void map(DelimRecord record) {
+				local.get().add(record);
+				return null;
+			}
+		},new ParsePipeline.Consumer<Void>() {
+			@Override
+			public void consume(Void value) {
+			}
+		});
+		DataProfile profile = newProfile();
+		for (DataProfile partial : all)
+			profile.merge(partial);
+		LOG.debug("Profiled " + profile.getLines() + " lines, " + positions.length + " fields: " + report);
+		return profile;
+	}
+
+}
@@ -0,0 +1,170 @@
+package net.martinprobson.hadoop.util;
+
+import java.util.Arrays;
+
+/**
+ * Split delimited lines with a literal (possibly multi-byte) separator, quoted fields and
+ * escape characters, as a byte at a time state machine (no regular expressions or decoding).
+ * <p>The rules are: -
+ * <ul>
+ * <li>A field starting with the quote character is quoted: separators inside it are part of
+ * the field, a doubled quote character is a literal quote, and the next quote ends the quoted
+ * part (anything after it, up to the separator, is appended as is). An unterminated quote runs
+ * to the end of the line.</li>
+ * <li>The escape character makes the following byte, or separator, literal (inside or outside
+ * quotes). An escape character at the end of the line is kept. If the escape character is the
+ * quote character it is just the doubled quote rule.</li>
+ * <li>Quote characters in the middle of an unquoted field are literal.</li>
+ * </ul>
+ * <p>Lines are split by the reader before they get here, so a quoted field cannot contain a line break.
+ * <p>{@link #fieldEnd fieldEnd} finds where a field ends in the raw line, and {@link #decode decode}
+ * removes its quotes and escapes. Instances are immutable and thread safe.
+ *
+ * @author martinr
+ *
+ */
+public final class QuotedFieldScanner {
+
+	/** Quote or escape character value meaning none. */
+	public static final int NONE = -1;
+
+	private final byte[] separator;
+	private final byte first;
+	private final int quote;
+	private final int escape;
+	/** Escape character outside quotes, none if it is the quote character (which then only escapes itself). */
+	private final int bareEscape;
+
+	/**
+	 * @param separator - literal separator bytes (at least one).
+	 * @param quote - quote character (ASCII) or {@link #NONE}.
+	 * @param escape - escape character (ASCII) or {@link #NONE}, may be the same as quote.
+	 * @throws IllegalArgumentException if the separator is empty, or the quote or escape character is
+	 * not ASCII or is part of the separator.
+	 */
+	public QuotedFieldScanner(byte[] separator, int quote, int escape) {
+		if (separator.length == 0)
+			throw new IllegalArgumentException("Separator must not be empty");
+		checkChar("Quote",quote,separator);
+		checkChar("Escape",escape,separator);
+		this.separator = Arrays.copyOf(separator,separator.length);
+		this.first = separator[0];
+		this.quote = quote;
+		this.escape = escape;
+		this.bareEscape = escape == quote ? NONE : escape;
+	}
+
+	private static void checkChar(String name, int c, byte[] separator) {
+		if (c == NONE)
+			return;
+		if (c < 0 || c >= 0x80)
+			throw new IllegalArgumentException(name + " character must be ASCII");
+		for (byte b : separator)
+			if (b == c)
+				throw new IllegalArgumentException(name + " character '" + (char) c + "' is part of the separator");
+	}
+
+	/**
+	 * @return length of the separator in bytes.
+	 */
+	public int getSeparatorLength() {
+		return separator.length;
+	}
+
+	/**
+	 * Find the end of the (raw) field starting at from.
+	 * @param bytes
+	 * @param from - start of the field.
+	 * @param to - end of the line (exclusive).
+	 * @return offset of the separator ending the field, or to if it is the last field.
+	 */
+	public int fieldEnd(byte[] bytes, int from, int to) {
+		int i = from;
+		boolean quoted = false;
+		if (quote != NONE && i < to && bytes[i] == quote) {
+			quoted = true;
+			i++;
+		}
+		while (i < to) {
+			int b = bytes[i] & 0xFF;
+			if (quoted) {
+				if (b == quote) {
+					if (i + 1 < to && bytes[i + 1] == quote) {
+						i += 2;
+					} else {
+						quoted = false;
+						i++;
+					}
+				} else {
+					i += b == escape ? 2 : 1;
+				}
+			} else if (b == bareEscape) {
+				i += matches(bytes,i + 1,to) ? 1 + separator.length : 2;
+			} else if (bareEscape == NONE) {
+				// Nothing but the separator matters now, so search for it a word at a time.
+				int sep = SeparatorScanner.indexOf(bytes,i,to,first);
+				if (sep < 0)
+					return to;
+				if (matches(bytes,sep,to))
+					return sep;
+				i = sep + 1;
+			} else if (b == (first & 0xFF) && matches(bytes,i,to)) {
+				return i;
+			} else {
+				i++;
+			}
+		}
+		return to;
+	}
+
+	/**
+	 * Copy the raw field bytes[from..to) (as found by {@link #fieldEnd fieldEnd}) to out, removing
+	 * quotes and escapes.
+	 * @param bytes
+	 * @param from - start of the field.
+	 * @param to - end of the field (exclusive).
+	 * @param out - buffer of at least outPos + (to - from) bytes, may be bytes if outPos <= from.
+	 * @param outPos - offset in out to write the field to.
+	 * @return offset (exclusive) of the end of the field in out.
+	 */
+	public int decode(byte[] bytes, int from, int to, byte[] out, int outPos) {
+		int i = from;
+		int o = outPos;
+		boolean quoted = false;
+		if (quote != NONE && i < to && bytes[i] == quote) {
+			quoted = true;
+			i++;
+		}
+		while (i < to) {
+			byte b = bytes[i];
+			if (quoted && b == quote) {
+				if (i + 1 < to && bytes[i + 1] == quote) {
+					out[o++] = b;
+					i += 2;
+				} else {
+					quoted = false;
+					i++;
+				}
+			} else if ((b & 0xFF) == (quoted ? escape : bareEscape) && i + 1 < to) {
+				int n = !quoted && matches(bytes,i + 1,to) ? separator.length : 1;
+				System.arraycopy(bytes,i + 1,out,o,n);
+				o += n;
+				i += 1 + n;
+			} else {
+				out[o++] = b;
+				i++;
+			}
+		}
+		return o;
+	}
+
+	private boolean matches(byte[] bytes, int at, int to) {
+		if (to - at < separator.length)
+			return false;
+		for (int j = 0; j < separator.length; j++)
+			if (bytes[at + j] != separator[j])
+				return false;
+		return true;
+	}
+
+}
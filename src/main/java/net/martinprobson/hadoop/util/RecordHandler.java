@@ -0,0 +1,27 @@
+package net.martinprobson.hadoop.util;
+
+import java.io.IOException;
+
+import org.apache.hadoop.io.Writable;
+
+/**
+ * Callback receiving the key/value records of a SequenceFile one at a time.
+ * <p>The key and value instances are re-used for every record, so a handler that keeps a
+ * record beyond the call must copy it (e.g. with <code>WritableUtils.clone</code>).
+ *
+ * @author martinr
+ *
+ * @param <K> - key type.
+ * @param <V> - value type.
+ */
+public interface RecordHandler<K extends Writable, V extends Writable> {
+
+	/**
+	 * Process one record.
+	 * @param key
+	 * @param value
+	 * @throws IOException
+	 */
+	void handle(K key, V value) throws IOException;
+
+}
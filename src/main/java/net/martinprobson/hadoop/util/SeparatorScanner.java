@@ -0,0 +1,102 @@
+package net.martinprobson.hadoop.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Search a byte array for a single byte field separator.
+ * <p>{@link #indexOfSwar indexOfSwar} compares 8 bytes at a time by loading them into a
+ * <code>long</code> (through a little endian <code>ByteBuffer</code>) and using a SWAR 
+ * (SIMD within a register) zero byte test, falling back to a byte at a time loop for the tail 
+ * of each range. Only plain Java 8 is used (no Unsafe or vector API). 
+ * <p>On Java 9+ <code>ByteBuffer.getLong</code> compiles to a single unaligned load, but on Java 8 
+ * it assembles the word a byte at a time, so SWAR is slower than the scalar loop there. 
+ * {@link #indexOf indexOf} is therefore a scalar scan, that only switches to SWAR for fields 
+ * longer than {@value #SCALAR_PREFIX} bytes, and only on Java 9+.
+ *
+ * @author martinr
+ *
+ */
+public final class SeparatorScanner {
+
+	private static final long ONES = 0x0101010101010101L;
+	private static final long LOW_SEVEN_BITS = 0x7F7F7F7F7F7F7F7FL;
+	/** Bytes checked one at a time before switching to SWAR. */
+	static final int SCALAR_PREFIX = 16;
+	/** True if words can be loaded cheaply, i.e. not on Java 8 (specification version 1.8). */
+	static final boolean FAST_WORDS = !System.getProperty("java.specification.version","").startsWith("1.");
+
+	private SeparatorScanner() {
+	}
+
+	/**
+	 * Find the first occurrence of separator in bytes[from..to).
+	 * <p>Most fields in delimited extracts are only a few bytes long, so the first 
+	 * {@value #SCALAR_PREFIX} bytes are checked one at a time (loading words only pays for 
+	 * itself on longer fields) before switching to {@link #indexOfSwar 8 bytes at a time}.
+	 * On Java 8 the whole range is checked one byte at a time.
+	 * @param bytes
+	 * @param from - start offset (inclusive).
+	 * @param to - end offset (exclusive).
+	 * @param separator - byte to look for.
+	 * @return the offset of the first separator, or -1 if not found.
+	 */
+	public static int indexOf(byte[] bytes, int from, int to, byte separator) {
+		int prefixEnd = FAST_WORDS ? Math.min(to,from + SCALAR_PREFIX) : to;
+		for (int i = from; i < prefixEnd; i++)
+			if (bytes[i] == separator)
+				return i;
+		return prefixEnd < to ? indexOfSwar(bytes,prefixEnd,to,separator) : -1;
+	}
+
+	/**
+	 * Find the first occurrence of separator in bytes[from..to), 8 bytes at a time.
+	 * @param bytes
+	 * @param from - start offset (inclusive).
+	 * @param to - end offset (exclusive).
+	 * @param separator - byte to look for.
+	 * @return the offset of the first separator, or -1 if not found.
+	 */
+	public static int indexOfSwar(byte[] bytes, int from, int to, byte separator) {
+		int i = from;
+		if (to - i >= Long.BYTES) {
+			long pattern = (separator & 0xFFL) * ONES;
+			// Little endian, so the lowest addressed byte is the least significant. The wrapper 
+			// does not escape, and on Java 9+ getLong compiles to a single unaligned load 
+			// (on Java 8 it is 8 byte loads and shifts, see FAST_WORDS).
+			ByteBuffer words = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+			for (; i <= to - Long.BYTES; i += Long.BYTES) {
+				long matches = zeroBytes(words.getLong(i) ^ pattern);
+				if (matches != 0)
+					return i + (Long.numberOfTrailingZeros(matches) >>> 3);
+			}
+		}
+		return indexOfScalar(bytes,i,to,separator);
+	}
+
+	/**
+	 * Find the first occurrence of separator in bytes[from..to), one byte at a time.
+	 * @param bytes
+	 * @param from - start offset (inclusive).
+	 * @param to - end offset (exclusive).
+	 * @param separator - byte to look for.
+	 * @return the offset of the first separator, or -1 if not found.
+	 */
+	public static int indexOfScalar(byte[] bytes, int from, int to, byte separator) {
+		for (int i = from; i < to; i++)
+			if (bytes[i] == separator)
+				return i;
+		return -1;
+	}
+
+	/**
+	 * Set the high bit of every byte in word that is zero, and clear every other bit.
+	 * <p>Unlike the usual <code>(x - 0x01..) &amp; ~x &amp; 0x80..</code> test this never reports
+	 * false positives, as adding 0x7F to the low seven bits of each byte cannot carry into the next byte.
+	 */
+	static long zeroBytes(long word) {
+		long t = (word & LOW_SEVEN_BITS) + LOW_SEVEN_BITS;
+		return ~(t | word | LOW_SEVEN_BITS);
+	}
+
+}
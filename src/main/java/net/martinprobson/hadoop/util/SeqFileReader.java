@@ -0,0 +1,142 @@
+package net.martinprobson.hadoop.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.util.ReflectionUtils;
+
+/**
+ * Streaming reader over the records of a Hadoop SequenceFile.
+ * <p>A single key and value instance is created when the file is opened and re-used by every 
+ * call to {@link #next()}, so memory use does not depend on the size of the file. Use 
+ * {@link #copy()} to take a copy of the current record if it needs to be kept.
+ * <p>Example: -
+ * <pre>
+ * try (SeqFileReader&lt;Text,IntWritable&gt; reader = HDFSUtil.openSeqFile(conf,path)) {
+ *     while (reader.next())
+ *         process(reader.getKey(),reader.getValue());
+ * }
+ * </pre>
+ * <p>Instances are not thread safe.
+ *
+ * @author martinr
+ *
+ * @param <K> - key type, must match the key class of the file.
+ * @param <V> - value type, must match the value class of the file.
+ */
+public class SeqFileReader<K extends Writable, V extends Writable> implements Closeable {
+
+	private final Configuration conf;
+	private final SequenceFile.Reader reader;
+	private final K key;
+	private final V value;
+	/** End of the byte range being read, records starting after the first sync marker past this belong to the next range. */
+	private final long end;
+	private boolean more;
+
+	/**
+	 * Open fileName for reading.
+	 * @param conf - Hadoop configuration referencing file system to use.
+	 * @param fileName - SequenceFile to read.
+	 * @throws IOException
+	 */
+	public SeqFileReader(Configuration conf, Path fileName) throws IOException {
+		this(conf,fileName,0,Long.MAX_VALUE);
+	}
+
+	/**
+	 * Open fileName for reading just the records in the byte range [start,start+length).
+	 * <p>As with Hadoop's <code>SequenceFileInputFormat</code> splits, the range is aligned to 
+	 * sync markers: reading starts at the first sync marker after start and continues to the 
+	 * first sync marker after start+length. Reading a file as a series of adjacent ranges returns 
+	 * every record exactly once.
+	 * @param conf - Hadoop configuration referencing file system to use.
+	 * @param fileName - SequenceFile to read.
+	 * @param start - offset of the start of the range.
+	 * @param length - length of the range.
+	 * @throws IOException
+	 */
+	@SuppressWarnings("unchecked")
+	public SeqFileReader(Configuration conf, Path fileName, long start, long length) throws IOException {
+		long timer = Metrics.start();
+		this.conf = conf;
+		this.reader = new SequenceFile.Reader(conf,SequenceFile.Reader.file(fileName));
+		try {
+			this.key = (K) ReflectionUtils.newInstance(reader.getKeyClass(),conf);
+			this.value = (V) ReflectionUtils.newInstance(reader.getValueClass(),conf);
+			this.end = length == Long.MAX_VALUE ? Long.MAX_VALUE : start + length;
+			if (start > reader.getPosition())
+				reader.sync(start);
+			this.more = start < end;
+			Metrics.increment(Metrics.Counter.FILES_OPENED);
+			Metrics.stop(Metrics.Timer.OPEN,timer);
+		} catch (IOException | RuntimeException e) {
+			reader.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Read the next record into the current key and value.
+	 * @return true if a record was read, false at the end of the file (or range).
+	 * @throws IOException
+	 */
+	public boolean next() throws IOException {
+		if (!more)
+			return false;
+		long pos = reader.getPosition();
+		boolean remaining = reader.next(key,value);
+		more = remaining && !(pos >= end && reader.syncSeen());
+		if (more && Metrics.enabled)
+			Metrics.increment(Metrics.Counter.RECORDS_READ);
+		return more;
+	}
+
+	/**
+	 * @return the key of the current record (the same instance is returned for every record).
+	 */
+	public K getKey() {
+		return key;
+	}
+
+	/**
+	 * @return the value of the current record (the same instance is returned for every record).
+	 */
+	public V getValue() {
+		return value;
+	}
+
+	/**
+	 * @return a copy of the current record that is not affected by further calls to {@link #next()}.
+	 */
+	public Pair<K,V> copy() {
+		return new ImmutablePair<>(WritableUtils.clone(key,conf),WritableUtils.clone(value,conf));
+	}
+
+	/**
+	 * @return the key class of the file.
+	 */
+	public Class<?> getKeyClass() {
+		return reader.getKeyClass();
+	}
+
+	/**
+	 * @return the value class of the file.
+	 */
+	public Class<?> getValueClass() {
+		return reader.getValueClass();
+	}
+
+	@Override
+	public void close() throws IOException {
+		reader.close();
+	}
+
+}
@@ -0,0 +1,335 @@
+package net.martinprobson.hadoop.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.SequenceFile.CompressionType;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.io.compress.DefaultCodec;
+import org.apache.hadoop.util.ReflectionUtils;
+
+/**
+ * Writer of the records of a Hadoop SequenceFile, the counterpart of {@link SeqFileReader}.
+ * <p>Unlike <code>SequenceFile.createWriter</code> with its defaults (RECORD compression, the
+ * 4KB <code>io.file.buffer.size</code>), files are written with BLOCK compression, which compresses
+ * many records together, and a {@value Options#DEFAULT_BUFFER_SIZE} byte buffer. The compression
+ * type, codec, buffer size, compression block size, and the (HDFS) block size and replication of the
+ * file can be set with {@link Options}.
+ * <p>Records can be appended one at a time, or in batches from an <code>Iterator</code>,
+ * <code>Iterable</code> or <code>Stream</code> of key/value pairs. Records are serialized as they
+ * are appended, so re-used key and value instances can be passed.
+ * <p>Paths written are invalidated in the status cache (see {@link HDFSUtil#getStatusCache}) when
+ * the file is created and closed.
+ * <p>Example: -
+ * <pre>
+ * try (SeqFileWriter&lt;Text,IntWritable&gt; writer = HDFSUtil.createSeqFile(conf,path,Text.class,IntWritable.class)) {
+ *     writer.append(new Text("a"),new IntWritable(1));
+ * }
+ * </pre>
+ * <p>Instances are not thread safe, see {@link ParallelSeqFileWriter} to write several files at once.
+ *
+ * @author martinr
+ *
+ * @param <K> - key type.
+ * @param <V> - value type.
+ */
+public class SeqFileWriter<K extends Writable, V extends Writable> implements Closeable {
+
+	/**
+	 * Settings of the files written.
+	 */
+	public static final class Options {
+		/** Default write buffer size, in bytes. */
+		public static final int DEFAULT_BUFFER_SIZE = 128 * 1024;
+		/** Configuration key read by SequenceFile, bytes of records compressed together by BLOCK compression. */
+		public static final String COMPRESSION_BLOCK_SIZE_KEY = "io.seqfile.compress.blocksize";
+
+		private CompressionType compression = CompressionType.BLOCK;
+		private CompressionCodec codec = null;
+		private String codecName = null;
+		private int bufferSize = DEFAULT_BUFFER_SIZE;
+		private int compressionBlockSize = 0;
+		private long blockSize = 0;
+		private short replication = 0;
+		private SequenceFile.Metadata metadata = null;
+
+		/**
+		 * @param compression - NONE, RECORD (each value compressed separately) or BLOCK (the default).
+		 * @return these options.
+		 */
+		public Options setCompression(CompressionType compression) {
+			this.compression = compression;
+			return this;
+		}
+
+		/**
+		 * @param codec - codec used to compress (default <code>DefaultCodec</code>, i.e. deflate).
+		 * @return these options.
+		 */
+		public Options setCodec(CompressionCodec codec) {
+			this.codec = codec;
+			this.codecName = null;
+			return this;
+		}
+
+		/**
+		 * @param codecName - codec used to compress, a name or alias accepted by
+		 * <code>CompressionCodecFactory.getCodecByName</code>, e.g. <code>deflate</code>, <code>bzip2</code>, <code>snappy</code>.
+		 * @return these options.
+		 */
+		public Options setCodec(String codecName) {
+			this.codecName = codecName;
+			this.codec = null;
+			return this;
+		}
+
+		/**
+		 * @param bufferSize - size of the write buffer (default {@value #DEFAULT_BUFFER_SIZE}).
+		 * @return these options.
+		 */
+		public Options setBufferSize(int bufferSize) {
+			if (bufferSize <= 0)
+				throw new IllegalArgumentException("bufferSize must be > 0");
+			this.bufferSize = bufferSize;
+			return this;
+		}
+
+		/**
+		 * @param compressionBlockSize - bytes of records buffered and compressed together by BLOCK
+		 * compression, 0 (the default) uses {@value #COMPRESSION_BLOCK_SIZE_KEY} (1,000,000 if not set).
+		 * @return these options.
+		 */
+		public Options setCompressionBlockSize(int compressionBlockSize) {
+			this.compressionBlockSize = compressionBlockSize;
+			return this;
+		}
+
+		/**
+		 * @param blockSize - block size of the file, 0 (the default) uses the file system default.
+		 * @return these options.
+		 */
+		public Options setBlockSize(long blockSize) {
+			this.blockSize = blockSize;
+			return this;
+		}
+
+		/**
+		 * @param replication - replication of the file, 0 (the default) uses the file system default.
+		 * @return these options.
+		 */
+		public Options setReplication(short replication) {
+			this.replication = replication;
+			return this;
+		}
+
+		/**
+		 * @param metadata - metadata stored in the file header, see <code>SequenceFile.Reader.getMetadata</code>.
+		 * @return these options.
+		 */
+		public Options setMetadata(SequenceFile.Metadata metadata) {
+			this.metadata = metadata;
+			return this;
+		}
+
+		/**
+		 * @return the compression type.
+		 */
+		public CompressionType getCompression() {
+			return compression;
+		}
+
+		/**
+		 * @param conf - Hadoop configuration listing the available codecs.
+		 * @return the codec, null if records are not compressed.
+		 * @throws IllegalArgumentException if the codec name is not known.
+		 */
+		public CompressionCodec getCodec(Configuration conf) {
+			if (compression == CompressionType.NONE)
+				return null;
+			if (codec != null)
+				return codec;
+			if (codecName == null)
+				return ReflectionUtils.newInstance(DefaultCodec.class,conf);
+			CompressionCodec named = new CompressionCodecFactory(conf).getCodecByName(codecName);
+			if (named == null)
+				throw new IllegalArgumentException("Unknown codec: " + codecName);
+			return named;
+		}
+
+		SequenceFile.Writer.Option[] toWriterOptions(Configuration conf, Path fileName, Class<?> keyClass, Class<?> valueClass) {
+			List<SequenceFile.Writer.Option> options = new ArrayList<>();
+			options.add(SequenceFile.Writer.file(fileName));
+			options.add(SequenceFile.Writer.keyClass(keyClass));
+			options.add(SequenceFile.Writer.valueClass(valueClass));
+			options.add(SequenceFile.Writer.bufferSize(bufferSize));
+			CompressionCodec compressor = getCodec(conf);
+			options.add(compressor == null ? SequenceFile.Writer.compression(compression)
+										   : SequenceFile.Writer.compression(compression,compressor));
+			if (blockSize > 0)
+				options.add(SequenceFile.Writer.blockSize(blockSize));
+			if (replication > 0)
+				options.add(SequenceFile.Writer.replication(replication));
+			if (metadata != null)
+				options.add(SequenceFile.Writer.metadata(metadata));
+			return options.toArray(new SequenceFile.Writer.Option[0]);
+		}
+
+		/**
+		 * @return conf, or a copy of it with the compression block size set.
+		 */
+		Configuration writerConf(Configuration conf) {
+			if (compressionBlockSize <= 0)
+				return conf;
+			Configuration copy = new Configuration(conf);
+			copy.setInt(COMPRESSION_BLOCK_SIZE_KEY,compressionBlockSize);
+			return copy;
+		}
+	}
+
+	private final Configuration conf;
+	private final Path fileName;
+	private final SequenceFile.Writer writer;
+	private long records = 0;
+	private boolean closed = false;
+
+	/**
+	 * Create fileName (replacing any existing file) with the default {@link Options}.
+	 * @param conf - Hadoop configuration referencing file system to use.
+	 * @param fileName - SequenceFile to write.
+	 * @param keyClass - class of the keys.
+	 * @param valueClass - class of the values.
+	 * @throws IOException
+	 */
+	public SeqFileWriter(Configuration conf, Path fileName, Class<K> keyClass, Class<V> valueClass) throws IOException {
+		this(conf,fileName,keyClass,valueClass,new Options());
+	}
+
+	/**
+	 * Create fileName (replacing any existing file).
+	 * @param conf - Hadoop configuration referencing file system to use.
+	 * @param fileName - SequenceFile to write.
+	 * @param keyClass - class of the keys.
+	 * @param valueClass - class of the values.
+	 * @param options - compression, buffer and block settings.
+	 * @throws IOException
+	 * @throws IllegalArgumentException if the codec is not known.
+	 */
+	public SeqFileWriter(Configuration conf, Path fileName, Class<K> keyClass, Class<V> valueClass, Options options) throws IOException {
+		this.conf = conf;
+		this.fileName = fileName;
+		try {
+			Configuration writerConf = options.writerConf(conf);
+			this.writer = SequenceFile.createWriter(writerConf,options.toWriterOptions(writerConf,fileName,keyClass,valueClass));
+		} finally {
+			HDFSUtil.getStatusCache(conf).invalidate(fileName);
+		}
+		Metrics.increment(Metrics.Counter.FILES_WRITTEN);
+	}
+
+	/**
+	 * Append a record.
+	 * @param key
+	 * @param value
+	 * @throws IOException
+	 */
+	public void append(K key, V value) throws IOException {
+		writer.append(key,value);
+		records++;
+		Metrics.increment(Metrics.Counter.RECORDS_WRITTEN);
+	}
+
+	/**
+	 * Append every record of records.
+	 * @param records - key/value pairs, whose keys and values may be re-used between pairs.
+	 * @return number of records appended.
+	 * @throws IOException
+	 */
+	public long append(Iterator<? extends Pair<? extends K,? extends V>> records) throws IOException {
+		long count = 0;
+		try {
+			while (records.hasNext()) {
+				Pair<? extends K,? extends V> record = records.next();
+				writer.append(record.getKey(),record.getValue());
+				count++;
+			}
+		} finally {
+			this.records += count;
+			Metrics.add(Metrics.Counter.RECORDS_WRITTEN,count);
+		}
+		return count;
+	}
+
+	/**
+	 * Append every record of records.
+	 * @param records - key/value pairs.
+	 * @return number of records appended.
+	 * @throws IOException
+	 */
+	public long append(Iterable<? extends Pair<? extends K,? extends V>> records) throws IOException {
+		return append(records.iterator());
+	}
+
+	/**
+	 * Append every record of records, on the calling thread, in encounter order.
+	 * @param records - key/value pairs.
+	 * @return number of records appended.
+	 * @throws IOException
+	 */
+	public long append(Stream<? extends Pair<? extends K,? extends V>> records) throws IOException {
+		return append(records.iterator());
+	}
+
+	/**
+	 * Write a sync marker, so readers of byte ranges (see {@link SeqFileReader}) can start here.
+	 * Sync markers are also written automatically every few KB.
+	 * @throws IOException
+	 */
+	public void sync() throws IOException {
+		writer.sync();
+	}
+
+	/**
+	 * @return number of records appended.
+	 */
+	public long getRecords() {
+		return records;
+	}
+
+	/**
+	 * @return bytes written to the file so far (records still buffered for BLOCK compression are not included).
+	 * @throws IOException
+	 */
+	public long getLength() throws IOException {
+		return writer.getLength();
+	}
+
+	/**
+	 * @return the file being written.
+	 */
+	public Path getPath() {
+		return fileName;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed)
+			return;
+		closed = true;
+		try {
+			writer.close();
+		} finally {
+			HDFSUtil.getStatusCache(conf).invalidate(fileName);
+		}
+	}
+
+}
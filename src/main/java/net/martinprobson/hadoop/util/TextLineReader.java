@@ -0,0 +1,205 @@
+package net.martinprobson.hadoop.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocalFileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.CodecPool;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.Decompressor;
+import org.apache.hadoop.io.compress.SplitCompressionInputStream;
+import org.apache.hadoop.io.compress.SplittableCompressionCodec;
+import org.apache.hadoop.mapreduce.lib.input.CompressedSplitLineReader;
+import org.apache.hadoop.util.LineReader;
+
+/**
+ * Streaming reader over the lines of a text file, built on Hadoop's <code>LineReader</code>.
+ * <p>Each line is returned as the raw UTF-8 bytes in a single re-used <code>Text</code>
+ * (without the line terminator), so there is no charset decoding and memory use does not
+ * depend on the size of the file. Lines can be passed straight to
+ * {@link DelimRecord#reset(Text)}.
+ * <p>Compressed files are decompressed, with the codec chosen by file extension (see
+ * {@link CodecStreams}). Byte ranges of files compressed with a splittable codec (bzip2) are
+ * read as Hadoop's <code>LineRecordReader</code> reads them, other compressed files can only be
+ * read from the start.
+ * <p>Whole (uncompressed) files on the local file system (<code>file:///</code>) are read through a
+ * {@link MappedFile} rather than a stream, unless {@value #MAP_LOCAL_FILES_KEY} is set to false.
+ * Note that this skips the <code>.crc</code> checksum verification of <code>LocalFileSystem</code>.
+ * <p>Example: -
+ * <pre>
+ * try (TextLineReader reader = HDFSUtil.openLines(conf,path)) {
+ *     while (reader.next())
+ *         record.reset(reader.getLine());
+ * }
+ * </pre>
+ * <p>Instances are not thread safe.
+ *
+ * @author martinr
+ *
+ */
+public class TextLineReader implements Closeable {
+
+	/** Configuration key, read local files through a {@link MappedFile} (default true). */
+	public static final String MAP_LOCAL_FILES_KEY = "hadoop.util.map.local.files";
+
+	/** Either mapped is set, or reader (and in). */
+	private final MappedFile mapped;
+	private final FSDataInputStream in;
+	private final LineReader reader;
+	/** Set when reading a range of a file compressed with a splittable codec. */
+	private final SplitCompressionInputStream splitIn;
+	private final Decompressor decompressor;
+	private final Text line = new Text();
+	/** End of the byte range being read, the line straddling this is the last line read. */
+	private final long end;
+	private long pos;
+
+	/**
+	 * Open fileName for reading.
+	 * @param conf - Hadoop configuration referencing file system to use.
+	 * @param fileName - text file to read.
+	 * @throws IOException
+	 */
+	public TextLineReader(Configuration conf, Path fileName) throws IOException {
+		this(conf,fileName,0,Long.MAX_VALUE);
+	}
+
+	/**
+	 * Open fileName for reading just the lines in the byte range [start,start+length).
+	 * <p>As with Hadoop's <code>LineRecordReader</code>, if start is not 0 the first (partial)
+	 * line is skipped, and the line straddling the end of the range is read in full. Reading a
+	 * file as a series of adjacent ranges returns every line exactly once.
+	 * @param conf - Hadoop configuration referencing file system to use.
+	 * @param fileName - text file to read.
+	 * @param start - offset of the start of the range.
+	 * @param length - length of the range.
+	 * @throws IOException if the file cannot be read, or start is not 0 and the file is compressed
+	 * with a codec that is not splittable.
+	 */
+	public TextLineReader(Configuration conf, Path fileName, long start, long length) throws IOException {
+		long timer = Metrics.start();
+		FileSystem fs = fileName.getFileSystem(conf);
+		CompressionCodec codec = CodecStreams.getCodec(conf,fileName);
+		boolean whole = start == 0 && length == Long.MAX_VALUE;
+		if (codec == null && whole && fs instanceof LocalFileSystem && conf.getBoolean(MAP_LOCAL_FILES_KEY,true)) {
+			this.mapped = new MappedFile(((LocalFileSystem) fs).pathToFile(fileName).toPath());
+			this.in = null;
+			this.reader = null;
+			this.splitIn = null;
+			this.decompressor = null;
+			this.end = Long.MAX_VALUE;
+			opened(timer);
+			return;
+		}
+		if (codec != null && start != 0 && !CodecStreams.isSplittable(codec))
+			throw new IOException(fileName + " is compressed with " + codec.getClass().getSimpleName()
+								  + ", which is not splittable, so must be read from the start");
+		this.mapped = null;
+		this.in = fs.open(fileName,CodecStreams.getBufferSize(conf));
+		this.decompressor = codec == null ? null : CodecPool.getDecompressor(codec);
+		try {
+			long rangeEnd = length == Long.MAX_VALUE ? Long.MAX_VALUE : start + length;
+			if (codec == null) {
+				if (start != 0)
+					in.seek(start);
+				this.reader = new LineReader(in,conf);
+				this.splitIn = null;
+			} else if (whole || !CodecStreams.isSplittable(codec)) {
+				this.reader = new LineReader(codec.createInputStream(in,decompressor),conf);
+				this.splitIn = null;
+				rangeEnd = Long.MAX_VALUE;
+			} else {
+				this.splitIn = ((SplittableCompressionCodec) codec).createInputStream(in,decompressor,start,rangeEnd,
+																					   SplittableCompressionCodec.READ_MODE.BYBLOCK);
+				this.reader = new CompressedSplitLineReader(splitIn,conf,null);
+				start = splitIn.getAdjustedStart();
+				rangeEnd = splitIn.getAdjustedEnd();
+			}
+			this.end = rangeEnd;
+			this.pos = start;
+			if (start != 0)
+				pos += reader.readLine(line);
+			opened(timer);
+		} catch (IOException | RuntimeException e) {
+			in.close();
+			if (decompressor != null)
+				CodecPool.returnDecompressor(decompressor);
+			throw e;
+		}
+	}
+
+	/**
+	 * Read the next line into {@link #getLine()}.
+	 * @return true if a line was read, false at the end of the file (or range).
+	 * @throws IOException
+	 */
+	public boolean next() throws IOException {
+		if (mapped != null) {
+			long before = mapped.getPosition();
+			if (!mapped.readLine(line))
+				return false;
+			if (Metrics.enabled)
+				read(mapped.getPosition() - before);
+			return true;
+		}
+		if (filePosition() > end && !(splitIn != null && ((CompressedSplitLineReader) reader).needAdditionalRecordAfterSplit()))
+			return false;
+		int read = reader.readLine(line);
+		if (read == 0)
+			return false;
+		pos = splitIn != null ? splitIn.getPos() : pos + read;
+		if (Metrics.enabled)
+			read(read);
+		return true;
+	}
+
+	private static void opened(long timer) {
+		Metrics.increment(Metrics.Counter.FILES_OPENED);
+		Metrics.stop(Metrics.Timer.OPEN,timer);
+	}
+
+	private static void read(long bytes) {
+		Metrics.increment(Metrics.Counter.LINES_READ);
+		Metrics.add(Metrics.Counter.BYTES_READ,bytes);
+	}
+
+	private long filePosition() throws IOException {
+		return splitIn != null ? splitIn.getPos() : pos;
+	}
+
+	/**
+	 * @return the current line (the same instance is returned for every line).
+	 */
+	public Text getLine() {
+		return line;
+	}
+
+	/**
+	 * @return the offset following the current line, in the uncompressed data for compressed files 
+	 * (except when reading a range of a bzip2 file, where it is the offset of the compressed block).
+	 */
+	public long getPosition() {
+		return mapped != null ? mapped.getPosition() : pos;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (mapped != null) {
+			mapped.close();
+			return;
+		}
+		try {
+			reader.close();
+		} finally {
+			in.close();
+			if (decompressor != null)
+				CodecPool.returnDecompressor(decompressor);
+		}
+	}
+
+}
@@ -0,0 +1,279 @@
+package net.martinprobson.hadoop.util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+/**
+ * The most frequent values of a stream (heavy hitters), in fixed memory.
+ * <p>Every value is counted in a count-min sketch, <code>depth</code> rows of <code>width</code>
+ * counters, each row indexed by a different hash of the value. The estimated count of a value is the
+ * smallest of its counters, which is never less than its true count and (with probability
+ * 1 - e^-depth) over counts by at most e/width of all values added. Alongside the sketch are
+ * <code>capacity</code> candidate values with the highest estimated counts seen so far, a value
+ * replacing the lowest candidate once its estimate is higher.
+ * <p>Memory is <code>depth * width</code> longs plus the bytes of the candidates, whatever the number
+ * of values added, e.g. 32KB plus 10 values with the defaults.
+ * <p>Sketches of the same dimensions can be {@link #merge merged}: the counters are added, and the
+ * candidates of both re-estimated against the combined counters.
+ * <p>Instances are not thread safe.
+ *
+ * @author martinr
+ *
+ */
+public class TopValues implements Writable {
+
+	static final int DEFAULT_CAPACITY = 10;
+	static final int DEFAULT_DEPTH = 4;
+	static final int DEFAULT_WIDTH = 1024;
+
+	/**
+	 * A candidate value and its estimated count.
+	 */
+	public static final class Value {
+		private final byte[] bytes;
+		private final long count;
+
+		Value(byte[] bytes, long count) {
+			this.bytes = bytes;
+			this.count = count;
+		}
+
+		/**
+		 * @return the value, as added.
+		 */
+		public byte[] getBytes() {
+			return bytes;
+		}
+
+		/**
+		 * @return the estimated count, never less than the true count.
+		 */
+		public long getCount() {
+			return count;
+		}
+	}
+
+	private int capacity;
+	private int depth;
+	private int width;
+	private long[] counters;
+	private long total = 0;
+	private int size = 0;
+	private long[] hashes;
+	private byte[][] values;
+	private int[] lengths;
+	private long[] counts;
+
+	/**
+	 * Construct an empty sketch keeping the top {@value #DEFAULT_CAPACITY} values, with
+	 * {@value #DEFAULT_DEPTH} rows of {@value #DEFAULT_WIDTH} counters.
+	 */
+	public TopValues() {
+		this(DEFAULT_CAPACITY,DEFAULT_DEPTH,DEFAULT_WIDTH);
+	}
+
+	/**
+	 * @param capacity - number of values to keep.
+	 * @param depth - rows of counters (the number of hashes of each value).
+	 * @param width - counters per row, a power of 2.
+	 */
+	public TopValues(int capacity, int depth, int width) {
+		if (capacity <= 0 || depth <= 0 || depth > 16)
+			throw new IllegalArgumentException("capacity must be > 0 and depth from 1 to 16");
+		if (width <= 0 || Integer.bitCount(width) != 1)
+			throw new IllegalArgumentException("width must be a power of 2");
+		init(capacity,depth,width);
+	}
+
+	private void init(int capacity, int depth, int width) {
+		this.capacity = capacity;
+		this.depth = depth;
+		this.width = width;
+		this.counters = new long[depth * width];
+		this.hashes = new long[capacity];
+		this.values = new byte[capacity][];
+		this.lengths = new int[capacity];
+		this.counts = new long[capacity];
+		this.total = 0;
+		this.size = 0;
+	}
+
+	/**
+	 * Count a value.
+	 * @param bytes - buffer holding the value (copied if it becomes a candidate).
+	 * @param start - offset of the value in bytes.
+	 * @param length - length of the value.
+	 * @param hash - 64 bit hash of the value, see {@link HyperLogLog#hash(byte[], int, int)}.
+	 */
+	public void add(byte[] bytes, int start, int length, long hash) {
+		total++;
+		long estimate = Long.MAX_VALUE;
+		// Each row's index is h1 + row * h2 (Kirsch and Mitzenmacher), from the two halves of hash. h2 is
+		// forced odd (coprime with the power of two width), so each row uses a different column.
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32) | 1;
+		int mask = width - 1;
+		for (int row = 0, base = 0; row < depth; row++, base += width) {
+			int i = base + ((h1 + row * h2) & mask);
+			estimate = Math.min(estimate,++counters[i]);
+		}
+		int candidate = indexOf(bytes,start,length,hash);
+		if (candidate >= 0) {
+			counts[candidate] = estimate;
+		} else if (size < capacity) {
+			set(size++,bytes,start,length,hash,estimate);
+		} else {
+			int lowest = lowest();
+			if (estimate > counts[lowest])
+				set(lowest,bytes,start,length,hash,estimate);
+		}
+	}
+
+	private long estimate(long hash) {
+		long estimate = Long.MAX_VALUE;
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32) | 1;
+		int mask = width - 1;
+		for (int row = 0, base = 0; row < depth; row++, base += width)
+			estimate = Math.min(estimate,counters[base + ((h1 + row * h2) & mask)]);
+		return estimate;
+	}
+
+	private int indexOf(byte[] bytes, int start, int length, long hash) {
+		for (int c = 0; c < size; c++) {
+			if (hashes[c] == hash && lengths[c] == length) {
+				byte[] value = values[c];
+				int i = 0;
+				while (i < length && value[i] == bytes[start + i])
+					i++;
+				if (i == length)
+					return c;
+			}
+		}
+		return -1;
+	}
+
+	private int lowest() {
+		int lowest = 0;
+		for (int c = 1; c < size; c++)
+			if (counts[c] < counts[lowest])
+				lowest = c;
+		return lowest;
+	}
+
+	private void set(int candidate, byte[] bytes, int start, int length, long hash, long count) {
+		if (values[candidate] == null || values[candidate].length < length)
+			values[candidate] = new byte[length];
+		System.arraycopy(bytes,start,values[candidate],0,length);
+		lengths[candidate] = length;
+		hashes[candidate] = hash;
+		counts[candidate] = count;
+	}
+
+	/**
+	 * Combine other into this sketch.
+	 * @param other - a sketch with the same capacity, depth and width.
+	 * @throws IllegalArgumentException if the dimensions differ.
+	 */
+	public void merge(TopValues other) {
+		if (other.capacity != capacity || other.depth != depth || other.width != width)
+			throw new IllegalArgumentException("Cannot merge TopValues of different dimensions");
+		for (int i = 0; i < counters.length; i++)
+			counters[i] += other.counters[i];
+		total += other.total;
+		for (int c = 0; c < size; c++)
+			counts[c] = estimate(hashes[c]);
+		for (int c = 0; c < other.size; c++) {
+			if (indexOf(other.values[c],0,other.lengths[c],other.hashes[c]) >= 0)
+				continue;
+			long estimate = estimate(other.hashes[c]);
+			if (size < capacity) {
+				set(size++,other.values[c],0,other.lengths[c],other.hashes[c],estimate);
+			} else {
+				int lowest = lowest();
+				if (estimate > counts[lowest])
+					set(lowest,other.values[c],0,other.lengths[c],other.hashes[c],estimate);
+			}
+		}
+	}
+
+	/**
+	 * @return the candidate values, highest estimated count first.
+	 */
+	public List<Value> getTop() {
+		List<Value> top = new ArrayList<>(size);
+		for (int c = 0; c < size; c++)
+			top.add(new Value(Arrays.copyOf(values[c],lengths[c]),counts[c]));
+		Collections.sort(top,new Comparator<Value>() {
+			@Override
+			public int compare(Value a, Value b) {
+				return Long.compare(b.count,a.count);
+			}
+		});
+		return top;
+	}
+
+	/**
+	 * @return number of values added.
+	 */
+	public long getTotal() {
+		return total;
+	}
+
+	/**
+	 * @return number of values kept.
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	@Override
+	public void write(DataOutput out) throws IOException {
+		WritableUtils.writeVInt(out,capacity);
+		WritableUtils.writeVInt(out,depth);
+		WritableUtils.writeVInt(out,width);
+		WritableUtils.writeVLong(out,total);
+		for (long counter : counters)
+			WritableUtils.writeVLong(out,counter);
+		WritableUtils.writeVInt(out,size);
+		for (int c = 0; c < size; c++) {
+			out.writeLong(hashes[c]);
+			WritableUtils.writeVLong(out,counts[c]);
+			WritableUtils.writeVInt(out,lengths[c]);
+			out.write(values[c],0,lengths[c]);
+		}
+	}
+
+	@Override
+	public void readFields(DataInput in) throws IOException {
+		int readCapacity = WritableUtils.readVInt(in);
+		int readDepth = WritableUtils.readVInt(in);
+		int readWidth = WritableUtils.readVInt(in);
+		if (readCapacity != capacity || readDepth != depth || readWidth != width)
+			init(readCapacity,readDepth,readWidth);
+		total = WritableUtils.readVLong(in);
+		for (int i = 0; i < counters.length; i++)
+			counters[i] = WritableUtils.readVLong(in);
+		size = WritableUtils.readVInt(in);
+		if (size > capacity)
+			throw new IOException("Invalid TopValues size " + size);
+		for (int c = 0; c < size; c++) {
+			hashes[c] = in.readLong();
+			counts[c] = WritableUtils.readVLong(in);
+			lengths[c] = WritableUtils.readVInt(in);
+			if (values[c] == null || values[c].length < lengths[c])
+				values[c] = new byte[lengths[c]];
+			in.readFully(values[c],0,lengths[c]);
+		}
+	}
+
+}
@@ -1,6 +1,12 @@
 package net.martinprobson.hadoop.util;
 
+import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.hadoop.conf.Configuration;
 
@@ -19,5 +25,53 @@ public class Util {
 			sb.append(entry + "\n");
 		return sb.toString();
 	}
+	
+	/**
+	 * Wait for the result of a task, unwrapping any exception it threw.
+	 * @param result
+	 * @return the task's result.
+	 * @throws IOException if the task threw an IOException (or a checked exception, which is wrapped),
+	 * or the wait was interrupted.
+	 */
+	static <T> T getResult(Future<T> result) throws IOException {
+		try {
+			return result.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted waiting for task");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException)
+				throw (IOException) cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new IOException(cause);
+		}
+	}
+
+	/**
+	 * Interrupt the tasks of pool and wait for the running ones to stop, so (if they check for
+	 * interrupts) none of them is still calling back to the caller once this returns.
+	 * @param pool
+	 */
+	static void shutdown(ExecutorService pool) {
+		pool.shutdownNow();
+		try {
+			pool.awaitTermination(Long.MAX_VALUE,TimeUnit.NANOSECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Fail if the current thread has been interrupted, e.g. by {@link #shutdown} after another task failed.
+	 * @throws InterruptedIOException
+	 */
+	static void checkInterrupted() throws InterruptedIOException {
+		if (Thread.currentThread().isInterrupted())
+			throw new InterruptedIOException("Interrupted, another task failed");
+	}
 
 }
@@ -0,0 +1,235 @@
+package net.martinprobson.hadoop.util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+/**
+ * Counts of <code>long</code> values in a fixed number of equal width bins, with the exact minimum
+ * and maximum, in fixed memory whatever the number or range of values added.
+ * <p>Bin widths are a power of 2, and bins start at multiples of their width, so the range need
+ * not be known in advance: when a value falls outside the bins, they move to cover it, or if the
+ * values no longer fit, double in width (adjacent pairs of bins are added together) until they do.
+ * Values are held as a long (see {@link ColumnType}), so this suits any numeric field except DOUBLE,
+ * or the lengths of STRING fields.
+ * <p>Histograms with the same number of bins can be {@link #merge merged}, the one with the narrower
+ * bins being widened to match the other first.
+ * <p>Instances are not thread safe.
+ *
+ * @author martinr
+ *
+ */
+public class ValueHistogram implements Writable {
+
+	static final int DEFAULT_BINS = 64;
+
+	private long[] bins;
+	/** log2 of the bin width. */
+	private int shift = 0;
+	/** Number (value >> shift) of the first bin. */
+	private long first = 0;
+	private long count = 0;
+	private long min = Long.MAX_VALUE;
+	private long max = Long.MIN_VALUE;
+
+	/**
+	 * Construct an empty histogram of {@value #DEFAULT_BINS} bins.
+	 */
+	public ValueHistogram() {
+		this(DEFAULT_BINS);
+	}
+
+	/**
+	 * @param bins - number of bins, at least 2.
+	 */
+	public ValueHistogram(int bins) {
+		if (bins < 2)
+			throw new IllegalArgumentException("bins must be >= 2");
+		this.bins = new long[bins];
+	}
+
+	/**
+	 * Add a value.
+	 * @param value
+	 */
+	public void add(long value) {
+		long bin = (value >> shift) - first;
+		if (count == 0 || Long.compareUnsigned(bin,bins.length) >= 0) {
+			fit(Math.min(min,value),Math.max(max,value),shift);
+			bin = (value >> shift) - first;
+		}
+		bins[(int) bin]++;
+		count++;
+		if (value < min)
+			min = value;
+		if (value > max)
+			max = value;
+	}
+
+	/**
+	 * Move and (if needed) widen the bins to cover low..high, with a width of at least 2^minShift.
+	 */
+	private void fit(long low, long high, int minShift) {
+		int newShift = minShift;
+		// high >= low, so the difference is correct taken as unsigned, even if it overflows.
+		while (Long.compareUnsigned((high >> newShift) - (low >> newShift),bins.length) >= 0)
+			newShift++;
+		long newFirst = low >> newShift;
+		if (count == 0) {
+			shift = newShift;
+			first = newFirst;
+			return;
+		}
+		long[] moved = new long[bins.length];
+		for (int i = 0; i < bins.length; i++)
+			if (bins[i] != 0)
+				moved[(int) (((first + i) >> (newShift - shift)) - newFirst)] += bins[i];
+		bins = moved;
+		shift = newShift;
+		first = newFirst;
+	}
+
+	/**
+	 * Combine other into this histogram.
+	 * @param other - a histogram with the same number of bins.
+	 * @throws IllegalArgumentException if the number of bins differs.
+	 */
+	public void merge(ValueHistogram other) {
+		if (other.bins.length != bins.length)
+			throw new IllegalArgumentException("Cannot merge " + other.bins.length + " bins into " + bins.length);
+		if (other.count == 0)
+			return;
+		fit(Math.min(min,other.min),Math.max(max,other.max),Math.max(shift,other.shift));
+		for (int i = 0; i < bins.length; i++)
+			if (other.bins[i] != 0)
+				bins[(int) (((other.first + i) >> (shift - other.shift)) - first)] += other.bins[i];
+		count += other.count;
+		min = Math.min(min,other.min);
+		max = Math.max(max,other.max);
+	}
+
+	/**
+	 * @return number of values added.
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * @return the smallest value added.
+	 * @throws IllegalStateException if the histogram is empty.
+	 */
+	public long getMin() {
+		if (count == 0)
+			throw new IllegalStateException("ValueHistogram is empty");
+		return min;
+	}
+
+	/**
+	 * @return the largest value added.
+	 * @throws IllegalStateException if the histogram is empty.
+	 */
+	public long getMax() {
+		if (count == 0)
+			throw new IllegalStateException("ValueHistogram is empty");
+		return max;
+	}
+
+	/**
+	 * @return number of bins.
+	 */
+	public int getBinCount() {
+		return bins.length;
+	}
+
+	/**
+	 * @param bin - from 0 to getBinCount() - 1.
+	 * @return number of values in bin.
+	 */
+	public long getCount(int bin) {
+		return bins[bin];
+	}
+
+	/**
+	 * @param bin - from 0 to getBinCount() - 1.
+	 * @return the lowest value of bin.
+	 */
+	public long getLowerBound(int bin) {
+		return (first + bin) << shift;
+	}
+
+	/**
+	 * @param bin - from 0 to getBinCount() - 1.
+	 * @return the highest value of bin.
+	 */
+	public long getUpperBound(int bin) {
+		return ((first + bin) << shift) + ((1L << shift) - 1);
+	}
+
+	/**
+	 * Approximate quantile, interpolating linearly within the bin holding it.
+	 * @param q - from 0 to 1, e.g. 0.5 for the median.
+	 * @return the approximate value with q of the values at or below it.
+	 * @throws IllegalStateException if the histogram is empty.
+	 */
+	public long quantile(double q) {
+		if (q < 0 || q > 1)
+			throw new IllegalArgumentException("q must be from 0 to 1");
+		if (count == 0)
+			throw new IllegalStateException("ValueHistogram is empty");
+		double rank = q * count;
+		long below = 0;
+		for (int i = 0; i < bins.length; i++) {
+			if (bins[i] == 0 || below + bins[i] < rank) {
+				below += bins[i];
+				continue;
+			}
+			long lower = Math.max(getLowerBound(i),min);
+			long upper = Math.min(getUpperBound(i),max);
+			return lower + Math.round((rank - below) / bins[i] * ((double) upper - lower));
+		}
+		return max;
+	}
+
+	@Override
+	public void write(DataOutput out) throws IOException {
+		WritableUtils.writeVInt(out,bins.length);
+		WritableUtils.writeVLong(out,count);
+		if (count == 0)
+			return;
+		WritableUtils.writeVInt(out,shift);
+		WritableUtils.writeVLong(out,first);
+		WritableUtils.writeVLong(out,min);
+		WritableUtils.writeVLong(out,max);
+		for (long bin : bins)
+			WritableUtils.writeVLong(out,bin);
+	}
+
+	@Override
+	public void readFields(DataInput in) throws IOException {
+		int length = WritableUtils.readVInt(in);
+		if (length < 2)
+			throw new IOException("Invalid ValueHistogram bins " + length);
+		bins = length == bins.length ? bins : new long[length];
+		count = WritableUtils.readVLong(in);
+		if (count == 0) {
+			shift = 0;
+			first = 0;
+			min = Long.MAX_VALUE;
+			max = Long.MIN_VALUE;
+			Arrays.fill(bins,0);
+			return;
+		}
+		shift = WritableUtils.readVInt(in);
+		first = WritableUtils.readVLong(in);
+		min = WritableUtils.readVLong(in);
+		max = WritableUtils.readVLong(in);
+		for (int i = 0; i < bins.length; i++)
+			bins[i] = WritableUtils.readVLong(in);
+	}
+
+}
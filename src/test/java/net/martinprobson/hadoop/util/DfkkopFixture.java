@@ -0,0 +1,76 @@
+package net.martinprobson.hadoop.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+/**
+ * Test data shared by the tests that read many DFKKOP lines: the <code>dfkkop.properties</code>
+ * schema with typed columns, and files of lines generated from <code>TestDfkkopParser_test_case.txt</code>.
+ *
+ * @author martinr
+ *
+ */
+final class DfkkopFixture {
+
+	/**
+	 * Sets the values of each generated line.
+	 */
+	interface Row {
+		/**
+		 * @param row - number of the line.
+		 * @param values - the fields of the test case line, with the changes made for earlier lines.
+		 * @return the fields to write, usually values.
+		 */
+		String[] values(int row, String[] values);
+	}
+
+	private DfkkopFixture() {
+	}
+
+	/**
+	 * @param columns - extra or replaced columns, as pairs of name and <code>position,type</code>.
+	 * @return a parser for the schema, with vkont (long), bldat and studt (date) and betrh (decimal(2)) typed.
+	 * @throws IOException if the schema cannot be loaded.
+	 */
+	static DelimLineParser parser(String... columns) throws IOException {
+		Properties fields = new Properties();
+		try (InputStream in = DfkkopFixture.class.getResourceAsStream("/dfkkop.properties")) {
+			fields.load(in);
+		}
+		fields.put("vkont","18,long");
+		fields.put("bldat","32,date");
+		fields.put("studt","39,date");
+		fields.put("betrh","43,decimal(2)");
+		for (int i = 0; i < columns.length; i += 2)
+			fields.put(columns[i],columns[i + 1]);
+		return new DelimLineParser(fields);
+	}
+
+	/**
+	 * Write lines from..to-1 to file.
+	 * @param fs
+	 * @param file
+	 * @param from - number of the first line.
+	 * @param to - number (exclusive) of the last line.
+	 * @param row - sets the values of each line.
+	 * @throws IOException
+	 */
+	static void write(FileSystem fs, Path file, int from, int to, Row row) throws IOException {
+		String line = FileUtils.readFileToString(new File(DfkkopFixture.class.getResource("/TestDfkkopParser_test_case.txt").getFile()),
+												 StandardCharsets.UTF_8).trim();
+		String[] values = line.split("\u0001",-1);
+		try (OutputStream out = fs.create(file)) {
+			for (int i = from; i < to; i++)
+				out.write((String.join("\u0001",row.values(i,values)) + "\n").getBytes(StandardCharsets.UTF_8));
+		}
+	}
+
+}
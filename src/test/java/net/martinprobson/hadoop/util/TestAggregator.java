@@ -0,0 +1,114 @@
+package net.martinprobson.hadoop.util;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+
+public class TestAggregator {
+
+	private static final int ROWS = 5000;
+	private static final int ACCOUNTS = 997;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Configuration conf;
+	private DelimLineParser parser;
+	private Path text;
+	/** Expected sum, count, min and max of betrh by vkont, computed the slow way. */
+	private final Map<String,BigDecimal> sums = new HashMap<>();
+	private final Map<String,Integer> counts = new HashMap<>();
+	private final Map<String,BigDecimal> mins = new HashMap<>();
+	private final Map<String,BigDecimal> maxs = new HashMap<>();
+
+	@Before
+	public void setUp() throws IOException {
+		conf = new Configuration();
+		parser = DfkkopFixture.parser();
+		text = new Path(folder.getRoot().toURI().toString(),"dfkkop.txt");
+		DfkkopFixture.write(FileSystem.getLocal(conf),text,0,ROWS,(i,values) -> {
+			String account = Long.toString(850000000000L + i % ACCOUNTS);
+			values[17] = i % 2 == 0 ? account : "00" + account;
+			values[42] = String.format("%d.%02d-",i % 1000,i % 100);
+			BigDecimal amount = new BigDecimal(values[42].substring(0,values[42].length() - 1)).negate();
+			sums.merge(account,amount,BigDecimal::add);
+			counts.merge(account,1,Integer::sum);
+			mins.merge(account,amount,BigDecimal::min);
+			maxs.merge(account,amount,BigDecimal::max);
+			return values;
+		});
+	}
+
+	private void check(Aggregator aggregator, int expectedSpills) throws IOException {
+		final Map<String,String> results = new HashMap<>();
+		Aggregator.Report report = aggregator.sum("betrh").count().min("betrh").max("betrh").aggregate(text,new Aggregator.GroupHandler() {
+			@Override
+			public void handle(Aggregator.Group group) {
+				assertNull(results.put(group.getKey(0),group.toString()));
+				assertEquals(Long.parseLong(group.getKey(0)),group.getLongKey(0));
+			}
+		});
+		assertEquals(ROWS,report.getLines());
+		assertEquals(ACCOUNTS,report.getGroups());
+		assertEquals(ACCOUNTS,results.size());
+		if (expectedSpills == 0)
+			assertEquals(0,report.getSpills());
+		else
+			assertTrue(report.toString(),report.getSpills() >= expectedSpills);
+		for (String account : sums.keySet())
+			assertEquals(account + " " + sums.get(account).toPlainString() + "," + counts.get(account) + ","
+						 + mins.get(account).toPlainString() + "," + maxs.get(account).toPlainString(),results.get(account));
+	}
+
+	@Test
+	public final void testInMemory() throws IOException {
+		check(new Aggregator(conf,parser,"vkont").setWorkers(4),0);
+	}
+
+	@Test
+	public final void testSpill() throws IOException {
+		File spill = folder.newFolder("spill");
+		check(new Aggregator(conf,parser,"vkont").setWorkers(2).setMemoryLimit(8 * 1024).setPartitions(4).setSpillDirectory(spill),1);
+		assertEquals(0,spill.list().length);
+	}
+
+	@Test
+	public final void testStringAndNullKeys() throws IOException {
+		final Map<String,Long> results = new HashMap<>();
+		new Aggregator(conf,parser,"waers","gsber").setWorkers(2).count().min("bldat").sum("studt")
+												   .setNullValues("\\N","00000000")
+												   .aggregate(text,new Aggregator.GroupHandler() {
+			@Override
+			public void handle(Aggregator.Group group) {
+				assertEquals("GBP",group.getKey(0));
+				assertTrue(group.isKeyNull(1));
+				assertNull(group.getKey(1));
+				assertEquals("2012-04-22",group.getValueString(1));
+				assertFalse(group.hasValue(2));
+				assertNull(group.getValueString(2));
+				results.put(group.getKey(0),group.getValue(0));
+			}
+		});
+		assertEquals(1,results.size());
+		assertEquals(ROWS,(long) results.get("GBP"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public final void testSumString() {
+		new Aggregator(conf,parser,"vkont").sum("waers");
+	}
+
+}
@@ -0,0 +1,170 @@
+package net.martinprobson.hadoop.util;
+
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+
+import org.junit.Test;
+
+
+public class TestByteFields {
+
+	private static byte[] b(String s) {
+		return s.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static long decimal(String s, int scale) {
+		return ByteFields.parseDecimal(b(s),0,b(s).length,scale);
+	}
+
+	private static long epochDay(String s) {
+		return ByteFields.parseEpochDay(b(s),0,b(s).length);
+	}
+
+	private static long epochMicros(String s) {
+		return ByteFields.parseEpochMicros(b(s),0,b(s).length);
+	}
+
+	private static boolean flag(String s) {
+		return ByteFields.parseFlag(b(s),0,b(s).length);
+	}
+
+	@Test
+	public final void testParseLong() {
+		byte[] bytes = b("x 12345 x");
+		assertEquals(12345,ByteFields.parseLong(bytes,1,8));
+		assertEquals(-42,ByteFields.parseLong(b("-42"),0,3));
+		assertEquals(Long.MAX_VALUE,ByteFields.parseLong(b("9223372036854775807"),0,19));
+		assertEquals(Long.MIN_VALUE,ByteFields.parseLong(b("-9223372036854775808"),0,20));
+		assertEquals(100,ByteFields.parseInt(b("100"),0,3));
+	}
+
+	@Test(expected = NumberFormatException.class)
+	public final void testParseLongOverflow() {
+		ByteFields.parseLong(b("9223372036854775808"),0,19);
+	}
+
+	@Test(expected = NumberFormatException.class)
+	public final void testParseIntOverflow() {
+		ByteFields.parseInt(b("2147483648"),0,10);
+	}
+
+	@Test(expected = NumberFormatException.class)
+	public final void testParseLongBlank() {
+		ByteFields.parseLong(b("   "),0,3);
+	}
+
+	@Test(expected = NumberFormatException.class)
+	public final void testParseLongInvalid() {
+		ByteFields.parseLong(b("12a"),0,3);
+	}
+
+	@Test
+	public final void testParseDecimal() {
+		assertEquals(75357,decimal("753.57",2));
+		assertEquals(350,decimal("3.5",2));
+		assertEquals(7500,decimal(" 75 ",2));
+		assertEquals(-357,decimal("3.57-",2));
+		assertEquals(-357,decimal("-3.57",2));
+		assertEquals(357,decimal("3.5700",2));
+		assertEquals(50,decimal(".5",2));
+	}
+
+	@Test
+	public final void testParseDouble() {
+		String[] values = { "753.57", "3.5", " 75 ", "-3.57", "+0.1", "0.000123", "1e10", "1.5E-3", ".5", "5.",
+							"123456789012345", "1234567890.123456789", "1e300", "4.9e-324", "0", "-0.0" };
+		for (String value : values)
+			assertEquals(value,Double.parseDouble(value.trim()),ByteFields.parseDouble(b(value),0,value.length()),0);
+		assertEquals(-3.57,ByteFields.parseDouble(b("3.57-"),0,5),0);
+		assertEquals(0.1 + 0.2,ByteFields.parseDouble(b("0.30000000000000004"),0,19),0);
+	}
+
+	@Test
+	public final void testParseDoubleInvalid() {
+		for (String value : new String[] { "", " ", ".", "e5", "1e", "NaN", "Infinity", "1.2.3", "--1", "1d", "0x10" }) {
+			try {
+				ByteFields.parseDouble(b(value),0,value.length());
+				fail(value);
+			} catch (NumberFormatException e) {
+			}
+		}
+	}
+
+	@Test(expected = NumberFormatException.class)
+	public final void testParseDecimalTooManyPlaces() {
+		decimal("3.575",2);
+	}
+
+	@Test
+	public final void testParseEpochDay() {
+		assertEquals(LocalDate.of(2012,4,22).toEpochDay(),epochDay("20120422"));
+		assertEquals(LocalDate.of(2017,5,20).toEpochDay(),epochDay("2017-05-20 00:00:00.000000000"));
+		assertEquals(LocalDate.of(9999,12,31).toEpochDay(),epochDay("9999-12-31"));
+		assertEquals(LocalDate.of(1900,2,28).toEpochDay(),epochDay("19000228"));
+		assertEquals(LocalDate.of(2000,2,29).toEpochDay(),epochDay("20000229"));
+		for (LocalDate d = LocalDate.of(1969,1,1); d.getYear() < 1973; d = d.plusDays(1))
+			assertEquals(d.toEpochDay(),ByteFields.epochDay(d.getYear(),d.getMonthValue(),d.getDayOfMonth()));
+	}
+
+	@Test(expected = NumberFormatException.class)
+	public final void testParseEpochDayInitial() {
+		epochDay("00000000");
+	}
+
+	@Test(expected = NumberFormatException.class)
+	public final void testParseEpochDayInvalid() {
+		epochDay("19000229");
+	}
+
+	@Test
+	public final void testParseTimestamp() {
+		LocalDateTime ts = LocalDateTime.of(2017,5,20,13,45,1,123456789);
+		long micros = ChronoUnit.MICROS.between(LocalDateTime.of(1970,1,1,0,0).toInstant(ZoneOffset.UTC),ts.toInstant(ZoneOffset.UTC));
+		assertEquals(micros,epochMicros("2017-05-20 13:45:01.123456789"));
+		assertEquals(micros * 1000 + 789,ByteFields.parseEpochNanos(b("2017-05-20 13:45:01.123456789"),0,29));
+		assertEquals(1500000,epochMicros("1970-01-01 00:00:01.5"));
+		assertEquals(-500000,epochMicros("1969-12-31 23:59:59.5"));
+		assertEquals(LocalDate.of(2012,5,1).toEpochDay() * 86400000000L,epochMicros("20120501"));
+		assertEquals(LocalDateTime.of(9999,12,31,23,59,59).toEpochSecond(ZoneOffset.UTC) * 1000000L,
+				epochMicros("9999-12-31 23:59:59.000000000"));
+	}
+
+	@Test(expected = NumberFormatException.class)
+	public final void testParseEpochNanosOutOfRange() {
+		ByteFields.parseEpochNanos(b("9999-12-31 23:59:59.000000000"),0,29);
+	}
+
+	@Test(expected = NumberFormatException.class)
+	public final void testParseTimestampInvalid() {
+		epochMicros("2017-05-20 25:00:00");
+	}
+
+	@Test
+	public final void testParseFlag() {
+		assertTrue(flag("X"));
+		assertTrue(flag("true"));
+		assertFalse(flag(" "));
+		assertFalse(flag(""));
+		assertFalse(flag("0"));
+		assertFalse(flag("FALSE"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public final void testParseFlagInvalid() {
+		flag("A");
+	}
+
+	@Test
+	public final void testIsBlank() {
+		assertTrue(ByteFields.isBlank(b("  "),0,2));
+		assertTrue(ByteFields.isBlank(b(""),0,0));
+		assertFalse(ByteFields.isBlank(b(" a "),0,3));
+		assertTrue(ByteFields.equalsTrimmed(b(" \\N "),0,4,b("\\N")));
+	}
+
+}
@@ -0,0 +1,178 @@
+package net.martinprobson.hadoop.util;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.Properties;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+
+public class TestColumnBatchParser {
+
+	private static final int ROWS = 2500;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Configuration conf;
+	private DelimLineParser parser;
+	private Path text;
+
+	@Before
+	public void setUp() throws IOException {
+		conf = new Configuration();
+		parser = DfkkopFixture.parser("sbeth","48,double");
+		text = new Path(folder.getRoot().toURI().toString(),"dfkkop.txt");
+		DfkkopFixture.write(FileSystem.getLocal(conf),text,0,ROWS,(i,values) -> {
+			values[17] = Long.toString(850000000000L + i);
+			values[42] = String.format("%d.%02d",i % 1000,i % 100);
+			values[47] = i % 10 == 0 ? "" : i + ".25";
+			return values;
+		});
+	}
+
+	@Test
+	public final void testRead() throws IOException {
+		ColumnBatchParser batches = new ColumnBatchParser(parser,1000,"vkont","betrh","sbeth","bldat").setNullValues("\\N","00000000");
+		DelimRecord record = parser.newRecord().setNullValues("\\N","00000000");
+		int read = 0;
+		int batchCount = 0;
+		ColumnBatch batch;
+		try (TextLineReader reader = new TextLineReader(conf,text);
+			 TextLineReader rows = new TextLineReader(conf,text)) {
+			while ((batch = batches.read(reader)) != null) {
+				assertSame(batches.getBatch(),batch);
+				assertEquals(4,batch.getColumnCount());
+				LongColumnVector vkont = batch.getLongColumn("vkont");
+				LongColumnVector betrh = batch.getLongColumn("betrh");
+				DoubleColumnVector sbeth = batch.getDoubleColumn("sbeth");
+				LongColumnVector bldat = batch.getLongColumn("bldat");
+				for (int row = 0; row < batch.getRowCount(); row++, read++) {
+					assertTrue(rows.next());
+					record.reset(rows.getLine());
+					assertEquals(record.getLong(18),vkont.get(row));
+					assertEquals(record.getDecimal(43,2),betrh.getValues()[row]);
+					assertEquals(read % 10 == 0,sbeth.isNull(row));
+					assertEquals(record.getDouble(48,0),sbeth.get(row),0);
+					assertEquals(record.getEpochDay(32),bldat.get(row));
+				}
+				batchCount++;
+			}
+		}
+		assertEquals(ROWS,read);
+		assertEquals(3,batchCount);
+	}
+
+	@Test
+	public final void testAllNamedFields() throws IOException {
+		ColumnBatchParser batches = new ColumnBatchParser(parser).setNullValues("\\N","00000000");
+		try (TextLineReader reader = new TextLineReader(conf,text)) {
+			ColumnBatch batch = batches.read(reader);
+			assertEquals(ROWS,batch.getRowCount());
+			assertEquals(parser.getSchema().size(),batch.getColumnCount());
+			assertTrue(batch.getLongColumn("studt").isNull(0));
+			assertEquals("100",batch.getBytesColumn("mandt").getString(0));
+			assertNull(batches.read(reader));
+		}
+	}
+
+	@Test
+	public final void testMatchesColumnBatchAdd() {
+		ColumnBatchParser batches = new ColumnBatchParser(parser,4);
+		ColumnBatch expected = new ColumnBatch(parser.getSchema());
+		DelimRecord record = parser.newRecord();
+		String[] lines = { "a\u0001\u0001x", "b", "\\N", " \u0001 " };
+		for (String line : lines) {
+			batches.add(new Text(line));
+			expected.add(record.reset(new Text(line)));
+		}
+		ColumnBatch batch = batches.finish();
+		for (int c = 0; c < batch.getColumnCount(); c++) {
+			int position = batch.getPosition(c);
+			for (int row = 0; row < lines.length; row++) {
+				assertEquals(expected.getColumn(position).isNull(row),batch.getColumn(position).isNull(row));
+				if (batch.getType(position) == ColumnType.STRING)
+					assertEquals(((BytesColumnVector) expected.getColumn(position)).getString(row),
+								 ((BytesColumnVector) batch.getColumn(position)).getString(row));
+			}
+		}
+	}
+
+	@Test
+	public final void testQuoted() {
+		Properties fields = new Properties();
+		fields.put("name","1");
+		fields.put("amount","2,double");
+		DelimLineParser quoted = new DelimLineParser(fields,",");
+		quoted.setQuoteChar('"');
+		ColumnBatchParser batches = new ColumnBatchParser(quoted,2);
+		assertFalse(batches.add(new Text("\"Smith, John\",1.5")));
+		assertTrue(batches.add(new Text("Jones,\"2\"")));
+		ColumnBatch batch = batches.finish();
+		assertEquals("Smith, John",batch.getBytesColumn("name").getString(0));
+		assertEquals("Jones",batch.getBytesColumn("name").getString(1));
+		assertEquals(1.5,batch.getDoubleColumn("amount").get(0),0);
+		assertEquals(2.0,batch.getDoubleColumn("amount").get(1),0);
+	}
+
+	@Test
+	public final void testNullValuesFromRecord() {
+		Properties fields = new Properties();
+		fields.put("name","1");
+		fields.put("count","2,long");
+		ColumnBatchParser batches = new ColumnBatchParser(new DelimLineParser(fields,","),3).setNullValues("-");
+		batches.add(new Text("-,-"));
+		batches.add(new Text(" ,1"));
+		batches.add(new Text("\\N,2"));
+		ColumnBatch batch = batches.finish();
+		assertTrue(batch.getBytesColumn("name").isNull(0));
+		assertTrue(batch.getLongColumn("count").isNull(0));
+		assertEquals(" ",batch.getBytesColumn("name").getString(1));
+		assertEquals("\\N",batch.getBytesColumn("name").getString(2));
+		assertFalse(batch.getLongColumn("count").isNull(2));
+		batches.setBlankIsNull(false);
+		batches.add(new Text("a, "));
+		try {
+			batches.finish();
+			fail("Blank field parsed");
+		} catch (NumberFormatException e) {
+			// Expected, blank is not null.
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public final void testBatchFull() {
+		ColumnBatchParser batches = new ColumnBatchParser(parser,1);
+		batches.add(new Text("a"));
+		batches.add(new Text("b"));
+	}
+
+	@Test
+	public final void testInvalidNumber() {
+		ColumnBatchParser batches = new ColumnBatchParser(parser,2,"vkont");
+		batches.add(new Text(""));
+		try {
+			batches.finish();
+		} catch (NumberFormatException e) {
+			fail("Blank field should be null");
+		}
+		batches.add(new Text(String.join("\u0001",new String[] { "", "", "", "", "", "", "", "", "", "", "", "", "", "", "", "", "", "x" })));
+		try {
+			batches.finish();
+			fail("Expected NumberFormatException");
+		} catch (NumberFormatException e) {
+		}
+		// The parser can be re-used after a failure.
+		batches.add(new Text(""));
+		assertEquals(1,batches.finish().getRowCount());
+	}
+
+}
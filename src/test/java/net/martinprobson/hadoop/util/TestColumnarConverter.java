@@ -0,0 +1,152 @@
+package net.martinprobson.hadoop.util;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.NoSuchElementException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.SequenceFile.CompressionType;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.io.compress.DefaultCodec;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+
+public class TestColumnarConverter {
+
+	private static final int ROWS = 2500;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Configuration conf;
+	private FileSystem fs;
+	private DelimLineParser parser;
+	private Path text;
+	private Path columnar;
+
+	@Before
+	public void setUp() throws IOException {
+		conf = new Configuration();
+		fs = FileSystem.getLocal(conf);
+		parser = DfkkopFixture.parser("mandt","6,int","sbeth","48,decimal(2)");
+		text = new Path(folder.getRoot().toURI().toString(),"dfkkop.txt");
+		columnar = new Path(folder.getRoot().toURI().toString(),"dfkkop.seq");
+		DfkkopFixture.write(fs,text,0,ROWS,(i,values) -> {
+			values[17] = Long.toString(850000000000L + i);
+			values[42] = String.format("%d.%02d",i % 1000,i % 100);
+			return values;
+		});
+	}
+
+	@Test
+	public final void testConvertAndReadAll() throws IOException {
+		long rows = new ColumnarConverter(conf,parser).setBatchRows(1000).setNullValues("\\N","00000000").convert(text,columnar);
+		assertEquals(ROWS,rows);
+		int batches = 0;
+		long read = 0;
+		Text value = new Text();
+		try (ColumnarReader reader = new ColumnarReader(conf,columnar)) {
+			assertEquals(ColumnType.DECIMAL,reader.getSchema().getType(43));
+			while (reader.next()) {
+				ColumnBatch batch = reader.getBatch();
+				assertEquals(read,reader.getFirstRow());
+				LongColumnVector vkont = batch.getLongColumn("vkont");
+				LongColumnVector betrh = batch.getLongColumn("betrh");
+				for (int row = 0; row < batch.getRowCount(); row++) {
+					long i = read + row;
+					assertEquals(850000000000L + i,vkont.get(row));
+					assertEquals((i % 1000) * 100 + i % 100,betrh.get(row));
+					assertEquals(357,batch.getLongColumn("sbeth").get(row));
+					assertEquals(100,batch.getLongColumn("mandt").get(row));
+					assertEquals(ByteFields.epochDay(2012,4,22),batch.getLongColumn("bldat").get(row));
+					assertTrue(batch.getColumn("studt").isNull(row));
+					assertFalse(batch.getColumn("abwbl").isNull(row));
+					assertEquals(" ",batch.getBytesColumn("abwbl").get(row,value).toString());
+					assertEquals("X",batch.getBytesColumn("xanza").getString(row));
+				}
+				read += batch.getRowCount();
+				batches++;
+			}
+		}
+		assertEquals(ROWS,read);
+		assertEquals(3,batches);
+	}
+
+	@Test
+	public final void testProjection() throws IOException {
+		new ColumnarConverter(conf,parser).setNullValues("00000000").convert(text,columnar);
+		long total = 0;
+		try (ColumnarReader reader = new ColumnarReader(conf,columnar,"vkont")) {
+			while (reader.next()) {
+				ColumnBatch batch = reader.getBatch();
+				long[] vkont = batch.getLongColumn("vkont").getValues();
+				for (int row = 0; row < batch.getRowCount(); row++)
+					total += vkont[row] - 850000000000L;
+				try {
+					batch.getColumn("betrh");
+					fail("Expected betrh not to be loaded");
+				} catch (NoSuchElementException e) {
+					assertTrue(e.getMessage().contains("projection"));
+				}
+			}
+		}
+		assertEquals((long) ROWS * (ROWS - 1) / 2,total);
+	}
+
+	@Test
+	public final void testCompressionOptions() throws IOException {
+		for (int level : new int[] { 0, 9 }) {
+			new ColumnarConverter(conf,parser).setColumnCompression(level).setCompression(CompressionType.BLOCK,new DefaultCodec())
+											  .setNullValues("00000000").convert(text,columnar);
+			long rows = 0;
+			try (ColumnarReader reader = new ColumnarReader(conf,columnar,"sbeth","abwbl")) {
+				while (reader.next()) {
+					ColumnBatch batch = reader.getBatch();
+					for (int row = 0; row < batch.getRowCount(); row++) {
+						assertEquals(357,batch.getLongColumn("sbeth").get(row));
+						assertEquals(" ",batch.getBytesColumn("abwbl").getString(row));
+					}
+					rows += batch.getRowCount();
+				}
+			}
+			assertEquals(ROWS,rows);
+		}
+	}
+
+	@Test
+	public final void testParseError() throws IOException {
+		try (OutputStream out = fs.create(text)) {
+			out.write("a\u0001b\u00011\u00012\u00013\u0001not a number\n".getBytes(StandardCharsets.UTF_8));
+		}
+		try {
+			new ColumnarConverter(conf,parser).convert(text,columnar);
+			fail("Expected parse error");
+		} catch (IOException e) {
+			assertTrue(e.getMessage(),e.getMessage().contains("line 1"));
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public final void testInvalidColumnType() throws IOException {
+		DataOutputBuffer out = new DataOutputBuffer();
+		WritableUtils.writeVInt(out,0);
+		WritableUtils.writeVInt(out,1);
+		WritableUtils.writeVInt(out,0);
+		out.writeByte(ColumnType.values().length);
+		DataInputBuffer in = new DataInputBuffer();
+		in.reset(out.getData(),out.getLength());
+		new ColumnBatch().readFields(in);
+	}
+
+}
@@ -4,6 +4,7 @@ import static org.hamcrest.CoreMatchers.instanceOf;
 import static org.junit.Assert.*;
 
 import java.io.File;
+import java.io.IOException;
 import java.nio.charset.Charset;
 import java.util.NoSuchElementException;
 import java.util.Properties;
@@ -187,4 +188,148 @@ public class TestDelimLineParser {
 		p.getFieldByPosition(testCase,999);
 	}
 	
+	@Test
+	public final void testGetFieldByPositionTextVKONT() {
+		DelimLineParser p = new DelimLineParser();
+		Text field = new Text();
+		assertTrue("Field 18 - VKONT = '850002626475'",p.getFieldByPosition(testCase,18,field).toString().equals("850002626475"));
+		assertTrue("Field 30 - XANZA = 'X'",p.getFieldByPosition(testCase,30,field).toString().equals("X"));
+	}
+
+	@Test 
+	public final void testGetFieldByPositionTextLastAndEmpty() {
+		DelimLineParser p = new DelimLineParser(new Properties(),";");
+		Text field = new Text();
+		Text line = new Text("field1;;field3");
+		assertTrue(p.getFieldByPosition(line,1,field).toString().equals("field1"));
+		assertTrue(p.getFieldByPosition(line,2,field).getLength() == 0);
+		assertTrue(p.getFieldByPosition(line,3,field).toString().equals("field3"));
+	}
+
+	@Test(expected = NoSuchElementException.class) 
+	public final void testGetFieldByPositionTextNotExists() {
+		DelimLineParser p = new DelimLineParser();
+		p.getFieldByPosition(testCase,999,new Text());
+	}
+
+	@Test(expected = NoSuchElementException.class) 
+	public final void testGetFieldOnePastLastByPosition() {
+		DelimLineParser p = new DelimLineParser(new Properties(),"\\|");
+		p.getFieldByPosition(new Text("field1|field2"),3);
+	}
+
+	@Test 
+	public final void testGetFieldByPositionRegexSeparator() {
+		DelimLineParser p = new DelimLineParser(new Properties(),"[,;]");
+		assertTrue(p.getFieldByPosition(new Text("field1,field2;field3"),3).equals("field3"));
+	}
+	
+	@Test(expected = IllegalArgumentException.class) 
+	public final void testMissingPropertyFile() {
+		new DelimLineParser("/does_not_exist.properties");
+	}
+
+	@Test 
+	public final void testGetFieldByNameSchema() throws IOException {
+		DelimLineParser p = new DelimLineParser(FieldSchema.load(PROP_FILE_NAME),null);
+		assertTrue("Field 18 - VKONT = '850002626475'",p.getFieldByName(testCase,"vkont").equals("850002626475"));
+	}
+	
+	@Test 
+	public final void testGetFieldsProjection() {
+		DelimLineParser p = new DelimLineParser(PROP_FILE_NAME);
+		FieldProjection projection = FieldProjection.of(p.getSchema(),"bldat","vkont","XANZA");
+		Text[] fields = new Text[] { new Text(), new Text(), new Text() };
+		p.getFields(testCase,projection,fields);
+		assertTrue(fields[0].toString().equals("20120422"));
+		assertTrue(fields[1].toString().equals("850002626475"));
+		assertTrue(fields[2].toString().equals("X"));
+	}
+
+	@Test(expected = NoSuchElementException.class) 
+	public final void testGetFieldsProjectionNotExists() {
+		DelimLineParser p = new DelimLineParser(new Properties(),";");
+		p.getFields(new Text("a;b"),FieldProjection.ofPositions(1,3),new Text[] { new Text(), new Text() });
+	}
+	
+	@Test
+	public final void testLiteralSeparator() {
+		DelimLineParser p = new DelimLineParser(new Properties(),"|");
+		// As a regex "|" matches the empty string between every character.
+		assertEquals("a",p.getFieldByPosition(new Text("ab|cd"),1));
+		p.setLiteralSeparator("|");
+		assertEquals("cd",p.getFieldByPosition(new Text("ab|cd"),2));
+		p.setLiteralSeparator("||");
+		Text line = new Text("ab|c||d||");
+		assertEquals("ab|c",p.getFieldByPosition(line,1));
+		assertEquals("d",p.getFieldByPosition(line,2,new Text()).toString());
+		assertEquals("",p.getFieldByPosition(line,3));
+	}
+	
+	@Test(expected = NoSuchElementException.class) 
+	public final void testLiteralSeparatorNotExists() {
+		DelimLineParser p = new DelimLineParser(new Properties(),null);
+		p.setLiteralSeparator("::");
+		p.getFieldByPosition(new Text("a::b"),3);
+	}
+	
+	@Test
+	public final void testQuoted() {
+		DelimLineParser p = new DelimLineParser(new Properties(),",");
+		p.setQuoteChar('"');
+		p.setEscapeChar('\\');
+		Text line = new Text("1,\"Smith, John\",\"say \"\"hi\"\"\",a\\,b,\"x\\\"y\",ab\"c,\"open");
+		assertEquals("1",p.getFieldByPosition(line,1));
+		assertEquals("Smith, John",p.getFieldByPosition(line,2));
+		assertEquals("say \"hi\"",p.getFieldByPosition(line,3));
+		assertEquals("a,b",p.getFieldByPosition(line,4));
+		assertEquals("x\"y",p.getFieldByPosition(line,5));
+		assertEquals("ab\"c",p.getFieldByPosition(line,6));
+		assertEquals("open",p.getFieldByPosition(line,7));
+		Text[] fields = { new Text(), new Text() };
+		p.getFields(line,FieldProjection.ofPositions(2,4),fields);
+		assertEquals("Smith, John",fields[0].toString());
+		assertEquals("a,b",fields[1].toString());
+	}
+	
+	@Test(expected = IllegalStateException.class) 
+	public final void testQuotedRegexSeparator() {
+		DelimLineParser p = new DelimLineParser(new Properties(),"[,;]");
+		p.setQuoteChar('"');
+	}
+	
+	@Test(expected = IllegalArgumentException.class) 
+	public final void testQuoteInSeparator() {
+		DelimLineParser p = new DelimLineParser(new Properties(),null);
+		p.setLiteralSeparator("\"|");
+		p.setQuoteChar('"');
+	}
+	
+	@Test
+	public final void testRejectedSettingUnchanged() {
+		DelimLineParser p = new DelimLineParser(new Properties(),"[,;]");
+		try {
+			p.setQuoteChar('"');
+			fail("Expected IllegalStateException");
+		} catch (IllegalStateException e) {
+			assertEquals(QuotedFieldScanner.NONE,p.getQuoteChar());
+		}
+		assertEquals("b",p.getFieldByPosition(new Text("a;b"),2));
+		p.setLiteralSeparator("|");
+		p.setQuoteChar('"');
+		try {
+			p.setLiteralSeparator("\"|");
+			fail("Expected IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+			assertEquals("|",p.getFieldSeparator());
+		}
+		try {
+			p.setFieldSeparator("[,;]");
+			fail("Expected IllegalStateException");
+		} catch (IllegalStateException e) {
+			assertEquals("|",p.getFieldSeparator());
+		}
+		assertEquals("b|c",p.getFieldByPosition(new Text("a|\"b|c\""),2));
+	}
+	
 }
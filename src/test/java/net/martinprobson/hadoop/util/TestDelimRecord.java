@@ -0,0 +1,199 @@
+package net.martinprobson.hadoop.util;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.time.LocalDate;
+import java.util.NoSuchElementException;
+import java.util.Properties;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.hadoop.io.Text;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+
+public class TestDelimRecord {
+
+	private static Text testCase;
+	private final static String PROP_FILE_NAME = "/dfkkop.properties";
+
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+
+		File file = new File(TestDelimRecord.class.getResource("/TestDfkkopParser_test_case.txt").getFile());
+		String contents = FileUtils.readFileToString(file,Charset.defaultCharset());
+		testCase = new Text(contents);
+	}
+
+	@Test
+	public final void testGetFieldByName() {
+		DelimRecord r = new DelimLineParser(PROP_FILE_NAME).newRecord().reset(testCase);
+		assertEquals("850002626475",r.getFieldByName("vkont"));
+		assertEquals("X",r.getFieldByName("XANZA"));
+		assertEquals("20120422",r.getFieldByName("bldat"));
+		assertEquals(" ",r.getFieldByName("ABWBL"));
+	}
+
+	@Test
+	public final void testMatchesDelimLineParser() {
+		DelimLineParser p = new DelimLineParser(PROP_FILE_NAME);
+		DelimRecord r = p.newRecord().reset(testCase);
+		for (int i = 1; i <= r.getFieldCount(); i++)
+			assertEquals("Field " + i,p.getFieldByPosition(testCase,i),r.getFieldByPosition(i));
+	}
+
+	@Test
+	public final void testReset() {
+		DelimRecord r = new DelimLineParser(new Properties(),";").newRecord();
+		Text field = new Text();
+		r.reset(new Text("a;bb;;ccc"));
+		assertEquals(4,r.getFieldCount());
+		assertEquals("bb",r.getFieldByPosition(2,field).toString());
+		assertEquals(0,r.getFieldLength(3));
+		r.reset(new Text("x"));
+		assertEquals(1,r.getFieldCount());
+		assertEquals("x",r.getFieldByPosition(1));
+		r.reset(new Text(""));
+		assertEquals(1,r.getFieldCount());
+		assertEquals("",r.getFieldByPosition(1));
+	}
+
+	@Test
+	public final void testGrowsOffsets() {
+		DelimRecord r = new DelimRecord(new DelimLineParser(new Properties(),";"),2);
+		r.reset(new Text("1;2;3;4;5;6;7;8;9;10"));
+		assertEquals(10,r.getFieldCount());
+		assertEquals("10",r.getFieldByPosition(10));
+	}
+
+	@Test(expected = NoSuchElementException.class)
+	public final void testFieldNotExists() {
+		new DelimLineParser().newRecord().reset(testCase).getFieldByPosition(999);
+	}
+
+	@Test(expected = NoSuchElementException.class)
+	public final void testFieldNameNotExists() {
+		new DelimLineParser(PROP_FILE_NAME).newRecord().reset(testCase).getFieldByName("Not exists");
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public final void testRegexSeparator() {
+		new DelimLineParser(new Properties(),"[,;]").newRecord();
+	}
+
+	@Test
+	public final void testProjection() {
+		DelimLineParser p = new DelimLineParser(PROP_FILE_NAME);
+		DelimRecord r = p.newRecord().setProjection(FieldProjection.of(p.getSchema(),"vkont","abwbl"));
+		r.reset(testCase);
+		assertEquals(19,r.getFieldCount());
+		assertEquals("850002626475",r.getFieldByName("vkont"));
+		assertEquals(" ",r.getFieldByPosition(19));
+		r.setProjection(null).reset(testCase);
+		assertTrue(r.getFieldCount() > 19);
+	}
+
+	@Test(expected = NoSuchElementException.class)
+	public final void testFieldOutsideProjection() {
+		DelimLineParser p = new DelimLineParser(PROP_FILE_NAME);
+		DelimRecord r = p.newRecord().setProjection(FieldProjection.ofPositions(2,5));
+		r.reset(testCase).getFieldByName("vkont");
+	}
+
+	@Test
+	public final void testTypedAccessors() {
+		DelimLineParser p = new DelimLineParser(PROP_FILE_NAME);
+		FieldSchema schema = p.getSchema();
+		DelimRecord r = p.newRecord().reset(testCase);
+		assertEquals(100,r.getInt(schema.getPosition("mandt")));
+		assertEquals(850002626475L,r.getLong(schema.getPosition("vkont")));
+		assertEquals(357,r.getDecimal(schema.getPosition("sbeth"),2));
+		assertEquals(7500,r.getDecimal(schema.getPosition("betrh"),2));
+		assertEquals(LocalDate.of(2012,4,22).toEpochDay(),r.getEpochDay(schema.getPosition("bldat")));
+		assertEquals(LocalDate.of(2017,5,20).toEpochDay() * 86400000000L,r.getEpochMicros(schema.getPosition("jrn_date")));
+		assertTrue(r.getFlag(schema.getPosition("xanza")));
+		assertFalse(r.getFlag(schema.getPosition("abwbl")));
+		assertTrue(r.isNull(schema.getPosition("abwbl")));
+		assertEquals(-1,r.getLong(schema.getPosition("abwbl"),-1));
+		assertFalse(r.isNull(schema.getPosition("studt")));
+		r.setNullValues("\\N","00000000");
+		assertTrue(r.isNull(schema.getPosition("studt")));
+		assertEquals(-1,r.getEpochDay(schema.getPosition("studt"),-1));
+	}
+
+	@Test(expected = NumberFormatException.class)
+	public final void testTypedAccessorNull() {
+		DelimRecord r = new DelimLineParser(new Properties(),";").newRecord();
+		r.reset(new Text("1;\\N;3")).getLong(2);
+	}
+
+	@Test
+	public final void testFlagNull() {
+		DelimRecord r = new DelimLineParser(new Properties(),";").newRecord();
+		r.reset(new Text("X;\\N; "));
+		assertTrue(r.getFlag(1));
+		assertFalse(r.getFlag(2));
+		assertTrue(r.getFlag(2,true));
+		assertFalse(r.getFlag(3));
+		assertTrue(r.getFlag(3,true));
+	}
+
+	@Test
+	public final void testBlankIsNull() {
+		DelimRecord r = new DelimLineParser(new Properties(),";").newRecord().setBlankIsNull(false);
+		r.reset(new Text("1; ;\\N"));
+		assertFalse(r.isNull(2));
+		assertTrue(r.isNull(3));
+		assertFalse(r.getFlag(2,true));
+		assertEquals(-1,r.getLong(3,-1));
+		try {
+			r.getLong(2,-1);
+			fail("Blank field parsed");
+		} catch (NumberFormatException e) {
+			// Expected, blank is not null.
+		}
+		r.setBlankIsNull(true);
+		assertTrue(r.isNull(2));
+		assertEquals(-1,r.getLong(2,-1));
+	}
+
+	@Test
+	public final void testQuoted() {
+		DelimLineParser p = new DelimLineParser(new Properties(),null);
+		p.setLiteralSeparator("||");
+		p.setQuoteChar('"');
+		DelimRecord r = p.newRecord();
+		Text line = new Text("42||\"Smith|| John\"||\"\"||12.50");
+		r.reset(line);
+		assertEquals(4,r.getFieldCount());
+		assertEquals(42,r.getLong(1));
+		assertEquals("Smith|| John",r.getFieldByPosition(2));
+		assertTrue(r.isNull(3));
+		assertEquals(1250,r.getDecimal(4,2));
+		assertEquals(line.toString(),r.toString());
+		// Field offsets refer to the decoded fields, not the line.
+		assertEquals("Smith|| John",new String(r.getBytes(),r.getFieldStart(2),r.getFieldLength(2)));
+		r.setProjection(FieldProjection.ofPositions(2));
+		r.reset(new Text("1||\"a||b\"||c"));
+		assertEquals(2,r.getFieldCount());
+		assertEquals("a||b",r.getFieldByPosition(2));
+	}
+
+	@Test
+	public final void testQuotedMatchesParser() {
+		DelimLineParser p = new DelimLineParser(new Properties(),";");
+		p.setQuoteChar('\'');
+		p.setEscapeChar('\\');
+		Text line = new Text("'a;b';c\\;d;;'e''f';g\\");
+		DelimRecord r = p.newRecord().reset(line);
+		assertEquals(5,r.getFieldCount());
+		for (int i = 1; i <= r.getFieldCount(); i++)
+			assertEquals("Field " + i,p.getFieldByPosition(line,i),r.getFieldByPosition(i));
+		assertEquals("c;d",r.getFieldByPosition(2));
+		assertEquals("e'f",r.getFieldByPosition(4));
+		assertEquals("g\\",r.getFieldByPosition(5));
+	}
+
+}
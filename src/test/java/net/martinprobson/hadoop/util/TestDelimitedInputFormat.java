@@ -0,0 +1,149 @@
+package net.martinprobson.hadoop.util;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.apache.hadoop.mrunit.mapreduce.MapDriver;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+
+public class TestDelimitedInputFormat {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static Text testCase;
+	private final static String PROP_FILE_NAME = "/dfkkop.properties";
+
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+		File file = new File(TestDelimitedInputFormat.class.getResource("/TestDfkkopParser_test_case.txt").getFile());
+		testCase = new Text(FileUtils.readFileToString(file,Charset.defaultCharset()).trim());
+	}
+
+	/**
+	 * Emits (vkont,betrh) from pre-parsed records.
+	 */
+	public static class AmountMapper extends Mapper<LongWritable,DelimRecord,Text,LongWritable> {
+		private final Text account = new Text();
+		private final LongWritable amount = new LongWritable();
+		private int vkont;
+		private int betrh;
+
+		@Override
+		protected void setup(Context context) {
+			FieldSchema schema = DelimitedInputFormat.createParser(context.getConfiguration()).getSchema();
+			vkont = schema.getPosition("vkont");
+			betrh = schema.getPosition("betrh");
+		}
+
+		@Override
+		protected void map(LongWritable key, DelimRecord value, Context context) throws IOException, InterruptedException {
+			value.getFieldByPosition(vkont,account);
+			amount.set(value.getLong(betrh));
+			context.write(account,amount);
+		}
+	}
+
+	@Test
+	public final void testMapDriver() throws IOException {
+		MapDriver<LongWritable,DelimRecord,Text,LongWritable> driver = MapDriver.newMapDriver(new AmountMapper());
+		Configuration conf = driver.getConfiguration();
+		conf.set(DelimitedInputFormat.SCHEMA_KEY,PROP_FILE_NAME);
+		DelimitedInputFormat.setFieldSeparator(conf,"\u0001");
+		DelimRecord record = DelimitedInputFormat.createParser(conf).newRecord().reset(testCase);
+		driver.withInput(new LongWritable(0),record)
+			  .withOutput(new Text("850002626475"),new LongWritable(75))
+			  .runTest();
+	}
+
+	@Test
+	public final void testSeparatorEscaped() {
+		Configuration conf = new Configuration(false);
+		DelimitedInputFormat.setFieldSeparator(conf,"\u0001");
+		assertEquals("\\u0001",conf.get(DelimitedInputFormat.SEPARATOR_KEY));
+		assertEquals("\u0001",DelimitedInputFormat.createParser(conf).getFieldSeparator());
+		DelimitedInputFormat.setFieldSeparator(conf,"\\|");
+		assertEquals(0x7c,DelimitedInputFormat.createParser(conf).getSeparatorByte());
+	}
+
+	@Test
+	public final void testWritable() throws IOException {
+		Configuration conf = new Configuration(false);
+		conf.set(DelimitedInputFormat.SCHEMA_KEY,PROP_FILE_NAME);
+		DelimRecord record = DelimitedInputFormat.createParser(conf).newRecord().reset(testCase);
+		DataOutputBuffer out = new DataOutputBuffer();
+		record.write(out);
+		DataInputBuffer in = new DataInputBuffer();
+		in.reset(out.getData(),out.getLength());
+		DelimRecord copy = new DelimRecord();
+		copy.setConf(conf);
+		copy.readFields(in);
+		assertEquals(testCase.toString(),copy.toString());
+		assertEquals(record.getFieldCount(),copy.getFieldCount());
+		assertEquals("850002626475",copy.getFieldByName("vkont"));
+	}
+
+	@Test
+	public final void testSplits() throws IOException, InterruptedException {
+		File file = folder.newFile("in.txt");
+		List<String> lines = new ArrayList<>();
+		for (int i = 0; i < 1000; i++)
+			lines.add(i + ",name" + i + "," + (i * 3));
+		Files.write(file.toPath(),lines,StandardCharsets.UTF_8);
+		Job job = Job.getInstance(new Configuration());
+		DelimitedInputFormat.setFieldSeparator(job,",");
+		DelimitedInputFormat.setNullValues(job,"");
+		FileInputFormat.addInputPath(job,new Path(file.toURI()));
+		FileInputFormat.setMaxInputSplitSize(job,1000);
+		DelimitedInputFormat format = new DelimitedInputFormat();
+		List<InputSplit> splits = format.getSplits(job);
+		assertTrue(splits.size() > 10);
+		TaskAttemptContext context = new TaskAttemptContextImpl(job.getConfiguration(),new TaskAttemptID());
+		byte[] contents = Files.readAllBytes(file.toPath());
+		int expected = 0;
+		for (InputSplit split : splits) {
+			try (RecordReader<LongWritable,DelimRecord> reader = format.createRecordReader(split,context)) {
+				reader.initialize(split,context);
+				while (reader.nextKeyValue()) {
+					DelimRecord record = reader.getCurrentValue();
+					assertEquals(expected,record.getLong(1));
+					assertEquals("name" + expected,record.getFieldByPosition(2));
+					assertEquals(expected * 3,record.getLong(3));
+					String line = lines.get(expected);
+					long offset = reader.getCurrentKey().get();
+					assertEquals(line,new String(contents,(int) offset,line.length(),StandardCharsets.UTF_8));
+					expected++;
+				}
+				assertEquals(1.0f,reader.getProgress(),0.0f);
+			}
+		}
+		assertEquals(lines.size(),expected);
+	}
+
+}
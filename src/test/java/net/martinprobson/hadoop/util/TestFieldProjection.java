@@ -0,0 +1,50 @@
+package net.martinprobson.hadoop.util;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.NoSuchElementException;
+
+import org.junit.Test;
+
+
+public class TestFieldProjection {
+
+	private final static String PROP_FILE_NAME = "/dfkkop.properties";
+
+	@Test
+	public final void testOf() throws IOException {
+		FieldProjection projection = FieldProjection.of(FieldSchema.load(PROP_FILE_NAME),"BLDAT","vkont");
+		assertEquals(2,projection.size());
+		assertEquals(32,projection.getMaxPosition());
+		assertEquals(32,projection.getPosition(0));
+		assertEquals("bldat",projection.getFieldName(0));
+		assertEquals(1,projection.getSlot(18));
+		assertEquals(-1,projection.getSlot(19));
+		assertEquals(-1,projection.getSlot(999));
+	}
+
+	@Test
+	public final void testOfPositions() {
+		FieldProjection projection = FieldProjection.ofPositions(7,3);
+		assertEquals(7,projection.getMaxPosition());
+		assertEquals(1,projection.getSlot(3));
+		assertNull(projection.getFieldName(0));
+	}
+
+	@Test(expected = NoSuchElementException.class)
+	public final void testFieldNotExists() throws IOException {
+		FieldProjection.of(FieldSchema.load(PROP_FILE_NAME),"Not exists");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public final void testDuplicate() {
+		FieldProjection.ofPositions(1,2,1);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public final void testInvalidPosition() {
+		FieldProjection.ofPositions(0);
+	}
+
+}
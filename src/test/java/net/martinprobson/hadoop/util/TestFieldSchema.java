@@ -0,0 +1,135 @@
+package net.martinprobson.hadoop.util;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.NoSuchElementException;
+import java.util.Properties;
+
+import org.junit.Test;
+
+
+public class TestFieldSchema {
+
+	private final static String PROP_FILE_NAME = "/dfkkop.properties";
+
+	@Test
+	public final void testLoad() throws IOException {
+		FieldSchema schema = FieldSchema.load(PROP_FILE_NAME);
+		assertEquals(18,schema.getPosition("vkont"));
+		assertEquals(18,schema.getPosition("VKONT"));
+		assertEquals("vkont",schema.getFieldName(18));
+		assertEquals(184,schema.size());
+		assertEquals(184,schema.getMaxPosition());
+		assertTrue(schema.hasField("Xanza"));
+		assertFalse(schema.hasField("Not exists"));
+	}
+
+	@Test
+	public final void testFromProperties() {
+		Properties fieldProps = new Properties();
+		fieldProps.put("Field1","1");
+		fieldProps.put("field3"," 3 ");
+		FieldSchema schema = FieldSchema.fromProperties(fieldProps);
+		assertEquals(1,schema.getPosition("field1"));
+		assertEquals(3,schema.getPosition("FIELD3"));
+		assertNull(schema.getFieldName(2));
+		assertEquals(3,schema.getMaxPosition());
+	}
+
+	@Test
+	public final void testEmpty() {
+		assertEquals(0,FieldSchema.EMPTY.size());
+		assertEquals(0,FieldSchema.EMPTY.getMaxPosition());
+	}
+
+	@Test(expected = NoSuchElementException.class)
+	public final void testFieldNotExists() throws IOException {
+		FieldSchema.load(PROP_FILE_NAME).getPosition("Not exists");
+	}
+
+	@Test(expected = IOException.class)
+	public final void testMissingFile() throws IOException {
+		FieldSchema.load("/does_not_exist.properties");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public final void testInvalidPosition() {
+		Properties fieldProps = new Properties();
+		fieldProps.put("field1","one");
+		FieldSchema.fromProperties(fieldProps);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public final void testZeroPosition() {
+		Properties fieldProps = new Properties();
+		fieldProps.put("field1","0");
+		FieldSchema.fromProperties(fieldProps);
+	}
+
+	@Test
+	public final void testTypes() {
+		Properties fieldProps = new Properties();
+		fieldProps.put("name","1");
+		fieldProps.put("count","2, INT");
+		fieldProps.put("amount","3,decimal(2)");
+		fieldProps.put("posted","4,date");
+		fieldProps.put("loaded","5,timestamp");
+		FieldSchema schema = FieldSchema.fromProperties(fieldProps);
+		assertEquals(2,schema.getPosition("count"));
+		assertEquals(ColumnType.STRING,schema.getType(1));
+		assertEquals(ColumnType.INT,schema.getType(2));
+		assertEquals(ColumnType.DECIMAL,schema.getType(3));
+		assertEquals(2,schema.getScale(3));
+		assertEquals(ColumnType.DATE,schema.getType(4));
+		assertEquals(ColumnType.TIMESTAMP,schema.getType(5));
+		assertEquals(ColumnType.STRING,schema.getType(6));
+		FieldSchema copy = FieldSchema.fromProperties(schema.toProperties());
+		for (int position = 1; position <= 5; position++) {
+			assertEquals(schema.getFieldName(position),copy.getFieldName(position));
+			assertEquals(schema.getType(position),copy.getType(position));
+			assertEquals(schema.getScale(position),copy.getScale(position));
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public final void testInvalidType() {
+		Properties fieldProps = new Properties();
+		fieldProps.put("field1","1,varchar");
+		FieldSchema.fromProperties(fieldProps);
+	}
+
+	@Test
+	public final void testSamePosition() {
+		Properties fieldProps = new Properties();
+		fieldProps.put("betrh","3,decimal(2)");
+		fieldProps.put("amount","3,decimal(2)");
+		FieldSchema schema = FieldSchema.fromProperties(fieldProps);
+		assertEquals(3,schema.getPosition("betrh"));
+		assertEquals(3,schema.getPosition("amount"));
+		assertEquals("amount",schema.getFieldName(3));
+		fieldProps.put("amount","3,decimal(3)");
+		try {
+			FieldSchema.fromProperties(fieldProps);
+			fail("Conflicting scales accepted");
+		} catch (IllegalArgumentException e) {
+			// Expected.
+		}
+		fieldProps.put("amount","3,long");
+		try {
+			FieldSchema.fromProperties(fieldProps);
+			fail("Conflicting types accepted");
+		} catch (IllegalArgumentException e) {
+			// Expected.
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public final void testDefinedTwice() {
+		Properties fieldProps = new Properties();
+		fieldProps.put("field1","1");
+		fieldProps.put("FIELD1","2");
+		FieldSchema.fromProperties(fieldProps);
+	}
+
+}
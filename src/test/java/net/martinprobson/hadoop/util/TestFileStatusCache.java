@@ -0,0 +1,120 @@
+package net.martinprobson.hadoop.util;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+
+public class TestFileStatusCache {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private FileSystem fs;
+	private Path dir;
+
+	@Before
+	public void setUp() throws IOException {
+		fs = FileSystem.getLocal(new Configuration());
+		dir = new Path(folder.getRoot().toURI());
+	}
+
+	@Test
+	public final void testCachesUntilInvalidated() throws IOException {
+		FileStatusCache cache = new FileStatusCache(fs,60000,100);
+		Path file = new Path(dir,"a/b/file");
+		assertFalse(cache.exists(file));
+		assertFalse(cache.exists(file.getParent()));
+		fs.create(file).close();
+		// Negative results are cached.
+		assertFalse(cache.exists(file));
+		cache.invalidate(file);
+		assertTrue(cache.exists(file));
+		// Ancestors are invalidated too, a write may have created them.
+		assertTrue(cache.exists(file.getParent()));
+		fs.delete(new Path(dir,"a"),true);
+		assertTrue(cache.exists(file));
+		// Invalidating a directory invalidates everything below it.
+		cache.invalidate(new Path(dir,"a"));
+		assertFalse(cache.exists(file));
+	}
+
+	@Test
+	public final void testTtl() throws IOException, InterruptedException {
+		FileStatusCache cache = new FileStatusCache(fs,50,100);
+		Path file = new Path(dir,"file");
+		assertFalse(cache.exists(file));
+		fs.create(file).close();
+		assertFalse(cache.exists(file));
+		Thread.sleep(100);
+		assertTrue(cache.exists(file));
+	}
+
+	@Test
+	public final void testDisabled() throws IOException {
+		FileStatusCache cache = new FileStatusCache(fs,0,100);
+		Path file = new Path(dir,"file");
+		assertFalse(cache.exists(file));
+		fs.create(file).close();
+		assertTrue(cache.exists(file));
+		assertEquals(0,cache.size());
+	}
+
+	@Test
+	public final void testMaxEntries() throws IOException {
+		FileStatusCache cache = new FileStatusCache(fs,60000,10);
+		for (int i = 0; i < 50; i++)
+			cache.exists(new Path(dir,"file" + i));
+		assertEquals(10,cache.size());
+	}
+
+	@Test
+	public final void testExistsAll() throws IOException {
+		FileStatusCache cache = new FileStatusCache(fs,60000,1000);
+		List<Path> paths = new ArrayList<>();
+		for (int i = 0; i < 20; i++) {
+			Path part = new Path(dir,"out/part-" + i);
+			if (i % 3 == 0)
+				fs.create(part).close();
+			paths.add(part);
+		}
+		paths.add(new Path(dir,"missing/part-0"));
+		paths.add(new Path(dir,"missing/part-1"));
+		paths.add(new Path(dir,"out"));
+		Map<Path,Boolean> exists = cache.existsAll(paths);
+		assertEquals(paths.size(),exists.size());
+		for (int i = 0; i < 20; i++)
+			assertEquals(i % 3 == 0,exists.get(paths.get(i)));
+		assertFalse(exists.get(new Path(dir,"missing/part-0")));
+		assertTrue(exists.get(new Path(dir,"out")));
+		// Results are cached.
+		fs.delete(new Path(dir,"out"),true);
+		assertTrue(cache.exists(new Path(dir,"out/part-0")));
+	}
+
+	@Test
+	public final void testExistsAllParentIsFile() throws IOException {
+		FileStatusCache cache = new FileStatusCache(fs,60000,1000);
+		Path file = new Path(dir,"a");
+		fs.create(file).close();
+		List<Path> paths = new ArrayList<>();
+		paths.add(new Path(file,"a"));
+		paths.add(new Path(file,"b"));
+		Map<Path,Boolean> exists = cache.existsAll(paths);
+		assertFalse(exists.get(new Path(file,"a")));
+		assertFalse(exists.get(new Path(file,"b")));
+		assertFalse(cache.exists(new Path(file,"a")));
+	}
+
+}
@@ -0,0 +1,119 @@
+package net.martinprobson.hadoop.util;
+
+import static org.junit.Assert.*;
+
+import java.time.LocalDate;
+import java.util.NoSuchElementException;
+import java.util.Properties;
+
+import org.apache.hadoop.io.Text;
+import org.junit.Test;
+
+
+public class TestFixedWidthParser {
+
+	private final static String PROP_FILE_NAME = "/dfkkop_fixed.properties";
+	/** mandt, vkont, bldat, betrh, xanza and a space padded name. */
+	private final static Text LINE = new Text("100850002626475" + "20120422" + "        75.00" + "X" + "Smith, John         ");
+
+	@Test
+	public final void testSchema() {
+		FixedWidthSchema layout = new FixedWidthParser(PROP_FILE_NAME).getFixedWidthSchema();
+		assertEquals(6,layout.size());
+		assertEquals(57,layout.getWidth());
+		FieldSchema schema = layout.getFieldSchema();
+		// Positions follow offsets.
+		assertEquals(1,schema.getPosition("mandt"));
+		assertEquals(4,schema.getPosition("betrh"));
+		assertEquals(ColumnType.DECIMAL,schema.getType(4));
+		assertEquals(2,schema.getScale(4));
+		assertEquals(23,layout.getOffset(4));
+		assertEquals(13,layout.getLength(4));
+	}
+
+	@Test
+	public final void testGetFieldByName() {
+		FixedWidthParser p = new FixedWidthParser(PROP_FILE_NAME);
+		assertEquals("100",p.getFieldByName(LINE,"MANDT"));
+		assertEquals("850002626475",p.getFieldByName(LINE,"vkont"));
+		assertEquals("20120422",p.getFieldByName(LINE,"bldat"));
+		assertEquals("Smith, John         ",p.getFieldByName(LINE,"name"));
+		p.setTrim(true);
+		assertEquals("Smith, John",p.getFieldByName(LINE,"name"));
+		assertEquals("75.00",p.getFieldByPosition(LINE,4,new Text()).toString());
+	}
+
+	@Test
+	public final void testGetFields() {
+		FixedWidthParser p = new FixedWidthParser(PROP_FILE_NAME);
+		p.setTrim(true);
+		Text[] fields = { new Text(), new Text() };
+		p.getFields(LINE,FieldProjection.of(p.getSchema(),"name","mandt"),fields);
+		assertEquals("Smith, John",fields[0].toString());
+		assertEquals("100",fields[1].toString());
+	}
+
+	@Test
+	public final void testRecord() {
+		FixedWidthRecord r = new FixedWidthParser(PROP_FILE_NAME).newRecord().reset(LINE);
+		assertEquals(6,r.getFieldCount());
+		assertEquals(850002626475L,r.getLong(2));
+		assertEquals(LocalDate.of(2012,4,22).toEpochDay(),r.getEpochDay(3));
+		assertEquals(7500,r.getDecimal(4,2));
+		assertEquals("X",r.getFieldByName("xanza"));
+		assertEquals("Smith, John         ",r.getFieldByName("name"));
+		r.setTrim(true);
+		assertEquals("Smith, John",r.getFieldByName("name"));
+		assertEquals(11,r.getFieldLength(6));
+		assertEquals(LINE.toString(),r.toString());
+	}
+
+	@Test
+	public final void testShortLine() {
+		FixedWidthRecord r = new FixedWidthParser(PROP_FILE_NAME).newRecord().setTrim(true);
+		r.reset(LINE);
+		r.reset(new Text("100850002626475201204"));
+		assertEquals(3,r.getFieldCount());
+		assertEquals("201204",r.getFieldByPosition(3));
+		// A full line after a short one is re-indexed.
+		r.reset(LINE);
+		assertEquals(6,r.getFieldCount());
+		assertEquals("Smith, John",r.getFieldByPosition(6));
+	}
+
+	@Test
+	public final void testOffsetInBuffer() {
+		FixedWidthRecord r = new FixedWidthParser(PROP_FILE_NAME).newRecord();
+		byte[] two = (LINE.toString() + "200" + LINE.toString().substring(3)).getBytes();
+		r.reset(two,0,LINE.getLength());
+		assertEquals("100",r.getFieldByPosition(1));
+		r.reset(two,LINE.getLength(),LINE.getLength());
+		assertEquals("200",r.getFieldByPosition(1));
+		assertEquals("850002626475",r.getFieldByPosition(2));
+	}
+
+	@Test
+	public final void testNullValues() {
+		Properties props = new Properties();
+		props.setProperty("a","0,8,date");
+		props.setProperty("b","8,4,int");
+		FixedWidthRecord r = new FixedWidthParser(props).newRecord().setNullValues("00000000");
+		r.reset(new Text("00000000    "));
+		assertTrue(r.isNull(1));
+		assertTrue(r.isNull(2));
+		assertEquals(-1,r.getInt(2,-1));
+	}
+
+	@Test(expected = NoSuchElementException.class)
+	public final void testFieldNotExists() {
+		new FixedWidthParser(PROP_FILE_NAME).getFieldByName(new Text("100850"),"bldat");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public final void testInvalidLayout() {
+		Properties props = new Properties();
+		props.setProperty("a","5");
+		new FixedWidthParser(props);
+	}
+
+}
@@ -1,8 +1,10 @@
 package net.martinprobson.hadoop.util;
 
 import static org.apache.hadoop.fs.CommonConfigurationKeysPublic.FS_DEFAULT_NAME_KEY;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.IOException;
 import java.io.OutputStream;
@@ -10,8 +12,13 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.commons.lang3.tuple.Pair;
@@ -22,10 +29,18 @@ import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hdfs.MiniDFSCluster;
 import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.io.IntWritable;
 import org.apache.hadoop.io.SequenceFile;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.compress.BZip2Codec;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.DefaultCodec;
+import org.apache.hadoop.io.compress.GzipCodec;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized;
 import org.junit.runners.Parameterized.Parameters;
@@ -104,6 +119,9 @@ public class TestHDFSUtil {
 		}
 	}
 	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
 	public TestHDFSUtil(Configuration conf) throws IOException {
 		this.conf = conf;
 		this.fs = FileSystem.get(conf);
@@ -124,6 +142,143 @@ public class TestHDFSUtil {
 		assertFalse(HDFSUtil.pathExists(conf, notExists));
 	}
 
+	@Test
+	public void testPathsExist() throws IOException {
+		List<Path> paths = new ArrayList<>();
+		for (int i = 0; i < 10; i++) {
+			Path part = new Path("/tmp/testPathsExist/part-" + i);
+			if (i % 2 == 0)
+				fs.create(part).close();
+			else
+				fs.delete(part,false);
+			paths.add(part);
+		}
+		Map<Path,Boolean> exists = HDFSUtil.pathsExist(conf,paths);
+		for (int i = 0; i < 10; i++)
+			assertTrue(exists.get(paths.get(i)) == (i % 2 == 0));
+		HDFSUtil.deletePath(conf,new Path("/tmp/testPathsExist"));
+		assertFalse(HDFSUtil.pathExists(conf,paths.get(0)));
+	}
+
+	@Test
+	public void testDeletePaths() throws IOException {
+		List<Path> paths = new ArrayList<>();
+		for (int i = 0; i < 20; i++) {
+			Path part = new Path("/tmp/testDeletePaths/part-" + i);
+			if (i % 4 != 0)
+				fs.create(part).close();
+			paths.add(part);
+		}
+		fs.create(new Path("/tmp/testDeletePaths/_SUCCESS")).close();
+		BulkFileOps.Report report = HDFSUtil.deletePaths(conf,paths,4);
+		assertTrue(report.isSuccess());
+		assertTrue(report.getResults().size() == 20);
+		assertTrue(report.count() == 15);
+		for (int i = 0; i < 20; i++) {
+			assertTrue(report.getResults().get(i).getPath().equals(paths.get(i)));
+			assertFalse(fs.exists(paths.get(i)));
+		}
+		assertTrue(HDFSUtil.deletePaths(conf,new Path("/tmp/testDeletePaths/_*"),4).count() == 1);
+		assertTrue(HDFSUtil.deletePaths(conf,new Path("/tmp/testDeletePaths/_*"),4).getResults().isEmpty());
+	}
+
+	@Test
+	public void testBulkExistsReportsFailures() throws IOException {
+		Path exists = new Path("/tmp/testBulkExists");
+		fs.create(exists).close();
+		Path wrongFs = new Path("nosuchfs://host/tmp/testBulkExists");
+		BulkFileOps.Report report = new BulkFileOps(conf,2).exists(Arrays.asList(exists,wrongFs));
+		assertFalse(report.isSuccess());
+		assertTrue(report.getResults().get(0).getValue());
+		assertTrue(report.getFailures().size() == 1);
+		assertTrue(report.getFailures().get(0).getPath().equals(wrongFs));
+		assertTrue(report.getFailures().get(0).getError() != null);
+	}
+
+	@Test
+	public void testCopyLocalToFsAndBack() throws IOException {
+		FileSystem local = FileSystem.getLocal(conf);
+		Path staging = new Path(folder.newFolder("staging").toURI());
+		for (int i = 0; i < 10; i++) {
+			try (OutputStream out = local.create(new Path(staging,"dir" + (i % 2) + "/file" + i))) {
+				for (int j = 0; j <= i * 1000; j++)
+					out.write(j);
+			}
+		}
+		Path target = new Path("/tmp/testCopy");
+		fs.delete(target,true);
+		fs.mkdirs(target);
+		ParallelCopier.Report report = new ParallelCopier(conf,4).setBufferSize(4096).setBlockSize(1024 * 1024)
+																 .setReplication((short) 1).copy(staging,target);
+		assertTrue(report.toString(),report.isSuccess() && report.getCopied() == 10);
+		assertTrue(fs.getFileStatus(new Path(target,"staging/dir1/file9")).getLen() == 9001);
+		assertTrue(fs.getFileStatus(new Path(target,"staging/dir0/file0")).getReplication() == 1);
+		for (ParallelCopier.Result result : report.getResults())
+			assertTrue(result.getBytes() > 0 && result.getBytesPerSecond() > 0);
+		// Already copied files are skipped (the target is an existing directory, so they are copied below it).
+		report = HDFSUtil.copy(conf,staging,target,4);
+		assertTrue(report.toString(),report.getSkipped() == 10 && report.getBytes() == 0);
+		// Copy back into an existing directory (the files are copied below it).
+		Path back = new Path(folder.newFolder("back").toURI());
+		report = HDFSUtil.copy(conf,new Path(target,"staging/dir*"),back,3);
+		assertTrue(report.toString(),report.getCopied() == 10);
+		assertTrue(local.getFileStatus(new Path(back,"dir0/file8")).getLen() == 8001);
+	}
+
+	@Test
+	public void testCopyChangedFile() throws IOException {
+		Path source = new Path("/tmp/testCopyChangedFile/source");
+		Path target = new Path("/tmp/testCopyChangedFile/target");
+		try (OutputStream out = fs.create(source)) {
+			out.write("version 1".getBytes(Charset.defaultCharset()));
+		}
+		assertTrue(HDFSUtil.copy(conf,source,target,1).getCopied() == 1);
+		assertTrue(HDFSUtil.copy(conf,source,target,1).getSkipped() == 1);
+		try (OutputStream out = fs.create(source)) {
+			out.write("version 22".getBytes(Charset.defaultCharset()));
+		}
+		assertTrue(HDFSUtil.copy(conf,source,target,1).getCopied() == 1);
+		assertTrue(HDFSUtil.readFile(conf,target).equals("version 22\n"));
+	}
+
+	/**
+	 * A target written with a different block size (so, on HDFS, a different checksum algorithm) is skipped if unchanged.
+	 */
+	@Test
+	public void testCopySkipsOtherBlockSize() throws IOException {
+		Path source = new Path("/tmp/testCopySkipsOtherBlockSize/source");
+		Path target = new Path("/tmp/testCopySkipsOtherBlockSize/target");
+		fs.delete(target,false);
+		try (OutputStream out = fs.create(source,true,4096,(short) 1,1024 * 1024)) {
+			byte[] buffer = new byte[5 * 1024 * 1024 / 2];
+			new Random(42).nextBytes(buffer);
+			out.write(buffer);
+		}
+		ParallelCopier copier = new ParallelCopier(conf,1).setBlockSize(2 * 1024 * 1024).setReplication((short) 1);
+		assertTrue(copier.copy(source,target).getCopied() == 1);
+		assertTrue(copier.copy(source,target).getSkipped() == 1);
+	}
+
+	/**
+	 * A changed source that is older than the target, but the same length, is still copied.
+	 */
+	@Test
+	public void testCopyChangedOlderFile() throws IOException {
+		Path source = new Path("/tmp/testCopyChangedOlderFile/source");
+		Path target = new Path("/tmp/testCopyChangedOlderFile/target");
+		try (OutputStream out = fs.create(source)) {
+			out.write("version 1".getBytes(Charset.defaultCharset()));
+		}
+		assertTrue(HDFSUtil.copy(conf,source,target,1).getCopied() == 1);
+		try (OutputStream out = fs.create(source)) {
+			out.write("version 2".getBytes(Charset.defaultCharset()));
+		}
+		fs.setTimes(source,fs.getFileStatus(target).getModificationTime() - 60000,-1);
+		assertTrue(HDFSUtil.copy(conf,source,target,1).getCopied() == 1);
+		assertTrue(HDFSUtil.readFile(conf,target).equals("version 2\n"));
+		assertTrue(HDFSUtil.copy(conf,source,target,1).getSkipped() == 1);
+	}
+
 	@Test
 	public void testDeletePath() throws IOException {
 		Path exists    = new Path("/tmp/testDeletePath");
@@ -147,6 +302,157 @@ public class TestHDFSUtil {
 		assertTrue(actual.equals(expected));
 	}
 
+	
+	@Test
+	public void testOpenSeqFile() throws IOException {
+		Path testFile = new Path("/tmp/testOpenSeqFile");
+		List<Pair<Writable,Writable>> expected = new ArrayList<>();
+		for (int i=0; i < 10; i++) 
+			expected.add(new ImmutablePair<>(new Text("key-" + i),new IntWritable(i)));
+		writeSeqFile(conf,testFile,expected);
+		List<Pair<Text,IntWritable>> actual = new ArrayList<>();
+		try (SeqFileReader<Text,IntWritable> reader = HDFSUtil.openSeqFile(conf,testFile)) {
+			assertTrue(reader.getKeyClass().equals(Text.class));
+			Text key = reader.getKey();
+			while (reader.next()) {
+				assertTrue(reader.getKey() == key);
+				actual.add(reader.copy());
+			}
+		}
+		assertTrue(actual.equals(expected));
+	}
+
+	@Test
+	public void testReadSeqFileHandler() throws IOException {
+		Path testFile = new Path("/tmp/testReadSeqFileHandler");
+		List<Pair<Writable,Writable>> content = new ArrayList<>();
+		for (int i=0; i < 100; i++) 
+			content.add(new ImmutablePair<>(new Text("key-" + i),new IntWritable(i)));
+		writeSeqFile(conf,testFile,content);
+		final long[] sum = new long[1];
+		long records = HDFSUtil.readSeqFile(conf,testFile,new RecordHandler<Text,IntWritable>() {
+			@Override
+			public void handle(Text key, IntWritable value) {
+				sum[0] += value.get();
+			}
+		});
+		assertTrue(records == 100);
+		assertTrue(sum[0] == 4950);
+	}
+
+
+	/**
+	 * Write numFiles part files (plus a _SUCCESS marker) to dir, holding records 
+	 * (key-n,n) for n in [0,numFiles*recordsPerFile) in order.
+	 */
+	private void writeSeqFileParts(Path dir, int numFiles, int recordsPerFile) throws IOException {
+		fs.delete(dir,true);
+		int n = 0;
+		for (int f=0; f < numFiles; f++) {
+			List<Pair<Writable,Writable>> content = new ArrayList<>();
+			for (int i=0; i < recordsPerFile; i++, n++) 
+				content.add(new ImmutablePair<>(new Text("key-" + n),new IntWritable(n)));
+			writeSeqFile(conf,new Path(dir,String.format("part-r-%05d",f)),content);
+		}
+		fs.create(new Path(dir,"_SUCCESS")).close();
+	}
+
+	@Test
+	public void testReadSeqFilesUnordered() throws IOException {
+		Path dir = new Path("/tmp/testReadSeqFilesUnordered");
+		writeSeqFileParts(dir,5,200);
+		final AtomicLong sum = new AtomicLong();
+		long records = HDFSUtil.readSeqFiles(conf,dir,3,new RecordHandler<Text,IntWritable>() {
+			@Override
+			public void handle(Text key, IntWritable value) {
+				assertTrue(key.toString().equals("key-" + value.get()));
+				sum.addAndGet(value.get());
+			}
+		});
+		assertTrue(records == 1000);
+		assertTrue(sum.get() == 999 * 1000 / 2);
+	}
+
+	@Test
+	public void testReadSeqFilesOrderedSplit() throws IOException {
+		Path dir = new Path("/tmp/testReadSeqFilesOrderedSplit");
+		writeSeqFileParts(dir,3,5000);
+		final int[] next = new int[1];
+		ParallelSeqFileReader reader = new ParallelSeqFileReader(conf,4)
+				.setOrdered(true)
+				.setSplitSize(16 * 1024)
+				.setBatching(1024,2);
+		long records = reader.read(new Path(dir,"part-*"),new RecordHandler<Text,IntWritable>() {
+			@Override
+			public void handle(Text key, IntWritable value) {
+				assertTrue(value.get() == next[0]);
+				assertTrue(key.toString().equals("key-" + next[0]));
+				next[0]++;
+			}
+		});
+		assertTrue(records == 15000);
+		assertTrue(next[0] == 15000);
+	}
+
+	@Test(expected = IOException.class)
+	public void testReadSeqFilesHandlerFails() throws IOException {
+		Path dir = new Path("/tmp/testReadSeqFilesHandlerFails");
+		writeSeqFileParts(dir,2,10);
+		new ParallelSeqFileReader(conf,2).setOrdered(true).read(dir,new RecordHandler<Text,IntWritable>() {
+			@Override
+			public void handle(Text key, IntWritable value) throws IOException {
+				throw new IOException("Handler failure");
+			}
+		});
+	}
+
+	@Test
+	public void testReadSeqFilesUnorderedHandlerFails() throws IOException, InterruptedException {
+		Path dir = new Path("/tmp/testReadSeqFilesUnorderedHandlerFails");
+		writeSeqFileParts(dir,4,5000);
+		FailingHandler handler = new FailingHandler();
+		try {
+			new ParallelSeqFileReader(conf,4).read(dir,handler);
+			fail("Handler failure not thrown");
+		} catch (IOException e) {
+			assertEquals("Handler failure",e.getMessage());
+		}
+		handler.assertStopped();
+	}
+
+	/**
+	 * The handler fails while every reader is blocked on a full queue, the readers must still finish.
+	 */
+	@Test
+	public void testReadSeqFilesHandlerFailsQueueFull() throws IOException, InterruptedException {
+		Path dir = new Path("/tmp/testReadSeqFilesHandlerFailsQueueFull");
+		writeSeqFileParts(dir,2,20000);
+		Set<Thread> before = Thread.getAllStackTraces().keySet();
+		try {
+			new ParallelSeqFileReader(conf,2).setOrdered(true).setBatching(1024,2).read(dir,new RecordHandler<Text,IntWritable>() {
+				@Override
+				public void handle(Text key, IntWritable value) throws IOException {
+					try {
+						// Let the readers fill their queues.
+						Thread.sleep(500);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+					throw new IOException("Handler failure");
+				}
+			});
+			fail("Handler failure not thrown");
+		} catch (IOException e) {
+			assertEquals("Handler failure",e.getMessage());
+		}
+		for (Thread thread : Thread.getAllStackTraces().keySet()) {
+			if (!before.contains(thread) && thread.getName().startsWith("pool-")) {
+				thread.join(10000);
+				assertFalse(thread.getName() + " still running",thread.isAlive());
+			}
+		}
+	}
+
 
 	@Test
 	public void testReadFile() throws IOException {
@@ -158,6 +464,204 @@ public class TestHDFSUtil {
 		assertTrue(content.equals("test-content\n"));
 	}
 
+	/**
+	 * Write lines "n,<padding>" for n in [0,lines), with between 0 and 199 bytes of padding, 
+	 * to a file with a 1MB block size.
+	 */
+	private void writeLines(Path file, int lines) throws IOException {
+		try (OutputStream out = fs.create(file,true,4096,(short) 1,1024 * 1024)) {
+			StringBuilder sb = new StringBuilder();
+			for (int n=0; n < lines; n++) {
+				sb.setLength(0);
+				sb.append(n).append(',');
+				for (int i=0; i < (n * 7) % 200; i++)
+					sb.append('x');
+				sb.append(n % 10 == 0 ? "\r\n" : "\n");
+				out.write(sb.toString().getBytes(Charset.defaultCharset()));
+			}
+		}
+	}
+
+	/**
+	 * Handler that fails on its first call and counts the others, which are slowed down so there are
+	 * still lines (or records) left to handle when the read fails.
+	 */
+	private static final class FailingHandler implements LineHandler, RecordHandler<Text,IntWritable> {
+		final AtomicLong calls = new AtomicLong();
+
+		@Override
+		public void handle(Text key, IntWritable value) throws IOException {
+			handle(key);
+		}
+
+		@Override
+		public void handle(Text line) throws IOException {
+			if (calls.getAndIncrement() == 0)
+				throw new IOException("Handler failure");
+			try {
+				Thread.sleep(1);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		/**
+		 * Assert that the handler is not called once the read has failed.
+		 */
+		void assertStopped() throws InterruptedException {
+			long after = calls.get();
+			Thread.sleep(200);
+			assertEquals(after,calls.get());
+		}
+	}
+
+	@Test
+	public void testReadFileParallelHandlerFails() throws IOException, InterruptedException {
+		Path file = new Path("/tmp/testReadFileParallelHandlerFails");
+		writeLines(file,30000);
+		FailingHandler handler = new FailingHandler();
+		try {
+			new ParallelTextReader(conf,4).setSplitSize(100000).read(file,handler);
+			fail("Handler failure not thrown");
+		} catch (IOException e) {
+			assertEquals("Handler failure",e.getMessage());
+		}
+		handler.assertStopped();
+	}
+
+	@Test
+	public void testReadFileParallel() throws IOException {
+		Path file = new Path("/tmp/testReadFileParallel");
+		int lines = 30000;
+		writeLines(file,lines);
+		assertTrue(fs.getFileStatus(file).getLen() > 2 * 1024 * 1024);
+		for (long splitSize : new long[] { 0, 100000, 4099 }) {
+			final boolean[] seen = new boolean[lines];
+			long read = new ParallelTextReader(conf,4).setSplitSize(splitSize).read(file,new LineHandler() {
+				@Override
+				public void handle(Text line) {
+					String s = line.toString();
+					int n = Integer.parseInt(s.substring(0,s.indexOf(',')));
+					assertTrue(s.length() == s.indexOf(',') + 1 + (n * 7) % 200);
+					synchronized (seen) {
+						assertFalse("Line " + n + " read twice",seen[n]);
+						seen[n] = true;
+					}
+				}
+			});
+			assertTrue(read == lines);
+		}
+	}
+
+	/**
+	 * Write lines "n" for n in [0,lines) to file, compressed with codec.
+	 */
+	private void writeCompressed(Path file, Class<? extends CompressionCodec> codecClass, int lines) throws IOException {
+		CompressionCodec codec = ReflectionUtils.newInstance(codecClass,conf);
+		try (OutputStream out = codec.createOutputStream(fs.create(file,true,4096,(short) 1,1024 * 1024))) {
+			for (int n=0; n < lines; n++)
+				out.write((n + "\n").getBytes(Charset.defaultCharset()));
+		}
+	}
+
+	@Test
+	public void testReadCompressedFile() throws IOException {
+		for (Class<? extends CompressionCodec> codec : Arrays.asList(GzipCodec.class,BZip2Codec.class,DefaultCodec.class)) {
+			Path file = new Path("/tmp/testReadCompressedFile" + ReflectionUtils.newInstance(codec,conf).getDefaultExtension());
+			writeCompressed(file,codec,1000);
+			List<String> lines = HDFSUtil.readFileasList(conf,file);
+			assertTrue(codec.getSimpleName(),lines.size() == 1000 && lines.get(999).equals("999"));
+			final AtomicLong sum = new AtomicLong();
+			long read = HDFSUtil.readFile(conf,file,new LineHandler() {
+				@Override
+				public void handle(Text line) {
+					sum.addAndGet(Long.parseLong(line.toString()));
+				}
+			});
+			assertTrue(read == 1000 && sum.get() == 999 * 1000 / 2);
+			// Not splittable codecs are read by a single thread, bzip2 in ranges.
+			sum.set(0);
+			read = new ParallelTextReader(conf,3).setSplitSize(500).read(file,new LineHandler() {
+				@Override
+				public void handle(Text line) {
+					sum.addAndGet(Long.parseLong(line.toString()));
+				}
+			});
+			assertTrue(codec.getSimpleName() + " " + read,read == 1000 && sum.get() == 999 * 1000 / 2);
+		}
+	}
+
+	@Test
+	public void testReadBZip2Ranges() throws IOException {
+		Path file = new Path("/tmp/testReadBZip2Ranges.bz2");
+		int lines = 200000;
+		writeCompressed(file,BZip2Codec.class,lines);
+		long length = fs.getFileStatus(file).getLen();
+		for (long splitSize : new long[] { 1000, 50000, length }) {
+			final boolean[] seen = new boolean[lines];
+			long read = new ParallelTextReader(conf,4).setSplitSize(splitSize).read(file,new LineHandler() {
+				@Override
+				public void handle(Text line) {
+					int n = Integer.parseInt(line.toString());
+					synchronized (seen) {
+						assertFalse("Line " + n + " read twice",seen[n]);
+						seen[n] = true;
+					}
+				}
+			});
+			assertTrue(splitSize + " " + read,read == lines);
+		}
+	}
+
+	@Test
+	public void testReadFileParallelEmpty() throws IOException {
+		Path file = new Path("/tmp/testReadFileParallelEmpty");
+		fs.create(file,true).close();
+		assertTrue(HDFSUtil.readFile(conf,file,2,new LineHandler() {
+			@Override
+			public void handle(Text line) {
+				throw new AssertionError("Unexpected line");
+			}
+		}) == 0);
+	}
+
+
+	@Test
+	public void testOpenLines() throws IOException {
+		Path file = new Path("/tmp/testOpenLines");
+		writeLines(file,1000);
+		int n = 0;
+		try (TextLineReader reader = HDFSUtil.openLines(conf,file)) {
+			Text line = reader.getLine();
+			while (reader.next()) {
+				assertTrue(reader.getLine() == line);
+				assertTrue(line.toString().startsWith(n + ","));
+				n++;
+			}
+			assertTrue(reader.getPosition() == fs.getFileStatus(file).getLen());
+		}
+		assertTrue(n == 1000);
+	}
+
+	@Test
+	public void testReadFileLineHandler() throws IOException {
+		Path file = new Path("/tmp/testReadFileLineHandler");
+		OutputStream out = fs.create(file);
+		out.write("a\u0001b\nc\u0001d\n".getBytes("UTF-8"));
+		out.close();
+		final DelimRecord record = new DelimLineParser().newRecord();
+		final List<String> fields = new ArrayList<>();
+		long lines = HDFSUtil.readFile(conf,file,new LineHandler() {
+			@Override
+			public void handle(Text line) {
+				fields.add(record.reset(line).getFieldByPosition(2));
+			}
+		});
+		assertTrue(lines == 2);
+		assertTrue(fields.get(0).equals("b") && fields.get(1).equals("d"));
+	}
+
+
 	@Test
 	public void testReadLocalFileURICharset() throws URISyntaxException, IOException {
 		URI expectedResultsFile = TestHDFSUtil.class.getResource("/testReadLocalFile.txt").toURI();		
@@ -0,0 +1,121 @@
+package net.martinprobson.hadoop.util;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+
+public class TestMappedFile {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File write(String content) throws IOException {
+		File file = folder.newFile();
+		Files.write(file.toPath(),content.getBytes(StandardCharsets.UTF_8));
+		return file;
+	}
+
+	private static List<String> readLines(MappedFile mapped) throws IOException {
+		List<String> lines = new ArrayList<>();
+		Text line = new Text();
+		while (mapped.readLine(line))
+			lines.add(line.toString());
+		return lines;
+	}
+
+	/**
+	 * Lines read through a MappedFile (with any segment size) match those read by Hadoop's LineReader.
+	 */
+	@Test
+	public final void testReadLineMatchesLineReader() throws IOException {
+		Random random = new Random(42);
+		String[] terminators = { "\n", "\r\n", "\r" };
+		StringBuilder sb = new StringBuilder();
+		for (int n = 0; n < 500; n++) {
+			sb.append(n).append('\u0001');
+			for (int i = random.nextInt(40); i > 0; i--)
+				sb.append((char) ('a' + random.nextInt(26)));
+			sb.append(terminators[random.nextInt(terminators.length)]);
+		}
+		sb.append("last");
+		File file = write(sb.toString());
+		Configuration conf = new Configuration();
+		conf.setBoolean(TextLineReader.MAP_LOCAL_FILES_KEY,false);
+		List<String> expected = new ArrayList<>();
+		try (TextLineReader reader = new TextLineReader(conf,new Path(file.toURI()))) {
+			while (reader.next())
+				expected.add(reader.getLine().toString());
+		}
+		assertEquals(501,expected.size());
+		for (int segmentSize : new int[] { 64, 100, 4096, MappedFile.MAX_SEGMENT_SIZE }) {
+			try (MappedFile mapped = new MappedFile(file.toPath(),segmentSize)) {
+				assertEquals(expected,readLines(mapped));
+				assertEquals(file.length(),mapped.getPosition());
+				long total = 0;
+				for (ByteBuffer segment : mapped.getSegments())
+					total += segment.remaining();
+				assertEquals(file.length(),total);
+			}
+		}
+	}
+
+	@Test
+	public final void testSegmentsEndAtLineTerminators() throws IOException {
+		File file = write("aaaa\r\nbbbb\r\ncccc\n");
+		try (MappedFile mapped = new MappedFile(file.toPath(),6)) {
+			assertEquals(3,mapped.getSegments().size());
+			assertEquals(6,mapped.getSegments().get(0).remaining());
+			assertEquals("aaaa",readLines(mapped).get(0));
+		}
+		// "\r" at the end of a segment could be the first half of "\r\n".
+		try {
+			new MappedFile(file.toPath(),5).close();
+			fail("Expected line longer than segment to fail");
+		} catch (IOException e) {
+			assertTrue(e.getMessage().contains("longer than 5 bytes"));
+		}
+	}
+
+	@Test
+	public final void testEmptyFile() throws IOException {
+		try (MappedFile mapped = new MappedFile(write("").toPath())) {
+			assertEquals(0,mapped.size());
+			assertTrue(mapped.getSegments().isEmpty());
+			assertFalse(mapped.readLine(new Text()));
+		}
+	}
+
+	@Test
+	public final void testForEachLineWithDelimRecord() throws IOException {
+		File file = write("a\u0001b\nc\u0001d\n");
+		final DelimRecord record = new DelimLineParser().newRecord();
+		final List<String> fields = new ArrayList<>();
+		try (MappedFile mapped = new MappedFile(file.toPath())) {
+			long lines = mapped.forEachLine(new LineHandler() {
+				@Override
+				public void handle(Text line) {
+					fields.add(record.reset(line).getFieldByPosition(2));
+				}
+			});
+			assertEquals(2,lines);
+		}
+		assertEquals("b",fields.get(0));
+		assertEquals("d",fields.get(1));
+	}
+
+}
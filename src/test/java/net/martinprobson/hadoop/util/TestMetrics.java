@@ -0,0 +1,151 @@
+package net.martinprobson.hadoop.util;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Properties;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.TabularData;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Counters;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+
+public class TestMetrics {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Before
+	public void setUp() {
+		Metrics.reset();
+		Metrics.setEnabled(true);
+	}
+
+	@After
+	public void tearDown() {
+		Metrics.setEnabled(false);
+		Metrics.reset();
+	}
+
+	@Test
+	public final void testDisabled() {
+		Metrics.setEnabled(false);
+		DelimRecord record = new DelimLineParser(new Properties(),";").newRecord();
+		record.reset(new Text("a;b;c"));
+		Metrics.increment(Metrics.Counter.NAMENODE_CALLS);
+		Metrics.stop(Metrics.Timer.OPEN,Metrics.start());
+		assertEquals(0,Metrics.get(Metrics.Counter.LINES_PARSED));
+		assertEquals(0,Metrics.get(Metrics.Counter.NAMENODE_CALLS));
+		assertEquals(0,Metrics.get(Metrics.Timer.OPEN).getCount());
+	}
+
+	@Test
+	public final void testParseAndRead() throws IOException {
+		File file = folder.newFile("lines.txt");
+		Files.write(file.toPath(),Arrays.asList("a;b;c","d;e","f"),StandardCharsets.UTF_8);
+		DelimRecord record = new DelimLineParser(new Properties(),";").newRecord();
+		try (TextLineReader reader = new TextLineReader(new Configuration(),new Path(file.toURI()))) {
+			while (reader.next())
+				record.reset(reader.getLine());
+		}
+		assertEquals(1,Metrics.get(Metrics.Counter.FILES_OPENED));
+		assertEquals(3,Metrics.get(Metrics.Counter.LINES_READ));
+		assertEquals(file.length(),Metrics.get(Metrics.Counter.BYTES_READ));
+		assertEquals(3,Metrics.get(Metrics.Counter.LINES_PARSED));
+		assertEquals(1,Metrics.get(Metrics.Timer.OPEN).getCount());
+		Metrics.Histogram fields = Metrics.get(Metrics.Distribution.FIELDS_PER_LINE);
+		assertEquals(3,fields.getCount());
+		assertEquals(6,fields.getSum());
+		assertEquals(3,fields.getMax());
+	}
+
+	@Test
+	public final void testFieldsParsed() {
+		Properties names = new Properties();
+		names.setProperty("a","1");
+		names.setProperty("c","3");
+		DelimLineParser parser = new DelimLineParser(names,";");
+		Text line = new Text("a;b;c");
+		assertEquals("a",parser.getFieldByName(line,"a"));
+		assertEquals("b",parser.getFieldByPosition(line,2));
+		assertEquals("c",parser.getFieldByPosition(line,3,new Text()).toString());
+		FieldProjection projection = FieldProjection.of(parser.getSchema(),"a","c");
+		parser.getFields(line,projection,new Text[] { new Text(), new Text() });
+		assertEquals(5,Metrics.get(Metrics.Counter.FIELDS_PARSED));
+		parser.setFieldSeparator(";+");
+		assertEquals("c",parser.getFieldByName(line,"c"));
+		assertEquals(6,Metrics.get(Metrics.Counter.FIELDS_PARSED));
+	}
+
+	@Test
+	public final void testStatusCache() throws IOException {
+		FileStatusCache cache = new FileStatusCache(FileSystem.getLocal(new Configuration()),60000,100);
+		Path file = new Path(folder.getRoot().toURI().toString(),"file");
+		assertFalse(cache.exists(file));
+		assertFalse(cache.exists(file));
+		assertEquals(1,Metrics.get(Metrics.Counter.NAMENODE_CALLS));
+		assertEquals(1,Metrics.get(Metrics.Counter.STATUS_CACHE_HITS));
+		assertEquals(1,Metrics.get(Metrics.Timer.METADATA).getCount());
+	}
+
+	@Test
+	public final void testHistogram() {
+		for (int i = 1; i <= 100; i++)
+			Metrics.record(Metrics.Distribution.LINE_LENGTH,i);
+		Metrics.Histogram h = Metrics.get(Metrics.Distribution.LINE_LENGTH);
+		assertEquals(100,h.getCount());
+		assertEquals(5050,h.getSum());
+		assertEquals(100,h.getMax());
+		// Power of 2 buckets: 50 is in [32,64), 99 in [64,128) capped at the maximum.
+		assertEquals(63,h.getPercentile(50));
+		assertEquals(100,h.getPercentile(99));
+		assertEquals(1,h.getPercentile(0.5));
+	}
+
+	@Test
+	public final void testPublish() {
+		Metrics.add(Metrics.Counter.BYTES_READ,42);
+		Metrics.record(Metrics.Distribution.LINE_LENGTH,10);
+		Counters counters = new Counters();
+		Metrics.publish(counters);
+		// Publishing again sets, rather than adds to, the counters.
+		Metrics.publish(counters);
+		assertEquals(42,counters.findCounter(Metrics.COUNTER_GROUP,"BYTES_READ").getValue());
+		assertEquals(1,counters.findCounter(Metrics.COUNTER_GROUP,"LINE_LENGTH_COUNT").getValue());
+		assertEquals(10,counters.findCounter(Metrics.COUNTER_GROUP,"LINE_LENGTH_SUM").getValue());
+	}
+
+	@Test
+	public final void testMBean() throws Exception {
+		Metrics.registerMBean();
+		Metrics.registerMBean();
+		Metrics.add(Metrics.Counter.RECORDS_READ,7);
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName(Metrics.MBEAN_NAME);
+		assertEquals(Boolean.TRUE,server.getAttribute(name,"Enabled"));
+		TabularData values = (TabularData) server.getAttribute(name,"Values");
+		assertEquals(7L,values.get(new Object[] { "RECORDS_READ" }).get("value"));
+		Map<String,Long> snapshot = Metrics.snapshot();
+		assertEquals(snapshot.size(),values.size());
+		server.invoke(name,"reset",null,null);
+		assertEquals(0,Metrics.get(Metrics.Counter.RECORDS_READ));
+	}
+
+}
@@ -0,0 +1,129 @@
+package net.martinprobson.hadoop.util;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+
+public class TestParsePipeline {
+
+	private static final int ROWS = 5000;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Configuration conf;
+	private DelimLineParser parser;
+	private Path dir;
+	private long expectedTotal;
+
+	@Before
+	public void setUp() throws IOException {
+		conf = new Configuration();
+		FileSystem fs = FileSystem.getLocal(conf);
+		parser = DfkkopFixture.parser();
+		dir = new Path(folder.getRoot().toURI().toString(),"in");
+		for (int file = 0; file < 2; file++) {
+			DfkkopFixture.write(fs,new Path(dir,"part-" + file + ".txt"),file * ROWS / 2,(file + 1) * ROWS / 2,(i,values) -> {
+				values[17] = Long.toString(850000000000L + i);
+				values[42] = Integer.toString(i % 1000);
+				expectedTotal += i % 1000;
+				return values;
+			});
+		}
+	}
+
+	/**
+	 * Sums the amounts and collects the distinct accounts, from the (single) consumer thread.
+	 */
+	private static final class Totals implements ParsePipeline.Consumer<long[]> {
+		long total;
+		final Set<Long> accounts = new HashSet<>();
+
+		@Override
+		public void consume(long[] value) {
+			accounts.add(value[0]);
+			total += value[1];
+		}
+	}
+
+	private static final ParsePipeline.Mapper<long[]> AMOUNTS = new ParsePipeline.Mapper<long[]>() {
+		@Override
+		public long[] map(DelimRecord record) {
+			return new long[] { record.getLong(18), record.getLong(43) };
+		}
+	};
+
+	@Test
+	public final void testRun() throws IOException {
+		Totals totals = new Totals();
+		ParsePipeline.Report report = HDFSUtil.parseFiles(conf,dir,parser,4,AMOUNTS,totals);
+		assertEquals(ROWS,totals.accounts.size());
+		assertEquals(expectedTotal,totals.total);
+		assertEquals(ROWS,report.getReader().getItems());
+		assertEquals(ROWS,report.getParser().getItems());
+		assertEquals(ROWS,report.getConsumer().getItems());
+		assertEquals(report.getReader().getBytes(),report.getParser().getBytes());
+		assertEquals(1,report.getReader().getThreads());
+		assertEquals(4,report.getParser().getThreads());
+		assertTrue(report.getLinesPerSecond() > 0);
+	}
+
+	@Test
+	public final void testSmallQueues() throws IOException {
+		Totals totals = new Totals();
+		ParsePipeline.Report report = new ParsePipeline(conf,parser,3).setBatchLines(7).setQueueBatches(1)
+																	  .run(new Path(dir,"part-*"),AMOUNTS,totals);
+		assertEquals(ROWS,totals.accounts.size());
+		assertEquals(expectedTotal,totals.total);
+		assertEquals((ROWS + 6) / 7,report.getParser().getBatches());
+	}
+
+	@Test
+	public final void testDroppedLines() throws IOException {
+		Totals totals = new Totals();
+		new ParsePipeline(conf,parser,2).run(dir,new ParsePipeline.Mapper<long[]>() {
+			@Override
+			public long[] map(DelimRecord record) {
+				long account = record.getLong(18);
+				return account % 2 == 0 ? new long[] { account, 1 } : null;
+			}
+		},totals);
+		assertEquals(ROWS / 2,totals.total);
+	}
+
+	@Test(expected = NumberFormatException.class)
+	public final void testMapperFails() throws IOException {
+		new ParsePipeline(conf,parser,4).setBatchLines(10).run(dir,new ParsePipeline.Mapper<Long>() {
+			@Override
+			public Long map(DelimRecord record) {
+				return record.getLong(1);
+			}
+		},new ParsePipeline.Consumer<Long>() {
+			@Override
+			public void consume(Long value) {
+			}
+		});
+	}
+
+	@Test(expected = IOException.class)
+	public final void testConsumerFails() throws IOException {
+		new ParsePipeline(conf,parser,4).setBatchLines(10).run(dir,AMOUNTS,new ParsePipeline.Consumer<long[]>() {
+			@Override
+			public void consume(long[] value) throws IOException {
+				throw new IOException("Consumer failed");
+			}
+		});
+	}
+
+}
@@ -0,0 +1,125 @@
+package net.martinprobson.hadoop.util;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+
+public class TestProfiler {
+
+	private static final int ROWS = 5000;
+	private static final int ACCOUNTS = 997;
+	/** Lines cut short after the tenth field. */
+	private static final int SHORT = 10;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Configuration conf;
+	private DelimLineParser parser;
+	private Path text;
+
+	@Before
+	public void setUp() throws IOException {
+		conf = new Configuration();
+		parser = DfkkopFixture.parser();
+		text = new Path(folder.getRoot().toURI().toString(),"dfkkop.txt");
+		DfkkopFixture.write(FileSystem.getLocal(conf),text,0,ROWS,(i,values) -> {
+			String account = Long.toString(850000000000L + i % ACCOUNTS);
+			values[17] = i % 2 == 0 ? account : "00" + account;
+			values[34] = i % 10 == 0 ? "EUR" : "GBP";
+			values[42] = i % 500 == 1 ? "n/a" : String.format("%d.%02d-",i % 1000,i % 100);
+			return i < ROWS - SHORT ? values : Arrays.copyOf(values,SHORT);
+		});
+	}
+
+	private void check(DataProfile profile, int times) {
+		assertEquals(ROWS * times,profile.getLines());
+		assertEquals(4,profile.getColumns().size());
+
+		ColumnProfile vkont = profile.getColumn("vkont");
+		assertEquals(18,vkont.getPosition());
+		assertEquals((ROWS - SHORT) * times,vkont.getPresent());
+		assertEquals((ROWS - SHORT) * times,vkont.getValid());
+		assertEquals(ACCOUNTS,vkont.getDistinct(),ACCOUNTS * 0.05);
+		assertEquals("850000000000",vkont.getMin());
+		assertEquals(Long.toString(850000000000L + ACCOUNTS - 1),vkont.getMax());
+
+		ColumnProfile waers = profile.getColumn("waers");
+		assertEquals(ColumnType.STRING,waers.getType());
+		assertEquals(2,waers.getDistinct());
+		assertEquals("3",waers.getMin());
+		assertEquals("3",waers.getMax());
+		Iterator<Map.Entry<String,Long>> top = waers.getTopValues().entrySet().iterator();
+		assertEquals("GBP",top.next().getKey());
+		Map.Entry<String,Long> eur = top.next();
+		assertEquals("EUR",eur.getKey());
+		assertEquals((ROWS - SHORT) / 10 * times,(long) eur.getValue());
+		assertFalse(top.hasNext());
+
+		ColumnProfile studt = profile.getColumn("studt");
+		assertEquals((ROWS - SHORT) * times,studt.getNulls());
+		assertEquals(0,studt.getValid());
+		assertNull(studt.getMin());
+
+		ColumnProfile betrh = profile.getColumn("betrh");
+		assertEquals(ROWS / 500 * times,betrh.getInvalid());
+		assertEquals("n/a",betrh.getInvalidExample());
+		assertEquals("-999.99",betrh.getMin());
+		assertEquals("0.00",betrh.getMax());
+		assertTrue(betrh.getHistogram().quantile(0.5) < 0);
+	}
+
+	@Test
+	public final void testProfile() throws IOException {
+		DataProfile profile = new Profiler(conf,parser,"waers","betrh","vkont","studt").setWorkers(4)
+																						.setNullValues("\\N","00000000")
+																						.profile(text);
+		check(profile,1);
+		assertEquals("vkont",profile.getColumns().get(0).getName());
+		assertEquals(5,profile.toString().split(System.lineSeparator()).length);
+	}
+
+	@Test
+	public final void testMergeWritable() throws IOException {
+		Profiler profiler = new Profiler(conf,parser,"waers","betrh","vkont","studt").setWorkers(1).setNullValues("\\N","00000000");
+		DataProfile first = profiler.profile(text);
+		DataOutputBuffer out = new DataOutputBuffer();
+		profiler.profile(text).write(out);
+		DataInputBuffer in = new DataInputBuffer();
+		in.reset(out.getData(),out.getLength());
+		DataProfile second = new DataProfile();
+		second.readFields(in);
+		check(second,1);
+		first.merge(second);
+		check(first,2);
+	}
+
+	@Test
+	public final void testAllFields() throws IOException {
+		DataProfile profile = new Profiler(conf,parser).setWorkers(2).setPrecision(10).setTopValues(3,2,256).setHistogramBins(8).profile(text);
+		assertEquals(parser.getSchema().size(),profile.getColumns().size());
+		assertEquals(1,profile.getColumn("gpart").getDistinct());
+		assertEquals(ROWS - SHORT,profile.getColumn("gsber").getBlanks());
+		assertEquals(SHORT,profile.getLines() - profile.getColumn("gsber").getPresent());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public final void testMergeDifferentSettings() throws IOException {
+		new Profiler(conf,parser,"vkont").newProfile().merge(new Profiler(conf,parser,"vkont").setPrecision(10).newProfile());
+	}
+
+}
@@ -0,0 +1,56 @@
+package net.martinprobson.hadoop.util;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+
+public class TestSeparatorScanner {
+
+	@Test
+	public final void testIndexOfMatchesScalar() {
+		Random random = new Random(42);
+		byte[] bytes = new byte[200];
+		for (int n = 0; n < 1000; n++) {
+			for (int i = 0; i < bytes.length; i++)
+				bytes[i] = random.nextInt(n % 2 == 0 ? 4 : 64) == 0 ? (byte) 1 : (byte) (random.nextInt(256) - 128);
+			int from = random.nextInt(bytes.length);
+			int to = from + random.nextInt(bytes.length - from + 1);
+			int expected = SeparatorScanner.indexOfScalar(bytes,from,to,(byte) 1);
+			assertEquals(expected,SeparatorScanner.indexOf(bytes,from,to,(byte) 1));
+			assertEquals(expected,SeparatorScanner.indexOfSwar(bytes,from,to,(byte) 1));
+		}
+	}
+
+	@Test
+	public final void testIndexOfEveryPosition() {
+		for (int length = 0; length < 80; length++) {
+			for (int pos = 0; pos < length; pos++) {
+				byte[] bytes = new byte[length];
+				bytes[pos] = (byte) 0x80;
+				assertEquals(pos,SeparatorScanner.indexOf(bytes,0,length,(byte) 0x80));
+				assertEquals(pos,SeparatorScanner.indexOfSwar(bytes,0,length,(byte) 0x80));
+			}
+			assertEquals(-1,SeparatorScanner.indexOf(new byte[length],0,length,(byte) 0x80));
+		}
+	}
+
+	@Test
+	public final void testIndexOfRange() {
+		byte[] bytes = "a|bcdefghij|klmnopqrst|".getBytes();
+		assertEquals(1,SeparatorScanner.indexOf(bytes,0,bytes.length,(byte) '|'));
+		assertEquals(11,SeparatorScanner.indexOf(bytes,2,bytes.length,(byte) '|'));
+		assertEquals(-1,SeparatorScanner.indexOf(bytes,2,11,(byte) '|'));
+		assertEquals(22,SeparatorScanner.indexOf(bytes,12,bytes.length,(byte) '|'));
+	}
+
+	@Test
+	public final void testZeroBytes() {
+		assertEquals(0x8000000000000080L,SeparatorScanner.zeroBytes(0x0001010101010100L));
+		assertEquals(0L,SeparatorScanner.zeroBytes(0x0101010101010101L));
+		assertEquals(0x8080808080808080L,SeparatorScanner.zeroBytes(0L));
+	}
+
+}
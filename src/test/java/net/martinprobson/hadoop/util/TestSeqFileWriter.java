@@ -0,0 +1,204 @@
+package net.martinprobson.hadoop.util;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.SequenceFile.CompressionType;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.compress.BZip2Codec;
+import org.apache.hadoop.io.compress.DefaultCodec;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+
+public class TestSeqFileWriter {
+
+	private static final int RECORDS = 10000;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Configuration conf;
+	private Path dir;
+
+	@Before
+	public void setUp() throws IOException {
+		conf = new Configuration();
+		dir = new Path(folder.getRoot().toURI().toString());
+	}
+
+	/**
+	 * @return count records, re-using the same key and value instances for each.
+	 */
+	private static Iterator<Pair<Text,IntWritable>> records(final int count) {
+		final Text key = new Text();
+		final IntWritable value = new IntWritable();
+		final Pair<Text,IntWritable> pair = new ImmutablePair<>(key,value);
+		return new Iterator<Pair<Text,IntWritable>>() {
+			private int i = 0;
+
+			@Override
+			public boolean hasNext() {
+				return i < count;
+			}
+
+			@Override
+			public Pair<Text,IntWritable> next() {
+				key.set("key-" + i);
+				value.set(i++);
+				return pair;
+			}
+		};
+	}
+
+	private void check(Path file, int count, CompressionType compression, Class<?> codec) throws IOException {
+		try (SequenceFile.Reader reader = new SequenceFile.Reader(conf,SequenceFile.Reader.file(file))) {
+			assertEquals(compression,reader.getCompressionType());
+			if (codec != null)
+				assertEquals(codec,reader.getCompressionCodec().getClass());
+		}
+		List<Pair<Writable,Writable>> read = HDFSUtil.readSeqFile(conf,file);
+		assertEquals(count,read.size());
+		for (int i = 0; i < count; i++) {
+			assertEquals(new Text("key-" + i),read.get(i).getKey());
+			assertEquals(new IntWritable(i),read.get(i).getValue());
+		}
+	}
+
+	@Test
+	public final void testDefaultBlockCompression() throws IOException {
+		Path file = new Path(dir,"block.seq");
+		try (SeqFileWriter<Text,IntWritable> writer = HDFSUtil.createSeqFile(conf,file,Text.class,IntWritable.class)) {
+			assertEquals(RECORDS,writer.append(records(RECORDS)));
+			writer.append(new Text("key-" + RECORDS),new IntWritable(RECORDS));
+			assertEquals(RECORDS + 1,writer.getRecords());
+			assertEquals(file,writer.getPath());
+		}
+		check(file,RECORDS + 1,CompressionType.BLOCK,DefaultCodec.class);
+	}
+
+	@Test
+	public final void testCompressionTypes() throws IOException {
+		for (CompressionType compression : CompressionType.values()) {
+			Path file = new Path(dir,compression + ".seq");
+			List<Pair<Text,IntWritable>> records = new ArrayList<>();
+			for (Iterator<Pair<Text,IntWritable>> i = records(100); i.hasNext();) {
+				Pair<Text,IntWritable> record = i.next();
+				records.add(new ImmutablePair<>(new Text(record.getKey()),new IntWritable(record.getValue().get())));
+			}
+			assertEquals(100,HDFSUtil.writeSeqFile(conf,file,Text.class,IntWritable.class,records.iterator(),
+												   new SeqFileWriter.Options().setCompression(compression).setBufferSize(4096)));
+			check(file,100,compression,compression == CompressionType.NONE ? null : DefaultCodec.class);
+		}
+	}
+
+	@Test
+	public final void testOptions() throws IOException {
+		Path file = new Path(dir,"bzip2.seq");
+		SequenceFile.Metadata metadata = new SequenceFile.Metadata();
+		metadata.set(new Text("source"),new Text("test"));
+		SeqFileWriter.Options options = new SeqFileWriter.Options().setCodec("bzip2").setCompressionBlockSize(4096)
+																   .setBlockSize(1024 * 1024).setReplication((short) 1)
+																   .setMetadata(metadata);
+		try (SeqFileWriter<Text,IntWritable> writer = new SeqFileWriter<>(conf,file,Text.class,IntWritable.class,options)) {
+			writer.append(records(RECORDS));
+			writer.sync();
+		}
+		check(file,RECORDS,CompressionType.BLOCK,BZip2Codec.class);
+		try (SequenceFile.Reader reader = new SequenceFile.Reader(conf,SequenceFile.Reader.file(file))) {
+			assertEquals(new Text("test"),reader.getMetadata().get(new Text("source")));
+		}
+		// A small compression block gives many sync markers, so the file can be read in ranges.
+		assertEquals(RECORDS,new ParallelSeqFileReader(conf,4).setSplitSize(8192).read(file,new RecordHandler<Text,IntWritable>() {
+			@Override
+			public void handle(Text key, IntWritable value) {
+			}
+		}));
+	}
+
+	@Test
+	public final void testAppendStream() throws IOException {
+		Path file = new Path(dir,"stream.seq");
+		try (SeqFileWriter<Text,IntWritable> writer = new SeqFileWriter<>(conf,file,Text.class,IntWritable.class)) {
+			assertEquals(100,writer.append(IntStream.range(0,100).mapToObj(i -> new ImmutablePair<>(new Text("key-" + i),new IntWritable(i)))));
+		}
+		check(file,100,CompressionType.BLOCK,DefaultCodec.class);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public final void testUnknownCodec() throws IOException {
+		new SeqFileWriter<>(conf,new Path(dir,"unknown.seq"),Text.class,IntWritable.class,new SeqFileWriter.Options().setCodec("nosuchcodec"));
+	}
+
+	@Test
+	public final void testInvalidatesStatusCache() throws IOException {
+		Configuration cached = new Configuration();
+		cached.setLong(FileStatusCache.TTL_KEY,60000);
+		Path file = new Path(dir,"cached.seq");
+		assertFalse(HDFSUtil.pathExists(cached,file));
+		new SeqFileWriter<>(cached,file,Text.class,IntWritable.class).close();
+		assertTrue(HDFSUtil.pathExists(cached,file));
+	}
+
+	@Test
+	public final void testParallelParts() throws IOException {
+		Path out = new Path(dir,"parts");
+		ParallelSeqFileWriter.Report report = new ParallelSeqFileWriter(conf,4).setBatching(4096,2)
+																			   .write(out,Text.class,IntWritable.class,records(RECORDS));
+		assertEquals(RECORDS,report.getRecords());
+		assertEquals(4,report.getFiles().size());
+		FileSystem fs = out.getFileSystem(conf);
+		long bytes = 0;
+		for (int p = 0; p < 4; p++) {
+			Path part = report.getFiles().get(p);
+			assertEquals(String.format("part-%05d",p),part.getName());
+			bytes += fs.getFileStatus(part).getLen();
+		}
+		assertEquals(bytes,report.getBytes());
+		assertTrue(report.toString(),report.getRecordsPerSecond() > 0);
+		final boolean[] seen = new boolean[RECORDS];
+		final AtomicLong sum = new AtomicLong();
+		assertEquals(RECORDS,new ParallelSeqFileReader(conf,2).setOrdered(true).read(out,new RecordHandler<Text,IntWritable>() {
+			@Override
+			public void handle(Text key, IntWritable value) {
+				assertEquals("key-" + value.get(),key.toString());
+				assertFalse(seen[value.get()]);
+				seen[value.get()] = true;
+				sum.addAndGet(value.get());
+			}
+		}));
+		assertEquals((long) RECORDS * (RECORDS - 1) / 2,sum.get());
+	}
+
+	@Test
+	public final void testParallelEmptyParts() throws IOException {
+		Path out = new Path(dir,"empty");
+		ParallelSeqFileWriter.Report report = HDFSUtil.writeSeqFiles(conf,out,3,Text.class,IntWritable.class,records(1),
+																	 new SeqFileWriter.Options().setCompression(CompressionType.NONE));
+		assertEquals(1,report.getRecords());
+		assertEquals(1,report.getRecords(0) + report.getRecords(1) + report.getRecords(2));
+		assertEquals(1,HDFSUtil.readSeqFiles(conf,out,3,new RecordHandler<Text,IntWritable>() {
+			@Override
+			public void handle(Text key, IntWritable value) {
+				assertEquals("key-0",key.toString());
+			}
+		}));
+	}
+
+}
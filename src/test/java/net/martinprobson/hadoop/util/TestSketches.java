@@ -0,0 +1,120 @@
+package net.martinprobson.hadoop.util;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.Writable;
+import org.junit.Test;
+
+
+public class TestSketches {
+
+	private static <T extends Writable> T copy(T from, T to) throws IOException {
+		DataOutputBuffer out = new DataOutputBuffer();
+		from.write(out);
+		DataInputBuffer in = new DataInputBuffer();
+		in.reset(out.getData(),out.getLength());
+		to.readFields(in);
+		return to;
+	}
+
+	@Test
+	public final void testHyperLogLog() throws IOException {
+		HyperLogLog small = new HyperLogLog();
+		for (int i = 0; i < 100; i++) {
+			small.add(HyperLogLog.hash(i));
+			small.add(HyperLogLog.hash(i));
+		}
+		assertEquals(100,small.estimate(),2);
+
+		HyperLogLog a = new HyperLogLog();
+		HyperLogLog b = new HyperLogLog();
+		for (int i = 0; i < 100000; i++) {
+			byte[] value = ("value" + i).getBytes(StandardCharsets.UTF_8);
+			(i % 2 == 0 ? a : b).add(HyperLogLog.hash(value,0,value.length));
+		}
+		assertEquals(50000,a.estimate(),50000 * 0.05);
+		a.merge(b);
+		assertEquals(100000,a.estimate(),100000 * 0.05);
+		assertEquals(a.estimate(),copy(a,new HyperLogLog(16)).estimate());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public final void testHyperLogLogMergePrecision() {
+		new HyperLogLog(10).merge(new HyperLogLog(12));
+	}
+
+	@Test
+	public final void testTopValues() throws IOException {
+		TopValues a = new TopValues(5,4,256);
+		TopValues b = new TopValues(5,4,256);
+		Random random = new Random(42);
+		for (int i = 0; i < 100000; i++) {
+			// Values 0..4 are frequent (1000 each per half), the rest are spread over 10000 values.
+			int v = i % 10 == 0 ? i / 10 % 5 : 5 + random.nextInt(10000);
+			byte[] value = Integer.toString(v).getBytes(StandardCharsets.UTF_8);
+			(i < 50000 ? a : b).add(value,0,value.length,HyperLogLog.hash(value,0,value.length));
+		}
+		a.merge(copy(b,new TopValues()));
+		assertEquals(100000,a.getTotal());
+		List<TopValues.Value> top = a.getTop();
+		assertEquals(5,top.size());
+		boolean[] found = new boolean[5];
+		for (TopValues.Value value : top) {
+			found[Integer.parseInt(new String(value.getBytes(),StandardCharsets.UTF_8))] = true;
+			assertTrue(value.getCount() >= 2000);
+			assertTrue(value.getCount() < 2000 + 100000 * Math.E / 256);
+		}
+		for (boolean f : found)
+			assertTrue(f);
+	}
+
+	@Test
+	public final void testValueHistogram() throws IOException {
+		ValueHistogram histogram = new ValueHistogram(16);
+		histogram.add(1000);
+		assertEquals(1000,histogram.quantile(0.5));
+		for (int i = 0; i < 1000; i++)
+			histogram.add(i);
+		assertEquals(1001,histogram.getCount());
+		assertEquals(0,histogram.getMin());
+		assertEquals(1000,histogram.getMax());
+		assertEquals(500,histogram.quantile(0.5),128);
+		assertEquals(0,histogram.quantile(0));
+		assertEquals(1000,histogram.quantile(1));
+		long total = 0;
+		for (int i = 0; i < histogram.getBinCount(); i++) {
+			assertTrue(histogram.getLowerBound(i) <= histogram.getUpperBound(i));
+			total += histogram.getCount(i);
+		}
+		assertEquals(1001,total);
+
+		ValueHistogram other = new ValueHistogram(16);
+		for (int i = -5000; i < 0; i++)
+			other.add(i);
+		histogram.merge(copy(other,new ValueHistogram()));
+		assertEquals(6001,histogram.getCount());
+		assertEquals(-5000,histogram.getMin());
+		assertEquals(-2000,histogram.quantile(0.5),1024);
+	}
+
+	@Test
+	public final void testValueHistogramExtremes() {
+		ValueHistogram histogram = new ValueHistogram(2);
+		histogram.add(Long.MAX_VALUE);
+		histogram.add(Long.MIN_VALUE);
+		histogram.add(0);
+		assertEquals(3,histogram.getCount());
+		assertEquals(Long.MIN_VALUE,histogram.getMin());
+		assertEquals(Long.MAX_VALUE,histogram.getMax());
+		assertEquals(1,histogram.getCount(0));
+		assertEquals(2,histogram.getCount(1));
+	}
+
+}